@@ -49,6 +49,16 @@ public class ArraySortedMap<K, V> extends ImmutableSortedMap<K, V> {
         new ArrayList<K>(map.keySet()), map, Builder.<K>identityTranslator(), comparator);
   }
 
+  /**
+   * Builds a map from keys that are already sorted by the comparator. The value of each key is at
+   * the same index in {@code values}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> ArraySortedMap<K, V> fromSortedLists(
+      List<K> keys, List<V> values, Comparator<K> comparator) {
+    return new ArraySortedMap<>(comparator, (K[]) keys.toArray(), (V[]) values.toArray());
+  }
+
   private final K[] keys;
   private final V[] values;
   private final Comparator<K> comparator;
@@ -14,6 +14,7 @@
 
 package com.google.firebase.database.collection;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -56,6 +57,78 @@ public abstract class ImmutableSortedMap<K, V> implements Iterable<Map.Entry<K,
 
   public abstract Comparator<K> getComparator();
 
+  /**
+   * Returns a map with the entries of this map and of {@code other}, which must use the same
+   * comparator. If both maps contain a key, the value from {@code other} is used.
+   *
+   * <p>Maps of similar size are merged in O(n + m) by building the result from the merged entries.
+   * If {@code other} is much smaller than this map, its entries are inserted one by one instead.
+   */
+  public ImmutableSortedMap<K, V> insertAll(ImmutableSortedMap<K, V> other) {
+    if (other.isEmpty()) {
+      return this;
+    } else if (isEmpty()) {
+      return other;
+    }
+
+    int size = size();
+    int otherSize = other.size();
+    int log2Size = 32 - Integer.numberOfLeadingZeros(size);
+    if ((long) otherSize * log2Size < size + otherSize) {
+      ImmutableSortedMap<K, V> result = this;
+      for (Map.Entry<K, V> entry : other) {
+        result = result.insert(entry.getKey(), entry.getValue());
+      }
+      return result;
+    }
+
+    return merge(this, other.iterator(), otherSize);
+  }
+
+  /** Returns a builder that applies several insertions and removals to this map at once. */
+  public ImmutableSortedMapBuilder<K, V> toBuilder() {
+    return new ImmutableSortedMapBuilder<>(this);
+  }
+
+  /**
+   * Builds a map from the entries of {@code base} and {@code changes} in O(n + m). The changes must
+   * be sorted by the comparator of {@code base}. A change replaces the entry with the same key.
+   */
+  private static <K, V> ImmutableSortedMap<K, V> merge(
+      ImmutableSortedMap<K, V> base, Iterator<Map.Entry<K, V>> changes, int changeCount) {
+    Comparator<K> comparator = base.getComparator();
+    List<K> keys = new ArrayList<>(base.size() + changeCount);
+    List<V> values = new ArrayList<>(base.size() + changeCount);
+    Iterator<Map.Entry<K, V>> baseIterator = base.iterator();
+    Map.Entry<K, V> baseEntry = baseIterator.hasNext() ? baseIterator.next() : null;
+    Map.Entry<K, V> change = changes.hasNext() ? changes.next() : null;
+    while (baseEntry != null || change != null) {
+      int cmp;
+      if (baseEntry == null) {
+        cmp = 1;
+      } else if (change == null) {
+        cmp = -1;
+      } else {
+        cmp = comparator.compare(baseEntry.getKey(), change.getKey());
+      }
+
+      if (cmp < 0) {
+        keys.add(baseEntry.getKey());
+        values.add(baseEntry.getValue());
+      } else {
+        keys.add(change.getKey());
+        values.add(change.getValue());
+      }
+      if (cmp <= 0) {
+        baseEntry = baseIterator.hasNext() ? baseIterator.next() : null;
+      }
+      if (cmp >= 0) {
+        change = changes.hasNext() ? changes.next() : null;
+      }
+    }
+    return Builder.fromSortedLists(keys, values, comparator);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public boolean equals(Object o) {
@@ -139,6 +212,32 @@ public abstract class ImmutableSortedMap<K, V> implements Iterable<Map.Entry<K,
       }
     }
 
+    /**
+     * Builds a map from keys that are already sorted by the comparator, without sorting them again.
+     * The value of each key is at the same index in {@code values}. Large maps are built in O(n).
+     *
+     * @throws IllegalArgumentException if the keys are not sorted, contain duplicates, or if the
+     *     lists have different sizes.
+     */
+    public static <A, B> ImmutableSortedMap<A, B> fromSortedLists(
+        List<A> keys, List<B> values, Comparator<A> comparator) {
+      if (keys.size() != values.size()) {
+        throw new IllegalArgumentException(
+            "Got " + keys.size() + " keys but " + values.size() + " values");
+      }
+      for (int i = 1; i < keys.size(); ++i) {
+        if (comparator.compare(keys.get(i - 1), keys.get(i)) >= 0) {
+          throw new IllegalArgumentException("Keys are not sorted or not unique at index " + i);
+        }
+      }
+
+      if (keys.size() < ARRAY_TO_RB_TREE_SIZE_THRESHOLD) {
+        return ArraySortedMap.fromSortedLists(keys, values, comparator);
+      } else {
+        return RBTreeSortedMap.fromSortedLists(keys, values, comparator);
+      }
+    }
+
     public static <A, B, C> ImmutableSortedMap<A, C> buildFrom(
         List<A> keys,
         Map<B, C> values,
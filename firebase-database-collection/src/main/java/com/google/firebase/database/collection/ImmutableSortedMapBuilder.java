@@ -0,0 +1,328 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.collection;
+
+import static com.google.firebase.database.collection.ImmutableSortedMap.Builder.ARRAY_TO_RB_TREE_SIZE_THRESHOLD;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies insertions and removals to an {@link ImmutableSortedMap} in a transient red-black tree.
+ *
+ * <p>The first {@link #TRANSIENT_TREE_THRESHOLD} changes after the builder was created or last
+ * built are applied with the regular persistent operations, which are cheaper for a few changes.
+ * Later changes are applied to a transient tree. The transient tree shares all nodes with the
+ * map that it starts from. The first change on a path copies the nodes
+ * on that path into mutable {@link LLRBTransientValueNode}s. Later changes update these nodes in
+ * place, including their color, instead of copying them again. {@link #build} copies the transient
+ * nodes into regular immutable nodes once, and shares all other nodes with the base map.
+ *
+ * <p>The builder can be used again after {@link #build}; later changes are applied on top of the
+ * earlier ones. Builders are not thread-safe. Use {@link
+ * ImmutableSortedMap#toBuilder} to create one.
+ */
+public final class ImmutableSortedMapBuilder<K, V> {
+  /**
+   * The number of changes since the last build after which the builder switches to the transient
+   * tree. Below this number, copying the changed nodes into immutable nodes in {@link #build}
+   * costs more than the persistent operations save.
+   */
+  static final int TRANSIENT_TREE_THRESHOLD = 64;
+
+  private final Comparator<K> comparator;
+
+  /**
+   * The last built map, or the map that the builder was created from, with the changes since then
+   * applied unless the builder has switched to the transient tree.
+   */
+  private ImmutableSortedMap<K, V> base;
+
+  /**
+   * The root of the transient tree, or null until the builder switches to it after a build. All
+   * {@link LLRBTransientValueNode}s in the tree were created by this builder since the last build.
+   */
+  private LLRBNode<K, V> root;
+
+  /** The number of changes since the last build. */
+  private int changeCount;
+
+  ImmutableSortedMapBuilder(ImmutableSortedMap<K, V> base) {
+    this.comparator = base.getComparator();
+    this.base = base;
+  }
+
+  public boolean containsKey(K key) {
+    return root == null ? base.containsKey(key) : getNode(key) != null;
+  }
+
+  public V get(K key) {
+    if (root == null) {
+      return base.get(key);
+    }
+    LLRBNode<K, V> node = getNode(key);
+    return node != null ? node.getValue() : null;
+  }
+
+  public ImmutableSortedMapBuilder<K, V> insert(K key, V value) {
+    if (root == null && changeCount < TRANSIENT_TREE_THRESHOLD) {
+      base = base.insert(key, value);
+    } else {
+      root = blacken(insert(getRoot(), key, value));
+    }
+    ++changeCount;
+    return this;
+  }
+
+  public ImmutableSortedMapBuilder<K, V> remove(K key) {
+    if (containsKey(key)) {
+      if (root == null && changeCount < TRANSIENT_TREE_THRESHOLD) {
+        base = base.remove(key);
+      } else {
+        root = blacken(remove(getRoot(), key));
+      }
+      ++changeCount;
+    }
+    return this;
+  }
+
+  /** Returns true if no changes have been made since the builder was created or last built. */
+  boolean isUnchanged() {
+    return changeCount == 0;
+  }
+
+  /**
+   * Returns a map with all changes applied. Small maps are copied into an array backed map, large
+   * maps copy the transient nodes and share all other nodes with the base map.
+   */
+  public ImmutableSortedMap<K, V> build() {
+    changeCount = 0;
+    if (root == null) {
+      return base;
+    }
+
+    List<K> keys = new ArrayList<>();
+    List<V> values = new ArrayList<>();
+    root.shortCircuitingInOrderTraversal(
+        (key, value) -> {
+          keys.add(key);
+          values.add(value);
+          return keys.size() < ARRAY_TO_RB_TREE_SIZE_THRESHOLD;
+        });
+    if (keys.size() < ARRAY_TO_RB_TREE_SIZE_THRESHOLD) {
+      base = ArraySortedMap.fromSortedLists(keys, values, comparator);
+    } else {
+      base = new RBTreeSortedMap<>(freeze(root), comparator);
+    }
+    root = null;
+    return base;
+  }
+
+  /** Returns the given subtree with all transient nodes replaced by immutable nodes. */
+  private static <K, V> LLRBNode<K, V> freeze(LLRBNode<K, V> node) {
+    if (!(node instanceof LLRBTransientValueNode)) {
+      // Nodes of the base map only have immutable nodes as children.
+      return node;
+    }
+    LLRBNode<K, V> left = freeze(node.getLeft());
+    LLRBNode<K, V> right = freeze(node.getRight());
+    return node.isRed()
+        ? new LLRBRedValueNode<>(node.getKey(), node.getValue(), left, right)
+        : new LLRBBlackValueNode<>(node.getKey(), node.getValue(), left, right);
+  }
+
+  private LLRBNode<K, V> getRoot() {
+    if (root == null) {
+      if (base instanceof RBTreeSortedMap) {
+        root = ((RBTreeSortedMap<K, V>) base).getRoot();
+      } else {
+        root = LLRBEmptyNode.getInstance();
+        for (Map.Entry<K, V> entry : base) {
+          root = blacken(insert(root, entry.getKey(), entry.getValue()));
+        }
+      }
+    }
+    return root;
+  }
+
+  private LLRBNode<K, V> getNode(K key) {
+    LLRBNode<K, V> node = root;
+    while (!node.isEmpty()) {
+      int cmp = comparator.compare(key, node.getKey());
+      if (cmp < 0) {
+        node = node.getLeft();
+      } else if (cmp == 0) {
+        return node;
+      } else {
+        node = node.getRight();
+      }
+    }
+    return null;
+  }
+
+  // The methods below follow the persistent operations in LLRBValueNode, but update transient
+  // nodes in place instead of copying every node that they touch. Nodes of the base map are copied
+  // into transient nodes by own() before they are changed.
+
+  /** Returns {@code node} if it is a transient node, and otherwise a transient copy of it. */
+  @SuppressWarnings("unchecked")
+  private static <K, V> LLRBTransientValueNode<K, V> own(LLRBNode<K, V> node) {
+    if (node instanceof LLRBTransientValueNode) {
+      return (LLRBTransientValueNode<K, V>) node;
+    }
+    return new LLRBTransientValueNode<>(
+        node.getKey(), node.getValue(), node.isRed(), node.getLeft(), node.getRight());
+  }
+
+  private static <K, V> LLRBNode<K, V> blacken(LLRBNode<K, V> node) {
+    if (!node.isRed()) {
+      return node;
+    }
+    LLRBTransientValueNode<K, V> n = own(node);
+    n.setRed(false);
+    return n;
+  }
+
+  private LLRBTransientValueNode<K, V> insert(LLRBNode<K, V> node, K key, V value) {
+    if (node.isEmpty()) {
+      return new LLRBTransientValueNode<>(
+          key,
+          value,
+          /* red= */ true,
+          LLRBEmptyNode.getInstance(),
+          LLRBEmptyNode.getInstance());
+    }
+    LLRBTransientValueNode<K, V> n = own(node);
+    int cmp = comparator.compare(key, n.getKey());
+    if (cmp < 0) {
+      n.setLeft(insert(n.getLeft(), key, value));
+    } else if (cmp == 0) {
+      n.setEntry(key, value);
+    } else {
+      n.setRight(insert(n.getRight(), key, value));
+    }
+    return fixUp(n);
+  }
+
+  private LLRBNode<K, V> remove(LLRBNode<K, V> node, K key) {
+    if (node.isEmpty()) {
+      return node;
+    }
+    LLRBTransientValueNode<K, V> n = own(node);
+    if (comparator.compare(key, n.getKey()) < 0) {
+      if (!n.getLeft().isEmpty() && !n.getLeft().isRed() && !n.getLeft().getLeft().isRed()) {
+        n = moveRedLeft(n);
+      }
+      n.setLeft(remove(n.getLeft(), key));
+    } else {
+      if (n.getLeft().isRed()) {
+        n = rotateRight(n);
+      }
+      if (!n.getRight().isEmpty() && !n.getRight().isRed() && !n.getRight().getLeft().isRed()) {
+        n = moveRedRight(n);
+      }
+      if (comparator.compare(key, n.getKey()) == 0) {
+        if (n.getRight().isEmpty()) {
+          return LLRBEmptyNode.getInstance();
+        }
+        LLRBNode<K, V> smallest = n.getRight().getMin();
+        n.setEntry(smallest.getKey(), smallest.getValue());
+        n.setRight(removeMin(n.getRight()));
+      } else {
+        n.setRight(remove(n.getRight(), key));
+      }
+    }
+    return fixUp(n);
+  }
+
+  private LLRBNode<K, V> removeMin(LLRBNode<K, V> node) {
+    if (node.getLeft().isEmpty()) {
+      return LLRBEmptyNode.getInstance();
+    }
+    LLRBTransientValueNode<K, V> n = own(node);
+    if (!n.getLeft().isRed() && !n.getLeft().getLeft().isRed()) {
+      n = moveRedLeft(n);
+    }
+    n.setLeft(removeMin(n.getLeft()));
+    return fixUp(n);
+  }
+
+  private static <K, V> LLRBTransientValueNode<K, V> moveRedLeft(LLRBTransientValueNode<K, V> n) {
+    colorFlip(n);
+    if (n.getRight().getLeft().isRed()) {
+      n.setRight(rotateRight(own(n.getRight())));
+      n = rotateLeft(n);
+      colorFlip(n);
+    }
+    return n;
+  }
+
+  private static <K, V> LLRBTransientValueNode<K, V> moveRedRight(
+      LLRBTransientValueNode<K, V> n) {
+    colorFlip(n);
+    if (n.getLeft().getLeft().isRed()) {
+      n = rotateRight(n);
+      colorFlip(n);
+    }
+    return n;
+  }
+
+  private static <K, V> LLRBTransientValueNode<K, V> fixUp(LLRBTransientValueNode<K, V> n) {
+    if (n.getRight().isRed() && !n.getLeft().isRed()) {
+      n = rotateLeft(n);
+    }
+    if (n.getLeft().isRed() && n.getLeft().getLeft().isRed()) {
+      n = rotateRight(n);
+    }
+    if (n.getLeft().isRed() && n.getRight().isRed()) {
+      colorFlip(n);
+    }
+    return n;
+  }
+
+  private static <K, V> LLRBTransientValueNode<K, V> rotateLeft(LLRBTransientValueNode<K, V> n) {
+    LLRBTransientValueNode<K, V> right = own(n.getRight());
+    n.setRight(right.getLeft());
+    right.setLeft(n);
+    right.setRed(n.isRed());
+    n.setRed(true);
+    return right;
+  }
+
+  private static <K, V> LLRBTransientValueNode<K, V> rotateRight(LLRBTransientValueNode<K, V> n) {
+    LLRBTransientValueNode<K, V> left = own(n.getLeft());
+    n.setLeft(left.getRight());
+    left.setRight(n);
+    left.setRed(n.isRed());
+    n.setRed(true);
+    return left;
+  }
+
+  private static <K, V> void colorFlip(LLRBTransientValueNode<K, V> n) {
+    n.setRed(!n.isRed());
+    if (!n.getLeft().isEmpty()) {
+      LLRBTransientValueNode<K, V> left = own(n.getLeft());
+      left.setRed(!left.isRed());
+      n.setLeft(left);
+    }
+    if (!n.getRight().isEmpty()) {
+      LLRBTransientValueNode<K, V> right = own(n.getRight());
+      right.setRed(!right.isRed());
+      n.setRight(right);
+    }
+  }
+}
@@ -52,10 +52,22 @@ public class ImmutableSortedSet<T> implements Iterable<T> {
             comparator);
   }
 
-  private ImmutableSortedSet(ImmutableSortedMap<T, Void> map) {
+  ImmutableSortedSet(ImmutableSortedMap<T, Void> map) {
     this.map = map;
   }
 
+  /**
+   * Builds a set from elements that are already sorted by the comparator, without sorting them
+   * again. Large sets are built in O(n).
+   *
+   * @throws IllegalArgumentException if the elements are not sorted or contain duplicates.
+   */
+  public static <T> ImmutableSortedSet<T> fromSortedList(List<T> elems, Comparator<T> comparator) {
+    List<Void> values = Collections.nCopies(elems.size(), null);
+    return new ImmutableSortedSet<>(
+        ImmutableSortedMap.Builder.fromSortedLists(elems, values, comparator));
+  }
+
   @Override
   public boolean equals(Object other) {
     if (this == other) {
@@ -87,6 +99,21 @@ public class ImmutableSortedSet<T> implements Iterable<T> {
     return new ImmutableSortedSet<T>(map.insert(entry, null));
   }
 
+  /**
+   * Returns a set with the elements of this set and of {@code other}, which must use the same
+   * comparator. See {@link ImmutableSortedMap#insertAll}.
+   */
+  @SuppressWarnings("ReferenceEquality") // Detect unchanged immutable instance
+  public ImmutableSortedSet<T> insertAll(ImmutableSortedSet<T> other) {
+    ImmutableSortedMap<T, Void> newMap = this.map.insertAll(other.map);
+    return (newMap == this.map) ? this : new ImmutableSortedSet<T>(newMap);
+  }
+
+  /** Returns a builder that applies several insertions and removals to this set at once. */
+  public ImmutableSortedSetBuilder<T> toBuilder() {
+    return new ImmutableSortedSetBuilder<>(this, map.toBuilder());
+  }
+
   public T getMinEntry() {
     return this.map.getMinKey();
   }
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.collection;
+
+/**
+ * Applies insertions and removals to an {@link ImmutableSortedSet} in a transient tree. See {@link
+ * ImmutableSortedMapBuilder}. Use {@link ImmutableSortedSet#toBuilder} to create one.
+ */
+public final class ImmutableSortedSetBuilder<T> {
+  private ImmutableSortedSet<T> base;
+  private final ImmutableSortedMapBuilder<T, Void> map;
+
+  ImmutableSortedSetBuilder(ImmutableSortedSet<T> base, ImmutableSortedMapBuilder<T, Void> map) {
+    this.base = base;
+    this.map = map;
+  }
+
+  public boolean contains(T entry) {
+    return map.containsKey(entry);
+  }
+
+  public ImmutableSortedSetBuilder<T> insert(T entry) {
+    map.insert(entry, null);
+    return this;
+  }
+
+  public ImmutableSortedSetBuilder<T> remove(T entry) {
+    map.remove(entry);
+    return this;
+  }
+
+  /** Returns a set with all changes applied to the base set. */
+  public ImmutableSortedSet<T> build() {
+    if (!map.isUnchanged()) {
+      base = new ImmutableSortedSet<>(map.build());
+    }
+    return base;
+  }
+}
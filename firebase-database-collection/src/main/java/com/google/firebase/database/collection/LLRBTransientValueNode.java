@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.collection;
+
+import java.util.Comparator;
+
+/**
+ * A mutable node of the tree that {@link ImmutableSortedMapBuilder} edits. All of its fields,
+ * including its color, can be updated in place.
+ *
+ * <p>Transient nodes never become part of a built map: {@link ImmutableSortedMapBuilder#build}
+ * copies them into regular {@link LLRBValueNode}s. They only support the read operations that the
+ * builder needs, and throw on the persistent update operations.
+ */
+final class LLRBTransientValueNode<K, V> implements LLRBNode<K, V> {
+
+  private K key;
+  private V value;
+  private boolean red;
+  private LLRBNode<K, V> left;
+  private LLRBNode<K, V> right;
+
+  LLRBTransientValueNode(K key, V value, boolean red, LLRBNode<K, V> left, LLRBNode<K, V> right) {
+    this.key = key;
+    this.value = value;
+    this.red = red;
+    this.left = left;
+    this.right = right;
+  }
+
+  void setEntry(K key, V value) {
+    this.key = key;
+    this.value = value;
+  }
+
+  void setRed(boolean red) {
+    this.red = red;
+  }
+
+  void setLeft(LLRBNode<K, V> left) {
+    this.left = left;
+  }
+
+  void setRight(LLRBNode<K, V> right) {
+    this.right = right;
+  }
+
+  @Override
+  public LLRBNode<K, V> copy(
+      K key, V value, Color color, LLRBNode<K, V> left, LLRBNode<K, V> right) {
+    throw new UnsupportedOperationException("Use the setters to change a transient node");
+  }
+
+  @Override
+  public LLRBNode<K, V> insert(K key, V value, Comparator<K> comparator) {
+    throw new UnsupportedOperationException("Use the setters to change a transient node");
+  }
+
+  @Override
+  public LLRBNode<K, V> remove(K key, Comparator<K> comparator) {
+    throw new UnsupportedOperationException("Use the setters to change a transient node");
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return false;
+  }
+
+  @Override
+  public boolean isRed() {
+    return red;
+  }
+
+  @Override
+  public K getKey() {
+    return key;
+  }
+
+  @Override
+  public V getValue() {
+    return value;
+  }
+
+  @Override
+  public LLRBNode<K, V> getLeft() {
+    return left;
+  }
+
+  @Override
+  public LLRBNode<K, V> getRight() {
+    return right;
+  }
+
+  @Override
+  public LLRBNode<K, V> getMin() {
+    return left.isEmpty() ? this : left.getMin();
+  }
+
+  @Override
+  public LLRBNode<K, V> getMax() {
+    return right.isEmpty() ? this : right.getMax();
+  }
+
+  @Override
+  public int size() {
+    return left.size() + 1 + right.size();
+  }
+
+  @Override
+  public void inOrderTraversal(NodeVisitor<K, V> visitor) {
+    left.inOrderTraversal(visitor);
+    visitor.visitEntry(key, value);
+    right.inOrderTraversal(visitor);
+  }
+
+  @Override
+  public boolean shortCircuitingInOrderTraversal(ShortCircuitingNodeVisitor<K, V> visitor) {
+    return left.shortCircuitingInOrderTraversal(visitor)
+        && visitor.shouldContinue(key, value)
+        && right.shortCircuitingInOrderTraversal(visitor);
+  }
+
+  @Override
+  public boolean shortCircuitingReverseOrderTraversal(ShortCircuitingNodeVisitor<K, V> visitor) {
+    return right.shortCircuitingReverseOrderTraversal(visitor)
+        && visitor.shouldContinue(key, value)
+        && left.shortCircuitingReverseOrderTraversal(visitor);
+  }
+}
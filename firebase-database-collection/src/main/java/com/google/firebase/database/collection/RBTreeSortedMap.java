@@ -31,12 +31,12 @@ public class RBTreeSortedMap<K, V> extends ImmutableSortedMap<K, V> {
     this.comparator = comparator;
   }
 
-  private RBTreeSortedMap(LLRBNode<K, V> root, Comparator<K> comparator) {
+  RBTreeSortedMap(LLRBNode<K, V> root, Comparator<K> comparator) {
     this.root = root;
     this.comparator = comparator;
   }
 
-  // For testing purposes
+  // For ImmutableSortedMapBuilder and for testing purposes
   LLRBNode<K, V> getRoot() {
     return root;
   }
@@ -228,7 +228,16 @@ public class RBTreeSortedMap<K, V> extends ImmutableSortedMap<K, V> {
         comparator);
   }
 
-  private static class Builder<A, B, C> {
+  /**
+   * Builds a map from keys that are already sorted by the comparator, in O(n). The value of each
+   * key is at the same index in {@code values}. Both lists should support fast random access.
+   */
+  public static <A, B> RBTreeSortedMap<A, B> fromSortedLists(
+      List<A> keys, List<B> values, Comparator<A> comparator) {
+    return Builder.buildFromSorted(keys, values, comparator);
+  }
+
+  private static class Builder<A, C> {
 
     static class BooleanChunk {
       public boolean isOne;
@@ -282,47 +291,39 @@ public class RBTreeSortedMap<K, V> extends ImmutableSortedMap<K, V> {
     }
 
     private final List<A> keys;
-    private final Map<B, C> values;
-    private final ImmutableSortedMap.Builder.KeyTranslator<A, B> keyTranslator;
+    private final List<C> values;
 
     private LLRBValueNode<A, C> root;
     private LLRBValueNode<A, C> leaf;
 
-    private Builder(
-        List<A> keys, Map<B, C> values, ImmutableSortedMap.Builder.KeyTranslator<A, B> translator) {
+    private Builder(List<A> keys, List<C> values) {
       this.keys = keys;
       this.values = values;
-      this.keyTranslator = translator;
-    }
-
-    private C getValue(A key) {
-      return values.get(keyTranslator.translate(key));
     }
 
     private LLRBNode<A, C> buildBalancedTree(int start, int size) {
       if (size == 0) {
         return LLRBEmptyNode.getInstance();
       } else if (size == 1) {
-        A key = this.keys.get(start);
-        return new LLRBBlackValueNode<>(key, getValue(key), null, null);
+        return new LLRBBlackValueNode<>(keys.get(start), values.get(start), null, null);
       } else {
         int half = size / 2;
         int middle = start + half;
         LLRBNode<A, C> left = buildBalancedTree(start, half);
         LLRBNode<A, C> right = buildBalancedTree(middle + 1, half);
-        A key = this.keys.get(middle);
-        return new LLRBBlackValueNode<>(key, getValue(key), left, right);
+        return new LLRBBlackValueNode<>(keys.get(middle), values.get(middle), left, right);
       }
     }
 
     private void buildPennant(LLRBNode.Color color, int chunkSize, int start) {
       LLRBNode<A, C> treeRoot = buildBalancedTree(start + 1, chunkSize - 1);
       A key = this.keys.get(start);
+      C value = this.values.get(start);
       LLRBValueNode<A, C> node;
       if (color == LLRBNode.Color.RED) {
-        node = new LLRBRedValueNode<>(key, getValue(key), null, treeRoot);
+        node = new LLRBRedValueNode<>(key, value, null, treeRoot);
       } else {
-        node = new LLRBBlackValueNode<>(key, getValue(key), null, treeRoot);
+        node = new LLRBBlackValueNode<>(key, value, null, treeRoot);
       }
       if (root == null) {
         root = node;
@@ -338,8 +339,17 @@ public class RBTreeSortedMap<K, V> extends ImmutableSortedMap<K, V> {
         Map<B, C> values,
         ImmutableSortedMap.Builder.KeyTranslator<A, B> translator,
         Comparator<A> comparator) {
-      Builder<A, B, C> builder = new Builder<>(keys, values, translator);
       Collections.sort(keys, comparator);
+      List<C> sortedValues = new ArrayList<>(keys.size());
+      for (A key : keys) {
+        sortedValues.add(values.get(translator.translate(key)));
+      }
+      return buildFromSorted(keys, sortedValues, comparator);
+    }
+
+    public static <A, C> RBTreeSortedMap<A, C> buildFromSorted(
+        List<A> keys, List<C> values, Comparator<A> comparator) {
+      Builder<A, C> builder = new Builder<>(keys, values);
       Iterator<BooleanChunk> iter = new Base1_2(keys.size()).iterator();
       int index = keys.size();
       while (iter.hasNext()) {
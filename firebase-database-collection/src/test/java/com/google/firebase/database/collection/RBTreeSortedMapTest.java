@@ -35,10 +35,12 @@ import static net.java.quickcheck.generator.PrimitiveGenerators.booleans;
 import static net.java.quickcheck.generator.PrimitiveGenerators.fixedValues;
 import static net.java.quickcheck.generator.PrimitiveGenerators.integers;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -94,6 +96,228 @@ public class RBTreeSortedMapTest {
     assertEquals(2, map.size());
   }
 
+  @Test
+  public void buildsFromSortedLists() {
+    for (Map<Integer, Integer> any : someMaps(integers(), integers())) {
+      List<Integer> keys = new ArrayList<>(any.keySet());
+      Collections.sort(keys);
+      List<Integer> values = new ArrayList<>();
+      for (Integer key : keys) {
+        values.add(any.get(key));
+      }
+
+      ImmutableSortedMap<Integer, Integer> map =
+          ImmutableSortedMap.Builder.fromSortedLists(keys, values, IntComparator);
+      assertEquals(RBTreeSortedMap.fromMap(any, IntComparator), map);
+      for (Integer key : keys) {
+        assertEquals(any.get(key), map.get(key));
+      }
+    }
+  }
+
+  @Test
+  public void rejectsUnsortedLists() {
+    List<Integer> values = Arrays.asList(1, 2, 3);
+    for (List<Integer> keys : Arrays.asList(Arrays.asList(1, 3, 2), Arrays.asList(1, 2, 2))) {
+      try {
+        ImmutableSortedMap.Builder.fromSortedLists(keys, values, IntComparator);
+        Assert.fail("Expected IllegalArgumentException for " + keys);
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void insertAllMergesMaps() {
+    Iterator<Map<Integer, Integer>> others = someMaps(integers(0, 100), integers()).iterator();
+    for (Map<Integer, Integer> any : someMaps(integers(0, 100), integers())) {
+      Map<Integer, Integer> other = others.next();
+      Map<Integer, Integer> expected = new HashMap<>(any);
+      expected.putAll(other);
+
+      ImmutableSortedMap<Integer, Integer> map = RBTreeSortedMap.fromMap(any, IntComparator);
+      ImmutableSortedMap<Integer, Integer> merged =
+          map.insertAll(RBTreeSortedMap.fromMap(other, IntComparator));
+      assertEquals(RBTreeSortedMap.fromMap(expected, IntComparator), merged);
+    }
+  }
+
+  @Test
+  public void insertAllIntoLargeMapInsertsEntries() {
+    Map<Integer, Integer> data = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      data.put(i * 2, i);
+    }
+    ImmutableSortedMap<Integer, Integer> map = RBTreeSortedMap.fromMap(data, IntComparator);
+    ImmutableSortedMap<Integer, Integer> other =
+        new RBTreeSortedMap<Integer, Integer>(IntComparator).insert(3, 3).insert(4, 4);
+    ImmutableSortedMap<Integer, Integer> merged = map.insertAll(other);
+
+    assertEquals(1001, merged.size());
+    assertEquals(3, (int) merged.get(3));
+    assertEquals(4, (int) merged.get(4));
+    assertEquals(1000, map.size());
+  }
+
+  @Test
+  public void builderAppliesInsertsAndRemoves() {
+    Iterator<Map<Integer, Integer>> others = someMaps(integers(0, 100), integers()).iterator();
+    Iterator<Boolean> removals = booleans().iterator();
+    for (Map<Integer, Integer> any : someMaps(integers(0, 100), integers())) {
+      ImmutableSortedMap<Integer, Integer> map = RBTreeSortedMap.fromMap(any, IntComparator);
+      ImmutableSortedMapBuilder<Integer, Integer> builder = map.toBuilder();
+      Map<Integer, Integer> expected = new HashMap<>(any);
+      for (Map.Entry<Integer, Integer> entry : others.next().entrySet()) {
+        if (removals.next()) {
+          builder.remove(entry.getKey());
+          expected.remove(entry.getKey());
+        } else {
+          builder.insert(entry.getKey(), entry.getValue());
+          expected.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(expected.get(entry.getKey()), builder.get(entry.getKey()));
+      }
+
+      assertEquals(RBTreeSortedMap.fromMap(expected, IntComparator), builder.build());
+      assertEquals(RBTreeSortedMap.fromMap(any, IntComparator), map);
+    }
+  }
+
+  @Test
+  public void builderWithoutChangesReturnsBaseMap() {
+    ImmutableSortedMap<Integer, Integer> map =
+        new RBTreeSortedMap<Integer, Integer>(IntComparator).insert(1, 1).insert(2, 2);
+    ImmutableSortedMapBuilder<Integer, Integer> builder = map.toBuilder().remove(3);
+    Assert.assertSame(map, builder.build());
+
+    ImmutableSortedMap<Integer, Integer> built = builder.insert(3, 3).remove(3).build();
+    assertEquals(map, built);
+    Assert.assertSame(built, builder.build());
+    assertTrue(builder.containsKey(1));
+  }
+
+  @Test
+  public void builderBuildsValidTrees() {
+    Map<Integer, Integer> base = new HashMap<>();
+    for (int i = 0; i < 100; i += 2) {
+      base.put(i, i);
+    }
+    ImmutableSortedMap<Integer, Integer> map = RBTreeSortedMap.fromMap(base, IntComparator);
+    Iterator<Boolean> removals = booleans().iterator();
+    for (Map<Integer, Integer> any : someMaps(integers(0, 100), integers())) {
+      ImmutableSortedMapBuilder<Integer, Integer> builder = map.toBuilder();
+      for (Map.Entry<Integer, Integer> entry : any.entrySet()) {
+        if (removals.next()) {
+          builder.remove(entry.getKey());
+        } else {
+          builder.insert(entry.getKey(), entry.getValue());
+        }
+      }
+
+      ImmutableSortedMap<Integer, Integer> built = builder.build();
+      if (built instanceof RBTreeSortedMap) {
+        LLRBNode<Integer, Integer> root = ((RBTreeSortedMap<Integer, Integer>) built).getRoot();
+        assertFalse(root.isRed());
+        assertValidTree(root);
+      }
+    }
+  }
+
+  @Test
+  public void builderAppliesManyChangesInTransientTree() {
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 1000; i += 2) {
+      expected.put(i, i);
+    }
+    ImmutableSortedMap<Integer, Integer> map = RBTreeSortedMap.fromMap(expected, IntComparator);
+    ImmutableSortedMapBuilder<Integer, Integer> builder = map.toBuilder();
+    Iterator<Integer> keys = integers(0, 1000).iterator();
+    Iterator<Boolean> removals = booleans().iterator();
+    for (int i = 0; i < 10 * ImmutableSortedMapBuilder.TRANSIENT_TREE_THRESHOLD; ++i) {
+      int key = keys.next();
+      if (removals.next()) {
+        builder.remove(key);
+        expected.remove(key);
+      } else {
+        builder.insert(key, -key);
+        expected.put(key, -key);
+      }
+      assertEquals(expected.containsKey(key), builder.containsKey(key));
+    }
+
+    ImmutableSortedMap<Integer, Integer> built = builder.build();
+    assertEquals(RBTreeSortedMap.fromMap(expected, IntComparator), built);
+    LLRBNode<Integer, Integer> root = ((RBTreeSortedMap<Integer, Integer>) built).getRoot();
+    assertFalse(root.isRed());
+    assertValidTree(root);
+  }
+
+  @Test
+  public void builderDoesNotChangeBuiltMaps() {
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 100; ++i) {
+      expected.put(i, i);
+    }
+    ImmutableSortedMapBuilder<Integer, Integer> builder =
+        RBTreeSortedMap.fromMap(expected, IntComparator).toBuilder();
+    List<ImmutableSortedMap<Integer, Integer>> builtMaps = new ArrayList<>();
+    List<Map<Integer, Integer>> expectedMaps = new ArrayList<>();
+    for (int round = 0; round < 5; ++round) {
+      for (int i = round; i < 100; i += 3) {
+        builder.insert(i, -i);
+        expected.put(i, -i);
+        builder.remove(i + 1);
+        expected.remove(i + 1);
+      }
+      builtMaps.add(builder.build());
+      expectedMaps.add(new HashMap<>(expected));
+    }
+
+    for (int i = 0; i < builtMaps.size(); ++i) {
+      assertEquals(RBTreeSortedMap.fromMap(expectedMaps.get(i), IntComparator), builtMaps.get(i));
+    }
+  }
+
+  /** Asserts the invariants of a left-leaning red-black tree, and returns its black height. */
+  private static int assertValidTree(LLRBNode<Integer, Integer> node) {
+    if (node.isEmpty()) {
+      return 0;
+    }
+    assertFalse(node instanceof LLRBTransientValueNode);
+    assertFalse(node.getRight().isRed());
+    if (node.isRed()) {
+      assertFalse(node.getLeft().isRed());
+    }
+    if (!node.getLeft().isEmpty()) {
+      assertTrue(node.getLeft().getKey() < node.getKey());
+    }
+    if (!node.getRight().isEmpty()) {
+      assertTrue(node.getRight().getKey() > node.getKey());
+    }
+    int blackHeight = assertValidTree(node.getLeft());
+    assertEquals(blackHeight, assertValidTree(node.getRight()));
+    return node.isRed() ? blackHeight : blackHeight + 1;
+  }
+
+  @Test
+  public void setBuilderAppliesInsertsAndRemoves() {
+    ImmutableSortedSet<Integer> set =
+        new ImmutableSortedSet<>(Arrays.asList(1, 2, 3), IntComparator);
+    ImmutableSortedSet<Integer> built = set.toBuilder().insert(4).remove(2).insert(0).build();
+
+    assertEquals(Arrays.asList(0, 1, 3, 4), toList(built));
+    assertEquals(Arrays.asList(1, 2, 3), toList(set));
+  }
+
+  private static List<Integer> toList(ImmutableSortedSet<Integer> set) {
+    List<Integer> result = new ArrayList<>();
+    for (Integer element : set) {
+      result.add(element);
+    }
+    return result;
+  }
+
   @Test
   public void createNode() {
     ImmutableSortedMap<String, Integer> map = new RBTreeSortedMap<>(StringComparator);
@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import com.google.auto.service.AutoService;
+import com.google.firebase.firestore.processor.MappedClass.UnsupportedClassException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates mappers for Cloud Firestore POJO classes, so that {@code CustomClassMapper} does not
+ * need to use reflection to convert them to and from documents.
+ *
+ * <p>Mappers are generated for classes that are annotated with {@code @IgnoreExtraProperties} or
+ * {@code @ThrowOnExtraProperties}, or that have a member annotated with {@code @DocumentId}.
+ * Classes that the generated code cannot map exactly like the reflection-based mapper are skipped
+ * with a note, and continue to be mapped via reflection.
+ */
+@AutoService(Processor.class)
+public final class FirestoreMapperProcessor extends AbstractProcessor {
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return new HashSet<>(
+        Arrays.asList(
+            MappedClass.IGNORE_EXTRA_PROPERTIES,
+            MappedClass.THROW_ON_EXTRA_PROPERTIES,
+            MappedClass.DOCUMENT_ID));
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    Set<TypeElement> classes = new LinkedHashSet<>();
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        Element type = element.getKind().isClass() ? element : element.getEnclosingElement();
+        if (type.getKind() == ElementKind.CLASS) {
+          classes.add((TypeElement) type);
+        }
+      }
+    }
+
+    for (TypeElement type : classes) {
+      try {
+        MappedClass mappedClass =
+            MappedClass.analyze(
+                type, processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+        MapperWriter mapperWriter =
+            new MapperWriter(
+                mappedClass, processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+        JavaFileObject file =
+            processingEnv
+                .getFiler()
+                .createSourceFile(
+                    mapperWriter.getMapperName(), mapperWriter.getOriginatingElement());
+        try (Writer writer = file.openWriter()) {
+          mapperWriter.write(writer);
+        }
+      } catch (UnsupportedClassException e) {
+        processingEnv
+            .getMessager()
+            .printMessage(
+                Diagnostic.Kind.NOTE,
+                "Cloud Firestore will map " + type + " via reflection: " + e.getMessage(),
+                type);
+      } catch (IOException e) {
+        processingEnv
+            .getMessager()
+            .printMessage(
+                Diagnostic.Kind.ERROR,
+                "Could not write the Cloud Firestore mapper for " + type + ": " + e.getMessage(),
+                type);
+      }
+    }
+
+    // Other processors may be interested in the same annotations.
+    return false;
+  }
+}
@@ -0,0 +1,452 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * The properties of a POJO class, determined at compile time with the same rules that the
+ * reflection-based {@code CustomClassMapper.BeanMapper} applies at runtime.
+ *
+ * <p>Classes for which the generated code could behave differently from the reflection-based mapper
+ * are rejected with an {@link UnsupportedClassException}. This includes generic and abstract
+ * classes, classes that extend another class, and classes that would fail to map at runtime (for
+ * example because of conflicting property names). Such classes continue to be mapped via
+ * reflection, which also reports any errors in the same way as before.
+ */
+final class MappedClass {
+  static final String FIRESTORE_PACKAGE = "com.google.firebase.firestore";
+  static final String DOCUMENT_ID = FIRESTORE_PACKAGE + ".DocumentId";
+  static final String DOCUMENT_REFERENCE = FIRESTORE_PACKAGE + ".DocumentReference";
+  static final String EXCLUDE = FIRESTORE_PACKAGE + ".Exclude";
+  static final String IGNORE_EXTRA_PROPERTIES = FIRESTORE_PACKAGE + ".IgnoreExtraProperties";
+  static final String PROPERTY_NAME = FIRESTORE_PACKAGE + ".PropertyName";
+  static final String SERVER_TIMESTAMP = FIRESTORE_PACKAGE + ".ServerTimestamp";
+  static final String THROW_ON_EXTRA_PROPERTIES = FIRESTORE_PACKAGE + ".ThrowOnExtraProperties";
+
+  private static final String DATE = "java.util.Date";
+  private static final String TIMESTAMP = "com.google.firebase.Timestamp";
+
+  /** Thrown if a class cannot be mapped by generated code and needs to use reflection. */
+  static final class UnsupportedClassException extends Exception {
+    UnsupportedClassException(String message) {
+      super(message);
+    }
+  }
+
+  /** A property of the class and the members that are used to read and write it. */
+  static final class Property {
+    final String name;
+    // The getter or public field used for serialization. Exactly one of them is set.
+    ExecutableElement getter;
+    VariableElement readField;
+    // The setter or field used for deserialization. At most one of them is set.
+    ExecutableElement setter;
+    VariableElement writeField;
+    boolean serverTimestamp;
+    boolean documentId;
+
+    private Property(String name) {
+      this.name = name;
+    }
+
+    /** Returns the type that values are converted to when writing the property. */
+    TypeMirror writeType() {
+      return setter != null ? setter.getParameters().get(0).asType() : writeField.asType();
+    }
+
+    boolean isWritable() {
+      return setter != null || writeField != null;
+    }
+  }
+
+  final TypeElement type;
+  final String packageName;
+  final boolean throwOnUnknownProperties;
+  final boolean warnOnUnknownProperties;
+
+  /** The properties of the class, in the order in which they are declared. */
+  final List<Property> properties;
+
+  private MappedClass(
+      TypeElement type,
+      String packageName,
+      boolean throwOnUnknownProperties,
+      boolean warnOnUnknownProperties,
+      List<Property> properties) {
+    this.type = type;
+    this.packageName = packageName;
+    this.throwOnUnknownProperties = throwOnUnknownProperties;
+    this.warnOnUnknownProperties = warnOnUnknownProperties;
+    this.properties = properties;
+  }
+
+  /**
+   * Determines the properties of the given class.
+   *
+   * @throws UnsupportedClassException if the class needs to be mapped via reflection.
+   */
+  static MappedClass analyze(TypeElement type, Elements elements, Types types)
+      throws UnsupportedClassException {
+    return new Analyzer(type, elements, types).analyze();
+  }
+
+  /** Returns whether the type can be named in source code in the given package. */
+  static boolean isAccessible(TypeMirror typeMirror, String packageName, Types types) {
+    if (typeMirror.getKind().isPrimitive()) {
+      return true;
+    } else if (typeMirror.getKind() == TypeKind.ARRAY) {
+      return isAccessible(((ArrayType) typeMirror).getComponentType(), packageName, types);
+    } else if (typeMirror.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    for (TypeMirror typeArgument : ((DeclaredType) typeMirror).getTypeArguments()) {
+      if (typeArgument.getKind() == TypeKind.DECLARED
+          && !isAccessible(typeArgument, packageName, types)) {
+        return false;
+      }
+    }
+    Element element = types.asElement(typeMirror);
+    while (element instanceof TypeElement) {
+      if (element.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+      if (!element.getModifiers().contains(Modifier.PUBLIC)
+          && !packageName.equals(packageOf(element).getQualifiedName().toString())) {
+        return false;
+      }
+      element = element.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private static PackageElement packageOf(Element element) {
+    while (!(element instanceof PackageElement)) {
+      element = element.getEnclosingElement();
+    }
+    return (PackageElement) element;
+  }
+
+  private static final class Analyzer {
+    private final TypeElement type;
+    private final Elements elements;
+    private final Types types;
+    private final String packageName;
+
+    // Case insensitive mapping of properties to their case sensitive versions.
+    private final Map<String, String> lowercaseProperties = new HashMap<>();
+    private final Map<String, Property> properties = new LinkedHashMap<>();
+
+    Analyzer(TypeElement type, Elements elements, Types types) {
+      this.type = type;
+      this.elements = elements;
+      this.types = types;
+      this.packageName = packageOf(type).getQualifiedName().toString();
+    }
+
+    MappedClass analyze() throws UnsupportedClassException {
+      checkClass();
+
+      // Public getters and public fields define the properties.
+      for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+        if (isDeclaredByObject(method) || !isGetter(method)) {
+          continue;
+        }
+        if (!method.getEnclosingElement().equals(type)) {
+          throw new UnsupportedClassException("inherits getter " + method.getSimpleName());
+        }
+        Property property = addProperty(propertyName(method));
+        if (property.getter != null) {
+          throw new UnsupportedClassException("conflicting getters for " + property.name);
+        }
+        checkNoThrows(method);
+        property.getter = method;
+        applyAnnotations(property, method, method.getReturnType());
+      }
+      for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+        if (isPublicField(field)) {
+          Property property = addProperty(propertyName(field));
+          if (property.getter == null) {
+            property.readField = field;
+          }
+        }
+      }
+
+      // Setters and fields of any visibility can be used to write known properties.
+      for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+        if (!isSetter(method)) {
+          continue;
+        }
+        Property property = findProperty(propertyName(method), method);
+        if (property == null) {
+          continue;
+        }
+        if (property.setter != null) {
+          throw new UnsupportedClassException("multiple setters for " + property.name);
+        }
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+          throw new UnsupportedClassException("setter " + method.getSimpleName() + " is private");
+        }
+        if (!method.getTypeParameters().isEmpty() || hasAnnotation(method, SERVER_TIMESTAMP)) {
+          throw new UnsupportedClassException("setter " + method.getSimpleName() + " is invalid");
+        }
+        checkNoThrows(method);
+        property.setter = method;
+        applyAnnotations(property, method, method.getParameters().get(0).asType());
+      }
+      for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+        Property property = findProperty(propertyName(field), field);
+        if (property == null) {
+          continue;
+        }
+        applyAnnotations(property, field, field.asType());
+        if (property.setter == null) {
+          if (field.getModifiers().contains(Modifier.PRIVATE)
+              || field.getModifiers().contains(Modifier.FINAL)
+              || field.getModifiers().contains(Modifier.STATIC)) {
+            throw new UnsupportedClassException(
+                "field " + field.getSimpleName() + " is not writable");
+          }
+          property.writeField = field;
+        }
+      }
+
+      if (properties.isEmpty()) {
+        throw new UnsupportedClassException("no properties");
+      }
+      for (Property property : properties.values()) {
+        if (property.documentId && !property.isWritable()) {
+          throw new UnsupportedClassException("@DocumentId property " + property.name);
+        }
+        if (property.isWritable() && !isAccessible(property.writeType(), packageName, types)) {
+          throw new UnsupportedClassException("type of " + property.name + " is not accessible");
+        }
+      }
+
+      return new MappedClass(
+          type,
+          packageName,
+          hasAnnotation(type, THROW_ON_EXTRA_PROPERTIES),
+          !hasAnnotation(type, IGNORE_EXTRA_PROPERTIES),
+          new ArrayList<>(properties.values()));
+    }
+
+    private void checkClass() throws UnsupportedClassException {
+      if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+        throw new UnsupportedClassException("class is abstract");
+      }
+      if (!type.getTypeParameters().isEmpty()) {
+        throw new UnsupportedClassException("class is generic");
+      }
+      if (type.getNestingKind() != NestingKind.TOP_LEVEL
+          && (type.getNestingKind() != NestingKind.MEMBER
+              || !type.getModifiers().contains(Modifier.STATIC))) {
+        throw new UnsupportedClassException("class is not a top-level or static nested class");
+      }
+      if (!isAccessible(type.asType(), packageName, types)) {
+        throw new UnsupportedClassException("class is private");
+      }
+      TypeMirror superclass = type.getSuperclass();
+      if (superclass.getKind() != TypeKind.DECLARED
+          || !((TypeElement) types.asElement(superclass))
+              .getQualifiedName()
+              .contentEquals(Object.class.getName())) {
+        throw new UnsupportedClassException("class extends another class");
+      }
+
+      boolean hasConstructor = false;
+      for (ExecutableElement constructor :
+          ElementFilter.constructorsIn(type.getEnclosedElements())) {
+        if (constructor.getParameters().isEmpty()
+            && !constructor.getModifiers().contains(Modifier.PRIVATE)
+            && constructor.getThrownTypes().isEmpty()) {
+          hasConstructor = true;
+        }
+      }
+      if (!hasConstructor) {
+        throw new UnsupportedClassException("class has no accessible no-argument constructor");
+      }
+    }
+
+    private Property addProperty(String name) throws UnsupportedClassException {
+      String existing = lowercaseProperties.put(name.toLowerCase(Locale.US), name);
+      if (existing != null && !existing.equals(name)) {
+        throw new UnsupportedClassException("conflicting case for property " + name);
+      }
+      Property property = properties.get(name);
+      if (property == null) {
+        property = new Property(name);
+        properties.put(name, property);
+      }
+      return property;
+    }
+
+    /** Returns the known property with the given name, or null if there is none. */
+    private Property findProperty(String name, Element member) throws UnsupportedClassException {
+      String existing = lowercaseProperties.get(name.toLowerCase(Locale.US));
+      if (existing == null) {
+        return null;
+      } else if (!existing.equals(name)) {
+        throw new UnsupportedClassException(member.getSimpleName() + " has conflicting case");
+      }
+      return properties.get(name);
+    }
+
+    private void applyAnnotations(Property property, Element member, TypeMirror memberType)
+        throws UnsupportedClassException {
+      if (hasAnnotation(member, SERVER_TIMESTAMP)) {
+        if (!isType(memberType, DATE) && !isType(memberType, TIMESTAMP)) {
+          throw new UnsupportedClassException("invalid @ServerTimestamp type");
+        }
+        property.serverTimestamp = true;
+      }
+      if (hasAnnotation(member, DOCUMENT_ID)) {
+        if (!isType(memberType, String.class.getName())
+            && !isType(memberType, DOCUMENT_REFERENCE)) {
+          throw new UnsupportedClassException("invalid @DocumentId type");
+        }
+        property.documentId = true;
+      }
+    }
+
+    private void checkNoThrows(ExecutableElement method) throws UnsupportedClassException {
+      if (!method.getThrownTypes().isEmpty()) {
+        throw new UnsupportedClassException(method.getSimpleName() + " declares exceptions");
+      }
+    }
+
+    private boolean isDeclaredByObject(Element member) {
+      return ((TypeElement) member.getEnclosingElement())
+          .getQualifiedName()
+          .contentEquals(Object.class.getName());
+    }
+
+    private boolean isGetter(ExecutableElement method) {
+      String name = method.getSimpleName().toString();
+      return (name.startsWith("get") || name.startsWith("is"))
+          && method.getModifiers().contains(Modifier.PUBLIC)
+          && !method.getModifiers().contains(Modifier.STATIC)
+          && method.getReturnType().getKind() != TypeKind.VOID
+          && method.getParameters().isEmpty()
+          && !hasAnnotation(method, EXCLUDE);
+    }
+
+    private boolean isSetter(ExecutableElement method) {
+      return method.getSimpleName().toString().startsWith("set")
+          && !method.getModifiers().contains(Modifier.STATIC)
+          && method.getReturnType().getKind() == TypeKind.VOID
+          && method.getParameters().size() == 1
+          && !hasAnnotation(method, EXCLUDE);
+    }
+
+    private boolean isPublicField(VariableElement field) {
+      return field.getKind() == ElementKind.FIELD
+          && field.getModifiers().contains(Modifier.PUBLIC)
+          && !field.getModifiers().contains(Modifier.STATIC)
+          && !field.getModifiers().contains(Modifier.TRANSIENT)
+          && !hasAnnotation(field, EXCLUDE);
+    }
+
+    private boolean isType(TypeMirror typeMirror, String qualifiedName) {
+      return typeMirror.getKind() == TypeKind.DECLARED
+          && ((TypeElement) types.asElement(typeMirror))
+              .getQualifiedName()
+              .contentEquals(qualifiedName);
+    }
+
+    private String propertyName(VariableElement field) {
+      String annotatedName = annotatedName(field);
+      return annotatedName != null ? annotatedName : field.getSimpleName().toString();
+    }
+
+    private String propertyName(ExecutableElement method) {
+      String annotatedName = annotatedName(method);
+      return annotatedName != null
+          ? annotatedName
+          : serializedName(method.getSimpleName().toString());
+    }
+
+    private String annotatedName(Element member) {
+      AnnotationMirror annotation = getAnnotation(member, PROPERTY_NAME);
+      if (annotation == null) {
+        return null;
+      }
+      for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+          elements.getElementValuesWithDefaults(annotation).entrySet()) {
+        if (entry.getKey().getSimpleName().contentEquals("value")) {
+          return (String) entry.getValue().getValue();
+        }
+      }
+      return null;
+    }
+
+    /** Mirrors {@code BeanMapper.serializedName()}. */
+    private static String serializedName(String methodName) {
+      String[] prefixes = new String[] {"get", "set", "is"};
+      String methodPrefix = null;
+      for (String prefix : prefixes) {
+        if (methodName.startsWith(prefix)) {
+          methodPrefix = prefix;
+        }
+      }
+      String strippedName = methodName.substring(methodPrefix.length());
+
+      // Make sure the first word or upper-case prefix is converted to lower-case
+      char[] chars = strippedName.toCharArray();
+      int pos = 0;
+      while (pos < chars.length && Character.isUpperCase(chars[pos])) {
+        chars[pos] = Character.toLowerCase(chars[pos]);
+        pos++;
+      }
+      return new String(chars);
+    }
+  }
+
+  static boolean hasAnnotation(Element element, String annotationName) {
+    return getAnnotation(element, annotationName) != null;
+  }
+
+  private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,264 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import com.google.firebase.firestore.processor.MappedClass.Property;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Writes the source of the {@code GeneratedClassMapper} subclass for a {@link MappedClass}.
+ *
+ * <p>The generated code mirrors {@code CustomClassMapper.BeanMapper}, but reads and writes the
+ * properties directly instead of through reflection. All names are written fully qualified so that
+ * they cannot clash with the classes of the package that the mapper is generated in.
+ */
+final class MapperWriter {
+  static final String MAPPER_SUFFIX = "_FirestoreMapper";
+
+  private static final String BASE_CLASS = MappedClass.FIRESTORE_PACKAGE + ".GeneratedClassMapper";
+
+  private final MappedClass mappedClass;
+  private final Elements elements;
+  private final Types types;
+  private final String className;
+
+  MapperWriter(MappedClass mappedClass, Elements elements, Types types) {
+    this.mappedClass = mappedClass;
+    this.elements = elements;
+    this.types = types;
+    this.className = mappedClass.type.getQualifiedName().toString();
+  }
+
+  /** Returns the fully qualified name of the mapper, which {@code CustomClassMapper} looks for. */
+  String getMapperName() {
+    String binaryName = elements.getBinaryName(mappedClass.type).toString();
+    return binaryName.replace('$', '_') + MAPPER_SUFFIX;
+  }
+
+  void write(Writer writer) throws IOException {
+    PrintWriter out = new PrintWriter(writer);
+    String mapperName = getMapperName();
+    String simpleName = mapperName.substring(mapperName.lastIndexOf('.') + 1);
+
+    out.println("// Generated by the Cloud Firestore annotation processor. Do not edit.");
+    if (!mappedClass.packageName.isEmpty()) {
+      out.println();
+      out.println("package " + mappedClass.packageName + ";");
+    }
+    out.println();
+    out.println(
+        "public final class "
+            + simpleName
+            + " extends "
+            + BASE_CLASS
+            + "<"
+            + className
+            + "> {");
+    writeConstants(out);
+    out.println();
+    writeSerialize(out);
+    out.println();
+    writeDeserialize(out);
+    out.println("}");
+    out.flush();
+  }
+
+  private void writeConstants(PrintWriter out) {
+    List<String> lowercaseNames = new ArrayList<>();
+    for (Property property : mappedClass.properties) {
+      lowercaseNames.add(literal(property.name.toLowerCase(Locale.US)));
+    }
+    out.println("  private static final java.util.Set<String> LOWERCASE_PROPERTY_NAMES =");
+    out.println(
+        "      new java.util.HashSet<>(java.util.Arrays.asList("
+            + String.join(", ", lowercaseNames)
+            + "));");
+
+    for (int i = 0; i < mappedClass.properties.size(); ++i) {
+      Property property = mappedClass.properties.get(i);
+      if (!property.isWritable() || property.documentId || !needsGenericType(property)) {
+        continue;
+      }
+      String lookup;
+      if (property.setter != null) {
+        lookup =
+            "setterParameterType("
+                + className
+                + ".class, "
+                + literal(property.setter.getSimpleName().toString())
+                + ", "
+                + types.erasure(property.writeType())
+                + ".class)";
+      } else {
+        lookup =
+            "fieldType("
+                + className
+                + ".class, "
+                + literal(property.writeField.getSimpleName().toString())
+                + ")";
+      }
+      out.println("  private static final java.lang.reflect.Type TYPE_" + i + " = " + lookup + ";");
+    }
+  }
+
+  private void writeSerialize(PrintWriter out) {
+    out.println("  @Override");
+    out.println("  public java.util.Map<String, Object> serialize(");
+    out.println("      " + className + " object, Serializer serializer) {");
+    out.println("    java.util.Map<String, Object> result = new java.util.HashMap<>();");
+    for (int i = 0; i < mappedClass.properties.size(); ++i) {
+      Property property = mappedClass.properties.get(i);
+      if (property.documentId) {
+        // @DocumentId properties are not written to the document.
+        continue;
+      }
+      String name = literal(property.name);
+      String read =
+          property.getter != null
+              ? "object." + property.getter.getSimpleName() + "()"
+              : "object." + property.readField.getSimpleName();
+      if (property.serverTimestamp) {
+        out.println("    Object value" + i + " = " + read + ";");
+        out.println("    result.put(");
+        out.println("        " + name + ",");
+        out.println("        value" + i + " == null");
+        out.println(
+            "            ? " + MappedClass.FIRESTORE_PACKAGE + ".FieldValue.serverTimestamp()");
+        out.println("            : serializer.serialize(" + name + ", value" + i + "));");
+      } else {
+        out.println(
+            "    result.put(" + name + ", serializer.serialize(" + name + ", " + read + "));");
+      }
+    }
+    out.println("    return result;");
+    out.println("  }");
+  }
+
+  private void writeDeserialize(PrintWriter out) {
+    out.println("  @Override");
+    out.println("  public " + className + " deserialize(");
+    out.println("      java.util.Map<String, Object> values, Deserializer deserializer) {");
+    out.println("    " + className + " instance = new " + className + "();");
+    for (int i = 0; i < mappedClass.properties.size(); ++i) {
+      if (mappedClass.properties.get(i).documentId) {
+        out.println("    boolean deserialized" + i + " = false;");
+      }
+    }
+    out.println("    for (java.util.Map.Entry<String, Object> entry : values.entrySet()) {");
+    out.println("      String property = entry.getKey();");
+    out.println("      Object value = entry.getValue();");
+    out.println("      switch (property) {");
+    for (int i = 0; i < mappedClass.properties.size(); ++i) {
+      Property property = mappedClass.properties.get(i);
+      if (!property.isWritable()) {
+        continue;
+      }
+      out.println("        case " + literal(property.name) + ":");
+      out.println("          " + write(property, convert(property, i)) + ";");
+      if (property.documentId) {
+        out.println("          deserialized" + i + " = true;");
+      }
+      out.println("          break;");
+    }
+    out.println("        default:");
+    out.println("          deserializer.unknownProperty(");
+    out.println("              property,");
+    out.println("              " + className + ".class,");
+    out.println(
+        "              LOWERCASE_PROPERTY_NAMES.contains("
+            + "property.toLowerCase(java.util.Locale.US)),");
+    out.println("              " + mappedClass.throwOnUnknownProperties + ",");
+    out.println("              " + mappedClass.warnOnUnknownProperties + ");");
+    out.println("          break;");
+    out.println("      }");
+    out.println("    }");
+
+    for (int i = 0; i < mappedClass.properties.size(); ++i) {
+      Property property = mappedClass.properties.get(i);
+      if (!property.documentId) {
+        continue;
+      }
+      String documentRef = "documentRef" + i;
+      out.println(
+          "    "
+              + MappedClass.DOCUMENT_REFERENCE
+              + " "
+              + documentRef
+              + " = deserializer.documentReference(");
+      out.println(
+          "        "
+              + literal(property.name)
+              + ", "
+              + className
+              + ".class, deserialized"
+              + i
+              + ");");
+      boolean isString =
+          types.erasure(property.writeType()).toString().equals(String.class.getName());
+      out.println(
+          "    " + write(property, isString ? documentRef + ".getId()" : documentRef) + ";");
+    }
+    out.println("    return instance;");
+    out.println("  }");
+  }
+
+  /** Returns the statement that writes {@code value} to the property. */
+  private static String write(Property property, String value) {
+    if (property.setter != null) {
+      return "instance." + property.setter.getSimpleName() + "(" + value + ")";
+    } else {
+      return "instance." + property.writeField.getSimpleName() + " = " + value;
+    }
+  }
+
+  /** Returns the expression that converts {@code value} to the type of the property. */
+  private String convert(Property property, int index) {
+    String name = literal(property.name);
+    TypeMirror type = property.writeType();
+    if (type.getKind().isPrimitive()) {
+      return "deserializer.deserializePrimitive(" + name + ", value, " + type + ".class)";
+    } else if (needsGenericType(property)) {
+      return "deserializer.deserialize(" + name + ", value, TYPE_" + index + ")";
+    } else {
+      return "deserializer.deserialize(" + name + ", value, " + types.erasure(type) + ".class)";
+    }
+  }
+
+  /** Returns whether the type of the property cannot be represented by a class literal. */
+  private boolean needsGenericType(Property property) {
+    TypeMirror type = property.writeType();
+    return type.getKind() != TypeKind.DECLARED && !type.getKind().isPrimitive()
+        || !types.isSameType(type, types.erasure(type));
+  }
+
+  private String literal(String value) {
+    return elements.getConstantExpression(value);
+  }
+
+  /** Returns the element that the generated file originates from, for incremental builds. */
+  Element getOriginatingElement() {
+    return mappedClass.type;
+  }
+}
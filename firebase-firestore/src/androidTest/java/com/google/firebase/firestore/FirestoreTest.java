@@ -450,6 +450,46 @@ public class FirestoreTest {
     assertFalse(doc.exists());
   }
 
+  @Test
+  public void testGetAllReturnsDocumentsInRequestOrder() {
+    CollectionReference collection =
+        testCollectionWithDocs(map("a", map("value", "a"), "b", map("value", "b")));
+
+    DocumentReference a = collection.document("a");
+    DocumentReference b = collection.document("b");
+    DocumentReference missing = collection.document("missing");
+
+    List<DocumentSnapshot> docs = waitFor(collection.getFirestore().getAll(b, missing, a));
+
+    assertEquals(3, docs.size());
+    assertEquals(map("value", "b"), docs.get(0).getData());
+    assertEquals(missing, docs.get(1).getReference());
+    assertFalse(docs.get(1).exists());
+    assertEquals(map("value", "a"), docs.get(2).getData());
+    for (DocumentSnapshot doc : docs) {
+      assertFalse(doc.getMetadata().isFromCache());
+    }
+  }
+
+  @Test
+  public void testGetAllSplitsLargeRequests() {
+    CollectionReference collection = testCollectionWithDocs(map("last", map("value", "last")));
+    DocumentReference[] refs = new DocumentReference[150];
+    for (int i = 0; i < refs.length - 1; ++i) {
+      refs[i] = collection.document("missing" + i);
+    }
+    refs[refs.length - 1] = collection.document("last");
+
+    List<DocumentSnapshot> docs = waitFor(collection.getFirestore().getAll(refs));
+
+    assertEquals(refs.length, docs.size());
+    for (int i = 0; i < refs.length - 1; ++i) {
+      assertEquals(refs[i], docs.get(i).getReference());
+      assertFalse(docs.get(i).exists());
+    }
+    assertEquals(map("value", "last"), docs.get(refs.length - 1).getData());
+  }
+
   @Test
   public void testCannotUpdateNonexistentDocument() {
     DocumentReference documentReference = testCollection("rooms").document();
@@ -959,6 +999,39 @@ public class FirestoreTest {
     assertFalse(doc.getMetadata().isFromCache());
   }
 
+  @Test
+  public void testRejectsWritesBeyondMaxPendingWriteBatches() {
+    FirebaseFirestore firestore =
+        testFirestore(
+            new FirebaseFirestoreSettings.Builder(newTestSettings())
+                .setMaxPendingWriteBatches(2)
+                .build());
+    CollectionReference collection = firestore.collection("rooms");
+    List<Boolean> thresholdEvents = Collections.synchronizedList(new ArrayList<>());
+    Semaphore thresholdCrossed = new Semaphore(0);
+    ListenerRegistration registration =
+        firestore.addPendingWritesListener(
+            1,
+            (pendingWriteBatchCount, aboveThreshold) -> {
+              thresholdEvents.add(aboveThreshold);
+              thresholdCrossed.release();
+            });
+
+    waitFor(firestore.disableNetwork());
+    Task<Void> firstWrite = collection.document("a").set(map("foo", "bar"));
+    Task<Void> secondWrite = collection.document("b").set(map("foo", "bar"));
+    Exception e = waitForException(collection.document("c").set(map("foo", "bar")));
+    assertEquals(Code.RESOURCE_EXHAUSTED, ((FirebaseFirestoreException) e).getCode());
+    waitFor(thresholdCrossed);
+
+    waitFor(firestore.enableNetwork());
+    waitFor(firstWrite);
+    waitFor(secondWrite);
+    waitFor(thresholdCrossed);
+    assertEquals(Arrays.asList(true, false), thresholdEvents);
+    registration.remove();
+  }
+
   @Test
   public void testCantGetDocumentsWhileOffline() {
     DocumentReference documentReference = testCollection("rooms").document();
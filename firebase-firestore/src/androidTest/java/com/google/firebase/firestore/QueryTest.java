@@ -606,4 +606,22 @@ public class QueryTest {
                 .get());
     assertEquals(asList("cg-doc2"), querySnapshotToIds(querySnapshot));
   }
+
+  @Test
+  public void testExplainFromCacheReportsQueryExecution() {
+    CollectionReference collection =
+        testCollectionWithDocs(map("a", map("foo", 1L), "b", map("foo", 2L), "c", map("foo", 1L)));
+    waitFor(collection.get());
+    waitFor(collection.getFirestore().disableNetwork());
+    // A pending write, which is never acknowledged since the network is disabled.
+    collection.document("d").set(map("foo", 1L));
+
+    QueryExecutionStats stats = waitFor(collection.whereEqualTo("foo", 1L).explainFromCache());
+
+    assertFalse(stats.isIndexFree());
+    assertEquals(3, stats.getDocumentsMatched());
+    assertEquals(1, stats.getMutationBatchesApplied());
+    assertTrue(stats.getRowsScanned() >= 3);
+    assertTrue(stats.getTotalMicros() >= stats.getViewComputationMicros());
+  }
 }
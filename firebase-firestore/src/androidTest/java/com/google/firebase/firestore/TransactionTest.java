@@ -216,6 +216,27 @@ public class TransactionTest {
     assertEquals("Every document read in a transaction must also be written.", e.getMessage());
   }
 
+  @Test
+  public void testReadOnlyTransactionReadsDocuments() {
+    FirebaseFirestore firestore = testFirestore();
+    DocumentReference doc1 = firestore.collection("spaces").document();
+    DocumentReference doc2 = firestore.collection("spaces").document();
+    waitFor(doc1.set(map("foo", 1)));
+    TransactionOptions options = new TransactionOptions.Builder().setReadOnly(true).build();
+
+    List<DocumentSnapshot> snapshots =
+        waitFor(firestore.runTransaction(options, transaction -> transaction.getAll(doc1, doc2)));
+    assertEquals(2, snapshots.size());
+    assertEquals(map("foo", 1L), snapshots.get(0).getData());
+    assertFalse(snapshots.get(1).exists());
+
+    Exception e =
+        waitForException(
+            firestore.runTransaction(
+                options, transaction -> transaction.set(doc2, map("foo", 2))));
+    assertEquals(Code.INVALID_ARGUMENT, ((FirebaseFirestoreException) e).getCode());
+  }
+
   @Test
   public void testRunsTransactionsAfterGettingExistingDoc() {
     FirebaseFirestore firestore = testFirestore();
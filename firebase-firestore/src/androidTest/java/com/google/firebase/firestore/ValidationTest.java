@@ -294,6 +294,43 @@ public class ValidationTest {
     expectError(() -> batch.delete(badRef), reason);
   }
 
+  @Test
+  public void bulkWritesRequireCorrectDocumentReferences() {
+    DocumentReference badRef = testAlternateFirestore().document("foo/bar");
+    String reason = "Provided document reference is from a different Cloud Firestore instance.";
+    Map<String, Object> data = map("foo", 1);
+    BulkWriter bulkWriter = testFirestore().bulkWriter();
+    expectError(() -> bulkWriter.set(badRef, data), reason);
+    expectError(() -> bulkWriter.update(badRef, data), reason);
+    expectError(() -> bulkWriter.update(badRef, "foo", 1), reason);
+    expectError(() -> bulkWriter.delete(badRef), reason);
+    waitFor(bulkWriter.close());
+  }
+
+  @Test
+  public void bulkWriterUpdatesRequireNonNullData() {
+    DocumentReference ref = testDocument();
+    BulkWriter bulkWriter = ref.getFirestore().bulkWriter();
+    expectError(
+        () -> bulkWriter.update(ref, (Map<String, Object>) null),
+        "Provided update data must not be null.");
+    waitFor(bulkWriter.close());
+  }
+
+  @Test
+  public void bulkWriterCannotBeUsedAfterClose() {
+    DocumentReference ref = testDocument();
+    BulkWriter bulkWriter = ref.getFirestore().bulkWriter();
+    waitFor(bulkWriter.close());
+    String reason = "A BulkWriter can no longer be used after close() has been called.";
+    expectError(() -> bulkWriter.set(ref, map("foo", 1)), reason);
+    expectError(() -> bulkWriter.update(ref, map("foo", 1)), reason);
+    expectError(() -> bulkWriter.delete(ref), reason);
+    expectError(bulkWriter::flush, reason);
+    // Closing again is a no-op.
+    waitFor(bulkWriter.close());
+  }
+
   @Test
   public void transactionsRequireCorrectDocumentReferences() {
     DocumentReference badRef = testAlternateFirestore().document("foo/bar");
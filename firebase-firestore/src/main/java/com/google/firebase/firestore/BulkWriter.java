@@ -0,0 +1,227 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.core.UserData.ParsedSetData;
+import com.google.firebase.firestore.core.UserData.ParsedUpdateData;
+import com.google.firebase.firestore.model.mutation.DeleteMutation;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.Precondition;
+import com.google.firebase.firestore.util.Util;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bulk writer, used to perform a large number of independent writes with high throughput.
+ *
+ * <p>A BulkWriter object can be acquired by calling {@link FirebaseFirestore#bulkWriter()}. Unlike
+ * {@link WriteBatch}, the writes are not atomic: every write is committed on its own and reports
+ * its result through its own {@code Task}. Writes are sent to the backend in parallel, at a rate
+ * that ramps up gradually, and writes that fail with a transient error are retried automatically.
+ *
+ * <p>Writes performed through a BulkWriter are sent directly to the backend. They are not visible
+ * locally until they have been committed, and they are not persisted or retried across app
+ * restarts. The returned Tasks fail if the client is offline, which makes a BulkWriter best suited
+ * for one-off imports and migrations.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class BulkWriter {
+  private final FirebaseFirestore firestore;
+  private final Task<com.google.firebase.firestore.core.BulkWriter> bulkWriter;
+  @Nullable private Task<Void> closeTask;
+
+  BulkWriter(FirebaseFirestore firestore) {
+    this.firestore = checkNotNull(firestore);
+    this.bulkWriter = firestore.getClient().createBulkWriter();
+  }
+
+  /**
+   * Overwrites the document referred to by the provided {@code DocumentReference}. If the document
+   * does not yet exist, it will be created. If a document already exists, it will be overwritten.
+   *
+   * @param documentRef The {@code DocumentReference} to overwrite.
+   * @param data The data to write to the document (e.g. a Map or a POJO containing the desired
+   *     document contents).
+   * @return A Task that will be resolved when the write is committed.
+   */
+  @NonNull
+  public Task<Void> set(@NonNull DocumentReference documentRef, @NonNull Object data) {
+    return set(documentRef, data, SetOptions.OVERWRITE);
+  }
+
+  /**
+   * Writes to the document referred to by the provided {@code DocumentReference}. If the document
+   * does not yet exist, it will be created. If you pass {@code SetOptions}, the provided data can
+   * be merged into an existing document.
+   *
+   * @param documentRef The {@code DocumentReference} to overwrite.
+   * @param data The data to write to the document (e.g. a Map or a POJO containing the desired
+   *     document contents).
+   * @param options An object to configure the set behavior.
+   * @return A Task that will be resolved when the write is committed.
+   */
+  @NonNull
+  public Task<Void> set(
+      @NonNull DocumentReference documentRef, @NonNull Object data, @NonNull SetOptions options) {
+    firestore.validateReference(documentRef);
+    checkNotNull(data, "Provided data must not be null.");
+    checkNotNull(options, "Provided options must not be null.");
+    verifyNotClosed();
+    ParsedSetData parsed =
+        options.isMerge()
+            ? firestore.getDataConverter().parseMergeData(data, options.getFieldMask())
+            : firestore.getDataConverter().parseSetData(data);
+    return write(parsed.toMutationList(documentRef.getKey(), Precondition.NONE));
+  }
+
+  /**
+   * Updates fields in the document referred to by the provided {@code DocumentReference}. If no
+   * document exists yet, the update will fail.
+   *
+   * @param documentRef The {@code DocumentReference} to update.
+   * @param data A map of field / value pairs to update. Fields can contain dots to reference nested
+   *     fields within the document.
+   * @return A Task that will be resolved when the write is committed.
+   */
+  @NonNull
+  public Task<Void> update(
+      @NonNull DocumentReference documentRef, @NonNull Map<String, Object> data) {
+    firestore.validateReference(documentRef);
+    checkNotNull(data, "Provided update data must not be null.");
+    verifyNotClosed();
+    ParsedUpdateData parsedData = firestore.getDataConverter().parseUpdateData(data);
+    return update(documentRef, parsedData);
+  }
+
+  /**
+   * Updates field in the document referred to by the provided {@code DocumentReference}. If no
+   * document exists yet, the update will fail.
+   *
+   * @param documentRef The {@code DocumentReference} to update.
+   * @param field The first field to update. Fields can contain dots to reference a nested field
+   *     within the document.
+   * @param value The first value
+   * @param moreFieldsAndValues Additional field/value pairs.
+   * @return A Task that will be resolved when the write is committed.
+   */
+  @NonNull
+  public Task<Void> update(
+      @NonNull DocumentReference documentRef,
+      @NonNull String field,
+      @Nullable Object value,
+      Object... moreFieldsAndValues) {
+    firestore.validateReference(documentRef);
+    verifyNotClosed();
+    ParsedUpdateData parsedData =
+        firestore
+            .getDataConverter()
+            .parseUpdateData(
+                Util.collectUpdateArguments(
+                    /* fieldPathOffset= */ 1, field, value, moreFieldsAndValues));
+    return update(documentRef, parsedData);
+  }
+
+  /**
+   * Updates fields in the document referred to by the provided {@code DocumentReference}. If no
+   * document exists yet, the update will fail.
+   *
+   * @param documentRef The {@code DocumentReference} to update.
+   * @param fieldPath The first field to update.
+   * @param value The first value
+   * @param moreFieldsAndValues Additional field/value pairs.
+   * @return A Task that will be resolved when the write is committed.
+   */
+  @NonNull
+  public Task<Void> update(
+      @NonNull DocumentReference documentRef,
+      @NonNull FieldPath fieldPath,
+      @Nullable Object value,
+      Object... moreFieldsAndValues) {
+    firestore.validateReference(documentRef);
+    verifyNotClosed();
+    ParsedUpdateData parsedData =
+        firestore
+            .getDataConverter()
+            .parseUpdateData(
+                Util.collectUpdateArguments(
+                    /* fieldPathOffset= */ 1, fieldPath, value, moreFieldsAndValues));
+    return update(documentRef, parsedData);
+  }
+
+  private Task<Void> update(
+      @NonNull DocumentReference documentRef, @NonNull ParsedUpdateData updateData) {
+    return write(updateData.toMutationList(documentRef.getKey(), Precondition.exists(true)));
+  }
+
+  /**
+   * Deletes the document referred to by the provided {@code DocumentReference}.
+   *
+   * @param documentRef The {@code DocumentReference} to delete.
+   * @return A Task that will be resolved when the delete is committed.
+   */
+  @NonNull
+  public Task<Void> delete(@NonNull DocumentReference documentRef) {
+    firestore.validateReference(documentRef);
+    verifyNotClosed();
+    return write(
+        Collections.singletonList(new DeleteMutation(documentRef.getKey(), Precondition.NONE)));
+  }
+
+  /**
+   * Waits for all writes that were scheduled before this call to be committed or to fail.
+   *
+   * @return A Task that will be resolved when all previously scheduled writes have completed. The
+   *     Task does not fail if individual writes fail.
+   */
+  @NonNull
+  public Task<Void> flush() {
+    verifyNotClosed();
+    return firestore.getClient().flushBulkWriter(bulkWriter);
+  }
+
+  /**
+   * Flushes all scheduled writes and prevents any further writes from being scheduled on this
+   * {@code BulkWriter}. Calling {@code close()} again has no effect.
+   *
+   * @return A Task that will be resolved when all previously scheduled writes have completed.
+   */
+  @NonNull
+  public Task<Void> close() {
+    if (closeTask == null) {
+      closeTask = flush();
+    }
+    return closeTask;
+  }
+
+  private Task<Void> write(List<Mutation> mutations) {
+    return firestore.getClient().bulkWrite(bulkWriter, mutations);
+  }
+
+  private void verifyNotClosed() {
+    if (closeTask != null) {
+      throw new IllegalStateException(
+          "A BulkWriter can no longer be used after close() has been called.");
+    }
+  }
+}
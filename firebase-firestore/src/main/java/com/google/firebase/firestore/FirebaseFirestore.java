@@ -36,15 +36,24 @@ import com.google.firebase.firestore.core.ActivityScope;
 import com.google.firebase.firestore.core.AsyncEventListener;
 import com.google.firebase.firestore.core.DatabaseInfo;
 import com.google.firebase.firestore.core.FirestoreClient;
+import com.google.firebase.firestore.core.LimboResolutionMetrics;
+import com.google.firebase.firestore.local.CacheStatistics;
 import com.google.firebase.firestore.local.SQLitePersistence;
 import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.remote.GrpcMetadataProvider;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueueMetrics;
 import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Logger;
 import com.google.firebase.firestore.util.Logger.Level;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents a Cloud Firestore database and is the entry point for all Cloud Firestore operations.
@@ -207,7 +216,12 @@ public class FirebaseFirestore {
         return;
       }
       DatabaseInfo databaseInfo =
-          new DatabaseInfo(databaseId, persistenceKey, settings.getHost(), settings.isSslEnabled());
+          new DatabaseInfo(
+              databaseId,
+              persistenceKey,
+              settings.getHost(),
+              settings.isSslEnabled(),
+              settings.isCompressionEnabled());
 
       client =
           new FirestoreClient(
@@ -271,6 +285,56 @@ public class FirebaseFirestore {
         new com.google.firebase.firestore.core.Query(ResourcePath.EMPTY, collectionId), this);
   }
 
+  /**
+   * Reads the documents referenced by the provided {@code DocumentReference}s from the server.
+   *
+   * <p>Unlike calling {@link DocumentReference#get()} for each document, the documents are fetched
+   * with a small number of batched lookups that are issued in parallel. The results are written to
+   * the local cache, so that they are also available to subsequent reads from cache.
+   *
+   * <p>The returned Task fails if the server cannot be reached.
+   *
+   * @param documentRefs The {@code DocumentReference}s of the documents to read.
+   * @return A Task that will be resolved with the snapshots of the documents, in the same order as
+   *     the provided references.
+   */
+  @NonNull
+  public Task<List<DocumentSnapshot>> getAll(@NonNull DocumentReference... documentRefs) {
+    checkNotNull(documentRefs, "Provided document references must not be null.");
+    ensureClientConfigured();
+
+    List<DocumentKey> keys = new ArrayList<>(documentRefs.length);
+    for (DocumentReference documentRef : documentRefs) {
+      validateReference(documentRef);
+      keys.add(documentRef.getKey());
+    }
+
+    return client
+        .getDocumentsFromServer(keys)
+        .continueWith(
+            Executors.DIRECT_EXECUTOR,
+            task -> {
+              List<MaybeDocument> documents = task.getResult();
+              List<DocumentSnapshot> snapshots = new ArrayList<>(documents.size());
+              for (MaybeDocument maybeDoc : documents) {
+                if (maybeDoc instanceof Document) {
+                  Document doc = (Document) maybeDoc;
+                  snapshots.add(
+                      DocumentSnapshot.fromDocument(
+                          this, doc, /*fromCache=*/ false, doc.hasLocalMutations()));
+                } else {
+                  snapshots.add(
+                      DocumentSnapshot.fromNoDocument(
+                          this,
+                          maybeDoc.getKey(),
+                          /*fromCache=*/ false,
+                          /*hasPendingWrites=*/ false));
+                }
+              }
+              return snapshots;
+            });
+  }
+
   /**
    * Executes the given updateFunction and then attempts to commit the changes applied within the
    * transaction. If any document read within the transaction has changed, the updateFunction will
@@ -281,12 +345,13 @@ public class FirebaseFirestore {
    * FieldValue#arrayRemove(Object...)}, or {@link FieldValue#increment(long)} inside a transaction
    * counts as an additional write.
    *
+   * @param options The options to run the transaction with.
    * @param updateFunction The function to execute within the transaction context.
    * @param executor The executor to run the transaction callback on.
    * @return The task returned from the updateFunction.
    */
   private <ResultT> Task<ResultT> runTransaction(
-      Transaction.Function<ResultT> updateFunction, Executor executor) {
+      TransactionOptions options, Transaction.Function<ResultT> updateFunction, Executor executor) {
     ensureClientConfigured();
 
     // We wrap the function they provide in order to
@@ -301,7 +366,7 @@ public class FirebaseFirestore {
                     updateFunction.apply(
                         new Transaction(internalTransaction, FirebaseFirestore.this)));
 
-    return client.transaction(wrappedUpdateFunction);
+    return client.transaction(wrappedUpdateFunction, options.isReadOnly());
   }
 
   /**
@@ -317,7 +382,37 @@ public class FirebaseFirestore {
       @NonNull Transaction.Function<TResult> updateFunction) {
     checkNotNull(updateFunction, "Provided transaction update function must not be null.");
     return runTransaction(
-        updateFunction, com.google.firebase.firestore.core.Transaction.getDefaultExecutor());
+        new TransactionOptions.Builder().build(),
+        updateFunction,
+        com.google.firebase.firestore.core.Transaction.getDefaultExecutor());
+  }
+
+  /**
+   * Executes the given updateFunction with the given options and then attempts to commit the
+   * changes applied within the transaction. If any document read within the transaction has
+   * changed, the updateFunction will be retried. If it fails to commit after 5 attempts, the
+   * transaction will fail.
+   *
+   * <p>If the options are read-only, all documents are read at the same point in time and the
+   * transaction completes without committing. It is still retried if a read fails with a retryable
+   * error. The backend only reads at a point in time that is at most about 270 seconds in the past,
+   * so reads that are issued later than that after the first read fail with {@code
+   * FAILED_PRECONDITION}. The transaction is then retried with a new point in time, and fails once
+   * all 5 attempts ran for too long.
+   *
+   * @param options The options to run the transaction with.
+   * @param updateFunction The function to execute within the transaction context.
+   * @return The task returned from the updateFunction.
+   */
+  @NonNull
+  public <TResult> Task<TResult> runTransaction(
+      @NonNull TransactionOptions options, @NonNull Transaction.Function<TResult> updateFunction) {
+    checkNotNull(options, "Provided transaction options must not be null.");
+    checkNotNull(updateFunction, "Provided transaction update function must not be null.");
+    return runTransaction(
+        options,
+        updateFunction,
+        com.google.firebase.firestore.core.Transaction.getDefaultExecutor());
   }
 
   /**
@@ -351,6 +446,21 @@ public class FirebaseFirestore {
     return batch.commit();
   }
 
+  /**
+   * Creates a bulk writer, used for performing a large number of independent, non-atomic writes.
+   *
+   * <p>Unlike a {@link WriteBatch}, the writes scheduled on a {@link BulkWriter} are sent directly
+   * to the backend in parallel and are not limited in number. Each write reports its own result.
+   *
+   * @return The created BulkWriter object.
+   */
+  @NonNull
+  public BulkWriter bulkWriter() {
+    ensureClientConfigured();
+
+    return new BulkWriter(this);
+  }
+
   Task<Void> terminateInternal() {
     // The client must be initialized to ensure that all subsequent API usage throws an exception.
     this.ensureClientConfigured();
@@ -569,6 +679,190 @@ public class FirebaseFirestore {
         });
   }
 
+  /**
+   * Registers a listener for tasks that occupy Cloud Firestore's internal worker queue for longer
+   * than {@code longTaskThresholdMillis}, and starts recording {@link TaskQueueMetrics}. Recording
+   * stops once all listeners have been removed.
+   *
+   * <p>Recording the metrics adds a small overhead to every operation, so it should only be enabled
+   * while investigating performance issues.
+   *
+   * @param longTaskThresholdMillis The run time above which the listener is notified of a task.
+   * @param listener The listener to notify on the main thread.
+   * @return A registration object that can be used to remove the listener.
+   */
+  @NonNull
+  public ListenerRegistration addTaskQueueMetricsListener(
+      long longTaskThresholdMillis, @NonNull TaskQueueMetricsListener listener) {
+    return addTaskQueueMetricsListener(
+        Executors.DEFAULT_CALLBACK_EXECUTOR, longTaskThresholdMillis, listener);
+  }
+
+  /**
+   * Registers a listener for tasks that occupy Cloud Firestore's internal worker queue for longer
+   * than {@code longTaskThresholdMillis}, and starts recording {@link TaskQueueMetrics}. Recording
+   * stops once all listeners have been removed.
+   *
+   * <p>Recording the metrics adds a small overhead to every operation, so it should only be enabled
+   * while investigating performance issues.
+   *
+   * @param executor The executor to use to call the listener.
+   * @param longTaskThresholdMillis The run time above which the listener is notified of a task.
+   * @param listener The listener to notify.
+   * @return A registration object that can be used to remove the listener.
+   */
+  @NonNull
+  public ListenerRegistration addTaskQueueMetricsListener(
+      @NonNull Executor executor,
+      long longTaskThresholdMillis,
+      @NonNull TaskQueueMetricsListener listener) {
+    checkNotNull(executor, "Provided executor must not be null.");
+    checkNotNull(listener, "Provided listener must not be null.");
+    if (longTaskThresholdMillis < 0) {
+      throw new IllegalArgumentException("The long task threshold must not be negative.");
+    }
+    AsyncQueueMetrics metrics = asyncQueue.getMetrics();
+    AtomicBoolean muted = new AtomicBoolean(false);
+    AsyncQueueMetrics.LongTaskCallback callback =
+        (origin, waitMillis, runMillis) -> {
+          TaskQueueMetrics snapshot = new TaskQueueMetrics(metrics);
+          executor.execute(
+              () -> {
+                if (!muted.get()) {
+                  listener.onLongTask(origin, waitMillis, runMillis, snapshot);
+                }
+              });
+        };
+    metrics.addLongTaskCallback(longTaskThresholdMillis, callback);
+    return () -> {
+      muted.set(true);
+      metrics.removeLongTaskCallback(callback);
+    };
+  }
+
+  /**
+   * Registers a listener that is notified when the number of write batches waiting for
+   * acknowledgement by the backend rises above {@code threshold}, and when it drops back to the
+   * threshold. If the number is already above the threshold, the listener is notified right away.
+   *
+   * <p>Pending writes accumulate while the client is offline. Apps can use the listener to throttle
+   * their own writes before reaching the limit set with {@link
+   * FirebaseFirestoreSettings.Builder#setMaxPendingWriteBatches}.
+   *
+   * @param threshold The number of pending write batches above which the listener is notified.
+   * @param listener The listener to notify on the main thread.
+   * @return A registration object that can be used to remove the listener.
+   */
+  @NonNull
+  public ListenerRegistration addPendingWritesListener(
+      long threshold, @NonNull PendingWritesListener listener) {
+    return addPendingWritesListener(Executors.DEFAULT_CALLBACK_EXECUTOR, threshold, listener);
+  }
+
+  /**
+   * Registers a listener that is notified when the number of write batches waiting for
+   * acknowledgement by the backend rises above {@code threshold}, and when it drops back to the
+   * threshold. If the number is already above the threshold, the listener is notified right away.
+   *
+   * <p>Pending writes accumulate while the client is offline. Apps can use the listener to throttle
+   * their own writes before reaching the limit set with {@link
+   * FirebaseFirestoreSettings.Builder#setMaxPendingWriteBatches}.
+   *
+   * @param executor The executor to use to call the listener.
+   * @param threshold The number of pending write batches above which the listener is notified.
+   * @param listener The listener to notify.
+   * @return A registration object that can be used to remove the listener.
+   */
+  @NonNull
+  public ListenerRegistration addPendingWritesListener(
+      @NonNull Executor executor, long threshold, @NonNull PendingWritesListener listener) {
+    checkNotNull(executor, "Provided executor must not be null.");
+    checkNotNull(listener, "Provided listener must not be null.");
+    if (threshold < 0) {
+      throw new IllegalArgumentException("The pending writes threshold must not be negative.");
+    }
+    ensureClientConfigured();
+    AtomicBoolean muted = new AtomicBoolean(false);
+    PendingWritesListener asyncListener =
+        (pendingWriteBatchCount, aboveThreshold) ->
+            executor.execute(
+                () -> {
+                  if (!muted.get()) {
+                    listener.onThresholdCrossed(pendingWriteBatchCount, aboveThreshold);
+                  }
+                });
+    client.addPendingWritesListener(threshold, asyncListener);
+    return () -> {
+      muted.set(true);
+      client.removePendingWritesListener(asyncListener);
+    };
+  }
+
+  /**
+   * Returns the metrics recorded for Cloud Firestore's internal worker queue. The metrics are empty
+   * unless a listener has been registered via {@link #addTaskQueueMetricsListener}.
+   */
+  @NonNull
+  public TaskQueueMetrics getTaskQueueMetrics() {
+    return new TaskQueueMetrics(asyncQueue.getMetrics());
+  }
+
+  /**
+   * Returns the number of bytes that Cloud Firestore has sent to and received from the backend so
+   * far, and the time it spent compressing and decompressing them.
+   */
+  @NonNull
+  public NetworkTrafficStats getNetworkTrafficStats() {
+    ensureClientConfigured();
+    return new NetworkTrafficStats(client.getTrafficStats());
+  }
+
+  /**
+   * Returns how long the phases of Cloud Firestore's startup took. The metrics are complete once
+   * the first snapshot has been delivered to a listener.
+   */
+  @NonNull
+  public StartupMetrics getStartupMetrics() {
+    ensureClientConfigured();
+    return new StartupMetrics(client.getStartupTrace());
+  }
+
+  /**
+   * Returns statistics about the local cache, e.g. the number of cached documents and pending
+   * writes, and the results of the last garbage collection. With persistence enabled, the byte
+   * sizes are computed by reading the size of every cached document, which takes time proportional
+   * to the size of the cache.
+   *
+   * @return A Task that will be resolved with the statistics.
+   */
+  @NonNull
+  public Task<PersistenceStats> getPersistenceStats() {
+    ensureClientConfigured();
+    return client
+        .getCacheStatistics()
+        .continueWith(
+            Executors.DIRECT_EXECUTOR,
+            (Task<CacheStatistics> stats) -> new PersistenceStats(stats.getResult()));
+  }
+
+  /**
+   * Returns statistics about the documents that Cloud Firestore resolves from limbo, i.e. the
+   * documents that the backend no longer returns for a query without saying whether they were
+   * deleted. See {@link LimboResolutionStats}.
+   *
+   * @return A Task that will be resolved with the statistics.
+   */
+  @NonNull
+  public Task<LimboResolutionStats> getLimboResolutionStats() {
+    ensureClientConfigured();
+    return client
+        .getLimboResolutionMetrics()
+        .continueWith(
+            Executors.DIRECT_EXECUTOR,
+            (Task<LimboResolutionMetrics> metrics) ->
+                new LimboResolutionStats(metrics.getResult()));
+  }
+
   FirestoreClient getClient() {
     return client;
   }
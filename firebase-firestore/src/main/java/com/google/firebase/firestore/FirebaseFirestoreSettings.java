@@ -19,6 +19,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.common.base.MoreObjects;
+import com.google.firebase.firestore.core.SyncEngine;
 
 /** Settings used to configure a {@link FirebaseFirestore} instance. */
 public final class FirebaseFirestoreSettings {
@@ -28,6 +29,12 @@ public final class FirebaseFirestoreSettings {
    */
   public static final long CACHE_SIZE_UNLIMITED = -1;
 
+  /**
+   * Constant to use with {@link FirebaseFirestoreSettings.Builder#setMaxPendingWriteBatches(long)}
+   * to not limit the number of pending writes.
+   */
+  public static final long PENDING_WRITES_UNLIMITED = -1;
+
   private static final long MINIMUM_CACHE_BYTES = 1 * 1024 * 1024; // 1 MB
   private static final long DEFAULT_CACHE_SIZE_BYTES = 100 * 1024 * 1024; // 100 MB
   private static final String DEFAULT_HOST = "firestore.googleapis.com";
@@ -40,6 +47,9 @@ public final class FirebaseFirestoreSettings {
     private boolean persistenceEnabled;
     private boolean timestampsInSnapshotsEnabled;
     private long cacheSizeBytes;
+    private boolean compressionEnabled;
+    private long maxPendingWriteBatches;
+    private int maxConcurrentLimboResolutions;
 
     /** Constructs a new {@code FirebaseFirestoreSettings} Builder object. */
     public Builder() {
@@ -48,6 +58,8 @@ public final class FirebaseFirestoreSettings {
       persistenceEnabled = true;
       timestampsInSnapshotsEnabled = DEFAULT_TIMESTAMPS_IN_SNAPSHOTS_ENABLED;
       cacheSizeBytes = DEFAULT_CACHE_SIZE_BYTES;
+      maxPendingWriteBatches = PENDING_WRITES_UNLIMITED;
+      maxConcurrentLimboResolutions = SyncEngine.DEFAULT_MAX_CONCURRENT_LIMBO_RESOLUTIONS;
     }
 
     /**
@@ -60,6 +72,9 @@ public final class FirebaseFirestoreSettings {
       sslEnabled = settings.sslEnabled;
       persistenceEnabled = settings.persistenceEnabled;
       timestampsInSnapshotsEnabled = settings.timestampsInSnapshotsEnabled;
+      compressionEnabled = settings.compressionEnabled;
+      maxPendingWriteBatches = settings.maxPendingWriteBatches;
+      maxConcurrentLimboResolutions = settings.maxConcurrentLimboResolutions;
     }
 
     /**
@@ -145,6 +160,68 @@ public final class FirebaseFirestoreSettings {
       return this;
     }
 
+    /**
+     * Enables or disables gzip compression of the messages that are sent to the Cloud Firestore
+     * backend. Compression reduces the amount of data sent over the network at the cost of some CPU
+     * time. The default is to not compress messages.
+     *
+     * @return A settings object that compresses messages as specified by the given {@code value}.
+     */
+    @NonNull
+    public Builder setCompressionEnabled(boolean value) {
+      this.compressionEnabled = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of write batches that may wait for acknowledgement by the backend.
+     * Each call that writes data, such as {@link DocumentReference#set} or {@link
+     * WriteBatch#commit}, adds one batch. Once the limit is reached, further writes fail with
+     * {@link FirebaseFirestoreException.Code#RESOURCE_EXHAUSTED} and are not applied locally, until
+     * the backend has acknowledged some of the pending writes.
+     *
+     * <p>Pending writes are applied on top of the cached documents every time a query is read from
+     * the cache, so a limit bounds the cost that a long offline period adds to local queries. Use
+     * {@link FirebaseFirestore#addPendingWritesListener} to throttle writes before the limit is
+     * reached.
+     *
+     * <p>By default, the number of pending writes is not limited.
+     *
+     * @return A settings object on which the limit is configured as specified by the given {@code
+     *     value}.
+     */
+    @NonNull
+    public Builder setMaxPendingWriteBatches(long value) {
+      if (value != PENDING_WRITES_UNLIMITED && value < 1) {
+        throw new IllegalArgumentException(
+            "The maximum number of pending write batches must be positive");
+      }
+      this.maxPendingWriteBatches = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of documents that Cloud Firestore resolves from limbo at the same
+     * time. A document is in limbo when the backend no longer returns it for a query, but the
+     * client can't tell whether it was deleted or only stopped matching the query. Each resolution
+     * requires a listen on the document, so additional documents wait until earlier resolutions
+     * complete.
+     *
+     * <p>The default is 100.
+     *
+     * @return A settings object on which the limit is configured as specified by the given {@code
+     *     value}.
+     */
+    @NonNull
+    public Builder setMaxConcurrentLimboResolutions(int value) {
+      if (value < 1) {
+        throw new IllegalArgumentException(
+            "The maximum number of concurrent limbo resolutions must be positive");
+      }
+      this.maxConcurrentLimboResolutions = value;
+      return this;
+    }
+
     /** @return the host of the Cloud Firestore backend. */
     @NonNull
     public String getHost() {
@@ -166,6 +243,21 @@ public final class FirebaseFirestoreSettings {
       return cacheSizeBytes;
     }
 
+    /** @return boolean indicating whether message compression is enabled or not. */
+    public boolean isCompressionEnabled() {
+      return compressionEnabled;
+    }
+
+    /** @return the maximum number of pending write batches. */
+    public long getMaxPendingWriteBatches() {
+      return maxPendingWriteBatches;
+    }
+
+    /** @return the maximum number of concurrent limbo resolutions. */
+    public int getMaxConcurrentLimboResolutions() {
+      return maxConcurrentLimboResolutions;
+    }
+
     @NonNull
     public FirebaseFirestoreSettings build() {
       if (!this.sslEnabled && this.host.equals(DEFAULT_HOST)) {
@@ -181,6 +273,9 @@ public final class FirebaseFirestoreSettings {
   private final boolean persistenceEnabled;
   private final boolean timestampsInSnapshotsEnabled;
   private final long cacheSizeBytes;
+  private final boolean compressionEnabled;
+  private final long maxPendingWriteBatches;
+  private final int maxConcurrentLimboResolutions;
 
   /** Constructs a {@code FirebaseFirestoreSettings} object based on the values in the Builder. */
   private FirebaseFirestoreSettings(Builder builder) {
@@ -189,6 +284,9 @@ public final class FirebaseFirestoreSettings {
     persistenceEnabled = builder.persistenceEnabled;
     timestampsInSnapshotsEnabled = builder.timestampsInSnapshotsEnabled;
     cacheSizeBytes = builder.cacheSizeBytes;
+    compressionEnabled = builder.compressionEnabled;
+    maxPendingWriteBatches = builder.maxPendingWriteBatches;
+    maxConcurrentLimboResolutions = builder.maxConcurrentLimboResolutions;
   }
 
   @Override
@@ -205,7 +303,10 @@ public final class FirebaseFirestoreSettings {
         && sslEnabled == that.sslEnabled
         && persistenceEnabled == that.persistenceEnabled
         && timestampsInSnapshotsEnabled == that.timestampsInSnapshotsEnabled
-        && cacheSizeBytes == that.cacheSizeBytes;
+        && cacheSizeBytes == that.cacheSizeBytes
+        && compressionEnabled == that.compressionEnabled
+        && maxPendingWriteBatches == that.maxPendingWriteBatches
+        && maxConcurrentLimboResolutions == that.maxConcurrentLimboResolutions;
   }
 
   @Override
@@ -215,6 +316,9 @@ public final class FirebaseFirestoreSettings {
     result = 31 * result + (persistenceEnabled ? 1 : 0);
     result = 31 * result + (timestampsInSnapshotsEnabled ? 1 : 0);
     result = 31 * result + (int) cacheSizeBytes;
+    result = 31 * result + (compressionEnabled ? 1 : 0);
+    result = 31 * result + (int) maxPendingWriteBatches;
+    result = 31 * result + maxConcurrentLimboResolutions;
     return result;
   }
 
@@ -226,6 +330,9 @@ public final class FirebaseFirestoreSettings {
         .add("sslEnabled", sslEnabled)
         .add("persistenceEnabled", persistenceEnabled)
         .add("timestampsInSnapshotsEnabled", timestampsInSnapshotsEnabled)
+        .add("compressionEnabled", compressionEnabled)
+        .add("maxPendingWriteBatches", maxPendingWriteBatches)
+        .add("maxConcurrentLimboResolutions", maxConcurrentLimboResolutions)
         .toString();
   }
 
@@ -260,4 +367,22 @@ public final class FirebaseFirestoreSettings {
   public long getCacheSizeBytes() {
     return cacheSizeBytes;
   }
+
+  /** Returns whether or not messages sent to the backend are compressed. */
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
+  /**
+   * Returns the maximum number of write batches that may wait for acknowledgement by the backend,
+   * or {@link #PENDING_WRITES_UNLIMITED}.
+   */
+  public long getMaxPendingWriteBatches() {
+    return maxPendingWriteBatches;
+  }
+
+  /** Returns the maximum number of documents that are resolved from limbo at the same time. */
+  public int getMaxConcurrentLimboResolutions() {
+    return maxConcurrentLimboResolutions;
+  }
 }
@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Base class for the mappers that the Cloud Firestore annotation processor ({@code
+ * com.google.firebase:firebase-firestore-mapper-processor}) generates at compile time.
+ *
+ * <p>A generated mapper converts a single POJO class to and from a map of property values using
+ * plain field accesses and method calls, instead of the reflection that is used for classes
+ * without a generated mapper. Property values are converted by calling back into Cloud Firestore
+ * through the {@link Serializer} and {@link Deserializer} that are passed in, so the conversion
+ * rules and error messages are the same either way.
+ *
+ * <p>A mapper for class {@code com.example.Outer.Inner} is named {@code
+ * com.example.Outer_Inner_FirestoreMapper}, and must have a public no-argument constructor. Cloud
+ * Firestore looks up the mapper by name when it first encounters a class, and falls back to
+ * reflection if there is none.
+ *
+ * <p>This class is only meant to be extended by generated code.
+ */
+public abstract class GeneratedClassMapper<T> {
+
+  /** The suffix that is appended to the flattened class name to form the mapper's name. */
+  @NonNull public static final String MAPPER_SUFFIX = "_FirestoreMapper";
+
+  /** Converts the given object to a map of property names to plain Java values. */
+  @NonNull
+  public abstract Map<String, Object> serialize(@NonNull T object, @NonNull Serializer serializer);
+
+  /** Creates a new object and populates it with the given property values. */
+  @NonNull
+  public abstract T deserialize(
+      @NonNull Map<String, Object> values, @NonNull Deserializer deserializer);
+
+  /**
+   * Returns the generic type of a field. Used by generated mappers to resolve parameterized
+   * property types such as {@code List<String>} once, when the mapper is loaded.
+   */
+  @NonNull
+  protected static Type fieldType(@NonNull Class<?> clazz, @NonNull String fieldName) {
+    try {
+      return clazz.getDeclaredField(fieldName).getGenericType();
+    } catch (NoSuchFieldException e) {
+      throw new IllegalStateException("Generated mapper is out of date for " + clazz.getName(), e);
+    }
+  }
+
+  /**
+   * Returns the generic parameter type of a setter. Used by generated mappers to resolve
+   * parameterized property types such as {@code List<String>} once, when the mapper is loaded.
+   */
+  @NonNull
+  protected static Type setterParameterType(
+      @NonNull Class<?> clazz, @NonNull String methodName, @NonNull Class<?> parameterClass) {
+    try {
+      return clazz.getDeclaredMethod(methodName, parameterClass).getGenericParameterTypes()[0];
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Generated mapper is out of date for " + clazz.getName(), e);
+    }
+  }
+
+  /** Converts property values to plain Java values while serializing an object. */
+  public interface Serializer {
+    /** Converts the value of the given property to a plain Java value. */
+    @Nullable
+    Object serialize(@NonNull String property, @Nullable Object value);
+  }
+
+  /** Converts plain Java values to property values while deserializing an object. */
+  public interface Deserializer {
+    /** Converts a value to the class of the given property. */
+    @Nullable
+    <T> T deserialize(@NonNull String property, @Nullable Object value, @NonNull Class<T> clazz);
+
+    /** Converts a value to the generic type of the given property. */
+    @Nullable
+    @SuppressWarnings("TypeParameterUnusedInFormals")
+    <T> T deserialize(@NonNull String property, @Nullable Object value, @NonNull Type type);
+
+    /**
+     * Converts a value to the primitive type of the given property. Fails if the value is null,
+     * since it cannot be assigned to a primitive.
+     */
+    @NonNull
+    <T> T deserializePrimitive(
+        @NonNull String property, @Nullable Object value, @NonNull Class<T> clazz);
+
+    /**
+     * Handles a property that the class has no setter or field for, by throwing or logging a
+     * warning as configured by the class's annotations.
+     */
+    void unknownProperty(
+        @NonNull String property,
+        @NonNull Class<?> clazz,
+        boolean caseMismatch,
+        boolean throwOnUnknownProperties,
+        boolean warnOnUnknownProperties);
+
+    /**
+     * Returns the reference of the document that is being deserialized, for a property that is
+     * annotated with {@link DocumentId}. Fails if the property was also part of the document data.
+     */
+    @NonNull
+    DocumentReference documentReference(
+        @NonNull String property, @NonNull Class<?> clazz, boolean deserialized);
+  }
+}
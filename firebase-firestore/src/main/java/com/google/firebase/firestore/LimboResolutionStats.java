@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.core.LimboResolutionMetrics;
+
+/**
+ * Statistics about the limbo resolutions of Cloud Firestore, as returned by {@link
+ * FirebaseFirestore#getLimboResolutionStats}. A document is in limbo when the backend no longer
+ * returns it for a query, but the client can't tell whether it was deleted or only stopped matching
+ * the query. Cloud Firestore resolves such documents by listening to each of them, and runs at most
+ * {@link FirebaseFirestoreSettings#getMaxConcurrentLimboResolutions} of these listens at once.
+ *
+ * <p>Counts and latencies cover the time since the {@link FirebaseFirestore} instance was started.
+ * Latencies are measured from the time a document went into limbo until the backend resolved it,
+ * and only include resolutions that the backend completed.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class LimboResolutionStats {
+  private final int activeResolutionCount;
+  private final int enqueuedResolutionCount;
+  private final int completedResolutionCount;
+  private final int rejectedResolutionCount;
+  private final long averageResolutionMillis;
+  private final long maxResolutionMillis;
+
+  LimboResolutionStats(LimboResolutionMetrics metrics) {
+    this.activeResolutionCount = metrics.getActiveResolutionCount();
+    this.enqueuedResolutionCount = metrics.getEnqueuedResolutionCount();
+    this.completedResolutionCount = metrics.getCompletedResolutionCount();
+    this.rejectedResolutionCount = metrics.getRejectedResolutionCount();
+    this.averageResolutionMillis = metrics.getAverageResolutionMillis();
+    this.maxResolutionMillis = metrics.getMaxResolutionMillis();
+  }
+
+  /** Returns the number of limbo documents that are currently being resolved. */
+  public int getActiveResolutionCount() {
+    return activeResolutionCount;
+  }
+
+  /** Returns the number of limbo documents that are waiting until they can be resolved. */
+  public int getEnqueuedResolutionCount() {
+    return enqueuedResolutionCount;
+  }
+
+  /** Returns the number of limbo documents that the backend has resolved. */
+  public int getCompletedResolutionCount() {
+    return completedResolutionCount;
+  }
+
+  /** Returns the number of limbo resolutions that the backend has rejected. */
+  public int getRejectedResolutionCount() {
+    return rejectedResolutionCount;
+  }
+
+  /** Returns the average time it took to resolve a limbo document, in milliseconds. */
+  public long getAverageResolutionMillis() {
+    return averageResolutionMillis;
+  }
+
+  /** Returns the longest time it took to resolve a limbo document, in milliseconds. */
+  public long getMaxResolutionMillis() {
+    return maxResolutionMillis;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "LimboResolutionStats{activeResolutionCount="
+        + activeResolutionCount
+        + ", enqueuedResolutionCount="
+        + enqueuedResolutionCount
+        + ", completedResolutionCount="
+        + completedResolutionCount
+        + ", rejectedResolutionCount="
+        + rejectedResolutionCount
+        + ", averageResolutionMillis="
+        + averageResolutionMillis
+        + ", maxResolutionMillis="
+        + maxResolutionMillis
+        + '}';
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.remote.GrpcTrafficStats;
+
+/**
+ * A snapshot of the number of message bytes that Cloud Firestore has sent to and received from the
+ * backend, both as they appear on the network and uncompressed. Comparing the two shows how much
+ * network traffic message compression saves.
+ *
+ * <p>The time spent compressing and decompressing messages is only recorded if compression is
+ * enabled via {@link FirebaseFirestoreSettings.Builder#setCompressionEnabled}.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class NetworkTrafficStats {
+  private final long outboundWireBytes;
+  private final long outboundUncompressedBytes;
+  private final long inboundWireBytes;
+  private final long inboundUncompressedBytes;
+  private final long compressionNanos;
+  private final long decompressionNanos;
+
+  NetworkTrafficStats(GrpcTrafficStats stats) {
+    this.outboundWireBytes = stats.getOutboundWireBytes();
+    this.outboundUncompressedBytes = stats.getOutboundUncompressedBytes();
+    this.inboundWireBytes = stats.getInboundWireBytes();
+    this.inboundUncompressedBytes = stats.getInboundUncompressedBytes();
+    this.compressionNanos = stats.getCompressionNanos();
+    this.decompressionNanos = stats.getDecompressionNanos();
+  }
+
+  /** Returns the number of message bytes sent, after compression. */
+  public long getOutboundWireBytes() {
+    return outboundWireBytes;
+  }
+
+  /** Returns the number of message bytes sent, before compression. */
+  public long getOutboundUncompressedBytes() {
+    return outboundUncompressedBytes;
+  }
+
+  /** Returns the number of message bytes received, before decompression. */
+  public long getInboundWireBytes() {
+    return inboundWireBytes;
+  }
+
+  /** Returns the number of message bytes received, after decompression. */
+  public long getInboundUncompressedBytes() {
+    return inboundUncompressedBytes;
+  }
+
+  /** Returns the total time spent compressing sent messages, in nanoseconds. */
+  public long getCompressionNanos() {
+    return compressionNanos;
+  }
+
+  /** Returns the total time spent decompressing received messages, in nanoseconds. */
+  public long getDecompressionNanos() {
+    return decompressionNanos;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "NetworkTrafficStats{outboundWireBytes="
+        + outboundWireBytes
+        + ", outboundUncompressedBytes="
+        + outboundUncompressedBytes
+        + ", inboundWireBytes="
+        + inboundWireBytes
+        + ", inboundUncompressedBytes="
+        + inboundUncompressedBytes
+        + ", compressionNanos="
+        + compressionNanos
+        + ", decompressionNanos="
+        + decompressionNanos
+        + '}';
+  }
+}
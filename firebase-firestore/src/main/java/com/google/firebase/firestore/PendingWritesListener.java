@@ -0,0 +1,34 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+/**
+ * A listener for the number of write batches that wait for acknowledgement by the backend. Writes
+ * accumulate while the client is offline, and every pending write is applied on top of the cached
+ * documents when a query is read from the cache. Apps can use the listener to throttle their own
+ * writes before reaching the limit set with {@link
+ * FirebaseFirestoreSettings.Builder#setMaxPendingWriteBatches}.
+ */
+public interface PendingWritesListener {
+
+  /**
+   * Called when the number of pending write batches rises above the threshold the listener was
+   * registered with, and again when it drops back to the threshold or below.
+   *
+   * @param pendingWriteBatchCount The number of pending write batches.
+   * @param aboveThreshold Whether the number of pending write batches is above the threshold.
+   */
+  void onThresholdCrossed(long pendingWriteBatchCount, boolean aboveThreshold);
+}
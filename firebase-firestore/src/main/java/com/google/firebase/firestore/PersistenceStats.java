@@ -0,0 +1,198 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.local.CacheStatistics;
+import com.google.firebase.firestore.local.LruGarbageCollector;
+import java.util.Locale;
+
+/**
+ * Statistics about the local cache of Cloud Firestore, as returned by {@link
+ * FirebaseFirestore#getPersistenceStats}. They are meant for monitoring the cache and their exact
+ * values may change between SDK releases.
+ *
+ * <p>Byte sizes are only tracked if persistence is enabled, and are 0 otherwise. They include the
+ * serialized documents, targets and writes, but not the indexes and other overhead of the
+ * database.
+ *
+ * <p>Repeated {@code get(Source.CACHE)} calls for the same query reuse the previous result until a
+ * document that affects it changes. This is only done if persistence is enabled, so the query
+ * result counts are 0 otherwise.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class PersistenceStats {
+  private final long documentCount;
+  private final long documentsByteSize;
+  private final long targetCount;
+  private final long targetsByteSize;
+  private final long pendingWriteBatchCount;
+  private final long pendingWritesByteSize;
+  private final long highestSequenceNumber;
+  private final long queryResultHitCount;
+  private final long queryResultMissCount;
+  private final long queryResultInvalidationCount;
+  private final long queryResultEvictionCount;
+  private final boolean garbageCollectionHasRun;
+  private final int garbageCollectionTargetsRemoved;
+  private final int garbageCollectionDocumentsRemoved;
+  private final long garbageCollectionMillis;
+
+  PersistenceStats(CacheStatistics stats) {
+    this.documentCount = stats.getDocumentCount();
+    this.documentsByteSize = stats.getDocumentsByteSize();
+    this.targetCount = stats.getTargetCount();
+    this.targetsByteSize = stats.getTargetsByteSize();
+    this.pendingWriteBatchCount = stats.getMutationBatchCount();
+    this.pendingWritesByteSize = stats.getMutationBatchesByteSize();
+    this.highestSequenceNumber = stats.getHighestSequenceNumber();
+    this.queryResultHitCount = stats.getQueryResultHitCount();
+    this.queryResultMissCount = stats.getQueryResultMissCount();
+    this.queryResultInvalidationCount = stats.getQueryResultInvalidationCount();
+    this.queryResultEvictionCount = stats.getQueryResultEvictionCount();
+    LruGarbageCollector.Results gc = stats.getLastGarbageCollection();
+    this.garbageCollectionHasRun = gc != null && gc.hasRun();
+    this.garbageCollectionTargetsRemoved = gc != null ? gc.getTargetsRemoved() : 0;
+    this.garbageCollectionDocumentsRemoved = gc != null ? gc.getDocumentsRemoved() : 0;
+    this.garbageCollectionMillis = stats.getLastGarbageCollectionMillis();
+  }
+
+  /**
+   * Returns the number of documents in the cache, including entries that record that a document
+   * does not exist.
+   */
+  public long getDocumentCount() {
+    return documentCount;
+  }
+
+  /** Returns the size of the cached documents, in bytes. */
+  public long getDocumentsByteSize() {
+    return documentsByteSize;
+  }
+
+  /** Returns the number of queries whose results are cached, whether they are active or not. */
+  public long getTargetCount() {
+    return targetCount;
+  }
+
+  /** Returns the size of the cached queries, in bytes. */
+  public long getTargetsByteSize() {
+    return targetsByteSize;
+  }
+
+  /**
+   * Returns the number of batches of writes of the current user that have not been acknowledged
+   * by the backend yet. Each call to {@code set()}, {@code update()} or {@code delete()}, and each
+   * {@link WriteBatch} and transaction, adds one batch.
+   */
+  public long getPendingWriteBatchCount() {
+    return pendingWriteBatchCount;
+  }
+
+  /** Returns the size of the pending writes of the current user, in bytes. */
+  public long getPendingWritesByteSize() {
+    return pendingWritesByteSize;
+  }
+
+  /**
+   * Returns the highest sequence number that was assigned to a cached query. Sequence numbers
+   * increase with every change to the cache and determine which queries and documents are garbage
+   * collected first.
+   */
+  public long getHighestSequenceNumber() {
+    return highestSequenceNumber;
+  }
+
+  /** Returns the number of reads from the cache that reused a previous result of the same query. */
+  public long getQueryResultHitCount() {
+    return queryResultHitCount;
+  }
+
+  /** Returns the number of reads from the cache that had to execute the query. */
+  public long getQueryResultMissCount() {
+    return queryResultMissCount;
+  }
+
+  /**
+   * Returns the number of query results that could no longer be reused because a document that
+   * affects them changed.
+   */
+  public long getQueryResultInvalidationCount() {
+    return queryResultInvalidationCount;
+  }
+
+  /**
+   * Returns the number of query results that were dropped because the reused results exceeded
+   * their size bound.
+   */
+  public long getQueryResultEvictionCount() {
+    return queryResultEvictionCount;
+  }
+
+  /**
+   * Returns whether the cache was garbage collected since the instance was started. The cache is
+   * only collected once it exceeds {@link FirebaseFirestoreSettings#getCacheSizeBytes()}.
+   */
+  public boolean hasGarbageCollectionRun() {
+    return garbageCollectionHasRun;
+  }
+
+  /** Returns the number of queries that were removed by the last garbage collection. */
+  public int getGarbageCollectionTargetsRemoved() {
+    return garbageCollectionTargetsRemoved;
+  }
+
+  /** Returns the number of documents that were removed by the last garbage collection. */
+  public int getGarbageCollectionDocumentsRemoved() {
+    return garbageCollectionDocumentsRemoved;
+  }
+
+  /** Returns how long the last garbage collection took, in milliseconds. */
+  public long getGarbageCollectionMillis() {
+    return garbageCollectionMillis;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "PersistenceStats{documentCount=%d, documentsByteSize=%d, targetCount=%d, "
+            + "targetsByteSize=%d, pendingWriteBatchCount=%d, pendingWritesByteSize=%d, "
+            + "highestSequenceNumber=%d, queryResultHitCount=%d, queryResultMissCount=%d, "
+            + "queryResultInvalidationCount=%d, queryResultEvictionCount=%d, "
+            + "garbageCollectionHasRun=%b, "
+            + "garbageCollectionTargetsRemoved=%d, garbageCollectionDocumentsRemoved=%d, "
+            + "garbageCollectionMillis=%d}",
+        documentCount,
+        documentsByteSize,
+        targetCount,
+        targetsByteSize,
+        pendingWriteBatchCount,
+        pendingWritesByteSize,
+        highestSequenceNumber,
+        queryResultHitCount,
+        queryResultMissCount,
+        queryResultInvalidationCount,
+        queryResultEvictionCount,
+        garbageCollectionHasRun,
+        garbageCollectionTargetsRemoved,
+        garbageCollectionDocumentsRemoved,
+        garbageCollectionMillis);
+  }
+}
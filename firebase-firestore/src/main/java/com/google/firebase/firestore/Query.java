@@ -36,6 +36,7 @@ import com.google.firebase.firestore.core.ListenerRegistrationImpl;
 import com.google.firebase.firestore.core.OrderBy;
 import com.google.firebase.firestore.core.QueryListener;
 import com.google.firebase.firestore.core.ViewSnapshot;
+import com.google.firebase.firestore.local.QueryStatsCollector;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
@@ -845,6 +846,27 @@ public class Query {
     }
   }
 
+  /**
+   * Executes the query against the local cache and returns statistics about its execution, e.g.
+   * whether the query could be executed without scanning its collection, how many documents were
+   * read and how long each phase took. Use this to find out why a query that reads from the cache
+   * is slow.
+   *
+   * <p>The query is always executed, even if the result of an earlier {@code get(Source.CACHE)} is
+   * still cached. The results themselves are not returned.
+   *
+   * @return A Task that will be resolved with the statistics of the query execution.
+   */
+  @NonNull
+  public Task<QueryExecutionStats> explainFromCache() {
+    return firestore
+        .getClient()
+        .explainQueryFromLocalCache(query)
+        .continueWith(
+            Executors.DIRECT_EXECUTOR,
+            (Task<QueryStatsCollector> stats) -> new QueryExecutionStats(stats.getResult()));
+  }
+
   private Task<QuerySnapshot> getViaSnapshotListener(Source source) {
     final TaskCompletionSource<QuerySnapshot> res = new TaskCompletionSource<>();
     final TaskCompletionSource<ListenerRegistration> registration = new TaskCompletionSource<>();
@@ -0,0 +1,132 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.local.QueryStatsCollector;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics about the execution of a query against the local cache, as returned by {@link
+ * Query#explainFromCache}. They are meant for debugging slow queries and their exact values may
+ * change between SDK releases.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class QueryExecutionStats {
+  private final boolean indexFree;
+  private final long rowsScanned;
+  private final long documentsDecoded;
+  private final long documentsMatched;
+  private final long mutationBatchesApplied;
+  private final long remoteDocumentReadMicros;
+  private final long mutationOverlayMicros;
+  private final long viewComputationMicros;
+  private final long totalMicros;
+
+  QueryExecutionStats(QueryStatsCollector stats) {
+    this.indexFree = stats.isIndexFree();
+    this.rowsScanned = stats.getRowsScanned();
+    this.documentsDecoded = stats.getDocumentsDecoded();
+    this.documentsMatched = stats.getDocumentsMatched();
+    this.mutationBatchesApplied = stats.getMutationBatchesApplied();
+    this.remoteDocumentReadMicros = toMicros(stats.getRemoteDocumentReadNanos());
+    this.mutationOverlayMicros = toMicros(stats.getMutationOverlayNanos());
+    this.viewComputationMicros = toMicros(stats.getViewComputationNanos());
+    this.totalMicros = toMicros(stats.getQueryEngineNanos() + stats.getViewComputationNanos());
+  }
+
+  /**
+   * Returns whether the query was executed without scanning its collection. This is possible once
+   * the query has been in sync with the backend: Cloud Firestore then only reads the documents that
+   * matched the query back then, plus the documents that have changed since. Otherwise, all
+   * documents in the collection (or collection group) are read and matched against the query.
+   */
+  public boolean isIndexFree() {
+    return indexFree;
+  }
+
+  /**
+   * Returns the number of entries that were read from the local cache, including entries that did
+   * not match the query, e.g. documents in subcollections.
+   */
+  public long getRowsScanned() {
+    return rowsScanned;
+  }
+
+  /**
+   * Returns the number of documents that were decoded from their serialized form. This is zero if
+   * persistence is disabled, since the in-memory cache keeps documents decoded.
+   */
+  public long getDocumentsDecoded() {
+    return documentsDecoded;
+  }
+
+  /** Returns the number of documents that matched the query, before applying any limit. */
+  public long getDocumentsMatched() {
+    return documentsMatched;
+  }
+
+  /** Returns the number of batches of pending writes that were applied to the cached documents. */
+  public long getMutationBatchesApplied() {
+    return mutationBatchesApplied;
+  }
+
+  /** Returns the time spent reading documents from the local cache, in microseconds. */
+  public long getRemoteDocumentReadMicros() {
+    return remoteDocumentReadMicros;
+  }
+
+  /** Returns the time spent applying pending writes to the cached documents, in microseconds. */
+  public long getMutationOverlayMicros() {
+    return mutationOverlayMicros;
+  }
+
+  /** Returns the time spent sorting and limiting the matching documents, in microseconds. */
+  public long getViewComputationMicros() {
+    return viewComputationMicros;
+  }
+
+  /** Returns the total time it took to execute the query, in microseconds. */
+  public long getTotalMicros() {
+    return totalMicros;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "QueryExecutionStats{indexFree=%b, rowsScanned=%d, documentsDecoded=%d, "
+            + "documentsMatched=%d, mutationBatchesApplied=%d, remoteDocumentReadMicros=%d, "
+            + "mutationOverlayMicros=%d, viewComputationMicros=%d, totalMicros=%d}",
+        indexFree,
+        rowsScanned,
+        documentsDecoded,
+        documentsMatched,
+        mutationBatchesApplied,
+        remoteDocumentReadMicros,
+        mutationOverlayMicros,
+        viewComputationMicros,
+        totalMicros);
+  }
+
+  private static long toMicros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
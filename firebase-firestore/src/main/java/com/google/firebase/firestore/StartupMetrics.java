@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.core.StartupTrace;
+import com.google.firebase.firestore.core.StartupTrace.Phase;
+
+/**
+ * A snapshot of how long the phases of Cloud Firestore's startup took, from the first use of the
+ * {@link FirebaseFirestore} instance until the first snapshot was delivered to a listener.
+ *
+ * <p>Some phases run concurrently (the network channel is set up while the local cache is being
+ * opened), so the durations do not necessarily add up to the time to the first snapshot. All
+ * durations are in milliseconds, and are -1 for phases that have not finished yet.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class StartupMetrics {
+  private final long channelSetupMillis;
+  private final long openPersistenceMillis;
+  private final long awaitUserMillis;
+  private final long startLocalStoreMillis;
+  private final long startRemoteStoreMillis;
+  private final long timeToFirstSnapshotMillis;
+
+  StartupMetrics(StartupTrace trace) {
+    this.channelSetupMillis = trace.getPhaseDurationMillis(Phase.CHANNEL_READY);
+    this.openPersistenceMillis = trace.getPhaseDurationMillis(Phase.OPEN_PERSISTENCE);
+    this.awaitUserMillis = trace.getPhaseDurationMillis(Phase.AWAIT_USER);
+    this.startLocalStoreMillis = trace.getPhaseDurationMillis(Phase.START_LOCAL_STORE);
+    this.startRemoteStoreMillis = trace.getPhaseDurationMillis(Phase.START_REMOTE_STORE);
+    this.timeToFirstSnapshotMillis = trace.getTimeToFirstSnapshotMillis();
+  }
+
+  /** Returns how long it took to set up the network channel to the backend. */
+  public long getChannelSetupMillis() {
+    return channelSetupMillis;
+  }
+
+  /** Returns how long it took to open the local cache, including any schema migrations. */
+  public long getOpenPersistenceMillis() {
+    return openPersistenceMillis;
+  }
+
+  /** Returns how long Cloud Firestore waited for the initial user to be known. */
+  public long getAwaitUserMillis() {
+    return awaitUserMillis;
+  }
+
+  /** Returns how long it took to read the pending writes and targets from the local cache. */
+  public long getStartLocalStoreMillis() {
+    return startLocalStoreMillis;
+  }
+
+  /** Returns how long it took to start the network connection to the backend. */
+  public long getStartRemoteStoreMillis() {
+    return startRemoteStoreMillis;
+  }
+
+  /** Returns the time from the first use of Cloud Firestore until the first snapshot. */
+  public long getTimeToFirstSnapshotMillis() {
+    return timeToFirstSnapshotMillis;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "StartupMetrics{channelSetupMillis="
+        + channelSetupMillis
+        + ", openPersistenceMillis="
+        + openPersistenceMillis
+        + ", awaitUserMillis="
+        + awaitUserMillis
+        + ", startLocalStoreMillis="
+        + startLocalStoreMillis
+        + ", startRemoteStoreMillis="
+        + startRemoteStoreMillis
+        + ", timeToFirstSnapshotMillis="
+        + timeToFirstSnapshotMillis
+        + '}';
+  }
+}
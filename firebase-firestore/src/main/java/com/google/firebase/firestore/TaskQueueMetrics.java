@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.util.AsyncQueueMetrics;
+import com.google.firebase.firestore.util.AsyncQueueMetrics.OriginStats;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the metrics that Cloud Firestore records for the tasks on its internal worker
+ * queue, on which it performs all local reads and writes and processes all changes from the
+ * backend.
+ *
+ * <p>Tasks are grouped by their origin, e.g. {@code "LISTEN"} for registering a snapshot listener,
+ * {@code "GRPC_CALLBACK"} for processing a response from the backend, or {@code
+ * "GARBAGE_COLLECTION"} for a scheduled garbage collection run. For every origin, the time tasks
+ * waited in the queue before they started and the time they ran are counted in histograms.
+ *
+ * <p>Metrics are only recorded while a {@link TaskQueueMetricsListener} is registered via {@link
+ * FirebaseFirestore#addTaskQueueMetricsListener}.
+ *
+ * <p><b>Subclassing Note</b>: Cloud Firestore classes are not meant to be subclassed except for use
+ * in test mocks. Subclassing is not supported in production code and new SDK releases may break
+ * code that does so.
+ */
+public class TaskQueueMetrics {
+  private final int queueDepth;
+  private final int maxQueueDepth;
+  private final Map<String, OriginStats> statsByOrigin;
+
+  TaskQueueMetrics(AsyncQueueMetrics metrics) {
+    this.queueDepth = metrics.getQueueDepth();
+    this.maxQueueDepth = metrics.getMaxQueueDepth();
+    this.statsByOrigin = metrics.getStatsByOrigin();
+  }
+
+  /**
+   * Returns the inclusive upper bounds of the histogram buckets, in milliseconds. The histograms
+   * have one more bucket than there are bounds, which counts all times above the last bound.
+   */
+  @NonNull
+  public static List<Long> getHistogramBucketUpperBoundsMillis() {
+    return toList(AsyncQueueMetrics.getBucketUpperBoundsMillis());
+  }
+
+  /** Returns the number of tasks that were waiting to be run when this snapshot was taken. */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /** Returns the largest number of tasks that were waiting to be run at the same time. */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /** Returns the origins of all tasks that have run since metrics were enabled. */
+  @NonNull
+  public Set<String> getOrigins() {
+    return Collections.unmodifiableSet(statsByOrigin.keySet());
+  }
+
+  /** Returns the number of tasks from the given origin that have run. */
+  public long getTaskCount(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? 0 : stats.getTaskCount();
+  }
+
+  /**
+   * Returns the number of tasks from the given origin that ran for longer than the smallest
+   * threshold of any registered listener.
+   */
+  public long getLongTaskCount(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? 0 : stats.getLongTaskCount();
+  }
+
+  /** Returns the longest time a task from the given origin waited before it started. */
+  public long getMaxWaitMillis(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? 0 : stats.getMaxWaitMillis();
+  }
+
+  /** Returns the longest time a task from the given origin ran. */
+  public long getMaxRunMillis(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? 0 : stats.getMaxRunMillis();
+  }
+
+  /**
+   * Returns the number of tasks from the given origin per wait time bucket. See {@link
+   * #getHistogramBucketUpperBoundsMillis} for the bucket bounds.
+   */
+  @NonNull
+  public List<Long> getWaitTimeHistogram(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? emptyHistogram() : toList(stats.getWaitHistogram());
+  }
+
+  /**
+   * Returns the number of tasks from the given origin per run time bucket. See {@link
+   * #getHistogramBucketUpperBoundsMillis} for the bucket bounds.
+   */
+  @NonNull
+  public List<Long> getRunTimeHistogram(@NonNull String origin) {
+    OriginStats stats = statsByOrigin.get(origin);
+    return stats == null ? emptyHistogram() : toList(stats.getRunHistogram());
+  }
+
+  private static List<Long> emptyHistogram() {
+    return toList(new long[AsyncQueueMetrics.getBucketUpperBoundsMillis().length + 1]);
+  }
+
+  private static List<Long> toList(long[] values) {
+    List<Long> list = new ArrayList<>(values.length);
+    for (long value : values) {
+      list.add(value);
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    StringBuilder builder =
+        new StringBuilder("TaskQueueMetrics{queueDepth=")
+            .append(queueDepth)
+            .append(", maxQueueDepth=")
+            .append(maxQueueDepth);
+    for (Map.Entry<String, OriginStats> entry : statsByOrigin.entrySet()) {
+      OriginStats stats = entry.getValue();
+      builder
+          .append(", ")
+          .append(entry.getKey())
+          .append("={tasks=")
+          .append(stats.getTaskCount())
+          .append(", longTasks=")
+          .append(stats.getLongTaskCount())
+          .append(", maxWaitMillis=")
+          .append(stats.getMaxWaitMillis())
+          .append(", maxRunMillis=")
+          .append(stats.getMaxRunMillis())
+          .append('}');
+    }
+    return builder.append('}').toString();
+  }
+}
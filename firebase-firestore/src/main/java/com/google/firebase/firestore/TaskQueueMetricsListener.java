@@ -0,0 +1,35 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A listener for tasks that occupied Cloud Firestore's internal worker queue for longer than a
+ * threshold. Long tasks delay all other work, including the delivery of snapshots to listeners.
+ */
+public interface TaskQueueMetricsListener {
+
+  /**
+   * Called after a task ran for longer than the threshold the listener was registered with.
+   *
+   * @param origin The origin of the task. See {@link TaskQueueMetrics} for details.
+   * @param waitMillis How long the task waited in the queue before it started.
+   * @param runMillis How long the task ran.
+   * @param metrics The metrics of the worker queue, including the long task.
+   */
+  void onLongTask(
+      @NonNull String origin, long waitMillis, long runMillis, @NonNull TaskQueueMetrics metrics);
+}
@@ -14,6 +14,7 @@
 
 package com.google.firebase.firestore;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.firebase.firestore.util.Assert.fail;
 
@@ -24,10 +25,13 @@ import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.core.UserData.ParsedSetData;
 import com.google.firebase.firestore.core.UserData.ParsedUpdateData;
 import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.NoDocument;
 import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -180,15 +184,20 @@ public class Transaction {
   }
 
   /**
-   * Reads the document referenced by the provided {@code DocumentReference}
+   * Reads the documents referenced by the provided {@code DocumentReference DocumentReferences} in
+   * a single lookup.
    *
-   * @param documentRef The {@code DocumentReference} to read.
-   * @return A Task that will be resolved with the contents of the Document at this {@code
-   *     DocumentReference}.
+   * @param documentRefs The {@code DocumentReference DocumentReferences} to read.
+   * @return A Task that will be resolved with the contents of the Documents, in the order of the
+   *     given references.
    */
-  private Task<DocumentSnapshot> getAsync(DocumentReference documentRef) {
+  private Task<List<DocumentSnapshot>> getAllAsync(List<DocumentReference> documentRefs) {
+    List<DocumentKey> keys = new ArrayList<>(documentRefs.size());
+    for (DocumentReference documentRef : documentRefs) {
+      keys.add(documentRef.getKey());
+    }
     return transaction
-        .lookup(Collections.singletonList(documentRef.getKey()))
+        .lookup(keys)
         .continueWith(
             Executors.DIRECT_EXECUTOR,
             task -> {
@@ -196,21 +205,32 @@ public class Transaction {
                 throw task.getException();
               }
               List<MaybeDocument> docs = task.getResult();
-              if (docs.size() != 1) {
+              if (docs.size() != keys.size()) {
                 throw fail("Mismatch in docs returned from document lookup.");
               }
-              MaybeDocument doc = docs.get(0);
-              if (doc instanceof Document) {
-                return DocumentSnapshot.fromDocument(
-                    firestore, (Document) doc, /*fromCache=*/ false, /*hasPendingWrites=*/ false);
-              } else if (doc instanceof NoDocument) {
-                return DocumentSnapshot.fromNoDocument(
-                    firestore, doc.getKey(), /*fromCache=*/ false, /*hasPendingWrites=*/ false);
-              } else {
-                throw fail(
-                    "BatchGetDocumentsRequest returned unexpected document type: "
-                        + doc.getClass().getCanonicalName());
+              List<DocumentSnapshot> snapshots = new ArrayList<>(docs.size());
+              for (MaybeDocument doc : docs) {
+                if (doc instanceof Document) {
+                  snapshots.add(
+                      DocumentSnapshot.fromDocument(
+                          firestore,
+                          (Document) doc,
+                          /*fromCache=*/ false,
+                          /*hasPendingWrites=*/ false));
+                } else if (doc instanceof NoDocument) {
+                  snapshots.add(
+                      DocumentSnapshot.fromNoDocument(
+                          firestore,
+                          doc.getKey(),
+                          /*fromCache=*/ false,
+                          /*hasPendingWrites=*/ false));
+                } else {
+                  throw fail(
+                      "BatchGetDocumentsRequest returned unexpected document type: "
+                          + doc.getClass().getCanonicalName());
+                }
               }
+              return snapshots;
             });
   }
 
@@ -224,8 +244,30 @@ public class Transaction {
   public DocumentSnapshot get(@NonNull DocumentReference documentRef)
       throws FirebaseFirestoreException {
     firestore.validateReference(documentRef);
+    return await(getAllAsync(Collections.singletonList(documentRef))).get(0);
+  }
+
+  /**
+   * Reads the documents referenced by the provided {@code DocumentReference DocumentReferences} in
+   * a single lookup.
+   *
+   * @param documentRefs The {@code DocumentReference DocumentReferences} to read.
+   * @return The contents of the Documents, in the order of the given references.
+   */
+  @NonNull
+  public List<DocumentSnapshot> getAll(@NonNull DocumentReference... documentRefs)
+      throws FirebaseFirestoreException {
+    checkNotNull(documentRefs, "Provided document references must not be null.");
+    checkArgument(documentRefs.length > 0, "Provided document references must not be empty.");
+    for (DocumentReference documentRef : documentRefs) {
+      firestore.validateReference(documentRef);
+    }
+    return await(getAllAsync(Arrays.asList(documentRefs)));
+  }
+
+  private static <T> T await(Task<T> task) throws FirebaseFirestoreException {
     try {
-      return Tasks.await(getAsync(documentRef));
+      return Tasks.await(task);
     } catch (ExecutionException ee) {
       if (ee.getCause() instanceof FirebaseFirestoreException) {
         throw ((FirebaseFirestoreException) ee.getCause());
@@ -0,0 +1,107 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.common.base.MoreObjects;
+
+/**
+ * Options to customize the behavior of a transaction run with {@link
+ * FirebaseFirestore#runTransaction(TransactionOptions, Transaction.Function)}.
+ */
+public final class TransactionOptions {
+  /** A Builder for creating {@code TransactionOptions}. */
+  public static final class Builder {
+    private boolean readOnly;
+
+    /** Constructs a new {@code TransactionOptions} Builder object. */
+    public Builder() {}
+
+    /**
+     * Constructs a new {@code TransactionOptions} Builder based on an existing {@code
+     * TransactionOptions} object.
+     */
+    public Builder(@NonNull TransactionOptions options) {
+      checkNotNull(options, "Provided options must not be null.");
+      readOnly = options.readOnly;
+    }
+
+    /**
+     * Sets whether the transaction only reads documents.
+     *
+     * <p>A read-only transaction reads all documents at the same point in time, so that they are
+     * consistent with each other, and completes without a commit round trip to the backend. Reads
+     * that are issued concurrently are sent to the backend together. Writing in a read-only
+     * transaction fails the transaction.
+     *
+     * @return An options object on which read-only mode is configured as specified by the given
+     *     {@code value}.
+     */
+    @NonNull
+    public Builder setReadOnly(boolean value) {
+      this.readOnly = value;
+      return this;
+    }
+
+    /** @return boolean indicating whether the transaction only reads documents. */
+    public boolean isReadOnly() {
+      return readOnly;
+    }
+
+    @NonNull
+    public TransactionOptions build() {
+      return new TransactionOptions(this);
+    }
+  }
+
+  private final boolean readOnly;
+
+  /** Constructs a {@code TransactionOptions} object based on the values in the Builder. */
+  private TransactionOptions(Builder builder) {
+    readOnly = builder.readOnly;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    TransactionOptions that = (TransactionOptions) o;
+    return readOnly == that.readOnly;
+  }
+
+  @Override
+  public int hashCode() {
+    return readOnly ? 1 : 0;
+  }
+
+  @Override
+  @NonNull
+  public String toString() {
+    return MoreObjects.toStringHelper(this).add("readOnly", readOnly).toString();
+  }
+
+  /** Returns whether the transaction only reads documents. */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+}
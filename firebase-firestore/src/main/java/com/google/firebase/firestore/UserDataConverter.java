@@ -80,7 +80,13 @@ public final class UserDataConverter {
    */
   public ParsedSetData parseSetData(Object input) {
     ParseAccumulator accumulator = new ParseAccumulator(UserData.Source.Set);
-    ObjectValue updateData = convertAndParseDocumentData(input, accumulator.rootContext());
+    @Nullable ObjectValue updateData = null;
+    if (input instanceof Map) {
+      updateData = (ObjectValue) new PlainDataParser(accumulator).parse(input);
+    }
+    if (updateData == null) {
+      updateData = convertAndParseDocumentData(input, accumulator.rootContext());
+    }
     return accumulator.toSetData(updateData);
   }
 
@@ -209,7 +215,10 @@ public final class UserDataConverter {
         new ParseAccumulator(
             allowArrays ? UserData.Source.ArrayArgument : UserData.Source.Argument);
 
-    @Nullable FieldValue parsed = convertAndParseFieldData(input, accumulator.rootContext());
+    @Nullable FieldValue parsed = new PlainDataParser(accumulator).parse(input);
+    if (parsed == null) {
+      parsed = convertAndParseFieldData(input, accumulator.rootContext());
+    }
     hardAssert(parsed != null, "Parsed data should not be null.");
     hardAssert(
         accumulator.getFieldTransforms().isEmpty(),
@@ -465,4 +474,169 @@ public final class UserDataConverter {
     }
     return result;
   }
+
+  /**
+   * A fast path for parsing the common case of user data that only consists of maps with string
+   * keys, lists and the scalar types that {@link #parseScalarValue} supports.
+   *
+   * <p>Unlike the regular path, it does not copy the input via {@link CustomClassMapper} first, and
+   * it does not create a {@link ParseContext} and {@link FieldPath} for every value. Paths are
+   * tracked as a stack of segments and only turned into a {@code FieldPath} for FieldValue
+   * sentinels. Since it does not record a field mask, it is only used for sources that do not need
+   * one (non-merge sets and query arguments).
+   *
+   * <p>The parser gives up on any input that it does not handle or that is invalid, in which case
+   * {@link #parse} returns null and the caller falls back to the regular path, which also produces
+   * the same errors as before. Sentinels are only applied to the accumulator once the whole input
+   * has been parsed, so that giving up does not leave any state behind.
+   */
+  private final class PlainDataParser {
+    /**
+     * The maximum nesting depth handled by the fast path. Deeper input is left to the regular path,
+     * which reports object cycles.
+     */
+    private static final int MAX_DEPTH = 100;
+
+    private final ParseAccumulator accumulator;
+    private final ParseContext rootContext;
+    private final boolean isWrite;
+    private final boolean allowNestedArrays;
+
+    /** The path of the value that is currently parsed, if it is not inside an array. */
+    private final ArrayList<String> currentSegments = new ArrayList<>();
+
+    @Nullable private List<FieldPath> sentinelPaths;
+    @Nullable private List<com.google.firebase.firestore.FieldValue> sentinels;
+    private boolean gaveUp;
+
+    PlainDataParser(ParseAccumulator accumulator) {
+      this.accumulator = accumulator;
+      this.rootContext = accumulator.rootContext();
+      this.isWrite = rootContext.isWrite();
+      this.allowNestedArrays = accumulator.getDataSource() == UserData.Source.ArrayArgument;
+    }
+
+    /**
+     * Returns the parsed input, or null if the input needs to be parsed via the regular path.
+     * Should only be called once.
+     */
+    @Nullable
+    FieldValue parse(Object input) {
+      FieldValue result = parseValue(input, /* arrayElement= */ false, /* insideArray= */ false, 0);
+      if (gaveUp || result == null) {
+        return null;
+      }
+      if (sentinels != null) {
+        for (int i = 0; i < sentinels.size(); ++i) {
+          parseSentinelFieldValue(sentinels.get(i), rootContext.childContext(sentinelPaths.get(i)));
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Parses a single value. Returns null for sentinels, which are not part of the parsed data, and
+     * sets {@link #gaveUp} if the input cannot be parsed by the fast path.
+     */
+    @Nullable
+    private FieldValue parseValue(
+        Object input, boolean arrayElement, boolean insideArray, int depth) {
+      if (depth > MAX_DEPTH) {
+        gaveUp = true;
+        return null;
+      } else if (input instanceof Map) {
+        return parseMap((Map<?, ?>) input, insideArray, depth);
+      } else if (input instanceof List) {
+        if (arrayElement && !allowNestedArrays) {
+          gaveUp = true;
+          return null;
+        }
+        return parseList((List<?>) input, depth);
+      } else if (input instanceof com.google.firebase.firestore.FieldValue) {
+        if (!isWrite || insideArray || input instanceof DeleteFieldValue) {
+          // Leave it to the regular path to report the error.
+          gaveUp = true;
+          return null;
+        }
+        if (sentinels == null) {
+          sentinels = new ArrayList<>();
+          sentinelPaths = new ArrayList<>();
+        }
+        sentinels.add((com.google.firebase.firestore.FieldValue) input);
+        sentinelPaths.add(FieldPath.fromSegments(new ArrayList<>(currentSegments)));
+        return null;
+      } else if (input instanceof DocumentReference) {
+        FirebaseFirestore firestore = ((DocumentReference) input).getFirestore();
+        if (firestore != null && !firestore.getDatabaseId().equals(databaseId)) {
+          gaveUp = true;
+          return null;
+        }
+        return parseScalarValue(input, rootContext);
+      } else if (input == null
+          || input instanceof String
+          || input instanceof Long
+          || input instanceof Integer
+          || input instanceof Double
+          || input instanceof Boolean
+          || input instanceof Float
+          || input instanceof Date
+          || input instanceof Timestamp
+          || input instanceof GeoPoint
+          || input instanceof Blob) {
+        // The context is only used for errors, which none of these types produce.
+        return parseScalarValue(input, rootContext);
+      } else {
+        // POJOs and unsupported types go through CustomClassMapper.
+        gaveUp = true;
+        return null;
+      }
+    }
+
+    @Nullable
+    private ObjectValue parseMap(Map<?, ?> map, boolean insideArray, int depth) {
+      if (map.isEmpty()) {
+        return ObjectValue.emptyObject();
+      }
+      Map<String, FieldValue> result = new HashMap<>(map.size() * 4 / 3 + 1);
+      for (Entry<?, ?> entry : map.entrySet()) {
+        if (!(entry.getKey() instanceof String)) {
+          gaveUp = true;
+          return null;
+        }
+        String key = (String) entry.getKey();
+        if (key.isEmpty() || (isWrite && key.startsWith("__") && key.endsWith("__"))) {
+          gaveUp = true;
+          return null;
+        }
+        currentSegments.add(key);
+        @Nullable
+        FieldValue parsedValue =
+            parseValue(entry.getValue(), /* arrayElement= */ false, insideArray, depth + 1);
+        currentSegments.remove(currentSegments.size() - 1);
+        if (gaveUp) {
+          return null;
+        }
+        if (parsedValue != null) {
+          result.put(key, parsedValue);
+        }
+      }
+      return ObjectValue.fromMap(result);
+    }
+
+    @Nullable
+    private ArrayValue parseList(List<?> list, int depth) {
+      List<FieldValue> result = new ArrayList<>(list.size());
+      for (Object element : list) {
+        // Sentinels are not supported inside arrays, so the parsed element is never null unless
+        // the parser gave up.
+        FieldValue parsedElement =
+            parseValue(element, /* arrayElement= */ true, /* insideArray= */ true, depth + 1);
+        if (gaveUp) {
+          return null;
+        }
+        result.add(parsedElement);
+      }
+      return ArrayValue.fromList(result);
+    }
+  }
 }
@@ -0,0 +1,273 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.FirebaseFirestoreException.Code;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.remote.Datastore;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.DelayedTask;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
+import com.google.firebase.firestore.util.ExponentialBackoff;
+import com.google.firebase.firestore.util.Logger;
+import com.google.firebase.firestore.util.RateLimiter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BulkWriter sends independent, non-atomic writes directly to the backend via {@link
+ * Datastore#commit}, bypassing the local mutation queue and the ordered write stream.
+ *
+ * <p>Every write is committed on its own, so a failure only affects the document it was written
+ * to. Up to {@code maxConcurrentCommits} commits are in flight at any time, and the rate at which
+ * new commits are started is controlled by a {@link RateLimiter} that ramps up while the backend
+ * keeps up and backs off when it reports RESOURCE_EXHAUSTED or UNAVAILABLE. Writes that fail with a
+ * transient error are retried individually with exponential backoff.
+ *
+ * <p>All methods must be called on the AsyncQueue.
+ */
+public final class BulkWriter {
+  private static final String LOG_TAG = "BulkWriter";
+
+  /** The default number of commits that may be in flight at the same time. */
+  public static final int DEFAULT_MAX_CONCURRENT_COMMITS = 10;
+
+  /** The maximum number of times a single write is attempted before its Task fails. */
+  static final int MAX_ATTEMPTS = 10;
+
+  /** The number of operations per second the rate limiter starts with ("500/50/5" rule). */
+  static final int INITIAL_OPS_PER_SECOND = 500;
+
+  /** The ramp-up factor that is applied every {@link #RATE_LIMITER_MULTIPLIER_MILLIS}. */
+  static final double RATE_LIMITER_MULTIPLIER = 1.5;
+
+  static final long RATE_LIMITER_MULTIPLIER_MILLIS = 5 * 60 * 1000;
+
+  /** The number of operations per second at which the rate limiter stops ramping up. */
+  static final int MAX_OPS_PER_SECOND = 10000;
+
+  /** The lowest number of operations per second that backing off can reduce the rate to. */
+  static final int MIN_OPS_PER_SECOND = 20;
+
+  /** A single document write along with the Task that is resolved once it is committed. */
+  private final class Operation {
+    private final List<Mutation> mutations;
+    private final TaskCompletionSource<Void> source;
+    @Nullable private ExponentialBackoff backoff;
+    private int attempts;
+
+    private Operation(List<Mutation> mutations, TaskCompletionSource<Void> source) {
+      this.mutations = mutations;
+      this.source = source;
+    }
+
+    private ExponentialBackoff getBackoff() {
+      if (backoff == null) {
+        backoff = new ExponentialBackoff(asyncQueue, TimerId.RETRY_BULK_WRITE);
+      }
+      return backoff;
+    }
+  }
+
+  private final Datastore datastore;
+  private final AsyncQueue asyncQueue;
+  private final RateLimiter rateLimiter;
+  private final int maxConcurrentCommits;
+
+  /** Operations that have not been sent yet (or that are waiting to be retried), in FIFO order. */
+  private final ArrayDeque<Operation> pendingOperations = new ArrayDeque<>();
+
+  /** The Tasks of all operations that have not completed yet. Used to implement flush(). */
+  private final Set<Task<Void>> outstandingTasks = new HashSet<>();
+
+  private int inFlightCommits;
+  @Nullable private DelayedTask throttleTask;
+
+  // Counters exposed for tests and debugging.
+  private int successfulWrites;
+  private int failedWrites;
+  private int retriedWrites;
+
+  public BulkWriter(Datastore datastore, AsyncQueue asyncQueue) {
+    this(
+        datastore,
+        asyncQueue,
+        DEFAULT_MAX_CONCURRENT_COMMITS,
+        new RateLimiter(
+            INITIAL_OPS_PER_SECOND,
+            RATE_LIMITER_MULTIPLIER,
+            RATE_LIMITER_MULTIPLIER_MILLIS,
+            MIN_OPS_PER_SECOND,
+            MAX_OPS_PER_SECOND,
+            System.currentTimeMillis()));
+  }
+
+  @VisibleForTesting
+  BulkWriter(
+      Datastore datastore,
+      AsyncQueue asyncQueue,
+      int maxConcurrentCommits,
+      RateLimiter rateLimiter) {
+    this.datastore = datastore;
+    this.asyncQueue = asyncQueue;
+    this.maxConcurrentCommits = maxConcurrentCommits;
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Schedules the mutations for a single document to be committed. The provided source is resolved
+   * once the commit succeeds, or rejected once it fails permanently or runs out of retries.
+   */
+  public void write(List<Mutation> mutations, TaskCompletionSource<Void> source) {
+    asyncQueue.verifyIsCurrentThread();
+    Task<Void> task = source.getTask();
+    outstandingTasks.add(task);
+    task.addOnCompleteListener(asyncQueue.getExecutor(), t -> outstandingTasks.remove(t));
+    pendingOperations.add(new Operation(mutations, source));
+    sendPendingOperations();
+  }
+
+  /**
+   * Returns a Task that resolves once all writes that were scheduled before this call have either
+   * been committed or failed.
+   */
+  public Task<Void> flush() {
+    asyncQueue.verifyIsCurrentThread();
+    if (outstandingTasks.isEmpty()) {
+      return Tasks.forResult(null);
+    }
+    return Tasks.whenAllComplete(new ArrayList<>(outstandingTasks))
+        .continueWith(asyncQueue.getExecutor(), task -> null);
+  }
+
+  @VisibleForTesting
+  int getInFlightCommitCount() {
+    return inFlightCommits;
+  }
+
+  @VisibleForTesting
+  int getPendingOperationCount() {
+    return pendingOperations.size();
+  }
+
+  @VisibleForTesting
+  int getSuccessfulWriteCount() {
+    return successfulWrites;
+  }
+
+  @VisibleForTesting
+  int getFailedWriteCount() {
+    return failedWrites;
+  }
+
+  @VisibleForTesting
+  int getRetriedWriteCount() {
+    return retriedWrites;
+  }
+
+  /**
+   * Starts commits for as many pending operations as the concurrency bound and the rate limiter
+   * allow. If the rate limiter is out of capacity, schedules itself to run again once it has
+   * refilled.
+   */
+  private void sendPendingOperations() {
+    while (!pendingOperations.isEmpty() && inFlightCommits < maxConcurrentCommits) {
+      long now = System.currentTimeMillis();
+      if (!rateLimiter.tryMakeRequest(1, now)) {
+        scheduleThrottledSend(rateLimiter.getNextRequestDelayMs(1, now));
+        return;
+      }
+      commit(pendingOperations.remove());
+    }
+  }
+
+  private void scheduleThrottledSend(long delayMs) {
+    if (throttleTask != null) {
+      return;
+    }
+    throttleTask =
+        asyncQueue.enqueueAfterDelay(
+            TimerId.BULK_WRITER_THROTTLE,
+            delayMs,
+            () -> {
+              throttleTask = null;
+              sendPendingOperations();
+            });
+  }
+
+  private void commit(Operation operation) {
+    ++inFlightCommits;
+    ++operation.attempts;
+    datastore
+        .commit(operation.mutations)
+        .addOnCompleteListener(
+            asyncQueue.getExecutor(),
+            task -> {
+              --inFlightCommits;
+              if (task.isSuccessful()) {
+                ++successfulWrites;
+                operation.source.setResult(null);
+              } else {
+                handleCommitError(operation, task.getException());
+              }
+              sendPendingOperations();
+            });
+  }
+
+  private void handleCommitError(Operation operation, Exception e) {
+    Code code =
+        e instanceof FirebaseFirestoreException
+            ? ((FirebaseFirestoreException) e).getCode()
+            : Code.UNKNOWN;
+
+    if (code == Code.RESOURCE_EXHAUSTED || code == Code.UNAVAILABLE) {
+      rateLimiter.backOff(System.currentTimeMillis());
+    }
+
+    boolean retryable = code == Code.ABORTED || !Datastore.isPermanentError(code);
+    if (!retryable || operation.attempts >= MAX_ATTEMPTS) {
+      Logger.debug(
+          LOG_TAG,
+          "Write to %s failed after %d attempt(s): %s",
+          operation.mutations.get(0).getKey(),
+          operation.attempts,
+          e);
+      ++failedWrites;
+      operation.source.setException(e);
+      return;
+    }
+
+    ++retriedWrites;
+    ExponentialBackoff backoff = operation.getBackoff();
+    if (code == Code.RESOURCE_EXHAUSTED) {
+      backoff.resetToMax();
+    }
+    backoff.backoffAndRun(
+        () -> {
+          // Retries go to the front of the queue so that a document is not starved by newer writes.
+          pendingOperations.addFirst(operation);
+          sendPendingOperations();
+        });
+  }
+}
@@ -23,6 +23,7 @@ public final class DatabaseInfo {
   private final String persistenceKey;
   private final String host;
   private final boolean sslEnabled;
+  private final boolean compressionEnabled;
 
   /**
    * Constructs a new DatabaseInfo.
@@ -35,10 +36,30 @@ public final class DatabaseInfo {
    */
   public DatabaseInfo(
       DatabaseId databaseId, String persistenceKey, String host, boolean sslEnabled) {
+    this(databaseId, persistenceKey, host, sslEnabled, /*compressionEnabled=*/ false);
+  }
+
+  /**
+   * Constructs a new DatabaseInfo.
+   *
+   * @param databaseId The Google Cloud Project ID and database naming the Firestore instance.
+   * @param persistenceKey A unique identifier for this Firestore's local storage. Usually derived
+   *     from FirebaseApp.name.
+   * @param host The hostname of the backend.
+   * @param sslEnabled Whether to use SSL when connecting.
+   * @param compressionEnabled Whether to gzip-compress the messages sent to the backend.
+   */
+  public DatabaseInfo(
+      DatabaseId databaseId,
+      String persistenceKey,
+      String host,
+      boolean sslEnabled,
+      boolean compressionEnabled) {
     this.databaseId = databaseId;
     this.persistenceKey = persistenceKey;
     this.host = host;
     this.sslEnabled = sslEnabled;
+    this.compressionEnabled = compressionEnabled;
   }
 
   public DatabaseId getDatabaseId() {
@@ -57,6 +78,10 @@ public final class DatabaseInfo {
     return sslEnabled;
   }
 
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
   @Override
   public String toString() {
     return "DatabaseInfo(databaseId:" + databaseId + " host:" + host + ")";
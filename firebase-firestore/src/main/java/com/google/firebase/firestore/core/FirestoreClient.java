@@ -27,9 +27,11 @@ import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.FirebaseFirestoreException.Code;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PendingWritesListener;
 import com.google.firebase.firestore.auth.CredentialsProvider;
 import com.google.firebase.firestore.auth.User;
 import com.google.firebase.firestore.core.EventManager.ListenOptions;
+import com.google.firebase.firestore.local.CacheStatistics;
 import com.google.firebase.firestore.local.IndexFreeQueryEngine;
 import com.google.firebase.firestore.local.LocalSerializer;
 import com.google.firebase.firestore.local.LocalStore;
@@ -39,9 +41,11 @@ import com.google.firebase.firestore.local.MemoryPersistence;
 import com.google.firebase.firestore.local.Persistence;
 import com.google.firebase.firestore.local.QueryEngine;
 import com.google.firebase.firestore.local.QueryResult;
+import com.google.firebase.firestore.local.QueryStatsCollector;
 import com.google.firebase.firestore.local.SQLitePersistence;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.DocumentSet;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.NoDocument;
 import com.google.firebase.firestore.model.mutation.Mutation;
@@ -50,10 +54,13 @@ import com.google.firebase.firestore.remote.AndroidConnectivityMonitor;
 import com.google.firebase.firestore.remote.ConnectivityMonitor;
 import com.google.firebase.firestore.remote.Datastore;
 import com.google.firebase.firestore.remote.GrpcMetadataProvider;
+import com.google.firebase.firestore.remote.GrpcTrafficStats;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.RemoteSerializer;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
+import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Logger;
 import io.grpc.Status;
 import java.util.List;
@@ -71,6 +78,8 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
   private final DatabaseInfo databaseInfo;
   private final CredentialsProvider credentialsProvider;
   private final AsyncQueue asyncQueue;
+  private final StartupTrace startupTrace = new StartupTrace();
+  private final Datastore datastore;
 
   private Persistence persistence;
   private LocalStore localStore;
@@ -81,6 +90,7 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
 
   // LRU-related
   @Nullable private LruGarbageCollector.Scheduler lruScheduler;
+  @Nullable private LruGarbageCollector garbageCollector;
 
   public FirestoreClient(
       final Context context,
@@ -94,6 +104,19 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     this.asyncQueue = asyncQueue;
     this.metadataProvider = metadataProvider;
 
+    // The Datastore creates its gRPC channel in the background. Creating it right away lets the
+    // security provider installation and the TLS handshake overlap with opening the local store.
+    long channelStartNanos = System.nanoTime();
+    datastore =
+        new Datastore(databaseInfo, asyncQueue, credentialsProvider, context, metadataProvider);
+    datastore
+        .getChannelReadyTask()
+        .addOnCompleteListener(
+            Executors.DIRECT_EXECUTOR,
+            task ->
+                startupTrace.recordPhase(
+                    StartupTrace.Phase.CHANNEL_READY, channelStartNanos, System.nanoTime()));
+
     TaskCompletionSource<User> firstUser = new TaskCompletionSource<>();
     final AtomicBoolean initialized = new AtomicBoolean(false);
 
@@ -101,15 +124,22 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     // guaranteed to be synchronously dispatched onto our worker queue, so we will be initialized
     // before any subsequently queued work runs.
     asyncQueue.enqueueAndForget(
+        TaskLabel.INITIALIZE,
         () -> {
           try {
+            // Opening the database does not depend on the user, so it runs while the credentials
+            // provider is still fetching the initial user.
+            LruGarbageCollector gc =
+                openPersistence(
+                    context, settings.isPersistenceEnabled(), settings.getCacheSizeBytes());
+
             // Block on initial user being available
+            long awaitStartNanos = System.nanoTime();
             User initialUser = Tasks.await(firstUser.getTask());
-            initialize(
-                context,
-                initialUser,
-                settings.isPersistenceEnabled(),
-                settings.getCacheSizeBytes());
+            startupTrace.recordPhase(
+                StartupTrace.Phase.AWAIT_USER, awaitStartNanos, System.nanoTime());
+
+            initialize(context, initialUser, gc, settings);
           } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
           }
@@ -122,6 +152,7 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
             firstUser.setResult(user);
           } else {
             asyncQueue.enqueueAndForget(
+                TaskLabel.CREDENTIAL_CHANGE,
                 () -> {
                   hardAssert(syncEngine != null, "SyncEngine not yet initialized");
                   Logger.debug(LOG_TAG, "Credential changed. Current user: %s", user.getUid());
@@ -133,12 +164,12 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
 
   public Task<Void> disableNetwork() {
     this.verifyNotTerminated();
-    return asyncQueue.enqueue(() -> remoteStore.disableNetwork());
+    return asyncQueue.enqueue(TaskLabel.NETWORK_STATE, () -> remoteStore.disableNetwork());
   }
 
   public Task<Void> enableNetwork() {
     this.verifyNotTerminated();
-    return asyncQueue.enqueue(() -> remoteStore.enableNetwork());
+    return asyncQueue.enqueue(TaskLabel.NETWORK_STATE, () -> remoteStore.enableNetwork());
   }
 
   /** Terminates this client, cancels all writes / listeners, and releases all resources. */
@@ -165,8 +196,12 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
   public QueryListener listen(
       Query query, ListenOptions options, EventListener<ViewSnapshot> listener) {
     this.verifyNotTerminated();
+    if (!startupTrace.hasPhase(StartupTrace.Phase.FIRST_SNAPSHOT)) {
+      listener = traceFirstSnapshot(listener);
+    }
     QueryListener queryListener = new QueryListener(query, options, listener);
-    asyncQueue.enqueueAndForget(() -> eventManager.addQueryListener(queryListener));
+    asyncQueue.enqueueAndForget(
+        TaskLabel.LISTEN, () -> eventManager.addQueryListener(queryListener));
     return queryListener;
   }
 
@@ -177,13 +212,13 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     if (this.isTerminated()) {
       return;
     }
-    asyncQueue.enqueueAndForget(() -> eventManager.removeQueryListener(listener));
+    asyncQueue.enqueueAndForget(TaskLabel.LISTEN, () -> eventManager.removeQueryListener(listener));
   }
 
   public Task<Document> getDocumentFromLocalCache(DocumentKey docKey) {
     this.verifyNotTerminated();
     return asyncQueue
-        .enqueue(() -> localStore.readDocument(docKey))
+        .enqueue(TaskLabel.LOCAL_READ, () -> localStore.readDocument(docKey))
         .continueWith(
             (result) -> {
               @Nullable MaybeDocument maybeDoc = result.getResult();
@@ -205,27 +240,121 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
   public Task<ViewSnapshot> getDocumentsFromLocalCache(Query query) {
     this.verifyNotTerminated();
     return asyncQueue.enqueue(
+        TaskLabel.LOCAL_READ,
         () -> {
+          @Nullable DocumentSet cachedDocuments = localStore.getCachedQueryResult(query);
+          if (cachedDocuments != null) {
+            ImmutableSortedSet<DocumentKey> mutatedKeys = DocumentKey.emptyKeySet();
+            for (Document doc : cachedDocuments) {
+              if (doc.hasLocalMutations()) {
+                mutatedKeys = mutatedKeys.insert(doc.getKey());
+              }
+            }
+            return ViewSnapshot.fromInitialDocuments(
+                query,
+                cachedDocuments,
+                mutatedKeys,
+                /* fromCache= */ true,
+                /* excludesMetadataChanges= */ false);
+          }
+
           QueryResult queryResult = localStore.executeQuery(query, /* usePreviousResults= */ true);
           View view = new View(query, queryResult.getRemoteKeys());
           View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
-          return view.applyChanges(viewDocChanges).getSnapshot();
+          ViewSnapshot snapshot = view.applyChanges(viewDocChanges).getSnapshot();
+          localStore.cacheQueryResult(query, snapshot.getDocuments());
+          return snapshot;
         });
   }
 
+  /**
+   * Runs the query against the local cache like {@link #getDocumentsFromLocalCache} and returns
+   * statistics about its execution. Bypasses the cached results of earlier reads, since those
+   * would not tell how the query itself performs.
+   */
+  public Task<QueryStatsCollector> explainQueryFromLocalCache(Query query) {
+    this.verifyNotTerminated();
+    return asyncQueue.enqueue(
+        TaskLabel.LOCAL_READ,
+        () -> {
+          QueryStatsCollector stats = new QueryStatsCollector();
+          QueryResult queryResult =
+              localStore.executeQuery(query, /* usePreviousResults= */ true, stats);
+
+          long startNanos = System.nanoTime();
+          View view = new View(query, queryResult.getRemoteKeys());
+          View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
+          view.applyChanges(viewDocChanges);
+          stats.recordViewComputation(System.nanoTime() - startNanos);
+          return stats;
+        });
+  }
+
+  /** Returns statistics about the local cache. */
+  public Task<CacheStatistics> getCacheStatistics() {
+    this.verifyNotTerminated();
+    return asyncQueue.enqueue(
+        TaskLabel.LOCAL_READ, () -> localStore.getStatistics(garbageCollector));
+  }
+
+  /**
+   * Looks up the given documents on the backend and writes the results to the local cache. The
+   * returned task resolves with the local view of the documents, in the order of the given keys.
+   */
+  public Task<List<MaybeDocument>> getDocumentsFromServer(List<DocumentKey> keys) {
+    this.verifyNotTerminated();
+    return AsyncQueue.callTask(asyncQueue.getExecutor(), () -> syncEngine.lookup(asyncQueue, keys));
+  }
+
   /** Writes mutations. The returned task will be notified when it's written to the backend. */
   public Task<Void> write(final List<Mutation> mutations) {
     this.verifyNotTerminated();
     final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
-    asyncQueue.enqueueAndForget(() -> syncEngine.writeMutations(mutations, source));
+    asyncQueue.enqueueAndForget(
+        TaskLabel.WRITE, () -> syncEngine.writeMutations(mutations, source));
     return source.getTask();
   }
 
+  /**
+   * Creates a BulkWriter that commits writes directly to the backend, bypassing the local mutation
+   * queue and the write stream.
+   */
+  public Task<BulkWriter> createBulkWriter() {
+    this.verifyNotTerminated();
+    return asyncQueue.enqueue(() -> remoteStore.createBulkWriter());
+  }
+
+  /**
+   * Schedules the mutations for a single document on the given BulkWriter. The returned task will
+   * be notified when the write is committed by the backend or has failed permanently.
+   */
+  public Task<Void> bulkWrite(Task<BulkWriter> bulkWriter, final List<Mutation> mutations) {
+    this.verifyNotTerminated();
+    return bulkWriter.continueWithTask(
+        asyncQueue.getExecutor(),
+        task -> {
+          final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+          task.getResult().write(mutations, source);
+          return source.getTask();
+        });
+  }
+
+  /**
+   * Returns a task that resolves when all writes that were scheduled on the given BulkWriter
+   * before this call have been committed or have failed.
+   */
+  public Task<Void> flushBulkWriter(Task<BulkWriter> bulkWriter) {
+    this.verifyNotTerminated();
+    return bulkWriter.continueWithTask(asyncQueue.getExecutor(), task -> task.getResult().flush());
+  }
+
   /** Tries to execute the transaction in updateFunction. */
-  public <TResult> Task<TResult> transaction(Function<Transaction, Task<TResult>> updateFunction) {
+  public <TResult> Task<TResult> transaction(
+      Function<Transaction, Task<TResult>> updateFunction, boolean readOnly) {
     this.verifyNotTerminated();
     return AsyncQueue.callTask(
-        asyncQueue.getExecutor(), () -> syncEngine.transaction(asyncQueue, updateFunction));
+        asyncQueue.getExecutor(),
+        () -> syncEngine.transaction(asyncQueue, updateFunction, readOnly));
   }
 
   /**
@@ -236,16 +365,52 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     this.verifyNotTerminated();
 
     final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
-    asyncQueue.enqueueAndForget(() -> syncEngine.registerPendingWritesTask(source));
+    asyncQueue.enqueueAndForget(
+        TaskLabel.WRITE, () -> syncEngine.registerPendingWritesTask(source));
     return source.getTask();
   }
 
-  private void initialize(Context context, User user, boolean usePersistence, long cacheSizeBytes) {
-    // Note: The initialization work must all be synchronous (we can't dispatch more work) since
-    // external write/listen operations could get queued to run before that subsequent work
-    // completes.
-    Logger.debug(LOG_TAG, "Initializing. user=%s", user.getUid());
+  /** Returns the current state of the limbo resolutions and their latencies so far. */
+  public Task<LimboResolutionMetrics> getLimboResolutionMetrics() {
+    this.verifyNotTerminated();
+    return asyncQueue.enqueue(() -> syncEngine.getLimboResolutionMetrics());
+  }
+
+  /** Returns the counters for the bytes sent to and received from the backend. */
+  public GrpcTrafficStats getTrafficStats() {
+    return datastore.getTrafficStats();
+  }
+
+  /**
+   * Returns the trace of this client's startup. The trace is complete once the first snapshot has
+   * been delivered to a listener.
+   */
+  public StartupTrace getStartupTrace() {
+    return startupTrace;
+  }
 
+  /** Wraps the listener so that the first snapshot it receives is added to the startup trace. */
+  private EventListener<ViewSnapshot> traceFirstSnapshot(EventListener<ViewSnapshot> listener) {
+    return (snapshot, error) -> {
+      if (snapshot != null
+          && startupTrace.recordPhase(
+              StartupTrace.Phase.FIRST_SNAPSHOT,
+              startupTrace.getCreationNanos(),
+              System.nanoTime())) {
+        Logger.debug(LOG_TAG, "Startup completed: %s", startupTrace);
+      }
+      listener.onEvent(snapshot, error);
+    };
+  }
+
+  /**
+   * Opens the persistence layer, which runs any pending schema migrations. Returns the garbage
+   * collector to schedule once the LocalStore is created, if any.
+   */
+  @Nullable
+  private LruGarbageCollector openPersistence(
+      Context context, boolean usePersistence, long cacheSizeBytes) {
+    long startNanos = System.nanoTime();
     LruGarbageCollector gc = null;
     if (usePersistence) {
       LocalSerializer serializer =
@@ -267,30 +432,52 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     }
 
     persistence.start();
+    startupTrace.recordPhase(StartupTrace.Phase.OPEN_PERSISTENCE, startNanos, System.nanoTime());
+    return gc;
+  }
+
+  private void initialize(
+      Context context,
+      User user,
+      @Nullable LruGarbageCollector gc,
+      FirebaseFirestoreSettings settings) {
+    // Note: The initialization work must all be synchronous (we can't dispatch more work) since
+    // external write/listen operations could get queued to run before that subsequent work
+    // completes.
+    Logger.debug(LOG_TAG, "Initializing. user=%s", user.getUid());
+
     QueryEngine queryEngine = new IndexFreeQueryEngine();
     localStore = new LocalStore(persistence, queryEngine, user);
+    garbageCollector = gc;
     if (gc != null) {
       lruScheduler = gc.newScheduler(asyncQueue, localStore);
       lruScheduler.start();
     }
 
-    Datastore datastore =
-        new Datastore(databaseInfo, asyncQueue, credentialsProvider, context, metadataProvider);
     ConnectivityMonitor connectivityMonitor = new AndroidConnectivityMonitor(context);
     remoteStore = new RemoteStore(this, localStore, datastore, asyncQueue, connectivityMonitor);
 
-    syncEngine = new SyncEngine(localStore, remoteStore, user);
+    syncEngine =
+        new SyncEngine(localStore, remoteStore, user, settings.getMaxConcurrentLimboResolutions());
+    syncEngine.setMaxPendingWriteBatches(settings.getMaxPendingWriteBatches());
     eventManager = new EventManager(syncEngine);
 
     // NOTE: RemoteStore depends on LocalStore (for persisting stream tokens, refilling mutation
     // queue, etc.) so must be started after LocalStore.
+    long startNanos = System.nanoTime();
     localStore.start();
+    long localStoreStartedNanos = System.nanoTime();
+    startupTrace.recordPhase(
+        StartupTrace.Phase.START_LOCAL_STORE, startNanos, localStoreStartedNanos);
     remoteStore.start();
+    startupTrace.recordPhase(
+        StartupTrace.Phase.START_REMOTE_STORE, localStoreStartedNanos, System.nanoTime());
   }
 
   public void addSnapshotsInSyncListener(EventListener<Void> listener) {
     verifyNotTerminated();
-    asyncQueue.enqueueAndForget(() -> eventManager.addSnapshotsInSyncListener(listener));
+    asyncQueue.enqueueAndForget(
+        TaskLabel.LISTEN, () -> eventManager.addSnapshotsInSyncListener(listener));
   }
 
   public void removeSnapshotsInSyncListener(EventListener<Void> listener) {
@@ -300,6 +487,20 @@ public final class FirestoreClient implements RemoteStore.RemoteStoreCallback {
     eventManager.removeSnapshotsInSyncListener(listener);
   }
 
+  public void addPendingWritesListener(long threshold, PendingWritesListener listener) {
+    verifyNotTerminated();
+    asyncQueue.enqueueAndForget(
+        TaskLabel.WRITE, () -> syncEngine.addPendingWritesListener(threshold, listener));
+  }
+
+  public void removePendingWritesListener(PendingWritesListener listener) {
+    if (isTerminated()) {
+      return;
+    }
+    asyncQueue.enqueueAndForget(
+        TaskLabel.WRITE, () -> syncEngine.removePendingWritesListener(listener));
+  }
+
   private void verifyNotTerminated() {
     if (this.isTerminated()) {
       throw new IllegalStateException("The client has already been terminated");
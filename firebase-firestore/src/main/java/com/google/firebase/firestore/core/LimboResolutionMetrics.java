@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+/**
+ * An immutable snapshot of the limbo resolution state of a {@link SyncEngine}: how many limbo
+ * documents are being resolved or are waiting to be resolved, and how long resolutions have taken.
+ */
+public final class LimboResolutionMetrics {
+  private final int activeResolutionCount;
+  private final int enqueuedResolutionCount;
+  private final int completedResolutionCount;
+  private final int rejectedResolutionCount;
+  private final long averageResolutionMillis;
+  private final long maxResolutionMillis;
+
+  LimboResolutionMetrics(
+      int activeResolutionCount,
+      int enqueuedResolutionCount,
+      int completedResolutionCount,
+      int rejectedResolutionCount,
+      long averageResolutionMillis,
+      long maxResolutionMillis) {
+    this.activeResolutionCount = activeResolutionCount;
+    this.enqueuedResolutionCount = enqueuedResolutionCount;
+    this.completedResolutionCount = completedResolutionCount;
+    this.rejectedResolutionCount = rejectedResolutionCount;
+    this.averageResolutionMillis = averageResolutionMillis;
+    this.maxResolutionMillis = maxResolutionMillis;
+  }
+
+  /** The number of limbo documents that currently have a listen target. */
+  public int getActiveResolutionCount() {
+    return activeResolutionCount;
+  }
+
+  /** The number of limbo documents that are waiting for a free resolution slot. */
+  public int getEnqueuedResolutionCount() {
+    return enqueuedResolutionCount;
+  }
+
+  /**
+   * The number of limbo documents that the backend resolved since the SyncEngine was created, i.e.
+   * whose listen target became CURRENT. Resolutions that the backend rejected, and the ones that
+   * were stopped because the document left limbo first, are not counted.
+   */
+  public int getCompletedResolutionCount() {
+    return completedResolutionCount;
+  }
+
+  /** The number of limbo resolutions that the backend rejected since the SyncEngine was created. */
+  public int getRejectedResolutionCount() {
+    return rejectedResolutionCount;
+  }
+
+  /** The average time from enqueueing a limbo document until the backend resolved it. */
+  public long getAverageResolutionMillis() {
+    return averageResolutionMillis;
+  }
+
+  /** The longest time from enqueueing a limbo document until the backend resolved it. */
+  public long getMaxResolutionMillis() {
+    return maxResolutionMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "LimboResolutionMetrics{active="
+        + activeResolutionCount
+        + ", enqueued="
+        + enqueuedResolutionCount
+        + ", completed="
+        + completedResolutionCount
+        + ", rejected="
+        + rejectedResolutionCount
+        + ", averageMillis="
+        + averageResolutionMillis
+        + ", maxMillis="
+        + maxResolutionMillis
+        + '}';
+  }
+}
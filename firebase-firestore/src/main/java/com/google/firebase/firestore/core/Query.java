@@ -17,12 +17,15 @@ package com.google.firebase.firestore.core;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
+import com.google.common.base.Function;
 import com.google.firebase.firestore.core.Filter.Operator;
 import com.google.firebase.firestore.core.OrderBy.Direction;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.FieldPath;
 import com.google.firebase.firestore.model.ResourcePath;
+import com.google.firebase.firestore.model.value.FieldValue;
+import com.google.firebase.firestore.model.value.IndexValueEncoder;
 import com.google.firebase.firestore.util.Assert;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,6 +56,9 @@ public final class Query {
 
   private List<OrderBy> memoizedOrderBy;
 
+  /** The comparator for this query, memoized since it caches the sort keys of documents. */
+  private @Nullable Comparator<Document> memoizedComparator;
+
   private final List<Filter> filters;
 
   private final ResourcePath path;
@@ -396,12 +402,21 @@ public final class Query {
 
   /** Returns a comparator that will sort documents according to this Query's sort order. */
   public Comparator<Document> comparator() {
-    return new QueryComparator(getOrderBy());
+    if (memoizedComparator == null) {
+      memoizedComparator = new QueryComparator(getOrderBy());
+    }
+    return memoizedComparator;
   }
 
   private static class QueryComparator implements Comparator<Document> {
+    /** Marks documents that do not have all fields of the sort order, and so have no sort key. */
+    private static final byte[] NO_SORT_KEY = new byte[0];
+
     private final List<OrderBy> sortOrder;
 
+    /** Encodes the sort keys that the documents cache for this comparator. */
+    private final Function<Document, byte[]> sortKeyEncoder = this::encodeSortKey;
+
     QueryComparator(List<OrderBy> order) {
       boolean hasKeyOrdering = false;
       for (OrderBy orderBy : order) {
@@ -415,6 +430,14 @@ public final class Query {
 
     @Override
     public int compare(Document doc1, Document doc2) {
+      if (sortOrder.size() > 1) {
+        byte[] sortKey1 = getSortKey(doc1);
+        byte[] sortKey2 = getSortKey(doc2);
+        if (sortKey1 != null && sortKey2 != null) {
+          return IndexValueEncoder.compare(sortKey1, sortKey2);
+        }
+      }
+
       for (OrderBy order : sortOrder) {
         int comp = order.compare(doc1, doc2);
         if (comp != 0) {
@@ -423,6 +446,33 @@ public final class Query {
       }
       return 0;
     }
+
+    /**
+     * Returns the values of the document for the sort order, encoded into a single key. Returns
+     * null if the document does not have all fields of the sort order.
+     */
+    @Nullable
+    private byte[] getSortKey(Document doc) {
+      byte[] sortKey = doc.getSortKey(this, sortKeyEncoder);
+      return sortKey != NO_SORT_KEY ? sortKey : null;
+    }
+
+    private byte[] encodeSortKey(Document doc) {
+      IndexValueEncoder encoder = new IndexValueEncoder();
+      for (OrderBy order : sortOrder) {
+        boolean descending = order.getDirection() == Direction.DESCENDING;
+        if (order.getField().equals(FieldPath.KEY_PATH)) {
+          encoder.writeKey(doc.getKey(), descending);
+        } else {
+          FieldValue value = doc.getField(order.getField());
+          if (value == null) {
+            return NO_SORT_KEY;
+          }
+          encoder.writeValue(value, descending);
+        }
+      }
+      return encoder.toByteArray();
+    }
   }
 
   /**
@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import androidx.annotation.VisibleForTesting;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long the phases of a {@link FirestoreClient}'s startup took, from the creation of the
+ * client until the first snapshot was delivered to a listener.
+ *
+ * <p>Phases may overlap (the gRPC channel is created in the background while the local store is
+ * being opened), so the durations do not necessarily add up to the time to first snapshot. Each
+ * phase is recorded at most once. This class is thread-safe.
+ */
+public final class StartupTrace {
+
+  /** The phases of the client startup, in the order they usually start in. */
+  public enum Phase {
+    /** Creating the gRPC channel, including the installation of an updated security provider. */
+    CHANNEL_READY,
+    /** Opening the SQLite database and running any pending schema migrations. */
+    OPEN_PERSISTENCE,
+    /** Waiting for the credentials provider to report the initial user. */
+    AWAIT_USER,
+    /** Scanning the mutation queue and reading the target metadata. */
+    START_LOCAL_STORE,
+    /** Starting the network and the watch and write streams. */
+    START_REMOTE_STORE,
+    /** Delivering the first snapshot to any listener. Measured from the creation of the client. */
+    FIRST_SNAPSHOT
+  }
+
+  private final long creationNanos;
+
+  /** The start and end times of the recorded phases, relative to {@link #creationNanos}. */
+  private final Map<Phase, long[]> phases = new EnumMap<>(Phase.class);
+
+  public StartupTrace() {
+    this(System.nanoTime());
+  }
+
+  @VisibleForTesting
+  StartupTrace(long creationNanos) {
+    this.creationNanos = creationNanos;
+  }
+
+  /** Returns the time at which the client was created, as reported by {@link System#nanoTime}. */
+  public long getCreationNanos() {
+    return creationNanos;
+  }
+
+  /**
+   * Records that {@code phase} ran from {@code startNanos} to {@code endNanos}, both as reported by
+   * {@link System#nanoTime}.
+   *
+   * @return Whether the phase was recorded, i.e. it had not been recorded before.
+   */
+  public synchronized boolean recordPhase(Phase phase, long startNanos, long endNanos) {
+    if (phases.containsKey(phase)) {
+      return false;
+    }
+    phases.put(phase, new long[] {startNanos - creationNanos, endNanos - creationNanos});
+    return true;
+  }
+
+  /** Returns whether {@code phase} has been recorded. */
+  public synchronized boolean hasPhase(Phase phase) {
+    return phases.containsKey(phase);
+  }
+
+  /** Returns how long {@code phase} took in milliseconds, or -1 if it has not been recorded. */
+  public synchronized long getPhaseDurationMillis(Phase phase) {
+    long[] interval = phases.get(phase);
+    return interval == null ? -1 : TimeUnit.NANOSECONDS.toMillis(interval[1] - interval[0]);
+  }
+
+  /**
+   * Returns the time from the creation of the client until {@code phase} finished in
+   * milliseconds, or -1 if it has not been recorded.
+   */
+  public synchronized long getPhaseEndOffsetMillis(Phase phase) {
+    long[] interval = phases.get(phase);
+    return interval == null ? -1 : TimeUnit.NANOSECONDS.toMillis(interval[1]);
+  }
+
+  /**
+   * Returns the time from the creation of the client until the first snapshot was delivered in
+   * milliseconds, or -1 if no snapshot has been delivered yet.
+   */
+  public long getTimeToFirstSnapshotMillis() {
+    return getPhaseEndOffsetMillis(Phase.FIRST_SNAPSHOT);
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder("StartupTrace{");
+    boolean first = true;
+    for (Map.Entry<Phase, long[]> entry : phases.entrySet()) {
+      if (!first) {
+        builder.append(", ");
+      }
+      first = false;
+      long[] interval = entry.getValue();
+      builder
+          .append(entry.getKey())
+          .append('=')
+          .append(TimeUnit.NANOSECONDS.toMillis(interval[1] - interval[0]))
+          .append("ms (done at ")
+          .append(TimeUnit.NANOSECONDS.toMillis(interval[1]))
+          .append("ms)");
+    }
+    return builder.append('}').toString();
+  }
+}
@@ -21,11 +21,14 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PendingWritesListener;
 import com.google.firebase.firestore.auth.User;
 import com.google.firebase.firestore.local.LocalStore;
 import com.google.firebase.firestore.local.LocalViewChanges;
@@ -41,6 +44,7 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.MutationBatchResult;
+import com.google.firebase.firestore.remote.Datastore;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.remote.TargetChange;
@@ -51,6 +55,9 @@ import io.grpc.Status;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -84,13 +91,42 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
      */
     private boolean receivedDocument;
 
-    LimboResolution(DocumentKey key) {
+    /** The time at which the document was first enqueued for resolution. */
+    private final long enqueueTimeMs;
+
+    /** Set to true once the target is CURRENT, i.e. once the backend has resolved the document. */
+    private boolean resolved;
+
+    LimboResolution(DocumentKey key, long enqueueTimeMs) {
       this.key = key;
+      this.enqueueTimeMs = enqueueTimeMs;
+    }
+  }
+
+  /** A listener for the number of pending write batches, and the side of its threshold. */
+  private static class PendingWritesThreshold {
+    private final long threshold;
+    private final PendingWritesListener listener;
+    private boolean aboveThreshold;
+
+    PendingWritesThreshold(long threshold, PendingWritesListener listener) {
+      this.threshold = threshold;
+      this.listener = listener;
     }
   }
 
   private static final String TAG = SyncEngine.class.getSimpleName();
 
+  /**
+   * The default maximum number of limbo documents that are resolved concurrently. Each resolution
+   * requires its own listen target, so resolving thousands of documents at once would flood the
+   * watch stream.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_LIMBO_RESOLUTIONS = 100;
+
+  /** The maximum number of documents that are requested in a single lookup RPC. */
+  private static final int MAX_KEYS_PER_LOOKUP = 100;
+
   /** Interface implemented by EventManager to handle notifications from SyncEngine. */
   interface SyncEngineCallback {
     /** Handles new view snapshots. */
@@ -127,6 +163,24 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
    */
   private final Map<Integer, LimboResolution> limboResolutionsByTarget;
 
+  /**
+   * The keys of documents that are in limbo but for which no limbo resolution has started yet,
+   * mapped to the time at which they were enqueued. Iteration order is the order in which the keys
+   * were enqueued, so resolutions are started in FIFO order.
+   */
+  private final LinkedHashMap<DocumentKey, Long> enqueuedLimboResolutions;
+
+  /** The maximum number of limbo resolutions (i.e. listen targets) that may be active at once. */
+  private final int maxConcurrentLimboResolutions;
+
+  // Limbo resolution statistics, exposed via getLimboResolutionMetrics(). A resolution completes
+  // when its target becomes CURRENT. Resolutions that the backend rejected, and the ones that were
+  // stopped before they completed because the document left limbo, are not included in latencies.
+  private int completedLimboResolutions;
+  private int rejectedLimboResolutions;
+  private long totalLimboResolutionMs;
+  private long maxLimboResolutionMs;
+
   /** Used to track any documents that are currently in limbo. */
   private final ReferenceSet limboDocumentRefs;
 
@@ -136,6 +190,15 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
   /** Stores user callbacks waiting for all pending writes to be acknowledged. */
   private final Map<Integer, List<TaskCompletionSource<Void>>> pendingWritesCallbacks;
 
+  /**
+   * The maximum number of batches in the mutation queue. Writes beyond the limit are rejected
+   * without being applied locally.
+   */
+  private long maxPendingWriteBatches = FirebaseFirestoreSettings.PENDING_WRITES_UNLIMITED;
+
+  /** Listeners that are notified when the number of pending write batches crosses a threshold. */
+  private final List<PendingWritesThreshold> pendingWritesThresholds;
+
   /** Used for creating the target IDs for the listens used to resolve limbo documents. */
   private final TargetIdGenerator targetIdGenerator;
 
@@ -144,14 +207,28 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
   private SyncEngineCallback syncEngineListener;
 
   public SyncEngine(LocalStore localStore, RemoteStore remoteStore, User initialUser) {
+    this(localStore, remoteStore, initialUser, DEFAULT_MAX_CONCURRENT_LIMBO_RESOLUTIONS);
+  }
+
+  public SyncEngine(
+      LocalStore localStore,
+      RemoteStore remoteStore,
+      User initialUser,
+      int maxConcurrentLimboResolutions) {
+    hardAssert(
+        maxConcurrentLimboResolutions > 0,
+        "maxConcurrentLimboResolutions must be positive, but was %s",
+        maxConcurrentLimboResolutions);
     this.localStore = localStore;
     this.remoteStore = remoteStore;
+    this.maxConcurrentLimboResolutions = maxConcurrentLimboResolutions;
 
     queryViewsByQuery = new HashMap<>();
     queryViewsByTarget = new HashMap<>();
 
     limboTargetsByKey = new HashMap<>();
     limboResolutionsByTarget = new HashMap<>();
+    enqueuedLimboResolutions = new LinkedHashMap<>();
     limboDocumentRefs = new ReferenceSet();
 
     mutationUserCallbacks = new HashMap<>();
@@ -159,12 +236,21 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
     currentUser = initialUser;
 
     pendingWritesCallbacks = new HashMap<>();
+    pendingWritesThresholds = new ArrayList<>();
   }
 
   public void setCallback(SyncEngineCallback callback) {
     this.syncEngineListener = callback;
   }
 
+  /**
+   * Sets the maximum number of batches in the mutation queue, or {@link
+   * FirebaseFirestoreSettings#PENDING_WRITES_UNLIMITED}.
+   */
+  public void setMaxPendingWriteBatches(long maxPendingWriteBatches) {
+    this.maxPendingWriteBatches = maxPendingWriteBatches;
+  }
+
   private void assertCallback(String method) {
     hardAssert(syncEngineListener != null, "Trying to call %s before setting callback", method);
   }
@@ -227,11 +313,23 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
   public void writeMutations(List<Mutation> mutations, TaskCompletionSource<Void> userTask) {
     assertCallback("writeMutations");
 
+    if (maxPendingWriteBatches != FirebaseFirestoreSettings.PENDING_WRITES_UNLIMITED
+        && localStore.getPendingWriteBatchCount() >= maxPendingWriteBatches) {
+      userTask.setException(
+          new FirebaseFirestoreException(
+              "The write was rejected because "
+                  + maxPendingWriteBatches
+                  + " writes are already waiting to be acknowledged by the backend.",
+              FirebaseFirestoreException.Code.RESOURCE_EXHAUSTED));
+      return;
+    }
+
     LocalWriteResult result = localStore.writeLocally(mutations);
     addUserCallback(result.getBatchId(), userTask);
 
     emitNewSnapsAndNotifyLocalStore(result.getChanges(), /*remoteEvent=*/ null);
     remoteStore.fillWritePipeline();
+    updatePendingWritesThresholds();
   }
 
   private void addUserCallback(int batchId, TaskCompletionSource<Void> userTask) {
@@ -256,11 +354,63 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
    * reflect local changes that have not been committed. For this reason, it is required that all
    * reads are performed before any writes. Transactions must be performed while online.
    *
+   * <p>A read-only transaction reads all documents at the same time and cannot write. It does not
+   * need to be committed on the backend.
+   *
    * <p>The Task returned is resolved when the transaction is fully committed.
    */
   public <TResult> Task<TResult> transaction(
-      AsyncQueue asyncQueue, Function<Transaction, Task<TResult>> updateFunction) {
-    return new TransactionRunner<TResult>(asyncQueue, remoteStore, updateFunction).run();
+      AsyncQueue asyncQueue,
+      Function<Transaction, Task<TResult>> updateFunction,
+      boolean readOnly) {
+    return new TransactionRunner<TResult>(asyncQueue, remoteStore, updateFunction, readOnly).run();
+  }
+
+  /**
+   * Looks up the given documents on the backend, bypassing the watch stream. The keys are split
+   * into lookup RPCs of at most MAX_KEYS_PER_LOOKUP documents that are issued in parallel. Once all
+   * of them succeed, the results are written to the local cache in a single transaction and raised
+   * to any active views.
+   *
+   * <p>The Task returned is resolved with the local view of the documents, in the order of the
+   * given keys.
+   */
+  public Task<List<MaybeDocument>> lookup(AsyncQueue asyncQueue, List<DocumentKey> keys) {
+    assertCallback("lookup");
+
+    if (keys.isEmpty()) {
+      return Tasks.forResult(Collections.emptyList());
+    }
+
+    List<Task<Datastore.LookupResult>> lookups = new ArrayList<>();
+    for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_LOOKUP) {
+      int end = Math.min(keys.size(), start + MAX_KEYS_PER_LOOKUP);
+      lookups.add(remoteStore.lookup(new ArrayList<>(keys.subList(start, end))));
+    }
+
+    return Tasks.whenAll(lookups)
+        .continueWithTask(
+            asyncQueue.getExecutor(),
+            task -> {
+              List<Datastore.LookupResult> results = new ArrayList<>(lookups.size());
+              for (Task<Datastore.LookupResult> lookup : lookups) {
+                if (!lookup.isSuccessful()) {
+                  // Surface the error of the first failed RPC rather than the aggregate error.
+                  return Tasks.forException(lookup.getException());
+                }
+                results.add(lookup.getResult());
+              }
+
+              ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+                  localStore.applyLookupResults(results);
+              emitNewSnapsAndNotifyLocalStore(changes, /*remoteEvent=*/ null);
+
+              List<MaybeDocument> documents = new ArrayList<>(keys.size());
+              for (DocumentKey key : keys) {
+                documents.add(changes.get(key));
+              }
+              return Tasks.forResult(documents);
+            });
   }
 
   /** Called by FirestoreClient to notify us of a new remote event. */
@@ -296,6 +446,11 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
         } else {
           // This was probably just a CURRENT targetChange or similar.
         }
+
+        if (targetChange.isCurrent() && !limboResolution.resolved) {
+          limboResolution.resolved = true;
+          recordLimboResolution(limboResolution);
+        }
       }
     }
 
@@ -346,6 +501,8 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       // So go ahead and remove it from bookkeeping.
       limboTargetsByKey.remove(limboKey);
       limboResolutionsByTarget.remove(targetId);
+      ++rejectedLimboResolutions;
+      pumpEnqueuedLimboResolutions();
 
       // TODO: Retry on transient errors?
 
@@ -391,6 +548,7 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
         localStore.acknowledgeBatch(mutationBatchResult);
 
     emitNewSnapsAndNotifyLocalStore(changes, /*remoteEvent=*/ null);
+    updatePendingWritesThresholds();
   }
 
   @Override
@@ -410,6 +568,7 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
     resolvePendingWriteTasks(batchId);
 
     emitNewSnapsAndNotifyLocalStore(changes, /*remoteEvent=*/ null);
+    updatePendingWritesThresholds();
   }
 
   /**
@@ -439,6 +598,48 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
     }
   }
 
+  /**
+   * Registers a listener that is notified when the number of pending write batches rises above
+   * {@code threshold}, and when it drops back to the threshold. If the number is already above the
+   * threshold, the listener is notified right away.
+   */
+  public void addPendingWritesListener(long threshold, PendingWritesListener listener) {
+    PendingWritesThreshold pendingWritesThreshold = new PendingWritesThreshold(threshold, listener);
+    pendingWritesThresholds.add(pendingWritesThreshold);
+
+    long pendingWriteBatchCount = localStore.getPendingWriteBatchCount();
+    if (pendingWriteBatchCount > threshold) {
+      pendingWritesThreshold.aboveThreshold = true;
+      listener.onThresholdCrossed(pendingWriteBatchCount, /* aboveThreshold= */ true);
+    }
+  }
+
+  /** Removes a previously added listener. It's a no-op if the listener is not found. */
+  public void removePendingWritesListener(PendingWritesListener listener) {
+    Iterator<PendingWritesThreshold> it = pendingWritesThresholds.iterator();
+    while (it.hasNext()) {
+      if (it.next().listener == listener) {
+        it.remove();
+      }
+    }
+  }
+
+  /** Notifies the listeners whose threshold the number of pending write batches has crossed. */
+  private void updatePendingWritesThresholds() {
+    if (pendingWritesThresholds.isEmpty()) {
+      return;
+    }
+
+    long pendingWriteBatchCount = localStore.getPendingWriteBatchCount();
+    for (PendingWritesThreshold pendingWritesThreshold : pendingWritesThresholds) {
+      boolean aboveThreshold = pendingWriteBatchCount > pendingWritesThreshold.threshold;
+      if (aboveThreshold != pendingWritesThreshold.aboveThreshold) {
+        pendingWritesThreshold.aboveThreshold = aboveThreshold;
+        pendingWritesThreshold.listener.onThresholdCrossed(pendingWriteBatchCount, aboveThreshold);
+      }
+    }
+  }
+
   /** Resolves tasks waiting for this batch id to get acknowledged by server, if there are any. */
   private void resolvePendingWriteTasks(int batchId) {
     if (pendingWritesCallbacks.containsKey(batchId)) {
@@ -500,6 +701,10 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
   }
 
   private void removeLimboTarget(DocumentKey key) {
+    // The document may still be waiting for a free resolution slot, in which case we simply drop
+    // it from the queue.
+    enqueuedLimboResolutions.remove(key);
+
     // It's possible that the target already got removed because the query failed. In that case,
     // the key won't exist in `limboTargetsByKey`. Only do the cleanup if we still have the target.
     Integer targetId = limboTargetsByKey.get(key);
@@ -507,9 +712,17 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       remoteStore.stopListening(targetId);
       limboTargetsByKey.remove(key);
       limboResolutionsByTarget.remove(targetId);
+      pumpEnqueuedLimboResolutions();
     }
   }
 
+  private void recordLimboResolution(LimboResolution limboResolution) {
+    long latencyMs = Math.max(0, System.currentTimeMillis() - limboResolution.enqueueTimeMs);
+    ++completedLimboResolutions;
+    totalLimboResolutionMs += latencyMs;
+    maxLimboResolutionMs = Math.max(maxLimboResolutionMs, latencyMs);
+  }
+
   /**
    * Computes a new snapshot from the changes and calls the registered callback with the new
    * snapshot.
@@ -523,6 +736,13 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       QueryView queryView = entry.getValue();
       View view = queryView.getView();
       View.DocumentChanges viewDocChanges = view.computeDocChanges(changes);
+      if (viewDocChanges.needsRefill() && viewDocChanges.getRefillKeys() != null) {
+        // The docs that the view keeps right after its limit may fill the gap. Their cached
+        // versions are re-read, since they may have been garbage collected in the meantime.
+        viewDocChanges =
+            view.computeDocChanges(
+                localStore.readDocuments(viewDocChanges.getRefillKeys()), viewDocChanges);
+      }
       if (viewDocChanges.needsRefill()) {
         // The query has a limit and some docs were removed/updated, so we need to re-run the query
         // against the local store to make sure we didn't lose any good docs that had been past the
@@ -572,14 +792,30 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
 
   private void trackLimboChange(LimboDocumentChange change) {
     DocumentKey key = change.getKey();
-    if (!limboTargetsByKey.containsKey(key)) {
+    if (!limboTargetsByKey.containsKey(key) && !enqueuedLimboResolutions.containsKey(key)) {
       Logger.debug(TAG, "New document in limbo: %s", key);
+      enqueuedLimboResolutions.put(key, System.currentTimeMillis());
+      pumpEnqueuedLimboResolutions();
+    }
+  }
+
+  /**
+   * Starts listens for enqueued limbo documents, in the order in which they were enqueued, until
+   * the maximum number of concurrent limbo resolutions has been reached.
+   */
+  private void pumpEnqueuedLimboResolutions() {
+    Iterator<Map.Entry<DocumentKey, Long>> it = enqueuedLimboResolutions.entrySet().iterator();
+    while (it.hasNext() && limboTargetsByKey.size() < maxConcurrentLimboResolutions) {
+      Map.Entry<DocumentKey, Long> entry = it.next();
+      it.remove();
+
+      DocumentKey key = entry.getKey();
       int limboTargetId = targetIdGenerator.nextId();
       Query query = Query.atPath(key.getPath());
       QueryData queryData =
           new QueryData(
               query, limboTargetId, ListenSequence.INVALID, QueryPurpose.LIMBO_RESOLUTION);
-      limboResolutionsByTarget.put(limboTargetId, new LimboResolution(key));
+      limboResolutionsByTarget.put(limboTargetId, new LimboResolution(key, entry.getValue()));
       remoteStore.listen(queryData);
       limboTargetsByKey.put(key, limboTargetId);
     }
@@ -591,6 +827,23 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
     return new HashMap<>(limboTargetsByKey);
   }
 
+  @VisibleForTesting
+  public Set<DocumentKey> getEnqueuedLimboDocuments() {
+    // Make a defensive copy as the Set continues to be modified.
+    return new LinkedHashSet<>(enqueuedLimboResolutions.keySet());
+  }
+
+  /** Returns a snapshot of the current limbo resolution queue depth and latency statistics. */
+  public LimboResolutionMetrics getLimboResolutionMetrics() {
+    return new LimboResolutionMetrics(
+        limboTargetsByKey.size(),
+        enqueuedLimboResolutions.size(),
+        completedLimboResolutions,
+        rejectedLimboResolutions,
+        completedLimboResolutions > 0 ? totalLimboResolutionMs / completedLimboResolutions : 0,
+        maxLimboResolutionMs);
+  }
+
   public void handleCredentialChange(User user) {
     boolean userChanged = !currentUser.equals(user);
     currentUser = user;
@@ -601,6 +854,8 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       // Notify local store and emit any resulting events from swapping out the mutation queue.
       ImmutableSortedMap<DocumentKey, MaybeDocument> changes = localStore.handleUserChange(user);
       emitNewSnapsAndNotifyLocalStore(changes, /*remoteEvent=*/ null);
+      // The new user has a mutation queue of its own.
+      updatePendingWritesThresholds();
     }
 
     // Notify remote store so it can restart its streams.
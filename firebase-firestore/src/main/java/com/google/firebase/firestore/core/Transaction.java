@@ -19,6 +19,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.FirebaseFirestoreException.Code;
@@ -33,12 +34,15 @@ import com.google.firebase.firestore.model.mutation.DeleteMutation;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.Precondition;
 import com.google.firebase.firestore.remote.Datastore;
+import com.google.firebase.firestore.util.AsyncQueue;
 import com.google.firebase.firestore.util.Executors;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -48,9 +52,25 @@ import java.util.concurrent.TimeUnit;
 /**
  * Internal transaction object responsible for accumulating the mutations to perform and the base
  * versions for any documents read.
+ *
+ * <p>A read-only transaction instead reads all documents at the read time of its first lookup, so
+ * that there is nothing to verify when it commits. Lookups that are issued before the AsyncQueue
+ * gets to send them are combined into a single lookup.
  */
 public class Transaction {
+  /** A lookup of a read-only transaction that has not been sent yet. */
+  private static class PendingLookup {
+    final List<DocumentKey> keys;
+    final TaskCompletionSource<List<MaybeDocument>> result = new TaskCompletionSource<>();
+
+    PendingLookup(List<DocumentKey> keys) {
+      this.keys = keys;
+    }
+  }
+
   private final Datastore datastore;
+  private final boolean readOnly;
+  @Nullable private final AsyncQueue asyncQueue;
   private final HashMap<DocumentKey, SnapshotVersion> readVersions = new HashMap<>();
   private final ArrayList<Mutation> mutations = new ArrayList<>();
   private boolean committed;
@@ -69,8 +89,43 @@ public class Transaction {
    */
   private Set<DocumentKey> writtenDocs = new HashSet<>();
 
+  /** The lookups of a read-only transaction that wait to be sent, guarded by itself. */
+  private final List<PendingLookup> pendingLookups = new ArrayList<>();
+
+  private boolean sendScheduled;
+
+  /**
+   * The time at which a read-only transaction reads, or null until its first lookup returned. Only
+   * accessed on the AsyncQueue.
+   */
+  @Nullable private SnapshotVersion readTime;
+
+  /**
+   * Whether the lookup that determines the read time of a read-only transaction is in flight. Only
+   * accessed on the AsyncQueue.
+   */
+  private boolean readTimeLookupInFlight;
+
   public Transaction(Datastore d) {
+    this(d, /* readOnly= */ false, /* asyncQueue= */ null);
+  }
+
+  private Transaction(Datastore d, boolean readOnly, @Nullable AsyncQueue asyncQueue) {
     datastore = d;
+    this.readOnly = readOnly;
+    this.asyncQueue = asyncQueue;
+  }
+
+  /**
+   * Creates a read-only transaction, which sends its lookups and handles their results on the
+   * given AsyncQueue.
+   */
+  public static Transaction createReadOnly(Datastore d, AsyncQueue asyncQueue) {
+    return new Transaction(d, /* readOnly= */ true, asyncQueue);
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
   }
 
   /**
@@ -80,6 +135,18 @@ public class Transaction {
   public Task<List<MaybeDocument>> lookup(List<DocumentKey> keys) {
     ensureCommitNotCalled();
 
+    if (readOnly) {
+      PendingLookup lookup = new PendingLookup(keys);
+      synchronized (pendingLookups) {
+        pendingLookups.add(lookup);
+        if (!sendScheduled) {
+          sendScheduled = true;
+          asyncQueue.enqueueAndForget(this::sendPendingLookups);
+        }
+      }
+      return lookup.result.getTask();
+    }
+
     if (mutations.size() != 0) {
       return Tasks.forException(
           new FirebaseFirestoreException(
@@ -100,6 +167,76 @@ public class Transaction {
             });
   }
 
+  /**
+   * Sends all pending lookups of a read-only transaction in a single lookup. The first lookup
+   * determines the read time, so later lookups wait until it returned.
+   */
+  private void sendPendingLookups() {
+    asyncQueue.verifyIsCurrentThread();
+    List<PendingLookup> lookups;
+    synchronized (pendingLookups) {
+      sendScheduled = false;
+      if (pendingLookups.isEmpty() || readTimeLookupInFlight) {
+        return;
+      }
+      lookups = new ArrayList<>(pendingLookups);
+      pendingLookups.clear();
+    }
+
+    Set<DocumentKey> keys = new LinkedHashSet<>();
+    for (PendingLookup lookup : lookups) {
+      keys.addAll(lookup.keys);
+    }
+    boolean determinesReadTime = readTime == null;
+    readTimeLookupInFlight = determinesReadTime;
+    datastore
+        .lookupWithReadTime(new ArrayList<>(keys), readTime)
+        .addOnCompleteListener(
+            asyncQueue.getExecutor(),
+            task -> {
+              if (task.isSuccessful()) {
+                Datastore.LookupResult result = task.getResult();
+                // A response without documents has no read time, so the next lookup determines it.
+                if (determinesReadTime && !result.getReadTime().equals(SnapshotVersion.NONE)) {
+                  readTime = result.getReadTime();
+                }
+                Map<DocumentKey, MaybeDocument> docs = new HashMap<>();
+                for (MaybeDocument doc : result.getDocuments()) {
+                  if (doc != null) {
+                    docs.put(doc.getKey(), doc);
+                  }
+                }
+                for (PendingLookup lookup : lookups) {
+                  completeLookup(lookup, docs);
+                }
+              } else {
+                for (PendingLookup lookup : lookups) {
+                  lookup.result.setException(task.getException());
+                }
+              }
+
+              if (determinesReadTime) {
+                readTimeLookupInFlight = false;
+                sendPendingLookups();
+              }
+            });
+  }
+
+  private static void completeLookup(PendingLookup lookup, Map<DocumentKey, MaybeDocument> docs) {
+    List<MaybeDocument> lookupDocs = new ArrayList<>(lookup.keys.size());
+    for (DocumentKey key : lookup.keys) {
+      MaybeDocument doc = docs.get(key);
+      if (doc == null) {
+        lookup.result.setException(
+            new FirebaseFirestoreException(
+                "The backend did not return document " + key + " in a lookup.", Code.INTERNAL));
+        return;
+      }
+      lookupDocs.add(doc);
+    }
+    lookup.result.setResult(lookupDocs);
+  }
+
   /** Stores a set mutation for the given key and value, to be committed when commit() is called. */
   public void set(DocumentKey key, ParsedSetData data) {
     write(data.toMutationList(key, precondition(key)));
@@ -131,6 +268,12 @@ public class Transaction {
       return Tasks.forException(lastWriteError);
     }
 
+    if (readOnly) {
+      // All documents were read at the same read time, so there is nothing to commit.
+      committed = true;
+      return Tasks.forResult(null);
+    }
+
     HashSet<DocumentKey> unwritten = new HashSet<>(readVersions.keySet());
     // For each mutation, note that the doc was written.
     for (Mutation mutation : mutations) {
@@ -239,6 +382,12 @@ public class Transaction {
 
   private void write(List<Mutation> mutations) {
     ensureCommitNotCalled();
+    if (readOnly) {
+      lastWriteError =
+          new FirebaseFirestoreException(
+              "Firestore read-only transactions cannot write documents.", Code.INVALID_ARGUMENT);
+      return;
+    }
     this.mutations.addAll(mutations);
   }
 
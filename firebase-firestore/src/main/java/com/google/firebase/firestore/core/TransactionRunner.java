@@ -31,6 +31,7 @@ public class TransactionRunner<TResult> {
   private AsyncQueue asyncQueue;
   private RemoteStore remoteStore;
   private Function<Transaction, Task<TResult>> updateFunction;
+  private boolean readOnly;
   private int retriesLeft;
 
   private ExponentialBackoff backoff;
@@ -39,11 +40,13 @@ public class TransactionRunner<TResult> {
   public TransactionRunner(
       AsyncQueue asyncQueue,
       RemoteStore remoteStore,
-      Function<Transaction, Task<TResult>> updateFunction) {
+      Function<Transaction, Task<TResult>> updateFunction,
+      boolean readOnly) {
 
     this.asyncQueue = asyncQueue;
     this.remoteStore = remoteStore;
     this.updateFunction = updateFunction;
+    this.readOnly = readOnly;
     this.retriesLeft = RETRY_COUNT;
 
     backoff = new ExponentialBackoff(asyncQueue, TimerId.RETRY_TRANSACTION);
@@ -58,7 +61,8 @@ public class TransactionRunner<TResult> {
   private void runWithBackoff() {
     backoff.backoffAndRun(
         () -> {
-          final Transaction transaction = remoteStore.createTransaction();
+          final Transaction transaction =
+              readOnly ? remoteStore.createReadOnlyTransaction() : remoteStore.createTransaction();
           updateFunction
               .apply(transaction)
               .addOnCompleteListener(
@@ -95,7 +99,9 @@ public class TransactionRunner<TResult> {
   private static boolean isRetryableTransactionError(Exception e) {
     if (e instanceof FirebaseFirestoreException) {
       // In transactions, the backend will fail outdated reads with FAILED_PRECONDITION and
-      // non-matching document versions with ABORTED. These errors should be retried.
+      // non-matching document versions with ABORTED. These errors should be retried. Read-only
+      // transactions also fail with FAILED_PRECONDITION once their read time is too old, and the
+      // retry starts over with a new read time.
       FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
       return code == FirebaseFirestoreException.Code.ABORTED
           || code == FirebaseFirestoreException.Code.FAILED_PRECONDITION
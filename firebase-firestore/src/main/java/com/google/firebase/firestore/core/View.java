@@ -20,6 +20,7 @@ import static com.google.firebase.firestore.util.Util.compareIntegers;
 import androidx.annotation.Nullable;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.database.collection.ImmutableSortedSetBuilder;
 import com.google.firebase.firestore.core.DocumentViewChange.Type;
 import com.google.firebase.firestore.core.ViewSnapshot.SyncState;
 import com.google.firebase.firestore.model.Document;
@@ -29,8 +30,10 @@ import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.remote.TargetChange;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * View is responsible for computing the final merged truth of what docs are in a query. It gets
@@ -44,11 +47,17 @@ public class View {
         DocumentSet newDocuments,
         DocumentViewChangeSet changes,
         ImmutableSortedSet<DocumentKey> mutatedKeys,
-        boolean needsRefill) {
+        DocumentSet spillDocuments,
+        boolean needsRefill,
+        @Nullable ImmutableSortedSet<DocumentKey> refillKeys,
+        @Nullable Document spillBoundary) {
       this.documentSet = newDocuments;
       this.changeSet = changes;
       this.mutatedKeys = mutatedKeys;
+      this.spillDocuments = spillDocuments;
       this.needsRefill = needsRefill;
+      this.refillKeys = refillKeys;
+      this.spillBoundary = spillBoundary;
     }
 
     /** The new set of docs that should be in the view. */
@@ -61,6 +70,14 @@ public class View {
 
     final ImmutableSortedSet<DocumentKey> mutatedKeys;
 
+    /** The new set of docs right after the limit of the view. */
+    final DocumentSet spillDocuments;
+
+    @Nullable private final ImmutableSortedSet<DocumentKey> refillKeys;
+
+    /** The last doc up to which the spill docs were known to be complete before a refill. */
+    @Nullable private final Document spillBoundary;
+
     /**
      * Whether the set of documents passed in was not sufficient to calculate the new state of the
      * view and there needs to be another pass based on the local cache.
@@ -68,8 +85,23 @@ public class View {
     public boolean needsRefill() {
       return needsRefill;
     }
+
+    /**
+     * The keys of the documents that the refill should read from the local cache, or null if the
+     * refill needs to re-run the query against the local cache.
+     */
+    @Nullable
+    public ImmutableSortedSet<DocumentKey> getRefillKeys() {
+      return refillKeys;
+    }
   }
 
+  /**
+   * The maximum number of docs that a limit query keeps right after its limit, so that docs that
+   * move out of the limit can usually be replaced without re-running the query.
+   */
+  static final int MAX_SPILL_DOCUMENTS = 100;
+
   private final Query query;
 
   private SyncState syncState;
@@ -92,6 +124,9 @@ public class View {
   /** Documents that have local changes */
   private ImmutableSortedSet<DocumentKey> mutatedKeys;
 
+  /** Documents in the local cache right after the limit of the view */
+  private DocumentSet spillDocuments;
+
   public View(Query query, ImmutableSortedSet<DocumentKey> remoteDocuments) {
     this.query = query;
     syncState = SyncState.NONE;
@@ -99,6 +134,7 @@ public class View {
     syncedDocuments = remoteDocuments;
     limboDocuments = DocumentKey.emptyKeySet();
     mutatedKeys = DocumentKey.emptyKeySet();
+    spillDocuments = DocumentSet.emptySet(query.comparator());
   }
 
   /**
@@ -130,9 +166,11 @@ public class View {
         previousChanges != null ? previousChanges.changeSet : new DocumentViewChangeSet();
     DocumentSet oldDocumentSet =
         previousChanges != null ? previousChanges.documentSet : documentSet;
-    ImmutableSortedSet<DocumentKey> newMutatedKeys =
-        previousChanges != null ? previousChanges.mutatedKeys : mutatedKeys;
-    DocumentSet newDocumentSet = oldDocumentSet;
+    ImmutableSortedSetBuilder<DocumentKey> mutatedKeysBuilder =
+        (previousChanges != null ? previousChanges.mutatedKeys : mutatedKeys).toBuilder();
+    // Collect the changes in builders, so that we don't create a new immutable set per change.
+    DocumentSet.Builder documentSetBuilder = oldDocumentSet.toBuilder();
+    Comparator<Document> comparator = query.comparator();
     boolean needsRefill = false;
 
     // Track the last doc in a (full) limit. This is necessary, because some update (a delete, or an
@@ -141,13 +179,36 @@ public class View {
     // in the case of updates, or (2) after the new last document, in the case of deletes. So we
     // keep this doc at the old limit to compare the updates to.
     //
-    // Note that this should never get used in a refill (when previousChanges is set), because there
-    // will only be adds -- no deletes or updates.
+    // Docs that are added after this doc would be trimmed again right away, so they are only
+    // considered for the spill docs.
     Document lastDocInLimit =
         (query.hasLimit() && oldDocumentSet.size() == query.getLimit())
             ? oldDocumentSet.getLastDocument()
             : null;
 
+    // The spill docs are the docs in the local cache right after the limit, up to the spill
+    // boundary. A refill of the spill docs is passed their current versions and rebuilds them, and
+    // a full refill is passed all docs that match the query. Otherwise, docs that changed are
+    // removed from the spill docs, and docs that drop out of the limit are added again if they are
+    // still within the boundary. If the view was not full before, it contained all docs that match
+    // the query, so that all docs after the limit are known. This does not hold for the initial
+    // computation, which may be based on the previous results of the query.
+    boolean isSpillRefill = previousChanges != null && previousChanges.refillKeys != null;
+    boolean spillComplete;
+    Document spillBoundary;
+    DocumentSet oldSpillDocuments;
+    if (previousChanges == null) {
+      spillComplete = lastDocInLimit == null && syncState != SyncState.NONE;
+      spillBoundary = spillDocuments.isEmpty() ? lastDocInLimit : spillDocuments.getLastDocument();
+      oldSpillDocuments = spillDocuments;
+    } else {
+      spillComplete = !isSpillRefill;
+      spillBoundary = previousChanges.spillBoundary;
+      oldSpillDocuments = DocumentSet.emptySet(comparator);
+    }
+    DocumentSet.Builder spillBuilder = oldSpillDocuments.toBuilder();
+    List<Document> spillCandidates = new ArrayList<>();
+
     for (Map.Entry<DocumentKey, ? extends MaybeDocument> entry : docChanges) {
       DocumentKey key = entry.getKey();
       Document oldDoc = oldDocumentSet.getDocument(key);
@@ -169,6 +230,10 @@ public class View {
         }
       }
 
+      if (oldSpillDocuments.contains(key)) {
+        spillBuilder.remove(key);
+      }
+
       boolean oldDocHadPendingMutations =
           oldDoc != null && this.mutatedKeys.contains(oldDoc.getKey());
 
@@ -184,13 +249,13 @@ public class View {
 
       // Calculate change
       if (oldDoc != null && newDoc != null) {
-        boolean docsEqual = oldDoc.getData().equals(newDoc.getData());
+        boolean docsEqual = oldDoc.hasSameData(newDoc);
         if (!docsEqual) {
           if (!shouldWaitForSyncedDocument(oldDoc, newDoc)) {
             changeSet.addChange(DocumentViewChange.create(Type.MODIFIED, newDoc));
             changeApplied = true;
 
-            if (lastDocInLimit != null && query.comparator().compare(newDoc, lastDocInLimit) > 0) {
+            if (lastDocInLimit != null && comparator.compare(newDoc, lastDocInLimit) > 0) {
               // This doc moved from inside the limit to after the limit. That means there may be
               // some doc in the local cache that's actually less than this one.
               needsRefill = true;
@@ -201,8 +266,12 @@ public class View {
           changeApplied = true;
         }
       } else if (oldDoc == null && newDoc != null) {
-        changeSet.addChange(DocumentViewChange.create(Type.ADDED, newDoc));
-        changeApplied = true;
+        if (lastDocInLimit != null && comparator.compare(newDoc, lastDocInLimit) > 0) {
+          spillCandidates.add(newDoc);
+        } else {
+          changeSet.addChange(DocumentViewChange.create(Type.ADDED, newDoc));
+          changeApplied = true;
+        }
       } else if (oldDoc != null && newDoc == null) {
         changeSet.addChange(DocumentViewChange.create(Type.REMOVED, oldDoc));
         changeApplied = true;
@@ -215,33 +284,112 @@ public class View {
 
       if (changeApplied) {
         if (newDoc != null) {
-          newDocumentSet = newDocumentSet.add(newDoc);
+          documentSetBuilder.add(newDoc);
           if (newDoc.hasLocalMutations()) {
-            newMutatedKeys = newMutatedKeys.insert(newDoc.getKey());
+            mutatedKeysBuilder.insert(newDoc.getKey());
           } else {
-            newMutatedKeys = newMutatedKeys.remove(newDoc.getKey());
+            mutatedKeysBuilder.remove(newDoc.getKey());
           }
         } else {
-          newDocumentSet = newDocumentSet.remove(key);
-          newMutatedKeys = newMutatedKeys.remove(key);
+          documentSetBuilder.remove(key);
+          mutatedKeysBuilder.remove(key);
         }
       }
     }
 
+    DocumentSet newDocumentSet = documentSetBuilder.build();
+    ImmutableSortedSet<DocumentKey> newMutatedKeys = mutatedKeysBuilder.build();
+    DocumentSet newSpillDocuments = oldSpillDocuments;
+    ImmutableSortedSet<DocumentKey> refillKeys = null;
+
     if (query.hasLimit()) {
       for (long i = newDocumentSet.size() - this.query.getLimit(); i > 0; --i) {
         Document oldDoc = newDocumentSet.getLastDocument();
         newDocumentSet = newDocumentSet.remove(oldDoc.getKey());
         newMutatedKeys = newMutatedKeys.remove(oldDoc.getKey());
         changeSet.addChange(DocumentViewChange.create(Type.REMOVED, oldDoc));
+        spillCandidates.add(oldDoc);
+      }
+
+      newSpillDocuments =
+          computeSpillDocuments(spillBuilder, spillCandidates, spillBoundary, spillComplete);
+
+      boolean isFull = newDocumentSet.size() == query.getLimit();
+      boolean withinBoundary =
+          isFull
+              && spillBoundary != null
+              && comparator.compare(newDocumentSet.getLastDocument(), spillBoundary) <= 0;
+      if (needsRefill && previousChanges == null) {
+        if (withinBoundary
+            && (newSpillDocuments.isEmpty()
+                || comparator.compare(
+                        newDocumentSet.getLastDocument(), newSpillDocuments.getFirstDocument())
+                    < 0)) {
+          // All docs in the local cache up to the boundary are either in the view or spill docs,
+          // and none of the spill docs comes before the last doc.
+          needsRefill = false;
+        } else if (!newSpillDocuments.isEmpty() && (!isFull || withinBoundary)) {
+          // The spill docs may replace the docs that dropped out of the limit.
+          ImmutableSortedSetBuilder<DocumentKey> keys = DocumentKey.emptyKeySet().toBuilder();
+          for (Document doc : newSpillDocuments) {
+            keys.insert(doc.getKey());
+          }
+          refillKeys = keys.build();
+        }
+      } else if (isSpillRefill) {
+        // The spill docs did not suffice if docs that are not known may come before the last doc.
+        needsRefill = !withinBoundary;
       }
     }
 
     hardAssert(
-        !needsRefill || previousChanges == null,
+        !needsRefill || previousChanges == null || isSpillRefill,
         "View was refilled using docs that themselves needed refilling.");
 
-    return new DocumentChanges(newDocumentSet, changeSet, newMutatedKeys, needsRefill);
+    return new DocumentChanges(
+        newDocumentSet,
+        changeSet,
+        newMutatedKeys,
+        newSpillDocuments,
+        needsRefill,
+        refillKeys,
+        refillKeys != null ? spillBoundary : null);
+  }
+
+  /**
+   * Adds the candidates that are within the spill boundary to the spill docs, and returns the
+   * spill docs that are within the maximum size.
+   */
+  private DocumentSet computeSpillDocuments(
+      DocumentSet.Builder spillBuilder,
+      List<Document> candidates,
+      @Nullable Document spillBoundary,
+      boolean spillComplete) {
+    Comparator<Document> comparator = query.comparator();
+    int capacity = (int) Math.min(query.getLimit(), MAX_SPILL_DOCUMENTS);
+
+    // Only the first candidates can become spill docs, so keep them in a bounded heap instead of
+    // adding all of them to the spill docs.
+    PriorityQueue<Document> firstCandidates =
+        new PriorityQueue<>(capacity + 1, Collections.reverseOrder(comparator));
+    for (Document candidate : candidates) {
+      if (spillComplete
+          || (spillBoundary != null && comparator.compare(candidate, spillBoundary) <= 0)) {
+        firstCandidates.add(candidate);
+        if (firstCandidates.size() > capacity) {
+          firstCandidates.poll();
+        }
+      }
+    }
+    for (Document candidate : firstCandidates) {
+      spillBuilder.add(candidate);
+    }
+
+    DocumentSet spill = spillBuilder.build();
+    while (spill.size() > capacity) {
+      spill = spill.remove(spill.getLastDocument().getKey());
+    }
+    return spill;
   }
 
   private boolean shouldWaitForSyncedDocument(Document oldDoc, Document newDoc) {
@@ -281,6 +429,7 @@ public class View {
     DocumentSet oldDocumentSet = documentSet;
     documentSet = docChanges.documentSet;
     mutatedKeys = docChanges.mutatedKeys;
+    spillDocuments = docChanges.spillDocuments;
 
     // Sort changes based on type and query comparator.
     List<DocumentViewChange> viewChanges = docChanges.changeSet.getChanges();
@@ -329,7 +478,13 @@ public class View {
       this.current = false;
       return applyChanges(
           new DocumentChanges(
-              documentSet, new DocumentViewChangeSet(), mutatedKeys, /*needsRefill=*/ false));
+              documentSet,
+              new DocumentViewChangeSet(),
+              mutatedKeys,
+              spillDocuments,
+              /*needsRefill=*/ false,
+              /*refillKeys=*/ null,
+              /*spillBoundary=*/ null));
     } else {
       // No effect, just return a no-op ViewChange.
       return new ViewChange(null, Collections.emptyList());
@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A snapshot of statistics about the local cache, as returned by {@link LocalStore#getStatistics}.
+ * The SQLite caches compute their counts and byte sizes with aggregate queries (see {@link
+ * SQLiteTableStats}), so taking a snapshot visits every cached document and target.
+ */
+public final class CacheStatistics {
+  private final long documentCount;
+  private final long documentsByteSize;
+  private final long targetCount;
+  private final long targetsByteSize;
+  private final long mutationBatchCount;
+  private final long mutationBatchesByteSize;
+  private final long highestSequenceNumber;
+  private final long queryResultHitCount;
+  private final long queryResultMissCount;
+  private final long queryResultInvalidationCount;
+  private final long queryResultEvictionCount;
+  @Nullable private final LruGarbageCollector.Results lastGarbageCollection;
+  private final long lastGarbageCollectionMillis;
+
+  CacheStatistics(
+      RemoteDocumentCache remoteDocuments,
+      QueryCache queryCache,
+      MutationQueue mutationQueue,
+      QueryResultCache queryResultCache,
+      @Nullable LruGarbageCollector garbageCollector) {
+    this.documentCount = remoteDocuments.getDocumentCount();
+    this.documentsByteSize = remoteDocuments.getDocumentsByteSize();
+    this.targetCount = queryCache.getTargetCount();
+    this.targetsByteSize = queryCache.getTargetsByteSize();
+    this.mutationBatchCount = mutationQueue.getBatchCount();
+    this.mutationBatchesByteSize = mutationQueue.getBatchesByteSize();
+    this.highestSequenceNumber = queryCache.getHighestListenSequenceNumber();
+    this.queryResultHitCount = queryResultCache.getHitCount();
+    this.queryResultMissCount = queryResultCache.getMissCount();
+    this.queryResultInvalidationCount = queryResultCache.getInvalidationCount();
+    this.queryResultEvictionCount = queryResultCache.getEvictionCount();
+    this.lastGarbageCollection =
+        garbageCollector != null ? garbageCollector.getLastResults() : null;
+    this.lastGarbageCollectionMillis =
+        garbageCollector != null ? garbageCollector.getLastDurationMillis() : 0;
+  }
+
+  public long getDocumentCount() {
+    return documentCount;
+  }
+
+  public long getDocumentsByteSize() {
+    return documentsByteSize;
+  }
+
+  public long getTargetCount() {
+    return targetCount;
+  }
+
+  public long getTargetsByteSize() {
+    return targetsByteSize;
+  }
+
+  /** Returns the number of mutation batches in the queue of the current user. */
+  public long getMutationBatchCount() {
+    return mutationBatchCount;
+  }
+
+  public long getMutationBatchesByteSize() {
+    return mutationBatchesByteSize;
+  }
+
+  public long getHighestSequenceNumber() {
+    return highestSequenceNumber;
+  }
+
+  /** Returns the number of cache reads that reused a previous result of the same query. */
+  public long getQueryResultHitCount() {
+    return queryResultHitCount;
+  }
+
+  public long getQueryResultMissCount() {
+    return queryResultMissCount;
+  }
+
+  /** Returns the number of reused query results that were dropped because of document changes. */
+  public long getQueryResultInvalidationCount() {
+    return queryResultInvalidationCount;
+  }
+
+  /** Returns the number of reused query results that were dropped to stay within the size bound. */
+  public long getQueryResultEvictionCount() {
+    return queryResultEvictionCount;
+  }
+
+  /** Returns the results of the last garbage collection that ran, or null if none has run yet. */
+  @Nullable
+  public LruGarbageCollector.Results getLastGarbageCollection() {
+    return lastGarbageCollection;
+  }
+
+  public long getLastGarbageCollectionMillis() {
+    return lastGarbageCollectionMillis;
+  }
+}
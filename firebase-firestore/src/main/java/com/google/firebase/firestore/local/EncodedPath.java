@@ -17,6 +17,7 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import com.google.firebase.firestore.model.BasePath;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.FieldPath;
 import com.google.firebase.firestore.model.ResourcePath;
 import java.util.ArrayList;
@@ -87,6 +88,11 @@ final class EncodedPath {
     return result.toString();
   }
 
+  /** Encodes the path of a document key into a SQLite-compatible string form. */
+  static String encode(DocumentKey key) {
+    return encode(key.getPath());
+  }
+
   /** Encodes a single segment of a path into the given StringBuilder. */
   private static void encodeSegment(String segment, StringBuilder result) {
     for (int i = 0, length = segment.length(); i < length; i++) {
@@ -115,14 +121,23 @@ final class EncodedPath {
    * server; those are One Platform format strings.
    */
   static ResourcePath decodeResourcePath(String path) {
-    return ResourcePath.fromSegments(decode(path));
+    return ResourcePath.fromSegments(decode(path, /* internCollectionIds= */ true));
+  }
+
+  /** Decodes the given SQLite-compatible string form of a document path into a DocumentKey. */
+  static DocumentKey decodeDocumentKey(String path) {
+    return DocumentKey.fromPath(decodeResourcePath(path));
   }
 
   static FieldPath decodeFieldPath(String path) {
-    return FieldPath.fromSegments(decode(path));
+    return FieldPath.fromSegments(decode(path, /* internCollectionIds= */ false));
   }
 
-  private static List<String> decode(String path) {
+  /**
+   * Decodes the segments of the given path. If {@code internCollectionIds} is set, the path must be
+   * a resource path and the collection IDs at its even positions are interned.
+   */
+  private static List<String> decode(String path, boolean internCollectionIds) {
     // Even the empty path must encode as a path of at least length 2. A path with length of exactly
     // 2 must be the empty path.
     int length = path.length();
@@ -163,6 +178,9 @@ final class EncodedPath {
             segmentBuilder.setLength(0);
           }
 
+          if (internCollectionIds && segments.size() % 2 == 0) {
+            segment = ResourcePath.internCollectionId(segment);
+          }
           segments.add(segment);
           break;
 
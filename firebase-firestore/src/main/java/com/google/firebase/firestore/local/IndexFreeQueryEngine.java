@@ -20,11 +20,15 @@ import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentCollections;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.Logger;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 // TOOD(b/140938512): Drop SimpleQueryEngine and rename IndexFreeQueryEngine.
@@ -98,11 +102,13 @@ public class IndexFreeQueryEngine implements QueryEngine {
 
     // We merge `previousResults` into `updateResults`, since `updateResults` is already a
     // ImmutableSortedMap. If a document is contained in both lists, then its contents are the same.
+    // `previousResults` is sorted by the query's order, which is not necessarily key order, so
+    // documentMapOf() sorts the documents by key before building the map.
+    List<Document> previousDocuments = new ArrayList<>(previousResults.size());
     for (Document result : previousResults) {
-      updatedResults = updatedResults.insert(result.getKey(), result);
+      previousDocuments.add(result);
     }
-
-    return updatedResults;
+    return updatedResults.insertAll(DocumentCollections.documentMapOf(previousDocuments));
   }
 
   /** Applies the query filter and sorting to the provided documents. */
@@ -110,16 +116,16 @@ public class IndexFreeQueryEngine implements QueryEngine {
       Query query, ImmutableSortedMap<DocumentKey, MaybeDocument> documents) {
     // Sort the documents and re-apply the query filter since previously matching documents do not
     // necessarily still match the query.
-    ImmutableSortedSet<Document> queryResults =
-        new ImmutableSortedSet<>(Collections.emptyList(), query.comparator());
+    List<Document> queryResults = new ArrayList<>();
     for (Map.Entry<DocumentKey, MaybeDocument> entry : documents) {
       MaybeDocument maybeDoc = entry.getValue();
       if (maybeDoc instanceof Document && query.matches((Document) maybeDoc)) {
-        Document doc = (Document) maybeDoc;
-        queryResults = queryResults.insert(doc);
+        queryResults.add((Document) maybeDoc);
       }
     }
-    return queryResults;
+    Comparator<Document> comparator = query.comparator();
+    Collections.sort(queryResults, comparator);
+    return ImmutableSortedSet.fromSortedList(queryResults, comparator);
   }
 
   /**
@@ -15,7 +15,6 @@
 package com.google.firebase.firestore.local;
 
 import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
-import static com.google.firebase.firestore.model.DocumentCollections.emptyMaybeDocumentMap;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
@@ -31,6 +30,7 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.PatchMutation;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +47,8 @@ class LocalDocumentsView {
   private final MutationQueue mutationQueue;
   private final IndexManager indexManager;
 
+  @Nullable private QueryStatsCollector stats;
+
   LocalDocumentsView(
       RemoteDocumentCache remoteDocumentCache,
       MutationQueue mutationQueue,
@@ -56,6 +58,15 @@ class LocalDocumentsView {
     this.indexManager = indexManager;
   }
 
+  /**
+   * Installs a collector that records how subsequent reads are executed, or removes the current
+   * collector if {@code stats} is null.
+   */
+  void setStatsCollector(@Nullable QueryStatsCollector stats) {
+    this.stats = stats;
+    remoteDocumentCache.setStatsCollector(stats);
+  }
+
   @VisibleForTesting
   RemoteDocumentCache getRemoteDocumentCache() {
     return remoteDocumentCache;
@@ -85,10 +96,15 @@ class LocalDocumentsView {
   // Internal version of {@code getDocument} that allows reusing batches.
   @Nullable
   private MaybeDocument getDocument(DocumentKey key, List<MutationBatch> inBatches) {
+    long startNanos = startTiming();
     @Nullable MaybeDocument document = remoteDocumentCache.get(key);
+    recordRemoteDocumentRead(startNanos);
+
+    startNanos = startTiming();
     for (MutationBatch batch : inBatches) {
       document = batch.applyToLocalView(key, document);
     }
+    recordMutationOverlay(startNanos, inBatches.size());
 
     return document;
   }
@@ -115,7 +131,9 @@ class LocalDocumentsView {
    * for that key in the resulting set.
    */
   ImmutableSortedMap<DocumentKey, MaybeDocument> getDocuments(Iterable<DocumentKey> keys) {
+    long startNanos = startTiming();
     Map<DocumentKey, MaybeDocument> docs = remoteDocumentCache.getAll(keys);
+    recordRemoteDocumentRead(startNanos);
     return getLocalViewOfDocuments(docs);
   }
 
@@ -125,21 +143,20 @@ class LocalDocumentsView {
    */
   ImmutableSortedMap<DocumentKey, MaybeDocument> getLocalViewOfDocuments(
       Map<DocumentKey, MaybeDocument> baseDocs) {
-    ImmutableSortedMap<DocumentKey, MaybeDocument> results = emptyMaybeDocumentMap();
-
+    long startNanos = startTiming();
     List<MutationBatch> batches =
         mutationQueue.getAllMutationBatchesAffectingDocumentKeys(baseDocs.keySet());
     Map<DocumentKey, MaybeDocument> docs = applyLocalMutationsToDocuments(baseDocs, batches);
+    recordMutationOverlay(startNanos, batches.size());
     for (Map.Entry<DocumentKey, MaybeDocument> entry : docs.entrySet()) {
-      DocumentKey key = entry.getKey();
-      MaybeDocument maybeDoc = entry.getValue();
       // TODO: Don't conflate missing / deleted.
-      if (maybeDoc == null) {
-        maybeDoc = new NoDocument(key, SnapshotVersion.NONE, /*hasCommittedMutations=*/ false);
+      if (entry.getValue() == null) {
+        entry.setValue(
+            new NoDocument(
+                entry.getKey(), SnapshotVersion.NONE, /*hasCommittedMutations=*/ false));
       }
-      results = results.insert(key, maybeDoc);
     }
-    return results;
+    return ImmutableSortedMap.Builder.fromMap(docs, DocumentKey.comparator());
   }
 
   // TODO: The Querying implementation here should move 100% to SimpleQueryEngine.
@@ -156,6 +173,10 @@ class LocalDocumentsView {
    */
   ImmutableSortedMap<DocumentKey, Document> getDocumentsMatchingQuery(
       Query query, SnapshotVersion sinceReadTime) {
+    if (stats != null) {
+      stats.recordQuery(/* indexFree= */ !sinceReadTime.equals(SnapshotVersion.NONE));
+    }
+
     ResourcePath path = query.getPath();
     if (query.isDocumentQuery()) {
       return getDocumentsMatchingDocumentQuery(path);
@@ -183,37 +204,62 @@ class LocalDocumentsView {
     hardAssert(
         query.getPath().isEmpty(),
         "Currently we only support collection group queries at the root.");
+    long startNanos = startTiming();
     String collectionId = query.getCollectionGroup();
-    ImmutableSortedMap<DocumentKey, Document> results = emptyDocumentMap();
     List<ResourcePath> parents = indexManager.getCollectionParents(collectionId);
-
-    // Perform a collection query against each parent that contains the collectionId and
-    // aggregate the results.
+    List<ResourcePath> collectionPaths = new ArrayList<>(parents.size());
     for (ResourcePath parent : parents) {
-      Query collectionQuery = query.asCollectionQueryAtPath(parent.append(collectionId));
-      ImmutableSortedMap<DocumentKey, Document> collectionResults =
-          getDocumentsMatchingCollectionQuery(collectionQuery, sinceReadTime);
-      for (Map.Entry<DocumentKey, Document> docEntry : collectionResults) {
-        results = results.insert(docEntry.getKey(), docEntry.getValue());
-      }
+      collectionPaths.add(parent.append(collectionId));
     }
+
+    // Look up the documents in all collections with the collectionId at once, rather than running
+    // a separate collection query for each parent.
+    ImmutableSortedMap<DocumentKey, Document> results =
+        remoteDocumentCache.getAllDocumentsMatchingCollectionGroupQuery(
+            query, collectionPaths, sinceReadTime);
+    recordRemoteDocumentRead(startNanos);
+
+    // Similarly, look up the mutations in all collections at once.
+    startNanos = startTiming();
+    List<MutationBatch> matchingBatches =
+        mutationQueue.getAllMutationBatchesAffectingCollections(collectionPaths);
+
+    results = applyMutationsToQueryResults(query, matchingBatches, results);
+    recordMutationOverlay(startNanos, matchingBatches.size());
     return results;
   }
 
   /** Queries the remote documents and overlays mutations. */
   private ImmutableSortedMap<DocumentKey, Document> getDocumentsMatchingCollectionQuery(
       Query query, SnapshotVersion sinceReadTime) {
+    long startNanos = startTiming();
     ImmutableSortedMap<DocumentKey, Document> results =
         remoteDocumentCache.getAllDocumentsMatchingQuery(query, sinceReadTime);
+    recordRemoteDocumentRead(startNanos);
 
+    startNanos = startTiming();
     List<MutationBatch> matchingBatches = mutationQueue.getAllMutationBatchesAffectingQuery(query);
+    results = applyMutationsToQueryResults(query, matchingBatches, results);
+    recordMutationOverlay(startNanos, matchingBatches.size());
+    return results;
+  }
 
+  /**
+   * Overlays the mutations of the given batches that affect the query on the remote documents that
+   * match it, and removes the documents that no longer match.
+   */
+  private ImmutableSortedMap<DocumentKey, Document> applyMutationsToQueryResults(
+      Query query,
+      List<MutationBatch> matchingBatches,
+      ImmutableSortedMap<DocumentKey, Document> results) {
     results = addMissingBaseDocuments(matchingBatches, results);
 
     for (MutationBatch batch : matchingBatches) {
       for (Mutation mutation : batch.getMutations()) {
-        // Only process documents belonging to the collection.
-        if (!query.getPath().isImmediateParentOf(mutation.getKey().getPath())) {
+        // Only process documents belonging to the collection (group).
+        if (query.isCollectionGroupQuery()
+            ? !mutation.getKey().hasCollectionId(query.getCollectionGroup())
+            : !query.getPath().isImmediateParentOf(mutation.getKey().getPath())) {
           continue;
         }
 
@@ -268,4 +314,22 @@ class LocalDocumentsView {
 
     return mergedDocs;
   }
+
+  /** Returns the start time for the record methods below, only reading the clock if needed. */
+  private long startTiming() {
+    return stats != null ? System.nanoTime() : 0;
+  }
+
+  private void recordRemoteDocumentRead(long startNanos) {
+    if (stats != null) {
+      stats.recordRemoteDocumentRead(System.nanoTime() - startNanos);
+    }
+  }
+
+  private void recordMutationOverlay(long startNanos, int batchCount) {
+    if (stats != null) {
+      stats.recordMutationOverlay(System.nanoTime() - startNanos);
+      stats.recordMutationBatchesApplied(batchCount);
+    }
+  }
 }
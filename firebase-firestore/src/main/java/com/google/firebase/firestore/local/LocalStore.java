@@ -28,6 +28,7 @@ import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.core.TargetIdGenerator;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.DocumentSet;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.NoDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
@@ -37,6 +38,7 @@ import com.google.firebase.firestore.model.mutation.MutationBatchResult;
 import com.google.firebase.firestore.model.mutation.PatchMutation;
 import com.google.firebase.firestore.model.mutation.Precondition;
 import com.google.firebase.firestore.model.value.ObjectValue;
+import com.google.firebase.firestore.remote.Datastore;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.TargetChange;
 import com.google.firebase.firestore.util.Logger;
@@ -129,6 +131,9 @@ public final class LocalStore {
   /** Used to generate targetIds for queries tracked locally. */
   private final TargetIdGenerator targetIdGenerator;
 
+  /** The results of previous reads of queries from the local cache that are still valid. */
+  private final QueryResultCache queryResultCache;
+
   public LocalStore(Persistence persistence, QueryEngine queryEngine, User initialUser) {
     hardAssert(
         persistence.isStarted(), "LocalStore was passed an unstarted persistence implementation");
@@ -148,6 +153,13 @@ public final class LocalStore {
 
     queryDataByTarget = new SparseArray<>();
     targetIdByQuery = new HashMap<>();
+    // Eager garbage collection removes documents at the end of transactions without reporting
+    // them, so cached results could still contain documents that were removed.
+    queryResultCache =
+        new QueryResultCache(
+            persistence.getReferenceDelegate() instanceof LruDelegate
+                ? QueryResultCache.DEFAULT_MAX_BYTE_SIZE
+                : QueryResultCache.DISABLED);
   }
 
   public void start() {
@@ -189,7 +201,10 @@ public final class LocalStore {
     }
 
     // Return the set of all (potentially) changed documents as the result of the user change.
-    return localDocuments.getDocuments(changedKeys);
+    ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+        localDocuments.getDocuments(changedKeys);
+    queryResultCache.invalidate(changes);
+    return changes;
   }
 
   /** Accepts locally generated Mutations and commits them to storage. */
@@ -235,6 +250,7 @@ public final class LocalStore {
               mutationQueue.addMutationBatch(localWriteTime, baseMutations, mutations);
           ImmutableSortedMap<DocumentKey, MaybeDocument> changedDocuments =
               batch.applyToLocalDocumentSet(existingDocuments);
+          queryResultCache.invalidate(changedDocuments);
           return new LocalWriteResult(batch.getBatchId(), changedDocuments);
         });
   }
@@ -263,7 +279,10 @@ public final class LocalStore {
           mutationQueue.acknowledgeBatch(batch, batchResult.getStreamToken());
           applyWriteToRemoteDocuments(batchResult);
           mutationQueue.performConsistencyCheck();
-          return localDocuments.getDocuments(batch.getKeys());
+          ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+              localDocuments.getDocuments(batch.getKeys());
+          queryResultCache.invalidate(changes);
+          return changes;
         });
   }
 
@@ -284,7 +303,10 @@ public final class LocalStore {
 
           mutationQueue.removeMutationBatch(toReject);
           mutationQueue.performConsistencyCheck();
-          return localDocuments.getDocuments(toReject.getKeys());
+          ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+              localDocuments.getDocuments(toReject.getKeys());
+          queryResultCache.invalidate(changes);
+          return changes;
         });
   }
 
@@ -296,6 +318,11 @@ public final class LocalStore {
     return mutationQueue.getHighestUnacknowledgedBatchId();
   }
 
+  /** Returns the number of mutation batches of the current user that await a server response. */
+  public long getPendingWriteBatchCount() {
+    return mutationQueue.getBatchCount();
+  }
+
   /** Returns the last recorded stream token for the current user. */
   public ByteString getLastStreamToken() {
     return mutationQueue.getLastStreamToken();
@@ -429,7 +456,59 @@ public final class LocalStore {
             queryCache.setLastRemoteSnapshotVersion(remoteVersion);
           }
 
-          return localDocuments.getLocalViewOfDocuments(changedDocs);
+          ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+              localDocuments.getLocalViewOfDocuments(changedDocs);
+          queryResultCache.invalidate(changes);
+          return changes;
+        });
+  }
+
+  /**
+   * Writes documents that were looked up directly from the backend into the remote document cache,
+   * all within a single transaction. As with {@link #applyRemoteEvent}, a document only replaces
+   * the cached version if it is newer.
+   *
+   * @return The local view of all looked up documents, with pending mutations applied.
+   */
+  public ImmutableSortedMap<DocumentKey, MaybeDocument> applyLookupResults(
+      List<Datastore.LookupResult> lookupResults) {
+    return persistence.runTransaction(
+        "Apply lookup results",
+        () -> {
+          Map<DocumentKey, MaybeDocument> baseDocs = new HashMap<>();
+          for (Datastore.LookupResult lookupResult : lookupResults) {
+            SnapshotVersion readTime = lookupResult.getReadTime();
+            List<MaybeDocument> documents = lookupResult.getDocuments();
+            Set<DocumentKey> keys = new HashSet<>();
+            for (MaybeDocument doc : documents) {
+              keys.add(doc.getKey());
+            }
+            Map<DocumentKey, MaybeDocument> existingDocs = remoteDocuments.getAll(keys);
+
+            for (MaybeDocument doc : documents) {
+              DocumentKey key = doc.getKey();
+              MaybeDocument existingDoc = existingDocs.get(key);
+              if (!readTime.equals(SnapshotVersion.NONE)
+                  && (existingDoc == null
+                      || doc.getVersion().compareTo(existingDoc.getVersion()) > 0
+                      || (doc.getVersion().compareTo(existingDoc.getVersion()) == 0
+                          && existingDoc.hasPendingWrites()))) {
+                remoteDocuments.add(doc, readTime);
+                // Documents that are looked up are not part of any target. Treat them like
+                // resolved limbo documents so that they are eligible for garbage collection.
+                persistence.getReferenceDelegate().updateLimboDocument(key);
+                baseDocs.put(key, doc);
+              } else {
+                // Without a read time the result can't be cached, but it is still the best version
+                // of the document that we know of if the cache has none.
+                baseDocs.put(key, existingDoc != null ? existingDoc : doc);
+              }
+            }
+          }
+          ImmutableSortedMap<DocumentKey, MaybeDocument> changes =
+              localDocuments.getLocalViewOfDocuments(baseDocs);
+          queryResultCache.invalidate(changes);
+          return changes;
         });
   }
 
@@ -520,6 +599,14 @@ public final class LocalStore {
     return localDocuments.getDocument(key);
   }
 
+  /**
+   * Returns the current values of the documents with the given keys. Documents that are not found
+   * are returned as NoDocuments.
+   */
+  public ImmutableSortedMap<DocumentKey, MaybeDocument> readDocuments(Iterable<DocumentKey> keys) {
+    return localDocuments.getDocuments(keys);
+  }
+
   /**
    * Assigns the given query an internal ID so that its results can be pinned so they don't get
    * GC'd. A query must be allocated in the local store before the store can be used to manage its
@@ -631,6 +718,40 @@ public final class LocalStore {
     return new QueryResult(documents, remoteKeys);
   }
 
+  /**
+   * Runs the specified query like {@link #executeQuery} and records how it was executed into
+   * {@code stats}, e.g. which documents were read and how long each phase took.
+   */
+  public QueryResult executeQuery(
+      Query query, boolean usePreviousResults, QueryStatsCollector stats) {
+    localDocuments.setStatsCollector(stats);
+    try {
+      long startNanos = System.nanoTime();
+      QueryResult result = executeQuery(query, usePreviousResults);
+      stats.recordQueryEngine(System.nanoTime() - startNanos, result.getDocuments().size());
+      return result;
+    } finally {
+      localDocuments.setStatsCollector(null);
+    }
+  }
+
+  /**
+   * Returns the result of a previous read of the query from the local cache if none of the
+   * documents that it depends on have changed since, or null otherwise.
+   */
+  @Nullable
+  public DocumentSet getCachedQueryResult(Query query) {
+    return queryResultCache.get(query);
+  }
+
+  /**
+   * Caches the result of reading the query from the local cache, to be returned by {@link
+   * #getCachedQueryResult} until one of the documents that it depends on changes.
+   */
+  public void cacheQueryResult(Query query, DocumentSet documents) {
+    queryResultCache.put(query, documents);
+  }
+
   /**
    * Returns the keys of the documents that are associated with the given target id in the remote
    * table.
@@ -665,8 +786,59 @@ public final class LocalStore {
     mutationQueue.removeMutationBatch(batch);
   }
 
+  /**
+   * Returns statistics about the local cache. The garbage collector is null if garbage collection
+   * is disabled.
+   */
+  public CacheStatistics getStatistics(@Nullable LruGarbageCollector garbageCollector) {
+    return persistence.runTransaction(
+        "Get statistics",
+        () ->
+            new CacheStatistics(
+                remoteDocuments, queryCache, mutationQueue, queryResultCache, garbageCollector));
+  }
+
   public LruGarbageCollector.Results collectGarbage(LruGarbageCollector garbageCollector) {
+    LruGarbageCollector.Results results =
+        persistence.runTransaction(
+            "Collect garbage", () -> garbageCollector.collect(queryDataByTarget));
+    if (results.getDocumentsRemoved() > 0) {
+      // The removed documents are not reported individually.
+      queryResultCache.invalidateAll();
+    }
+    return results;
+  }
+
+  /**
+   * Returns the upper bound of the sequence numbers to collect in the next garbage collection, or
+   * {@code ListenSequence.INVALID} if no collection is necessary.
+   */
+  public long determineGarbageUpperBound(LruGarbageCollector garbageCollector) {
+    return persistence.runTransaction(
+        "Determine garbage upper bound", () -> garbageCollector.determineUpperBound());
+  }
+
+  /** Removes inactive targets up to the given sequence number. Returns the number removed. */
+  public int removeGarbageTargets(LruGarbageCollector garbageCollector, long upperBound) {
     return persistence.runTransaction(
-        "Collect garbage", () -> garbageCollector.collect(queryDataByTarget));
+        "Remove garbage targets",
+        () -> garbageCollector.removeTargets(upperBound, queryDataByTarget));
+  }
+
+  /**
+   * Removes orphaned documents up to the given sequence number, among the next chunk of candidates
+   * after the given key.
+   */
+  public LruGarbageCollector.OrphanedDocumentsChunk removeGarbageDocuments(
+      LruGarbageCollector garbageCollector, long upperBound, @Nullable DocumentKey startAfter) {
+    LruGarbageCollector.OrphanedDocumentsChunk chunk =
+        persistence.runTransaction(
+            "Remove garbage documents",
+            () -> garbageCollector.removeOrphanedDocuments(upperBound, startAfter));
+    if (chunk.getDocumentsRemoved() > 0) {
+      // The removed documents are not reported individually.
+      queryResultCache.invalidateAll();
+    }
+    return chunk;
   }
 }
@@ -15,6 +15,8 @@
 package com.google.firebase.firestore.local;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.Consumer;
 
 /**
@@ -40,12 +42,16 @@ public interface LruDelegate {
   int removeTargets(long upperBound, SparseArray<?> activeTargetIds);
 
   /**
-   * Removes all unreferenced documents from the cache that have a sequence number less than or
-   * equal to the given sequence number.
+   * Removes unreferenced documents from the cache that have a sequence number less than or equal to
+   * the given sequence number. Only looks at the next {@link
+   * SQLiteLruReferenceDelegate#REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE} candidates, in key order, so
+   * that a large cache can be collected in several transactions.
    *
-   * @return the number of documents removed.
+   * @param startAfter The last key of the previous chunk, or null to start with the first document.
+   * @return the number of documents removed, and the key to continue after.
    */
-  int removeOrphanedDocuments(long upperBound);
+  LruGarbageCollector.OrphanedDocumentsChunk removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter);
 
   /** Access to the underlying LRU Garbage collector instance. */
   LruGarbageCollector getGarbageCollector();
@@ -18,7 +18,9 @@ import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.core.ListenSequence;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
 import com.google.firebase.firestore.util.Logger;
 import java.util.Comparator;
 import java.util.Locale;
@@ -107,14 +109,42 @@ public class LruGarbageCollector {
     }
   }
 
+  /** The result of removing orphaned documents among one chunk of candidates. */
+  public static class OrphanedDocumentsChunk {
+    private final int documentsRemoved;
+    @Nullable private final DocumentKey lastKey;
+
+    OrphanedDocumentsChunk(int documentsRemoved, @Nullable DocumentKey lastKey) {
+      this.documentsRemoved = documentsRemoved;
+      this.lastKey = lastKey;
+    }
+
+    public int getDocumentsRemoved() {
+      return documentsRemoved;
+    }
+
+    /** Returns the key to continue after with the next chunk, or null if this was the last one. */
+    @Nullable
+    public DocumentKey getLastKey() {
+      return lastKey;
+    }
+  }
+
   /**
    * This class is responsible for the scheduling of LRU garbage collection. It handles checking
    * whether or not GC is enabled, as well as which delay to use before the next run.
+   *
+   * <p>A scheduled collection runs in the AsyncQueue's background lane, split into steps that each
+   * run in their own transaction: determining the upper bound of the sequence numbers to collect,
+   * removing targets and removing orphaned documents in chunks of {@link
+   * SQLiteLruReferenceDelegate#REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE} candidates. User-facing
+   * operations that are enqueued while a collection is running are only delayed by a single step.
    */
   public class Scheduler {
     private final AsyncQueue asyncQueue;
     private final LocalStore localStore;
     private boolean hasRun = false;
+    private boolean stopped = false;
     @Nullable private AsyncQueue.DelayedTask gcTask;
 
     public Scheduler(AsyncQueue asyncQueue, LocalStore localStore) {
@@ -129,6 +159,7 @@ public class LruGarbageCollector {
     }
 
     public void stop() {
+      stopped = true;
       if (gcTask != null) {
         gcTask.cancel();
       }
@@ -140,17 +171,88 @@ public class LruGarbageCollector {
           asyncQueue.enqueueAfterDelay(
               AsyncQueue.TimerId.GARBAGE_COLLECTION,
               delay,
-              () -> {
-                localStore.collectGarbage(LruGarbageCollector.this);
-                hasRun = true;
-                scheduleGC();
-              });
+              () -> runInBackground(this::determineUpperBound));
+    }
+
+    private void runInBackground(Runnable step) {
+      asyncQueue.enqueueAndForgetInBackground(
+          TaskLabel.GARBAGE_COLLECTION,
+          () -> {
+            if (!stopped) {
+              step.run();
+            }
+          });
+    }
+
+    // The durations passed between the steps only include the time spent in the steps themselves,
+    // not the time spent waiting in the queue.
+
+    private void determineUpperBound() {
+      long startMs = System.currentTimeMillis();
+      long upperBound = localStore.determineGarbageUpperBound(LruGarbageCollector.this);
+      long durationMs = System.currentTimeMillis() - startMs;
+      if (upperBound == ListenSequence.INVALID) {
+        finishGC();
+      } else {
+        runInBackground(() -> removeTargets(upperBound, durationMs));
+      }
+    }
+
+    private void removeTargets(long upperBound, long previousDurationMs) {
+      long startMs = System.currentTimeMillis();
+      int targetsRemoved = localStore.removeGarbageTargets(LruGarbageCollector.this, upperBound);
+      long durationMs = previousDurationMs + System.currentTimeMillis() - startMs;
+      runInBackground(
+          () -> removeOrphanedDocuments(upperBound, null, targetsRemoved, 0, durationMs));
+    }
+
+    private void removeOrphanedDocuments(
+        long upperBound,
+        @Nullable DocumentKey startAfter,
+        int targetsRemoved,
+        int previousDocumentsRemoved,
+        long previousDurationMs) {
+      long startMs = System.currentTimeMillis();
+      OrphanedDocumentsChunk chunk =
+          localStore.removeGarbageDocuments(LruGarbageCollector.this, upperBound, startAfter);
+      int documentsRemoved = previousDocumentsRemoved + chunk.getDocumentsRemoved();
+      long durationMs = previousDurationMs + System.currentTimeMillis() - startMs;
+      if (chunk.getLastKey() != null) {
+        runInBackground(
+            () ->
+                removeOrphanedDocuments(
+                    upperBound, chunk.getLastKey(), targetsRemoved, documentsRemoved, durationMs));
+        return;
+      }
+
+      recordResults(
+          new Results(
+              /* hasRun= */ true, sequenceNumbersToCollect, targetsRemoved, documentsRemoved),
+          durationMs);
+      Logger.debug(
+          "LruGarbageCollector",
+          "Removed %d targets and %d documents up to sequence number %d",
+          targetsRemoved,
+          documentsRemoved,
+          upperBound);
+      finishGC();
+    }
+
+    private void finishGC() {
+      hasRun = true;
+      scheduleGC();
     }
   }
 
   private final LruDelegate delegate;
   private final Params params;
 
+  /** The number of sequence numbers to collect, as of the last {@link #determineUpperBound}. */
+  private int sequenceNumbersToCollect;
+
+  @Nullable private Results lastResults;
+  private long lastDurationMs;
+
   LruGarbageCollector(LruDelegate delegate, Params params) {
     this.delegate = delegate;
     this.params = params;
@@ -223,13 +325,66 @@ public class LruGarbageCollector {
    * otherwise pinned.
    */
   int removeOrphanedDocuments(long upperBound) {
-    return delegate.removeOrphanedDocuments(upperBound);
+    int documentsRemoved = 0;
+    DocumentKey startAfter = null;
+    do {
+      OrphanedDocumentsChunk chunk = removeOrphanedDocuments(upperBound, startAfter);
+      documentsRemoved += chunk.getDocumentsRemoved();
+      startAfter = chunk.getLastKey();
+    } while (startAfter != null);
+    return documentsRemoved;
+  }
+
+  /**
+   * Removes the orphaned documents among the next chunk of candidates after the given key. See
+   * {@link LruDelegate#removeOrphanedDocuments}.
+   */
+  OrphanedDocumentsChunk removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter) {
+    return delegate.removeOrphanedDocuments(upperBound, startAfter);
   }
 
   Results collect(SparseArray<?> activeTargetIds) {
+    if (shouldCollect()) {
+      return runGarbageCollection(activeTargetIds);
+    } else {
+      return Results.DidNotRun();
+    }
+  }
+
+  /**
+   * Returns the upper bound for {@link #removeTargets} and {@link #removeOrphanedDocuments}, or
+   * {@link ListenSequence#INVALID} if no garbage collection is necessary. Used to run the steps of
+   * a collection in separate transactions.
+   */
+  long determineUpperBound() {
+    if (!shouldCollect()) {
+      return ListenSequence.INVALID;
+    }
+    sequenceNumbersToCollect = calculateSequenceNumbersToCollect();
+    return getNthSequenceNumber(sequenceNumbersToCollect);
+  }
+
+  /** Returns the results of the last collection that ran, or null if none has run yet. */
+  @Nullable
+  Results getLastResults() {
+    return lastResults;
+  }
+
+  /** Returns how long the last collection that ran took, in milliseconds. */
+  long getLastDurationMillis() {
+    return lastDurationMs;
+  }
+
+  private void recordResults(Results results, long durationMs) {
+    lastResults = results;
+    lastDurationMs = durationMs;
+  }
+
+  private boolean shouldCollect() {
     if (params.minBytesThreshold == Params.COLLECTION_DISABLED) {
       Logger.debug("LruGarbageCollector", "Garbage collection skipped; disabled");
-      return Results.DidNotRun();
+      return false;
     }
 
     long cacheSize = getByteSize();
@@ -240,14 +395,12 @@ public class LruGarbageCollector {
               + cacheSize
               + " is lower than threshold "
               + params.minBytesThreshold);
-      return Results.DidNotRun();
-    } else {
-      return runGarbageCollection(activeTargetIds);
+      return false;
     }
+    return true;
   }
 
-  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
-    long startTs = System.currentTimeMillis();
+  private int calculateSequenceNumbersToCollect() {
     int sequenceNumbers = calculateQueryCount(params.percentileToCollect);
     // Cap at the configured max
     if (sequenceNumbers > params.maximumSequenceNumbersToCollect) {
@@ -259,6 +412,12 @@ public class LruGarbageCollector {
               + sequenceNumbers);
       sequenceNumbers = params.maximumSequenceNumbersToCollect;
     }
+    return sequenceNumbers;
+  }
+
+  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
+    long startTs = System.currentTimeMillis();
+    int sequenceNumbers = calculateSequenceNumbersToCollect();
     long countedTargetsTs = System.currentTimeMillis();
 
     long upperBound = getNthSequenceNumber(sequenceNumbers);
@@ -294,7 +453,10 @@ public class LruGarbageCollector {
       desc += String.format(Locale.ROOT, "Total Duration: %dms", (removedDocumentsTs - startTs));
       Logger.debug("LruGarbageCollector", desc);
     }
-    return new Results(/* hasRun= */ true, sequenceNumbers, numTargetsRemoved, numDocumentsRemoved);
+    Results results =
+        new Results(/* hasRun= */ true, sequenceNumbers, numTargetsRemoved, numDocumentsRemoved);
+    recordResults(results, removedDocumentsTs - startTs);
+    return results;
   }
 
   long getByteSize() {
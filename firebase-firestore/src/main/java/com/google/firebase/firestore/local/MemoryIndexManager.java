@@ -58,6 +58,13 @@ class MemoryIndexManager implements IndexManager {
       return existingParents.add(parentPath);
     }
 
+    void remove(ResourcePath collectionPath) {
+      HashSet<ResourcePath> existingParents = index.get(collectionPath.getLastSegment());
+      if (existingParents != null) {
+        existingParents.remove(collectionPath.popLast());
+      }
+    }
+
     List<ResourcePath> getEntries(String collectionId) {
       HashSet<ResourcePath> existingParents = index.get(collectionId);
       return existingParents != null ? new ArrayList<>(existingParents) : Collections.emptyList();
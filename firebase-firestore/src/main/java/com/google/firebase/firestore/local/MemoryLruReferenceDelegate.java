@@ -17,11 +17,13 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.util.Consumer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Provides LRU garbage collection functionality for MemoryPersistence. */
@@ -114,10 +116,14 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   }
 
   @Override
-  public int removeOrphanedDocuments(long upperBound) {
+  public LruGarbageCollector.OrphanedDocumentsChunk removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter) {
+    // Use the same chunks as SQLite, so that both persistence layers block the queue as briefly.
+    int chunkSize = SQLiteLruReferenceDelegate.REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE;
     int count = 0;
     MemoryRemoteDocumentCache cache = persistence.getRemoteDocumentCache();
-    for (MaybeDocument doc : cache.getDocuments()) {
+    List<MaybeDocument> docs = cache.getDocuments(startAfter, chunkSize);
+    for (MaybeDocument doc : docs) {
       DocumentKey key = doc.getKey();
       if (!isPinned(key, upperBound)) {
         cache.remove(key);
@@ -125,7 +131,8 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
         count++;
       }
     }
-    return count;
+    DocumentKey lastKey = docs.size() == chunkSize ? docs.get(docs.size() - 1).getKey() : null;
+    return new LruGarbageCollector.OrphanedDocumentsChunk(count, lastKey);
   }
 
   @Override
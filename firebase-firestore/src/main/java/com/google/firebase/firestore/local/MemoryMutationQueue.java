@@ -99,6 +99,16 @@ final class MemoryMutationQueue implements MutationQueue {
     return queue.isEmpty();
   }
 
+  @Override
+  public long getBatchCount() {
+    return queue.size();
+  }
+
+  @Override
+  public long getBatchesByteSize() {
+    return 0;
+  }
+
   @Override
   public void acknowledgeBatch(MutationBatch batch, ByteString streamToken) {
     int batchId = batch.getBatchId();
@@ -275,6 +285,34 @@ final class MemoryMutationQueue implements MutationQueue {
     return lookupMutationBatches(uniqueBatchIDs);
   }
 
+  @Override
+  public List<MutationBatch> getAllMutationBatchesAffectingCollections(
+      List<ResourcePath> collectionPaths) {
+    ImmutableSortedSet<Integer> uniqueBatchIDs =
+        new ImmutableSortedSet<Integer>(emptyList(), Util.comparator());
+
+    // Scan the index once per collection, starting at the first document key in the collection.
+    for (ResourcePath collectionPath : collectionPaths) {
+      DocumentReference start =
+          new DocumentReference(DocumentKey.fromPath(collectionPath.append("")), 0);
+      Iterator<DocumentReference> iterator = batchesByDocumentKey.iteratorFrom(start);
+      while (iterator.hasNext()) {
+        DocumentReference reference = iterator.next();
+        ResourcePath rowKeyPath = reference.getKey().getPath();
+        if (!collectionPath.isPrefixOf(rowKeyPath)) {
+          break;
+        }
+
+        // Skip documents in subcollections.
+        if (rowKeyPath.length() == collectionPath.length() + 1) {
+          uniqueBatchIDs = uniqueBatchIDs.insert(reference.getId());
+        }
+      }
+    }
+
+    return lookupMutationBatches(uniqueBatchIDs);
+  }
+
   private List<MutationBatch> lookupMutationBatches(ImmutableSortedSet<Integer> batchIds) {
     // Construct an array of matching batches, sorted by batchID to ensure that multiple mutations
     // affecting the same document key are applied in order.
@@ -61,6 +61,11 @@ final class MemoryQueryCache implements QueryCache {
     return queries.size();
   }
 
+  @Override
+  public long getTargetsByteSize() {
+    return 0;
+  }
+
   @Override
   public void forEachTarget(Consumer<QueryData> consumer) {
     for (QueryData queryData : queries.values()) {
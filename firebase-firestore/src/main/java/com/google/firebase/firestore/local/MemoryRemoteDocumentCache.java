@@ -14,7 +14,6 @@
 
 package com.google.firebase.firestore.local;
 
-import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.Pair;
@@ -23,12 +22,16 @@ import androidx.annotation.Nullable;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentCollections;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
 /** In-memory cache of remote documents. */
@@ -39,6 +42,8 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
 
   private final MemoryPersistence persistence;
 
+  @Nullable private QueryStatsCollector stats;
+
   MemoryRemoteDocumentCache(MemoryPersistence persistence) {
     docs = ImmutableSortedMap.Builder.emptyMap(DocumentKey.comparator());
     this.persistence = persistence;
@@ -63,6 +68,9 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
   @Override
   public MaybeDocument get(DocumentKey key) {
     Pair<MaybeDocument, SnapshotVersion> entry = docs.get(key);
+    if (stats != null && entry != null) {
+      stats.recordRowScanned();
+    }
     return entry != null ? entry.first : null;
   }
 
@@ -85,11 +93,31 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
     hardAssert(
         !query.isCollectionGroupQuery(),
         "CollectionGroup queries should be handled in LocalDocumentsView");
-    ImmutableSortedMap<DocumentKey, Document> result = emptyDocumentMap();
+    List<Document> result = new ArrayList<>();
+    addDocumentsMatchingQuery(query.getPath(), query, sinceReadTime, result);
+    return DocumentCollections.documentMapOf(result);
+  }
+
+  @Override
+  public ImmutableSortedMap<DocumentKey, Document> getAllDocumentsMatchingCollectionGroupQuery(
+      Query query, List<ResourcePath> collectionPaths, SnapshotVersion sinceReadTime) {
+    hardAssert(query.isCollectionGroupQuery(), "Expected a collection group query");
+    List<Document> result = new ArrayList<>();
+    for (ResourcePath collectionPath : new LinkedHashSet<>(collectionPaths)) {
+      addDocumentsMatchingQuery(collectionPath, query, sinceReadTime, result);
+    }
+    return DocumentCollections.documentMapOf(result);
+  }
 
+  /**
+   * Adds the documents under the given path that match the query to {@code result}, in key order.
+   * The results are collected in a list and turned into an ImmutableSortedMap once at the end,
+   * which is cheaper than inserting them one at a time.
+   */
+  private void addDocumentsMatchingQuery(
+      ResourcePath queryPath, Query query, SnapshotVersion sinceReadTime, List<Document> result) {
     // Documents are ordered by key, so we can use a prefix scan to narrow down the documents
     // we need to match the query against.
-    ResourcePath queryPath = query.getPath();
     DocumentKey prefix = DocumentKey.fromPath(queryPath.append(""));
     Iterator<Map.Entry<DocumentKey, Pair<MaybeDocument, SnapshotVersion>>> iterator =
         docs.iteratorFrom(prefix);
@@ -102,6 +130,15 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
         break;
       }
 
+      if (stats != null) {
+        stats.recordRowScanned();
+      }
+
+      // Skip documents in subcollections.
+      if (key.getPath().length() != queryPath.length() + 1) {
+        continue;
+      }
+
       MaybeDocument maybeDoc = entry.getValue().first;
       if (!(maybeDoc instanceof Document)) {
         continue;
@@ -114,17 +151,44 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
 
       Document doc = (Document) maybeDoc;
       if (query.matches(doc)) {
-        result = result.insert(doc.getKey(), doc);
+        result.add(doc);
       }
     }
+  }
 
-    return result;
+  @Override
+  public long getDocumentCount() {
+    return docs.size();
+  }
+
+  @Override
+  public long getDocumentsByteSize() {
+    return 0;
+  }
+
+  @Override
+  public void setStatsCollector(@Nullable QueryStatsCollector stats) {
+    this.stats = stats;
   }
 
   Iterable<MaybeDocument> getDocuments() {
     return new DocumentIterable();
   }
 
+  /** Returns up to {@code limit} documents in key order, after the given key if it is not null. */
+  List<MaybeDocument> getDocuments(@Nullable DocumentKey startAfter, int limit) {
+    List<MaybeDocument> result = new ArrayList<>();
+    Iterator<Map.Entry<DocumentKey, Pair<MaybeDocument, SnapshotVersion>>> iterator =
+        startAfter == null ? docs.iterator() : docs.iteratorFrom(startAfter);
+    while (iterator.hasNext() && result.size() < limit) {
+      Map.Entry<DocumentKey, Pair<MaybeDocument, SnapshotVersion>> entry = iterator.next();
+      if (!entry.getKey().equals(startAfter)) {
+        result.add(entry.getValue().first);
+      }
+    }
+    return result;
+  }
+
   long getByteSize(LocalSerializer serializer) {
     long count = 0;
     for (MaybeDocument doc : new DocumentIterable()) {
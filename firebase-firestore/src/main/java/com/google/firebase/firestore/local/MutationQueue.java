@@ -18,6 +18,7 @@ import androidx.annotation.Nullable;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.protobuf.ByteString;
@@ -34,6 +35,15 @@ interface MutationQueue {
   /** Returns true if this queue contains no mutation batches. */
   boolean isEmpty();
 
+  /** Returns the number of mutation batches in this queue. */
+  long getBatchCount();
+
+  /**
+   * Returns the size of the serialized batches in persistent storage, in bytes, or 0 if the queue
+   * is not persisted.
+   */
+  long getBatchesByteSize();
+
   /** Acknowledges the given batch. */
   void acknowledgeBatch(MutationBatch batch, ByteString streamToken);
 
@@ -121,6 +131,19 @@ interface MutationQueue {
    */
   List<MutationBatch> getAllMutationBatchesAffectingQuery(Query query);
 
+  /**
+   * Finds all mutation batches that could affect the documents in the given collections, e.g. the
+   * collections that make up a collection group. Only mutations of documents that are immediate
+   * children of one of the collections are considered, but not all mutations in a returned batch
+   * will necessarily affect one of the collections.
+   *
+   * <p>Implementations should look up all collections at once rather than one at a time, since
+   * collection groups can span thousands of collections.
+   *
+   * <p>Batches are guaranteed to be sorted by batch ID.
+   */
+  List<MutationBatch> getAllMutationBatchesAffectingCollections(List<ResourcePath> collectionPaths);
+
   /**
    * Removes the given mutation batch from the queue. This is useful in two circumstances:
    *
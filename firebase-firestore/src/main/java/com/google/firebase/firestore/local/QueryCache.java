@@ -45,6 +45,12 @@ interface QueryCache {
   /** Returns the number of targets in the cache. */
   long getTargetCount();
 
+  /**
+   * Returns the size of the serialized targets in persistent storage, in bytes, or 0 if the cache
+   * is not persisted.
+   */
+  long getTargetsByteSize();
+
   /** Call the consumer for each target in the cache. */
   void forEachTarget(Consumer<QueryData> consumer);
 
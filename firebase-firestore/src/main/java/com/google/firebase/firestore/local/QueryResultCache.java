@@ -0,0 +1,223 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import androidx.annotation.Nullable;
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.DocumentSet;
+import com.google.firebase.firestore.model.MaybeDocument;
+import com.google.firebase.firestore.model.value.ArrayValue;
+import com.google.firebase.firestore.model.value.BlobValue;
+import com.google.firebase.firestore.model.value.FieldValue;
+import com.google.firebase.firestore.model.value.ObjectValue;
+import com.google.firebase.firestore.model.value.StringValue;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the results of reading queries from the local cache, keyed by the canonical ID of the
+ * query.
+ *
+ * <p>An entry stays valid until a document that is part of its result, or that matches its query,
+ * changes. The LocalStore reports all document changes through {@link #invalidate}. The cache is
+ * bounded by the estimated size of the cached documents, and evicts the least recently used entries
+ * first.
+ *
+ * <p>The LocalStore only enables the cache if the reference delegate is an {@link LruDelegate}.
+ * Eager garbage collection removes documents without reporting them through {@link #invalidate},
+ * so with the memory persistence and its default eager garbage collection, every read misses and
+ * nothing is cached. The counters are reported through {@link CacheStatistics}.
+ *
+ * <p>Not thread-safe. Like the LocalStore, it is only used on the AsyncQueue.
+ */
+final class QueryResultCache {
+  /** The default bound for the estimated size of all cached results. */
+  static final long DEFAULT_MAX_BYTE_SIZE = 10 * 1024 * 1024; // 10mb
+
+  /** A bound that disables the cache, since every result has a non-zero size. */
+  static final long DISABLED = 0;
+
+  /** The estimated size of a value that does not contain variable-length data. */
+  private static final int FIXED_VALUE_SIZE = 8;
+
+  private static class Entry {
+    final Query query;
+    final DocumentSet documents;
+    final long byteSize;
+
+    Entry(Query query, DocumentSet documents, long byteSize) {
+      this.query = query;
+      this.documents = documents;
+      this.byteSize = byteSize;
+    }
+  }
+
+  private final long maxByteSize;
+
+  /** The cached results in access order, so that the first entry is the least recently used. */
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+
+  private long byteSize;
+  private long hitCount;
+  private long missCount;
+  private long invalidationCount;
+  private long evictionCount;
+
+  QueryResultCache(long maxByteSize) {
+    this.maxByteSize = maxByteSize;
+  }
+
+  /** Returns the cached result of the query, or null if there is no valid result. */
+  @Nullable
+  DocumentSet get(Query query) {
+    Entry entry = entries.get(query.getCanonicalId());
+    if (entry == null) {
+      ++missCount;
+      return null;
+    }
+    ++hitCount;
+    return entry.documents;
+  }
+
+  /**
+   * Caches the result of the query. Results that are larger than the cache are not cached, and
+   * older results are evicted until the cache is within its bound again.
+   */
+  void put(Query query, DocumentSet documents) {
+    long entryByteSize = query.getCanonicalId().length() + estimateByteSize(documents);
+    remove(query.getCanonicalId());
+    if (entryByteSize > maxByteSize) {
+      return;
+    }
+
+    entries.put(query.getCanonicalId(), new Entry(query, documents, entryByteSize));
+    byteSize += entryByteSize;
+
+    Iterator<Entry> it = entries.values().iterator();
+    while (byteSize > maxByteSize && it.hasNext()) {
+      byteSize -= it.next().byteSize;
+      it.remove();
+      ++evictionCount;
+    }
+  }
+
+  /**
+   * Removes the results that may be affected by the given document changes: all results that
+   * contain one of the changed documents, and all results whose query matches a changed document.
+   */
+  void invalidate(ImmutableSortedMap<DocumentKey, MaybeDocument> changes) {
+    if (entries.isEmpty() || changes.isEmpty()) {
+      return;
+    }
+
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (isAffected(entry, changes)) {
+        byteSize -= entry.byteSize;
+        it.remove();
+        ++invalidationCount;
+      }
+    }
+  }
+
+  /** Removes all cached results, for changes that cannot be attributed to specific documents. */
+  void invalidateAll() {
+    invalidationCount += entries.size();
+    entries.clear();
+    byteSize = 0;
+  }
+
+  long getByteSize() {
+    return byteSize;
+  }
+
+  long getHitCount() {
+    return hitCount;
+  }
+
+  long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of results that were removed because of document changes. */
+  long getInvalidationCount() {
+    return invalidationCount;
+  }
+
+  /** Returns the number of results that were removed to stay within the size bound. */
+  long getEvictionCount() {
+    return evictionCount;
+  }
+
+  private void remove(String canonicalId) {
+    Entry entry = entries.remove(canonicalId);
+    if (entry != null) {
+      byteSize -= entry.byteSize;
+    }
+  }
+
+  private static boolean isAffected(
+      Entry entry, ImmutableSortedMap<DocumentKey, MaybeDocument> changes) {
+    for (Map.Entry<DocumentKey, MaybeDocument> change : changes) {
+      if (entry.documents.contains(change.getKey())) {
+        return true;
+      }
+      MaybeDocument doc = change.getValue();
+      if (doc instanceof Document && entry.query.matches((Document) doc)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long estimateByteSize(DocumentSet documents) {
+    long size = 0;
+    for (Document doc : documents) {
+      size += doc.getKey().toString().length();
+      com.google.firestore.v1.Document proto = doc.getProto();
+      size += proto != null ? proto.getSerializedSize() : estimateByteSize(doc.getData());
+    }
+    return size;
+  }
+
+  private static long estimateByteSize(FieldValue value) {
+    if (value instanceof ObjectValue) {
+      long size = 0;
+      for (Map.Entry<String, FieldValue> field : ((ObjectValue) value).getInternalValue()) {
+        size += field.getKey().length() + estimateByteSize(field.getValue());
+      }
+      return size;
+    } else if (value instanceof ArrayValue) {
+      long size = 0;
+      for (FieldValue element : ((ArrayValue) value).getInternalValue()) {
+        size += estimateByteSize(element);
+      }
+      return size;
+    } else if (value instanceof StringValue) {
+      return ((StringValue) value).value().length();
+    } else if (value instanceof BlobValue) {
+      return ((BlobValue) value).value().toByteString().size();
+    } else {
+      return FIXED_VALUE_SIZE;
+    }
+  }
+}
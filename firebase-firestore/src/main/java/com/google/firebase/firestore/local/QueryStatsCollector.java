@@ -0,0 +1,121 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+/**
+ * Collects statistics about a single execution of a query against the local cache, e.g. to find
+ * out why one query is slower than another.
+ *
+ * <p>A collector is only installed in the LocalDocumentsView and the RemoteDocumentCache while
+ * the query is explained, so that regular queries do not pay for the bookkeeping. Not thread-safe:
+ * all counters are updated on the AsyncQueue, including those for documents that are decoded on
+ * background threads.
+ */
+public final class QueryStatsCollector {
+  private boolean indexFree;
+  private long rowsScanned;
+  private long documentsDecoded;
+  private long documentsMatched;
+  private long mutationBatchesApplied;
+  private long remoteDocumentReadNanos;
+  private long mutationOverlayNanos;
+  private long queryEngineNanos;
+  private long viewComputationNanos;
+
+  /**
+   * Records which path the query engine took. The last query wins, since the engine falls back to
+   * a full collection scan after an index-free lookup if the previous results cannot be reused.
+   */
+  void recordQuery(boolean indexFree) {
+    this.indexFree = indexFree;
+  }
+
+  /** Records an entry that was read from the remote document cache, whether it matched or not. */
+  void recordRowScanned() {
+    ++rowsScanned;
+  }
+
+  /** Records a document that was decoded from its serialized form. */
+  void recordDocumentDecoded() {
+    ++documentsDecoded;
+  }
+
+  void recordMutationBatchesApplied(int count) {
+    mutationBatchesApplied += count;
+  }
+
+  void recordRemoteDocumentRead(long nanos) {
+    remoteDocumentReadNanos += nanos;
+  }
+
+  void recordMutationOverlay(long nanos) {
+    mutationOverlayNanos += nanos;
+  }
+
+  void recordQueryEngine(long nanos, int documentsMatched) {
+    this.queryEngineNanos += nanos;
+    this.documentsMatched = documentsMatched;
+  }
+
+  public void recordViewComputation(long nanos) {
+    viewComputationNanos += nanos;
+  }
+
+  /**
+   * Returns whether the query engine only read the documents that matched the query at its last
+   * limbo-free snapshot plus the documents that changed since, rather than scanning the
+   * collection.
+   */
+  public boolean isIndexFree() {
+    return indexFree;
+  }
+
+  /** Returns the number of entries read from the remote document cache, including non-matches. */
+  public long getRowsScanned() {
+    return rowsScanned;
+  }
+
+  /** Returns the number of documents decoded from their serialized form. */
+  public long getDocumentsDecoded() {
+    return documentsDecoded;
+  }
+
+  /** Returns the number of documents in the query result. */
+  public long getDocumentsMatched() {
+    return documentsMatched;
+  }
+
+  /** Returns the number of mutation batches that were applied to the remote documents. */
+  public long getMutationBatchesApplied() {
+    return mutationBatchesApplied;
+  }
+
+  public long getRemoteDocumentReadNanos() {
+    return remoteDocumentReadNanos;
+  }
+
+  public long getMutationOverlayNanos() {
+    return mutationOverlayNanos;
+  }
+
+  /** Returns the time spent in the query engine, which includes reads and mutation overlays. */
+  public long getQueryEngineNanos() {
+    return queryEngineNanos;
+  }
+
+  public long getViewComputationNanos() {
+    return viewComputationNanos;
+  }
+}
@@ -17,6 +17,7 @@ package com.google.firebase.firestore.local;
 import static java.util.Collections.emptyList;
 
 import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.database.collection.ImmutableSortedSetBuilder;
 import com.google.firebase.firestore.model.DocumentKey;
 import java.util.Iterator;
 
@@ -60,9 +61,15 @@ public class ReferenceSet {
 
   /** Add references to the given document keys for the given ID. */
   public void addReferences(ImmutableSortedSet<DocumentKey> keys, int targetOrBatchId) {
+    ImmutableSortedSetBuilder<DocumentReference> byKey = referencesByKey.toBuilder();
+    ImmutableSortedSetBuilder<DocumentReference> byTarget = referencesByTarget.toBuilder();
     for (DocumentKey key : keys) {
-      addReference(key, targetOrBatchId);
+      DocumentReference ref = new DocumentReference(key, targetOrBatchId);
+      byKey.insert(ref);
+      byTarget.insert(ref);
     }
+    referencesByKey = byKey.build();
+    referencesByTarget = byTarget.build();
   }
 
   /** Removes a reference to the given document key for the given ID. */
@@ -72,13 +79,19 @@ public class ReferenceSet {
 
   /** Removes references to the given document keys for the given ID. */
   public void removeReferences(ImmutableSortedSet<DocumentKey> keys, int targetOrBatchId) {
+    ImmutableSortedSetBuilder<DocumentReference> byKey = referencesByKey.toBuilder();
+    ImmutableSortedSetBuilder<DocumentReference> byTarget = referencesByTarget.toBuilder();
     for (DocumentKey key : keys) {
-      removeReference(key, targetOrBatchId);
+      DocumentReference ref = new DocumentReference(key, targetOrBatchId);
+      byKey.remove(ref);
+      byTarget.remove(ref);
     }
+    referencesByKey = byKey.build();
+    referencesByTarget = byTarget.build();
   }
 
   /**
-   * Clears all references with a given ID. Calls removeReference() for each key removed.
+   * Clears all references with a given ID.
    *
    * @return The keys of the documents that were removed.
    */
@@ -86,25 +99,29 @@ public class ReferenceSet {
     DocumentKey emptyKey = DocumentKey.empty();
     DocumentReference startRef = new DocumentReference(emptyKey, targetId);
     Iterator<DocumentReference> it = referencesByTarget.iteratorFrom(startRef);
-    ImmutableSortedSet<DocumentKey> keys = DocumentKey.emptyKeySet();
+    ImmutableSortedSetBuilder<DocumentKey> keys = DocumentKey.emptyKeySet().toBuilder();
+    ImmutableSortedSetBuilder<DocumentReference> byKey = referencesByKey.toBuilder();
+    ImmutableSortedSetBuilder<DocumentReference> byTarget = referencesByTarget.toBuilder();
     while (it.hasNext()) {
       DocumentReference ref = it.next();
       if (ref.getId() == targetId) {
-        keys = keys.insert(ref.getKey());
-        removeReference(ref);
+        keys.insert(ref.getKey());
+        byKey.remove(ref);
+        byTarget.remove(ref);
       } else {
         break;
       }
     }
+    referencesByKey = byKey.build();
+    referencesByTarget = byTarget.build();
 
-    return keys;
+    return keys.build();
   }
 
   /** Clears all references for all IDs. */
   public void removeAllReferences() {
-    for (DocumentReference reference : referencesByKey) {
-      removeReference(reference);
-    }
+    referencesByKey = new ImmutableSortedSet<>(emptyList(), DocumentReference.BY_KEY);
+    referencesByTarget = new ImmutableSortedSet<>(emptyList(), DocumentReference.BY_TARGET);
   }
 
   private void removeReference(DocumentReference ref) {
@@ -118,16 +135,16 @@ public class ReferenceSet {
     DocumentReference startRef = new DocumentReference(emptyKey, target);
 
     Iterator<DocumentReference> iterator = referencesByTarget.iteratorFrom(startRef);
-    ImmutableSortedSet<DocumentKey> keys = DocumentKey.emptyKeySet();
+    ImmutableSortedSetBuilder<DocumentKey> keys = DocumentKey.emptyKeySet().toBuilder();
     while (iterator.hasNext()) {
       DocumentReference reference = iterator.next();
       if (reference.getId() == target) {
-        keys = keys.insert(reference.getKey());
+        keys.insert(reference.getKey());
       } else {
         break;
       }
     }
-    return keys;
+    return keys.build();
   }
 
   public boolean containsKey(DocumentKey key) {
@@ -20,7 +20,9 @@ import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -78,4 +80,36 @@ interface RemoteDocumentCache {
    */
   ImmutableSortedMap<DocumentKey, Document> getAllDocumentsMatchingQuery(
       Query query, SnapshotVersion sinceReadTime);
+
+  /**
+   * Executes a collection group query against the cached Document entries in the given
+   * collections.
+   *
+   * <p>Implementations should look up all collections at once rather than one at a time, since
+   * collection groups can span thousands of collections. As with {@link
+   * #getAllDocumentsMatchingQuery}, the results should be re-filtered by the consumer.
+   *
+   * @param query The collection group query to match documents against.
+   * @param collectionPaths The paths of the collections that belong to the collection group.
+   * @param sinceReadTime If not set to SnapshotVersion.MIN, return only documents that have been
+   *     read since this snapshot version (exclusive).
+   * @return The set of matching documents.
+   */
+  ImmutableSortedMap<DocumentKey, Document> getAllDocumentsMatchingCollectionGroupQuery(
+      Query query, List<ResourcePath> collectionPaths, SnapshotVersion sinceReadTime);
+
+  /** Returns the number of cached entries, including entries for documents known not to exist. */
+  long getDocumentCount();
+
+  /**
+   * Returns the size of the serialized entries in persistent storage, in bytes, or 0 if the cache
+   * is not persisted.
+   */
+  long getDocumentsByteSize();
+
+  /**
+   * Installs a collector that records the entries read by subsequent lookups and queries, or
+   * removes the current collector if {@code stats} is null.
+   */
+  void setStatsCollector(@Nullable QueryStatsCollector stats);
 }
@@ -18,20 +18,35 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import com.google.firebase.firestore.model.ResourcePath;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /** A persisted implementation of IndexManager. */
 final class SQLiteIndexManager implements IndexManager {
   /**
-   * An in-memory copy of the index entries we've already written since the SDK launched. Used to
-   * avoid re-writing the same entry repeatedly.
+   * An in-memory copy of the index entries we've already written or read since the SDK launched.
+   * Used to avoid re-writing the same entry repeatedly.
    *
-   * <p>This is *NOT* a complete cache of what's in persistence and so can never be used to satisfy
-   * reads.
+   * <p>For the collection IDs in {@link #collectionIdsReadFromDisk}, this is a complete copy of the
+   * entries in persistence and is used to satisfy reads. For all other collection IDs, it is
+   * incomplete and can never be used to satisfy reads.
    */
   private final MemoryIndexManager.MemoryCollectionParentIndex collectionParentsCache =
       new MemoryIndexManager.MemoryCollectionParentIndex();
 
+  /**
+   * The collection IDs whose entries have been read from persistence. Since all entries are
+   * written through this class, the cached entries for these IDs stay complete.
+   */
+  private final Set<String> collectionIdsReadFromDisk = new HashSet<>();
+
+  /**
+   * The entries that were added to {@link #collectionParentsCache} in the current transaction.
+   * They are removed again if the transaction is rolled back.
+   */
+  private final List<ResourcePath> entriesAddedInTransaction = new ArrayList<>();
+
   private final SQLitePersistence db;
 
   SQLiteIndexManager(SQLitePersistence persistence) {
@@ -43,6 +58,7 @@ final class SQLiteIndexManager implements IndexManager {
     hardAssert(collectionPath.length() % 2 == 1, "Expected a collection path.");
 
     if (collectionParentsCache.add(collectionPath)) {
+      entriesAddedInTransaction.add(collectionPath);
       String collectionId = collectionPath.getLastSegment();
       ResourcePath parentPath = collectionPath.popLast();
       db.execute(
@@ -56,13 +72,31 @@ final class SQLiteIndexManager implements IndexManager {
 
   @Override
   public List<ResourcePath> getCollectionParents(String collectionId) {
-    ArrayList<ResourcePath> parentPaths = new ArrayList<>();
-    db.query("SELECT parent FROM collection_parents WHERE collection_id = ?")
-        .binding(collectionId)
-        .forEach(
-            row -> {
-              parentPaths.add(EncodedPath.decodeResourcePath(row.getString(0)));
-            });
-    return parentPaths;
+    if (collectionIdsReadFromDisk.add(collectionId)) {
+      db.query("SELECT parent FROM collection_parents WHERE collection_id = ?")
+          .binding(collectionId)
+          .forEach(
+              row -> {
+                ResourcePath parentPath = EncodedPath.decodeResourcePath(row.getString(0));
+                collectionParentsCache.add(parentPath.append(collectionId));
+              });
+    }
+    return collectionParentsCache.getEntries(collectionId);
+  }
+
+  /** Keeps the entries that were added to the cache in the committed transaction. */
+  void onTransactionCommitted() {
+    entriesAddedInTransaction.clear();
+  }
+
+  /**
+   * Removes the entries that were added to the cache in the rolled back transaction, since their
+   * rows were discarded.
+   */
+  void onTransactionRolledBack() {
+    for (ResourcePath collectionPath : entriesAddedInTransaction) {
+      collectionParentsCache.remove(collectionPath);
+    }
+    entriesAddedInTransaction.clear();
   }
 }
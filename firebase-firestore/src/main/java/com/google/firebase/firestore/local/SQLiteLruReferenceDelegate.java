@@ -17,9 +17,9 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.DocumentKey;
-import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.util.Consumer;
 
 /** Provides LRU functionality for SQLite persistence. */
@@ -64,6 +64,10 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     currentSequenceNumber = ListenSequence.INVALID;
   }
 
+  void onTransactionRolledBack() {
+    currentSequenceNumber = ListenSequence.INVALID;
+  }
+
   @Override
   public long getCurrentSequenceNumber() {
     hardAssert(
@@ -130,7 +134,7 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   private boolean mutationQueuesContainKey(DocumentKey key) {
     return !persistence
         .query("SELECT 1 FROM document_mutations WHERE path = ?")
-        .binding(EncodedPath.encode(key.getPath()))
+        .binding(EncodedPath.encode(key))
         .isEmpty();
   }
 
@@ -150,36 +154,38 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   private void removeSentinel(DocumentKey key) {
     persistence.execute(
         "DELETE FROM target_documents WHERE path = ? AND target_id = 0",
-        EncodedPath.encode(key.getPath()));
+        EncodedPath.encode(key));
   }
 
   @Override
-  public int removeOrphanedDocuments(long upperBound) {
+  public LruGarbageCollector.OrphanedDocumentsChunk removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter) {
     int[] count = new int[1];
+    DocumentKey[] lastKey = new DocumentKey[1];
 
-    boolean resultsRemaining = true;
-
-    while (resultsRemaining) {
-      int rowsProccessed =
-          persistence
-              .query(
-                  "select path from target_documents group by path having COUNT(*) = 1 AND target_id = 0 AND sequence_number <= ? LIMIT ?")
-              .binding(upperBound, REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE)
-              .forEach(
-                  row -> {
-                    ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
-                    DocumentKey key = DocumentKey.fromPath(path);
-                    if (!isPinned(key)) {
-                      count[0]++;
-                      persistence.getRemoteDocumentCache().remove(key);
-                      removeSentinel(key);
-                    }
-                  });
-
-      resultsRemaining = (rowsProccessed == REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE);
-    }
-
-    return count[0];
+    // Pinned documents stay in target_documents, so the chunks continue after the last path instead
+    // of starting over.
+    int rowsProcessed =
+        persistence
+            .query(
+                "select path from target_documents where path > ? group by path having COUNT(*) = 1 AND target_id = 0 AND sequence_number <= ? order by path LIMIT ?")
+            .binding(
+                startAfter == null ? "" : EncodedPath.encode(startAfter),
+                upperBound,
+                REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE)
+            .forEach(
+                row -> {
+                  DocumentKey key = EncodedPath.decodeDocumentKey(row.getString(0));
+                  lastKey[0] = key;
+                  if (!isPinned(key)) {
+                    count[0]++;
+                    persistence.getRemoteDocumentCache().remove(key);
+                    removeSentinel(key);
+                  }
+                });
+
+    return new LruGarbageCollector.OrphanedDocumentsChunk(
+        count[0], rowsProcessed == REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE ? lastKey[0] : null);
   }
 
   @Override
@@ -194,7 +200,7 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   }
 
   private void writeSentinel(DocumentKey key) {
-    String path = EncodedPath.encode(key.getPath());
+    String path = EncodedPath.encode(key);
     persistence.execute(
         "INSERT OR REPLACE INTO target_documents (target_id, path, sequence_number) VALUES (0, ?, ?)",
         path,
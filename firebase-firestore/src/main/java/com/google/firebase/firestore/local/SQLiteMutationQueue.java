@@ -33,7 +33,6 @@ import com.google.firebase.firestore.util.Consumer;
 import com.google.firebase.firestore.util.Util;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.MessageLite;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -56,12 +55,21 @@ final class SQLiteMutationQueue implements MutationQueue {
    */
   private static final int BLOB_MAX_INLINE_LENGTH = 1000000;
 
+  /**
+   * The number of collections whose key ranges are scanned by a single statement. Each range binds
+   * three arguments, which keeps the statements below SQLite's limit of 999 arguments.
+   */
+  private static final int COLLECTIONS_PER_STATEMENT = 300;
+
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
 
   /** The normalized uid (e.g. null => "") used in the uid column. */
   private final String uid;
 
+  /** Counts the batches of this user in the mutations table. */
+  private final SQLiteTableStats tableStats;
+
   /**
    * Next value to use when assigning sequential IDs to each mutation batch.
    *
@@ -92,6 +100,7 @@ final class SQLiteMutationQueue implements MutationQueue {
     this.db = persistence;
     this.serializer = serializer;
     this.uid = user.isAuthenticated() ? user.getUid() : "";
+    this.tableStats = new SQLiteTableStats(persistence, "mutations", "mutations", "uid = ?", uid);
     this.lastStreamToken = WriteStream.EMPTY_STREAM_TOKEN;
   }
 
@@ -151,6 +160,16 @@ final class SQLiteMutationQueue implements MutationQueue {
     return db.query("SELECT batch_id FROM mutations WHERE uid = ? LIMIT 1").binding(uid).isEmpty();
   }
 
+  @Override
+  public long getBatchCount() {
+    return tableStats.getRowCount();
+  }
+
+  @Override
+  public long getBatchesByteSize() {
+    return tableStats.getByteSize();
+  }
+
   @Override
   public void acknowledgeBatch(MutationBatch batch, ByteString streamToken) {
     lastStreamToken = checkNotNull(streamToken);
@@ -185,13 +204,10 @@ final class SQLiteMutationQueue implements MutationQueue {
     nextBatchId += 1;
 
     MutationBatch batch = new MutationBatch(batchId, localWriteTime, baseMutations, mutations);
-    MessageLite proto = serializer.encodeMutationBatch(batch);
+    byte[] proto = serializer.encodeMutationBatch(batch).toByteArray();
 
     db.execute(
-        "INSERT INTO mutations (uid, batch_id, mutations) VALUES (?, ?, ?)",
-        uid,
-        batchId,
-        proto.toByteArray());
+        "INSERT INTO mutations (uid, batch_id, mutations) VALUES (?, ?, ?)", uid, batchId, proto);
 
     // PORTING NOTE: Unlike LevelDB, these entries must be unique.
     // Since user and batchId are fixed within this function body, it's enough to track unique keys
@@ -206,7 +222,7 @@ final class SQLiteMutationQueue implements MutationQueue {
         continue;
       }
 
-      String path = EncodedPath.encode(key.getPath());
+      String path = EncodedPath.encode(key);
       db.execute(indexInserter, uid, path, batchId);
 
       db.getIndexManager().addToCollectionParentIndex(key.getPath().popLast());
@@ -257,7 +273,7 @@ final class SQLiteMutationQueue implements MutationQueue {
 
   @Override
   public List<MutationBatch> getAllMutationBatchesAffectingDocumentKey(DocumentKey documentKey) {
-    String path = EncodedPath.encode(documentKey.getPath());
+    String path = EncodedPath.encode(documentKey);
 
     List<MutationBatch> result = new ArrayList<>();
     db.query(
@@ -279,7 +295,7 @@ final class SQLiteMutationQueue implements MutationQueue {
       Iterable<DocumentKey> documentKeys) {
     List<Object> args = new ArrayList<>();
     for (DocumentKey key : documentKeys) {
-      args.add(EncodedPath.encode(key.getPath()));
+      args.add(EncodedPath.encode(key));
     }
 
     SQLitePersistence.LongQuery longQuery =
@@ -388,6 +404,67 @@ final class SQLiteMutationQueue implements MutationQueue {
     return result;
   }
 
+  @Override
+  public List<MutationBatch> getAllMutationBatchesAffectingCollections(
+      List<ResourcePath> collectionPaths) {
+    Set<ResourcePath> collections = new HashSet<>(collectionPaths);
+    List<MutationBatch> result = new ArrayList<>();
+    Set<Integer> uniqueBatchIds = new HashSet<>();
+
+    // Scan the key ranges of all collections in one statement (per batch of collections) instead
+    // of issuing one statement per collection. Each range repeats the uid so that SQLite can look
+    // it up in the index on (uid, path).
+    int statements = 0;
+    for (int start = 0; start < collectionPaths.size(); start += COLLECTIONS_PER_STATEMENT) {
+      List<ResourcePath> batch =
+          collectionPaths.subList(
+              start, Math.min(collectionPaths.size(), start + COLLECTIONS_PER_STATEMENT));
+      StringBuilder sql =
+          new StringBuilder(
+              "SELECT dm.batch_id, dm.path, SUBSTR(m.mutations, 1, ?) "
+                  + "FROM document_mutations dm, mutations m WHERE (");
+      List<Object> args = new ArrayList<>();
+      args.add(BLOB_MAX_INLINE_LENGTH);
+      for (int i = 0; i < batch.size(); ++i) {
+        String prefixPath = EncodedPath.encode(batch.get(i));
+        sql.append(i > 0 ? " OR " : "").append("(dm.uid = ? AND dm.path >= ? AND dm.path < ?)");
+        args.add(uid);
+        args.add(prefixPath);
+        args.add(EncodedPath.prefixSuccessor(prefixPath));
+      }
+      sql.append(") AND dm.uid = m.uid AND dm.batch_id = m.batch_id ORDER BY dm.batch_id");
+      ++statements;
+
+      db.query(sql.toString())
+          .binding(args.toArray())
+          .forEach(
+              row -> {
+                int batchId = row.getInt(0);
+                if (uniqueBatchIds.contains(batchId)) {
+                  return;
+                }
+
+                // Skip documents in subcollections of the collections.
+                ResourcePath path = EncodedPath.decodeResourcePath(row.getString(1));
+                if (!collections.contains(path.popLast())) {
+                  return;
+                }
+
+                uniqueBatchIds.add(batchId);
+                result.add(decodeInlineMutationBatch(batchId, row.getBlob(2)));
+              });
+    }
+
+    // Batches are only sorted within the results of one statement.
+    if (statements > 1) {
+      Collections.sort(
+          result,
+          (MutationBatch lhs, MutationBatch rhs) ->
+              Util.compareInts(lhs.getBatchId(), rhs.getBatchId()));
+    }
+    return result;
+  }
+
   @Override
   public void removeMutationBatch(MutationBatch batch) {
     SQLiteStatement mutationDeleter =
@@ -402,7 +479,7 @@ final class SQLiteMutationQueue implements MutationQueue {
 
     for (Mutation mutation : batch.getMutations()) {
       DocumentKey key = mutation.getKey();
-      String path = EncodedPath.encode(key.getPath());
+      String path = EncodedPath.encode(key);
       db.execute(indexDeleter, uid, path, batchId);
       db.getReferenceDelegate().removeMutationReference(key);
     }
@@ -88,15 +88,22 @@ public final class SQLitePersistence extends Persistence {
         @Override
         public void onBegin() {
           referenceDelegate.onTransactionStarted();
+          queryCache.onTransactionStarted();
         }
 
         @Override
         public void onCommit() {
           referenceDelegate.onTransactionCommitted();
+          queryCache.onTransactionCommitted();
+          indexManager.onTransactionCommitted();
         }
 
         @Override
-        public void onRollback() {}
+        public void onRollback() {
+          referenceDelegate.onTransactionRolledBack();
+          queryCache.onTransactionRolledBack();
+          indexManager.onTransactionRolledBack();
+        }
       };
 
   private SQLiteDatabase db;
@@ -146,6 +153,9 @@ public final class SQLitePersistence extends Persistence {
   @Override
   public void shutdown() {
     hardAssert(started, "SQLitePersistence shutdown without start!");
+    if (queryCache.hasPendingSequenceNumbers()) {
+      runTransaction("Write pending sequence numbers", queryCache::writePendingSequenceNumbers);
+    }
     started = false;
     db.close();
     db = null;
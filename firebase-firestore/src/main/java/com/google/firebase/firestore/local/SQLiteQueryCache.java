@@ -28,12 +28,48 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.proto.Target;
 import com.google.firebase.firestore.util.Consumer;
 import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /** Cached Queries backed by SQLite. */
 final class SQLiteQueryCache implements QueryCache {
 
+  /**
+   * The number of targets whose sequence number may change in memory before the new sequence
+   * numbers are written to disk in one batch.
+   */
+  private static final int MAX_PENDING_SEQUENCE_NUMBER_UPDATES = 100;
+
   private final SQLitePersistence db;
   private final LocalSerializer localSerializer;
+  private final SQLiteTableStats tableStats;
+
+  /**
+   * The targets that have been read or written so far, by canonical ID. Since canonical IDs are
+   * not unique, each one maps to all of its targets. A canonical ID is only present once all of its
+   * targets have been read from disk, and only as long as it has any targets.
+   */
+  private final Map<String, List<QueryData>> targetsByCanonicalId = new HashMap<>();
+
+  /** The targets in {@link #targetsByCanonicalId}, by target ID. */
+  private final Map<Integer, QueryData> targetsById = new HashMap<>();
+
+  /**
+   * The IDs of the targets whose row is outdated because only their sequence number changed.
+   * Sequence numbers are only used to order targets for garbage collection, so losing the latest
+   * ones in a crash only means that the targets may be collected a bit earlier.
+   */
+  private final Set<Integer> pendingSequenceNumberUpdates = new HashSet<>();
+
+  /**
+   * Undoes the changes to the fields above that were made in the current transaction, in reverse
+   * order, if the transaction is rolled back.
+   */
+  private final List<Runnable> rollbackActions = new ArrayList<>();
 
   private int highestTargetId;
   private long lastListenSequenceNumber;
@@ -43,6 +79,7 @@ final class SQLiteQueryCache implements QueryCache {
   SQLiteQueryCache(SQLitePersistence db, LocalSerializer localSerializer) {
     this.db = db;
     this.localSerializer = localSerializer;
+    this.tableStats = new SQLiteTableStats(db, "targets", "target_proto", /* filter= */ "");
   }
 
   void start() {
@@ -78,10 +115,20 @@ final class SQLiteQueryCache implements QueryCache {
     return targetCount;
   }
 
+  @Override
+  public long getTargetsByteSize() {
+    return tableStats.getByteSize();
+  }
+
   @Override
   public void forEachTarget(Consumer<QueryData> consumer) {
-    db.query("SELECT target_proto FROM targets")
-        .forEach(row -> consumer.accept(decodeQueryData(row.getBlob(0))));
+    db.query("SELECT target_id, target_proto FROM targets")
+        .forEach(
+            row -> {
+              // Prefer the cached target, which may have a newer sequence number than its row.
+              QueryData cached = targetsById.get(row.getInt(0));
+              consumer.accept(cached != null ? cached : decodeQueryData(row.getBlob(1)));
+            });
   }
 
   @Override
@@ -100,7 +147,7 @@ final class SQLiteQueryCache implements QueryCache {
     String canonicalId = queryData.getQuery().getCanonicalId();
     Timestamp version = queryData.getSnapshotVersion().getTimestamp();
 
-    Target targetProto = localSerializer.encodeQueryData(queryData);
+    byte[] targetProto = localSerializer.encodeQueryData(queryData).toByteArray();
 
     db.execute(
         "INSERT OR REPLACE INTO targets ("
@@ -118,7 +165,7 @@ final class SQLiteQueryCache implements QueryCache {
         version.getNanoseconds(),
         queryData.getResumeToken().toByteArray(),
         queryData.getSequenceNumber(),
-        targetProto.toByteArray());
+        targetProto);
   }
 
   private boolean updateMetadata(QueryData queryData) {
@@ -140,6 +187,7 @@ final class SQLiteQueryCache implements QueryCache {
   @Override
   public void addQueryData(QueryData queryData) {
     saveQueryData(queryData);
+    cacheQueryData(queryData);
     // PORTING NOTE: The query_targets index is maintained by SQLite.
 
     updateMetadata(queryData);
@@ -149,7 +197,24 @@ final class SQLiteQueryCache implements QueryCache {
 
   @Override
   public void updateQueryData(QueryData queryData) {
-    saveQueryData(queryData);
+    int targetId = queryData.getTargetId();
+    // Make sure that the targets with the same canonical ID have been read from disk.
+    getCachedTargets(queryData.getQuery().getCanonicalId());
+    QueryData cached = targetsById.get(targetId);
+    if (cached != null
+        && cached.withSequenceNumber(queryData.getSequenceNumber()).equals(queryData)) {
+      // Only the sequence number changed, e.g. because the target was released. Defer the write,
+      // since targets are released and listened to again frequently.
+      addPendingSequenceNumberUpdate(targetId);
+    } else {
+      saveQueryData(queryData);
+      removePendingSequenceNumberUpdate(targetId);
+    }
+    cacheQueryData(queryData);
+
+    if (pendingSequenceNumberUpdates.size() >= MAX_PENDING_SEQUENCE_NUMBER_UPDATES) {
+      writePendingSequenceNumbers();
+    }
 
     if (updateMetadata(queryData)) {
       writeMetadata();
@@ -172,6 +237,19 @@ final class SQLiteQueryCache implements QueryCache {
     removeMatchingKeysForTargetId(targetId);
     db.execute("DELETE FROM targets WHERE target_id = ?", targetId);
     targetCount--;
+
+    removePendingSequenceNumberUpdate(targetId);
+    QueryData cached = targetsById.get(targetId);
+    if (cached != null) {
+      String canonicalId = cached.getQuery().getCanonicalId();
+      recordRollback(canonicalId);
+      targetsById.remove(targetId);
+      List<QueryData> targets = targetsByCanonicalId.get(canonicalId);
+      targets.remove(cached);
+      if (targets.isEmpty()) {
+        targetsByCanonicalId.remove(canonicalId);
+      }
+    }
   }
 
   @Override
@@ -187,6 +265,9 @@ final class SQLiteQueryCache implements QueryCache {
    * Returns the number of targets removed.
    */
   int removeQueries(long upperBound, SparseArray<?> activeTargetIds) {
+    // The statement below selects targets by their sequence number on disk.
+    writePendingSequenceNumbers();
+
     int[] count = new int[1];
     // SQLite has a max sql statement size, so there is technically a possibility that including a
     // an IN clause in this query to filter `activeTargetIds` could overflow. Rather than deal with
@@ -208,29 +289,152 @@ final class SQLiteQueryCache implements QueryCache {
   @Nullable
   @Override
   public QueryData getQueryData(Query query) {
+    for (QueryData queryData : getCachedTargets(query.getCanonicalId())) {
+      // Canonical IDs are not unique, so check that the query is actually equal to the requested
+      // query.
+      if (query.equals(queryData.getQuery())) {
+        return queryData;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the cached targets with the given canonical ID, reading them from disk if they are not
+   * cached. The returned list must not be modified.
+   */
+  private List<QueryData> getCachedTargets(String canonicalId) {
+    List<QueryData> targets = targetsByCanonicalId.get(canonicalId);
+    if (targets != null) {
+      return targets;
+    }
+
+    List<QueryData> loaded = new ArrayList<>();
     // Querying the targets table by canonical_id may yield more than one result because
     // canonical_id values are not required to be unique per target. This query depends on the
     // query_targets index to be efficient.
-    String canonicalId = query.getCanonicalId();
-    QueryDataHolder result = new QueryDataHolder();
     db.query("SELECT target_proto FROM targets WHERE canonical_id = ?")
         .binding(canonicalId)
-        .forEach(
-            row -> {
-              // TODO: break out early if found.
-              QueryData found = decodeQueryData(row.getBlob(0));
+        .forEach(row -> loaded.add(decodeQueryData(row.getBlob(0))));
+    // Canonical IDs without targets are not cached, so that looking up queries that were never
+    // listened to doesn't grow the cache.
+    if (!loaded.isEmpty()) {
+      recordRollback(canonicalId);
+      targetsByCanonicalId.put(canonicalId, loaded);
+      for (QueryData queryData : loaded) {
+        targetsById.put(queryData.getTargetId(), queryData);
+      }
+    }
+    return loaded;
+  }
 
-              // After finding a potential match, check that the query is actually equal to the
-              // requested query.
-              if (query.equals(found.getQuery())) {
-                result.queryData = found;
-              }
-            });
-    return result.queryData;
+  /** Adds the target to the cache, or replaces the cached target with the same target ID. */
+  private void cacheQueryData(QueryData queryData) {
+    String canonicalId = queryData.getQuery().getCanonicalId();
+    getCachedTargets(canonicalId);
+    recordRollback(canonicalId);
+    List<QueryData> targets = targetsByCanonicalId.get(canonicalId);
+    if (targets == null) {
+      targets = new ArrayList<>();
+      targetsByCanonicalId.put(canonicalId, targets);
+    }
+    QueryData previous = targetsById.put(queryData.getTargetId(), queryData);
+    if (previous != null) {
+      targets.remove(previous);
+    }
+    targets.add(queryData);
   }
 
-  private static class QueryDataHolder {
-    QueryData queryData;
+  private void addPendingSequenceNumberUpdate(int targetId) {
+    if (pendingSequenceNumberUpdates.add(targetId)) {
+      rollbackActions.add(() -> pendingSequenceNumberUpdates.remove(targetId));
+    }
+  }
+
+  private void removePendingSequenceNumberUpdate(int targetId) {
+    if (pendingSequenceNumberUpdates.remove(targetId)) {
+      rollbackActions.add(() -> pendingSequenceNumberUpdates.add(targetId));
+    }
+  }
+
+  /**
+   * Records the cached targets with the given canonical ID, so that they are restored if the
+   * current transaction is rolled back. Must be called before they are changed.
+   */
+  private void recordRollback(String canonicalId) {
+    List<QueryData> targets = targetsByCanonicalId.get(canonicalId);
+    List<QueryData> previousTargets = targets != null ? new ArrayList<>(targets) : null;
+    rollbackActions.add(
+        () -> {
+          List<QueryData> current = targetsByCanonicalId.remove(canonicalId);
+          if (current != null) {
+            for (QueryData queryData : current) {
+              targetsById.remove(queryData.getTargetId());
+            }
+          }
+          if (previousTargets != null) {
+            targetsByCanonicalId.put(canonicalId, previousTargets);
+            for (QueryData queryData : previousTargets) {
+              targetsById.put(queryData.getTargetId(), queryData);
+            }
+          }
+        });
+  }
+
+  void onTransactionStarted() {
+    int highestTargetId = this.highestTargetId;
+    long lastListenSequenceNumber = this.lastListenSequenceNumber;
+    SnapshotVersion lastRemoteSnapshotVersion = this.lastRemoteSnapshotVersion;
+    long targetCount = this.targetCount;
+    rollbackActions.add(
+        () -> {
+          this.highestTargetId = highestTargetId;
+          this.lastListenSequenceNumber = lastListenSequenceNumber;
+          this.lastRemoteSnapshotVersion = lastRemoteSnapshotVersion;
+          this.targetCount = targetCount;
+        });
+  }
+
+  /** Keeps the changes made to the cached targets and metadata in the committed transaction. */
+  void onTransactionCommitted() {
+    rollbackActions.clear();
+  }
+
+  /**
+   * Undoes the changes made to the cached targets and metadata in the rolled back transaction, so
+   * that they match the database again.
+   */
+  void onTransactionRolledBack() {
+    for (int i = rollbackActions.size() - 1; i >= 0; --i) {
+      rollbackActions.get(i).run();
+    }
+    rollbackActions.clear();
+  }
+
+  /** Returns whether there are sequence numbers that have not been written to disk yet. */
+  boolean hasPendingSequenceNumbers() {
+    return !pendingSequenceNumberUpdates.isEmpty();
+  }
+
+  /** Writes the sequence numbers that have only been updated in memory to disk. */
+  void writePendingSequenceNumbers() {
+    if (pendingSequenceNumberUpdates.isEmpty()) {
+      return;
+    }
+
+    SQLiteStatement updater =
+        db.prepare(
+            "UPDATE targets SET last_listen_sequence_number = ?, target_proto = ? "
+                + "WHERE target_id = ?");
+    for (int targetId : pendingSequenceNumberUpdates) {
+      QueryData queryData = targetsById.get(targetId);
+      byte[] targetProto = localSerializer.encodeQueryData(queryData).toByteArray();
+      db.execute(updater, queryData.getSequenceNumber(), targetProto, targetId);
+    }
+    // The updates are pending again if the transaction that writes them fails.
+    Set<Integer> written = new HashSet<>(pendingSequenceNumberUpdates);
+    rollbackActions.add(() -> pendingSequenceNumberUpdates.addAll(written));
+    pendingSequenceNumberUpdates.clear();
   }
 
   private QueryData decodeQueryData(byte[] bytes) {
@@ -257,7 +461,7 @@ final class SQLiteQueryCache implements QueryCache {
 
     ReferenceDelegate delegate = db.getReferenceDelegate();
     for (DocumentKey key : keys) {
-      String path = EncodedPath.encode(key.getPath());
+      String path = EncodedPath.encode(key);
       db.execute(inserter, targetId, path);
       delegate.addReference(key);
     }
@@ -271,7 +475,7 @@ final class SQLiteQueryCache implements QueryCache {
 
     ReferenceDelegate delegate = db.getReferenceDelegate();
     for (DocumentKey key : keys) {
-      String path = EncodedPath.encode(key.getPath());
+      String path = EncodedPath.encode(key);
       db.execute(deleter, targetId, path);
       delegate.removeReference(key);
     }
@@ -289,7 +493,7 @@ final class SQLiteQueryCache implements QueryCache {
         .forEach(
             row -> {
               String path = row.getString(0);
-              DocumentKey key = DocumentKey.fromPath(EncodedPath.decodeResourcePath(path));
+              DocumentKey key = EncodedPath.decodeDocumentKey(path);
               holder.keys = holder.keys.insert(key);
             });
     return holder.keys;
@@ -302,7 +506,7 @@ final class SQLiteQueryCache implements QueryCache {
 
   @Override
   public boolean containsKey(DocumentKey key) {
-    String path = EncodedPath.encode(key.getPath());
+    String path = EncodedPath.encode(key);
     return !db.query(
             "SELECT target_id FROM target_documents WHERE path = ? AND target_id != 0 LIMIT 1")
         .binding(path)
@@ -29,22 +29,36 @@ import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.BackgroundQueue;
 import com.google.firebase.firestore.util.Executors;
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.MessageLite;
+import com.google.protobuf.CodedInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
 
+  /**
+   * The number of collections whose key ranges are scanned by a single statement. Each range binds
+   * two arguments, which keeps the statements well below SQLite's limit of 999 arguments.
+   */
+  private static final int COLLECTIONS_PER_STATEMENT = 400;
+
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
+  private final SQLiteTableStats tableStats;
+
+  @Nullable private QueryStatsCollector stats;
 
   SQLiteRemoteDocumentCache(SQLitePersistence persistence, LocalSerializer serializer) {
     this.db = persistence;
     this.serializer = serializer;
+    this.tableStats =
+        new SQLiteTableStats(persistence, "remote_documents", "contents", /* filter= */ "");
   }
 
   @Override
@@ -55,7 +69,7 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
 
     String path = pathForKey(maybeDocument.getKey());
     Timestamp timestamp = readTime.getTimestamp();
-    MessageLite message = serializer.encodeMaybeDocument(maybeDocument);
+    byte[] contents = serializer.encodeMaybeDocument(maybeDocument).toByteArray();
 
     db.execute(
         "INSERT OR REPLACE INTO remote_documents "
@@ -64,7 +78,7 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
         path,
         timestamp.getSeconds(),
         timestamp.getNanoseconds(),
-        message.toByteArray());
+        contents);
 
     db.getIndexManager().addToCollectionParentIndex(maybeDocument.getKey().getPath().popLast());
   }
@@ -83,14 +97,18 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
 
     return db.query("SELECT contents FROM remote_documents WHERE path = ?")
         .binding(path)
-        .firstValue(row -> decodeMaybeDocument(row.getBlob(0)));
+        .firstValue(
+            row -> {
+              recordRowScanned(/* decoded= */ true);
+              return decodeMaybeDocument(row.getBlob(0));
+            });
   }
 
   @Override
   public Map<DocumentKey, MaybeDocument> getAll(Iterable<DocumentKey> documentKeys) {
     List<Object> args = new ArrayList<>();
     for (DocumentKey key : documentKeys) {
-      args.add(EncodedPath.encode(key.getPath()));
+      args.add(EncodedPath.encode(key));
     }
 
     Map<DocumentKey, MaybeDocument> results = new HashMap<>();
@@ -112,6 +130,7 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
           .performNextSubquery()
           .forEach(
               row -> {
+                recordRowScanned(/* decoded= */ true);
                 MaybeDocument decoded = decodeMaybeDocument(row.getBlob(0));
                 results.put(decoded.getKey(), decoded);
               });
@@ -136,10 +155,7 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
     Timestamp readTime = sinceReadTime.getTimestamp();
 
     BackgroundQueue backgroundQueue = new BackgroundQueue();
-
-    ImmutableSortedMap<DocumentKey, Document>[] matchingDocuments =
-        (ImmutableSortedMap<DocumentKey, Document>[])
-            new ImmutableSortedMap[] {DocumentCollections.emptyDocumentMap()};
+    List<Document> matchingDocuments = new ArrayList<>();
 
     SQLitePersistence.Query sqlQuery;
     if (sinceReadTime.equals(SnapshotVersion.NONE)) {
@@ -172,8 +188,10 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
           // path.
           ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
           if (path.length() != immediateChildrenPathLength) {
+            recordRowScanned(/* decoded= */ false);
             return;
           }
+          recordRowScanned(/* decoded= */ true);
 
           byte[] rawDocument = row.getBlob(1);
 
@@ -185,9 +203,8 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
                 MaybeDocument maybeDoc = decodeMaybeDocument(rawDocument);
 
                 if (maybeDoc instanceof Document && query.matches((Document) maybeDoc)) {
-                  synchronized (SQLiteRemoteDocumentCache.this) {
-                    matchingDocuments[0] =
-                        matchingDocuments[0].insert(maybeDoc.getKey(), (Document) maybeDoc);
+                  synchronized (matchingDocuments) {
+                    matchingDocuments.add((Document) maybeDoc);
                   }
                 }
               });
@@ -199,18 +216,122 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
       fail("Interrupted while deserializing documents", e);
     }
 
-    return matchingDocuments[0];
+    // SQLite returns the rows in key order when it scans the path range, and only the parallel
+    // decoding reorders them slightly, so sorting them again is cheap.
+    return DocumentCollections.documentMapOf(matchingDocuments);
+  }
+
+  @Override
+  public ImmutableSortedMap<DocumentKey, Document> getAllDocumentsMatchingCollectionGroupQuery(
+      Query query, List<ResourcePath> collectionPaths, SnapshotVersion sinceReadTime) {
+    hardAssert(query.isCollectionGroupQuery(), "Expected a collection group query");
+
+    List<ResourcePath> collections = new ArrayList<>(new LinkedHashSet<>(collectionPaths));
+    Timestamp readTime = sinceReadTime.getTimestamp();
+    BackgroundQueue backgroundQueue = new BackgroundQueue();
+    List<Document> matchingDocuments = new ArrayList<>();
+
+    // Scan the ranges of all collections in one statement (per batch of collections) instead of
+    // issuing one statement per collection.
+    for (int start = 0; start < collections.size(); start += COLLECTIONS_PER_STATEMENT) {
+      List<ResourcePath> batch =
+          collections.subList(
+              start, Math.min(collections.size(), start + COLLECTIONS_PER_STATEMENT));
+      // A row can fall into the ranges of two batches (e.g. "c/x/c/y" is in the ranges of both "c"
+      // and "c/x/c"), so only accept rows whose parent is part of this batch.
+      Set<ResourcePath> batchCollections = new HashSet<>(batch);
+      StringBuilder sql = new StringBuilder("SELECT path, contents FROM remote_documents WHERE (");
+      List<Object> args = new ArrayList<>();
+      for (int i = 0; i < batch.size(); ++i) {
+        String prefixPath = EncodedPath.encode(batch.get(i));
+        sql.append(i > 0 ? " OR " : "").append("(path >= ? AND path < ?)");
+        args.add(prefixPath);
+        args.add(EncodedPath.prefixSuccessor(prefixPath));
+      }
+      sql.append(")");
+      if (!sinceReadTime.equals(SnapshotVersion.NONE)) {
+        sql.append(
+            " AND (read_time_seconds > ? OR (read_time_seconds = ? AND read_time_nanos > ?))");
+        args.add(readTime.getSeconds());
+        args.add(readTime.getSeconds());
+        args.add(readTime.getNanoseconds());
+      }
+
+      db.query(sql.toString())
+          .binding(args.toArray())
+          .forEach(
+              row -> {
+                // Skip documents in subcollections of the collections.
+                ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
+                if (!batchCollections.contains(path.popLast())) {
+                  recordRowScanned(/* decoded= */ false);
+                  return;
+                }
+                recordRowScanned(/* decoded= */ true);
+
+                byte[] rawDocument = row.getBlob(1);
+                backgroundQueue.execute(
+                    () -> {
+                      MaybeDocument maybeDoc = decodeMaybeDocument(rawDocument);
+                      if (maybeDoc instanceof Document && query.matches((Document) maybeDoc)) {
+                        synchronized (matchingDocuments) {
+                          matchingDocuments.add((Document) maybeDoc);
+                        }
+                      }
+                    });
+              });
+    }
+
+    try {
+      backgroundQueue.drain();
+    } catch (InterruptedException e) {
+      fail("Interrupted while deserializing documents", e);
+    }
+
+    return DocumentCollections.documentMapOf(matchingDocuments);
+  }
+
+  @Override
+  public long getDocumentCount() {
+    return tableStats.getRowCount();
+  }
+
+  @Override
+  public long getDocumentsByteSize() {
+    return tableStats.getByteSize();
+  }
+
+  @Override
+  public void setStatsCollector(@Nullable QueryStatsCollector stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * Records a row read from the remote_documents table. Must be called on the thread that reads
+   * the rows, even if the document is decoded on a background thread.
+   */
+  private void recordRowScanned(boolean decoded) {
+    if (stats != null) {
+      stats.recordRowScanned();
+      if (decoded) {
+        stats.recordDocumentDecoded();
+      }
+    }
   }
 
   private String pathForKey(DocumentKey key) {
-    return EncodedPath.encode(key.getPath());
+    return EncodedPath.encode(key);
   }
 
   private MaybeDocument decodeMaybeDocument(byte[] bytes) {
     try {
+      // The row's byte array is not reused, so `bytes` fields (e.g. Blob values) can point into it
+      // instead of being copied.
+      CodedInputStream input = CodedInputStream.newInstance(bytes);
+      input.enableAliasing(true);
       return serializer.decodeMaybeDocument(
-          com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
-    } catch (InvalidProtocolBufferException e) {
+          com.google.firebase.firestore.proto.MaybeDocument.parseFrom(input));
+    } catch (IOException e) {
       throw fail("MaybeDocument failed to parse: %s", e);
     }
   }
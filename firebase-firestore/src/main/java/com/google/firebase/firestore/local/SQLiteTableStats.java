@@ -0,0 +1,63 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+/**
+ * Counts the rows of a SQLite table and the total size of one of its blob columns, optionally only
+ * for the rows that match a filter.
+ *
+ * <p>Both values are computed with an aggregate query each time they are read, so writers don't do
+ * any bookkeeping. The row count only reads the smallest index of the table, while the byte size
+ * visits every counted row. SQLite reads the length of a blob from the row header without loading
+ * the blob itself.
+ */
+final class SQLiteTableStats {
+  private final SQLitePersistence db;
+  private final String table;
+  private final String column;
+  private final String filter;
+  private final Object[] filterArgs;
+
+  /**
+   * @param filter A condition on indexed columns that limits the counted rows, or an empty string
+   *     to count all rows.
+   */
+  SQLiteTableStats(
+      SQLitePersistence db, String table, String column, String filter, Object... filterArgs) {
+    this.db = db;
+    this.table = table;
+    this.column = column;
+    this.filter = filter;
+    this.filterArgs = filterArgs;
+  }
+
+  long getRowCount() {
+    return aggregate("COUNT(*)");
+  }
+
+  /** Returns the total size of the counted column, in bytes. */
+  long getByteSize() {
+    return aggregate("IFNULL(SUM(LENGTH(" + column + ")), 0)");
+  }
+
+  private long aggregate(String expression) {
+    String sql = "SELECT " + expression + " FROM " + table;
+    Long value =
+        db.query(filter.isEmpty() ? sql : sql + " WHERE " + filter)
+            .binding(filterArgs)
+            .firstValue(row -> row.getLong(0));
+    return value != null ? value : 0;
+  }
+}
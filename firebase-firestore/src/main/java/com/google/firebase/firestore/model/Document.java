@@ -19,6 +19,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.common.base.Function;
+import com.google.common.collect.Maps;
 import com.google.firebase.firestore.model.value.FieldValue;
 import com.google.firebase.firestore.model.value.ObjectValue;
 import com.google.firestore.v1.Value;
@@ -58,6 +59,9 @@ public final class Document extends MaybeDocument {
   /** A cache for FieldValues that have already been deserialized in `getField()`. */
   private @Nullable Map<FieldPath, FieldValue> fieldValueCache;
 
+  /** The sort key that `getSortKey()` computed last, together with its comparator. */
+  private @Nullable SortKey sortKey;
+
   public Document(
       DocumentKey key,
       SnapshotVersion version,
@@ -95,14 +99,20 @@ public final class Document extends MaybeDocument {
     if (objectValue == null) {
       hardAssert(proto != null && converter != null, "Expected proto and converter to be non-null");
 
-      ObjectValue result = ObjectValue.emptyObject();
-      for (Map.Entry<String, com.google.firestore.v1.Value> entry :
-          proto.getFieldsMap().entrySet()) {
-        FieldPath path = FieldPath.fromSingleSegment(entry.getKey());
-        FieldValue value = converter.apply(entry.getValue());
-        result = result.set(path, value);
+      // Decode all top-level fields first and build the sorted map in a single pass, instead of
+      // inserting the fields one at a time into a growing immutable map. Fields that were already
+      // decoded by `getField()` are reused.
+      Map<FieldPath, FieldValue> fieldValueCache = this.fieldValueCache;
+      Map<String, com.google.firestore.v1.Value> protoFields = proto.getFieldsMap();
+      Map<String, FieldValue> fields = Maps.newHashMapWithExpectedSize(protoFields.size());
+      for (Map.Entry<String, com.google.firestore.v1.Value> entry : protoFields.entrySet()) {
+        FieldValue value =
+            fieldValueCache != null
+                ? fieldValueCache.get(FieldPath.fromSingleSegment(entry.getKey()))
+                : null;
+        fields.put(entry.getKey(), value != null ? value : converter.apply(entry.getValue()));
       }
-      objectValue = result;
+      objectValue = ObjectValue.fromMap(fields);
 
       // Once objectValue is computed, values inside the fieldValueCache are no longer accessed.
       fieldValueCache = null;
@@ -166,6 +176,40 @@ public final class Document extends MaybeDocument {
     return this.hasLocalMutations() || this.hasCommittedMutations();
   }
 
+  /**
+   * Returns the sort key of this document for the given comparator, and computes it with {@code
+   * encoder} if the key is not cached yet. Only the key of the comparator that asked last is
+   * cached, since a document is sorted by one view at a time.
+   */
+  public byte[] getSortKey(Comparator<Document> comparator, Function<Document, byte[]> encoder) {
+    // The key and its comparator are published together, so a racing reader never sees the key of
+    // one comparator paired with another.
+    SortKey sortKey = this.sortKey;
+    if (sortKey == null || sortKey.comparator != comparator) {
+      sortKey = new SortKey(comparator, encoder.apply(this));
+      this.sortKey = sortKey;
+    }
+    return sortKey.key;
+  }
+
+  /**
+   * Returns whether this document has the same data as {@code other}, which must be a version of
+   * the same document.
+   *
+   * <p>Two versions that Watch sent with the same update time have the same data, so their data is
+   * not compared. Otherwise, the data is compared field by field.
+   */
+  public boolean hasSameData(Document other) {
+    if (documentState == DocumentState.SYNCED
+        && other.documentState == DocumentState.SYNCED
+        && !getVersion().equals(SnapshotVersion.NONE)
+        && getVersion().equals(other.getVersion())) {
+      return true;
+    }
+
+    return getData().equals(other.getData());
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -205,4 +249,14 @@ public final class Document extends MaybeDocument {
         + documentState.name()
         + '}';
   }
+
+  private static final class SortKey {
+    private final Comparator<Document> comparator;
+    private final byte[] key;
+
+    SortKey(Comparator<Document> comparator, byte[] key) {
+      this.comparator = comparator;
+      this.key = key;
+    }
+  }
 }
@@ -15,6 +15,9 @@
 package com.google.firebase.firestore.model;
 
 import com.google.firebase.database.collection.ImmutableSortedMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /** Provides static helpers around document collections. */
 public class DocumentCollections {
@@ -34,6 +37,20 @@ public class DocumentCollections {
     return (ImmutableSortedMap<DocumentKey, MaybeDocument>) EMPTY_DOCUMENT_MAP;
   }
 
+  /**
+   * Returns an immutable document map with the given documents, which are sorted by key in place.
+   * Sorting is linear if the documents are already (nearly) in key order, e.g. because they were
+   * read in key order, and the map is then built in one pass instead of one insert per document.
+   */
+  public static ImmutableSortedMap<DocumentKey, Document> documentMapOf(List<Document> documents) {
+    Collections.sort(documents, Document.keyComparator());
+    List<DocumentKey> keys = new ArrayList<>(documents.size());
+    for (Document document : documents) {
+      keys.add(document.getKey());
+    }
+    return ImmutableSortedMap.Builder.fromSortedLists(keys, documents, DocumentKey.comparator());
+  }
+
   /** Returns an empty, immutable versions map */
   @SuppressWarnings("unchecked")
   public static ImmutableSortedMap<DocumentKey, SnapshotVersion> emptyVersionMap() {
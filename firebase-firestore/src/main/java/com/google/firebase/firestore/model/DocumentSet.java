@@ -19,7 +19,9 @@ import static com.google.firebase.firestore.model.DocumentCollections.emptyDocum
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.database.collection.ImmutableSortedMapBuilder;
 import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.database.collection.ImmutableSortedSetBuilder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -163,6 +165,11 @@ public final class DocumentSet implements Iterable<Document> {
     return new DocumentSet(newKeyIndex, newSortedSet);
   }
 
+  /** Returns a builder that applies several additions and removals to this set at once. */
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
   /**
    * Returns a copy of the documents in this set as array. This is O(n) in the size of the set TODO:
    * Consider making this backed by the set instead to achieve O(1)?
@@ -233,4 +240,48 @@ public final class DocumentSet implements Iterable<Document> {
     builder.append("]");
     return builder.toString();
   }
+
+  /**
+   * Collects additions and removals for a DocumentSet and applies them all at once when the set is
+   * built, instead of creating an intermediate DocumentSet for every change.
+   */
+  public static final class Builder {
+    private final DocumentSet base;
+    private final ImmutableSortedMapBuilder<DocumentKey, Document> keyIndex;
+    private final ImmutableSortedSetBuilder<Document> sortedSet;
+
+    private Builder(DocumentSet base) {
+      this.base = base;
+      this.keyIndex = base.keyIndex.toBuilder();
+      this.sortedSet = base.sortedSet.toBuilder();
+    }
+
+    /** Adds the given document, replacing any old document with the same key. */
+    public Builder add(Document document) {
+      remove(document.getKey());
+      keyIndex.insert(document.getKey(), document);
+      sortedSet.insert(document);
+      return this;
+    }
+
+    /** Removes the document for the provided key. */
+    public Builder remove(DocumentKey key) {
+      Document document = keyIndex.get(key);
+      if (document != null) {
+        keyIndex.remove(key);
+        sortedSet.remove(document);
+      }
+      return this;
+    }
+
+    @SuppressWarnings("ReferenceEquality") // Detect unchanged immutable instances
+    public DocumentSet build() {
+      ImmutableSortedMap<DocumentKey, Document> newKeyIndex = keyIndex.build();
+      ImmutableSortedSet<Document> newSortedSet = sortedSet.build();
+      if (newKeyIndex == base.keyIndex && newSortedSet == base.sortedSet) {
+        return base;
+      }
+      return new DocumentSet(newKeyIndex, newSortedSet);
+    }
+  }
 }
@@ -14,6 +14,8 @@
 
 package com.google.firebase.firestore.model;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -23,6 +25,13 @@ public final class ResourcePath extends BasePath<ResourcePath> {
 
   public static final ResourcePath EMPTY = new ResourcePath(Collections.emptyList());
 
+  /**
+   * The canonical instances of collection IDs. Unlike document IDs, which are mostly unique, the
+   * same collection IDs occur in the paths of many documents. The pool only holds weak references,
+   * so collection IDs that are no longer used can be garbage collected.
+   */
+  private static final Interner<String> COLLECTION_ID_INTERNER = Interners.newWeakInterner();
+
   private ResourcePath(List<String> segments) {
     super(segments);
   }
@@ -60,6 +69,28 @@ public final class ResourcePath extends BasePath<ResourcePath> {
     return new ResourcePath(segments);
   }
 
+  /**
+   * Returns the canonical instance of the given collection ID, so that the paths of all documents
+   * in a collection share a single copy of it.
+   */
+  public static String internCollectionId(String collectionId) {
+    return COLLECTION_ID_INTERNER.intern(collectionId);
+  }
+
+  /**
+   * Returns a copy of this path in which the collection IDs, i.e. the segments at even positions,
+   * are replaced by their canonical instances. The path must be relative to the root of the
+   * database.
+   */
+  public ResourcePath withInternedCollectionIds() {
+    List<String> interned = new ArrayList<>(segments.size());
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      interned.add(i % 2 == 0 ? internCollectionId(segment) : segment);
+    }
+    return fromSegments(interned);
+  }
+
   @Override
   public String canonicalString() {
     // NOTE: The client is ignorant of any path segments containing escape
@@ -0,0 +1,244 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.model.value;
+
+import static com.google.firebase.firestore.util.Assert.fail;
+
+import com.google.cloud.datastore.core.number.NumberIndexEncoder;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Encodes FieldValues as byte arrays whose unsigned lexicographic order matches the order of
+ * {@link FieldValue#compareTo}, so that they can be used as index and sort keys.
+ *
+ * <p>Each value starts with a byte for its type, and the encoding of every value is
+ * self-delimiting. Several values can therefore be written one after another into a single key,
+ * which orders like the values compared one after another. A value that is written in descending
+ * order is complemented byte by byte.
+ *
+ * <p>Values that compare equal, such as 1 and 1.0, have the same encoding. The encoding cannot be
+ * decoded.
+ */
+public final class IndexValueEncoder {
+  // The type markers, in the order of FieldValue.typeOrder(). Server timestamps are ordered after
+  // all concrete timestamps.
+  private static final int TYPE_NULL = 5;
+  private static final int TYPE_BOOLEAN = 10;
+  private static final int TYPE_NUMBER = 15;
+  private static final int TYPE_TIMESTAMP = 20;
+  private static final int TYPE_SERVER_TIMESTAMP = 25;
+  private static final int TYPE_STRING = 30;
+  private static final int TYPE_BLOB = 35;
+  private static final int TYPE_REFERENCE = 40;
+  private static final int TYPE_GEOPOINT = 45;
+  private static final int TYPE_ARRAY = 50;
+  private static final int TYPE_OBJECT = 55;
+
+  /**
+   * Ends arrays, objects and paths. It is written where the longer value has another type marker,
+   * so that shorter values are ordered first.
+   */
+  private static final int END = 0;
+
+  // Strings and blobs end with 0x00 0x01, and 0x00 bytes inside them are written as 0x00 0xFF.
+  private static final int ESCAPE = 0x00;
+  private static final int ESCAPED_NULL = 0xFF;
+  private static final int SEPARATOR = 0x01;
+
+  private static final Comparator<byte[]> BYTES_COMPARATOR =
+      UnsignedBytes.lexicographicalComparator();
+
+  private byte[] buffer = new byte[64];
+  private int position = 0;
+
+  /** Returns the encoding of a single value, in ascending order. */
+  public static byte[] encode(FieldValue value) {
+    IndexValueEncoder encoder = new IndexValueEncoder();
+    encoder.writeValue(value, /* descending= */ false);
+    return encoder.toByteArray();
+  }
+
+  /** Compares two encoded keys by their unsigned bytes, like memcmp. */
+  public static int compare(byte[] left, byte[] right) {
+    return BYTES_COMPARATOR.compare(left, right);
+  }
+
+  /** Appends the encoding of the value. */
+  public void writeValue(FieldValue value, boolean descending) {
+    int start = position;
+    writeValue(value);
+    if (descending) {
+      complement(start);
+    }
+  }
+
+  /** Appends the encoding of a document key, which orders like {@link DocumentKey#compareTo}. */
+  public void writeKey(DocumentKey key, boolean descending) {
+    int start = position;
+    writeSegments(key);
+    if (descending) {
+      complement(start);
+    }
+  }
+
+  /** Returns the encoding of all values that were written. */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, position);
+  }
+
+  private void writeValue(FieldValue value) {
+    if (value instanceof NullValue) {
+      writeByte(TYPE_NULL);
+    } else if (value instanceof BooleanValue) {
+      writeByte(TYPE_BOOLEAN);
+      writeByte(((BooleanValue) value).value() ? 1 : 0);
+    } else if (value instanceof IntegerValue) {
+      writeByte(TYPE_NUMBER);
+      writeBytes(NumberIndexEncoder.encodeLong(((IntegerValue) value).getInternalValue()));
+    } else if (value instanceof DoubleValue) {
+      writeByte(TYPE_NUMBER);
+      writeBytes(NumberIndexEncoder.encodeDouble(((DoubleValue) value).getInternalValue()));
+    } else if (value instanceof TimestampValue) {
+      writeByte(TYPE_TIMESTAMP);
+      writeTimestamp(((TimestampValue) value).getInternalValue());
+    } else if (value instanceof ServerTimestampValue) {
+      writeByte(TYPE_SERVER_TIMESTAMP);
+      writeTimestamp(((ServerTimestampValue) value).getLocalWriteTime());
+    } else if (value instanceof StringValue) {
+      writeByte(TYPE_STRING);
+      writeString(((StringValue) value).value());
+    } else if (value instanceof BlobValue) {
+      writeByte(TYPE_BLOB);
+      writeBlob(((BlobValue) value).value().toByteString());
+    } else if (value instanceof ReferenceValue) {
+      DatabaseId databaseId = ((ReferenceValue) value).getDatabaseId();
+      writeByte(TYPE_REFERENCE);
+      writeString(databaseId.getProjectId());
+      writeString(databaseId.getDatabaseId());
+      writeSegments(((ReferenceValue) value).value());
+    } else if (value instanceof GeoPointValue) {
+      GeoPoint geoPoint = ((GeoPointValue) value).value();
+      writeByte(TYPE_GEOPOINT);
+      writeBytes(NumberIndexEncoder.encodeDouble(geoPoint.getLatitude()));
+      writeBytes(NumberIndexEncoder.encodeDouble(geoPoint.getLongitude()));
+    } else if (value instanceof ArrayValue) {
+      writeByte(TYPE_ARRAY);
+      for (FieldValue element : ((ArrayValue) value).getInternalValue()) {
+        writeValue(element);
+      }
+      writeByte(END);
+    } else if (value instanceof ObjectValue) {
+      writeByte(TYPE_OBJECT);
+      for (Map.Entry<String, FieldValue> field : ((ObjectValue) value).getInternalValue()) {
+        writeByte(TYPE_STRING);
+        writeString(field.getKey());
+        writeValue(field.getValue());
+      }
+      writeByte(END);
+    } else {
+      throw fail("Unknown FieldValue type: %s", value);
+    }
+  }
+
+  private void writeSegments(DocumentKey key) {
+    for (int i = 0; i < key.getPath().length(); ++i) {
+      writeByte(TYPE_STRING);
+      writeString(key.getPath().getSegment(i));
+    }
+    writeByte(END);
+  }
+
+  private void writeTimestamp(Timestamp timestamp) {
+    // Flipping the sign bit orders negative seconds before positive ones.
+    long seconds = timestamp.getSeconds() ^ Long.MIN_VALUE;
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      writeByte((int) (seconds >>> shift));
+    }
+    int nanos = timestamp.getNanoseconds();
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      writeByte(nanos >>> shift);
+    }
+  }
+
+  /**
+   * Writes each UTF-16 code unit of the string like UTF-8 writes a code point. Unlike UTF-8, this
+   * orders strings like {@link String#compareTo}, which compares surrogates as code units.
+   */
+  private void writeString(String value) {
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == 0) {
+        writeByte(ESCAPE);
+        writeByte(ESCAPED_NULL);
+      } else if (c < 0x80) {
+        writeByte(c);
+      } else if (c < 0x800) {
+        writeByte(0xC0 | (c >>> 6));
+        writeByte(0x80 | (c & 0x3F));
+      } else {
+        writeByte(0xE0 | (c >>> 12));
+        writeByte(0x80 | ((c >>> 6) & 0x3F));
+        writeByte(0x80 | (c & 0x3F));
+      }
+    }
+    writeByte(ESCAPE);
+    writeByte(SEPARATOR);
+  }
+
+  private void writeBlob(ByteString value) {
+    for (int i = 0; i < value.size(); ++i) {
+      int b = value.byteAt(i) & 0xFF;
+      if (b == 0) {
+        writeByte(ESCAPE);
+        writeByte(ESCAPED_NULL);
+      } else {
+        writeByte(b);
+      }
+    }
+    writeByte(ESCAPE);
+    writeByte(SEPARATOR);
+  }
+
+  private void complement(int start) {
+    for (int i = start; i < position; ++i) {
+      buffer[i] = (byte) ~buffer[i];
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    buffer[position++] = (byte) b;
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (position + bytes > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+    }
+  }
+}
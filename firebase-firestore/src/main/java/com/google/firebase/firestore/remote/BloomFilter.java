@@ -0,0 +1,199 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static com.google.firebase.firestore.util.Assert.fail;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import com.google.firestore.v1.BitSequence;
+import com.google.protobuf.ByteString;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+/**
+ * A read-only Bloom filter as sent by the backend with an existence filter.
+ *
+ * <p>Entries are hashed with MD5. The 128-bit digest is split into two little-endian 64-bit values
+ * h1 and h2, and the i-th bit index for an entry is {@code (h1 + i * h2) mod bitCount}, with all
+ * arithmetic on unsigned 64-bit integers. Bit n is stored in {@code bitmap[n / 8]} at position
+ * {@code n % 8}.
+ */
+public final class BloomFilter {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final int bitCount;
+  private final ByteString bitmap;
+  private final int hashCount;
+  private final MessageDigest md5HashMessageDigest;
+
+  /**
+   * Creates a new BloomFilter from its wire representation.
+   *
+   * @throws IllegalArgumentException if the bitmap, padding and hash count are inconsistent.
+   */
+  public BloomFilter(@NonNull ByteString bitmap, int padding, int hashCount) {
+    if (padding < 0 || padding >= 8) {
+      throw new IllegalArgumentException("Invalid padding: " + padding);
+    }
+    if (hashCount < 0) {
+      throw new IllegalArgumentException("Invalid hash count: " + hashCount);
+    }
+    if (bitmap.size() > 0 && hashCount == 0) {
+      // Only empty bloom filters can have 0 hash count.
+      throw new IllegalArgumentException("Invalid hash count: " + hashCount);
+    }
+    if (bitmap.size() == 0 && padding != 0) {
+      // Empty bloom filters should have 0 padding.
+      throw new IllegalArgumentException(
+          "Expected padding of 0 when bitmap length is 0, but got " + padding);
+    }
+
+    this.bitmap = bitmap;
+    this.hashCount = hashCount;
+    this.bitCount = bitmap.size() * 8 - padding;
+    this.md5HashMessageDigest = createMd5HashMessageDigest();
+  }
+
+  /** Creates a new BloomFilter from its proto representation. */
+  public static BloomFilter fromProto(@NonNull com.google.firestore.v1.BloomFilter proto) {
+    BitSequence bits = proto.getBits();
+    return new BloomFilter(bits.getBitmap(), bits.getPadding(), proto.getHashCount());
+  }
+
+  /**
+   * Creates a BloomFilter with {@code bitCount} bits that contains all of the given values. Used by
+   * tests to act as the backend.
+   */
+  @VisibleForTesting
+  public static BloomFilter create(Iterable<String> values, int bitCount, int hashCount) {
+    byte[] bytes = new byte[(bitCount + 7) / 8];
+    int padding = bytes.length * 8 - bitCount;
+    BloomFilter filter = new BloomFilter(ByteString.EMPTY, /* padding= */ 0, /* hashCount= */ 0);
+    for (String value : bitCount > 0 ? values : Collections.<String>emptyList()) {
+      byte[] hash = filter.md5Hash(value);
+      long hash1 = getLongLittleEndian(hash, 0);
+      long hash2 = getLongLittleEndian(hash, 8);
+      for (int i = 0; i < hashCount; i++) {
+        int index = getBitIndex(hash1, hash2, i, bitCount);
+        bytes[index / 8] |= (byte) (1 << (index % 8));
+      }
+    }
+    return new BloomFilter(ByteString.copyFrom(bytes), padding, hashCount);
+  }
+
+  /** Returns the proto representation of this BloomFilter. */
+  @VisibleForTesting
+  public com.google.firestore.v1.BloomFilter toProto() {
+    return com.google.firestore.v1.BloomFilter.newBuilder()
+        .setBits(
+            BitSequence.newBuilder()
+                .setBitmap(bitmap)
+                .setPadding(bitmap.size() * 8 - bitCount)
+                .build())
+        .setHashCount(hashCount)
+        .build();
+  }
+
+  /** Returns the number of bits in this Bloom filter. */
+  public int getBitCount() {
+    return bitCount;
+  }
+
+  /** Returns the number of hash functions used by this Bloom filter. */
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Returns whether the given value might be contained in this Bloom filter. A return value of
+   * {@code false} means that the value is definitely not contained.
+   */
+  public boolean mightContain(@NonNull String value) {
+    // Empty bitmap should always return false on membership check.
+    if (bitCount == 0) {
+      return false;
+    }
+
+    byte[] hash = md5Hash(value);
+    long hash1 = getLongLittleEndian(hash, 0);
+    long hash2 = getLongLittleEndian(hash, 8);
+
+    for (int i = 0; i < hashCount; i++) {
+      int index = getBitIndex(hash1, hash2, i, bitCount);
+      if (!isBitSet(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the expected probability that {@link #mightContain} returns {@code true} for a value
+   * that was not added, given that {@code insertedCount} values were added to the filter.
+   */
+  public double estimateFalsePositiveRate(int insertedCount) {
+    if (bitCount == 0) {
+      return 0;
+    }
+    return Math.pow(1 - Math.exp(-(double) hashCount * insertedCount / bitCount), hashCount);
+  }
+
+  private byte[] md5Hash(String value) {
+    return md5HashMessageDigest.digest(value.getBytes(UTF_8));
+  }
+
+  private static MessageDigest createMd5HashMessageDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw fail("Missing MD5 MessageDigest provider: %s", e);
+    }
+  }
+
+  /** Interprets 8 bytes of {@code bytes}, starting at {@code offset}, as a little-endian long. */
+  private static long getLongLittleEndian(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result |= (bytes[offset + i] & 0xFFL) << (i * 8);
+    }
+    return result;
+  }
+
+  /** Computes {@code (hash1 + i * hash2) mod bitCount} on unsigned 64-bit integers. */
+  private static int getBitIndex(long hash1, long hash2, int i, int bitCount) {
+    long combinedHash = hash1 + (hash2 * i);
+    return (int) unsignedRemainder(combinedHash, bitCount);
+  }
+
+  /** Returns the remainder of the unsigned 64-bit {@code dividend} divided by {@code divisor}. */
+  private static long unsignedRemainder(long dividend, long divisor) {
+    long quotient = ((dividend >>> 1) / divisor) << 1;
+    long remainder = dividend - quotient * divisor;
+    return remainder >= divisor ? remainder - divisor : remainder;
+  }
+
+  private boolean isBitSet(int index) {
+    byte byteAtIndex = bitmap.byteAt(index / 8);
+    return (byteAtIndex & (0x01 << (index % 8))) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "BloomFilter{hashCount=" + hashCount + ", bitCount=" + bitCount + '}';
+  }
+}
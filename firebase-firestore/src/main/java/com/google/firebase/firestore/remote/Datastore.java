@@ -27,7 +27,8 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationResult;
 import com.google.firebase.firestore.util.AsyncQueue;
-import com.google.firestore.v1.BatchGetDocumentsRequest;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
+import com.google.firebase.firestore.util.Executors;
 import com.google.firestore.v1.BatchGetDocumentsResponse;
 import com.google.firestore.v1.CommitRequest;
 import com.google.firestore.v1.CommitResponse;
@@ -110,6 +111,22 @@ public class Datastore {
     return databaseInfo;
   }
 
+  /**
+   * Returns a Task that resolves once the gRPC channel has been created and the security provider
+   * has been installed. The channel is created in the background as soon as the Datastore is.
+   */
+  public Task<Void> getChannelReadyTask() {
+    return channel.getChannelReadyTask();
+  }
+
+  /**
+   * Returns the counters for the bytes sent and received by all RPCs and streams, and for the time
+   * spent compressing and decompressing them.
+   */
+  public GrpcTrafficStats getTrafficStats() {
+    return channel.getTrafficStats();
+  }
+
   /** Creates a new WatchStream that is still unstarted but uses a common shared channel */
   WatchStream createWatchStream(WatchStream.Callback listener) {
     return new WatchStream(channel, workerQueue, serializer, listener);
@@ -129,7 +146,7 @@ public class Datastore {
     return channel
         .runRpc(FirestoreGrpc.getCommitMethod(), builder.build())
         .continueWith(
-            workerQueue.getExecutor(),
+            workerQueue.getExecutor(TaskLabel.GRPC_CALLBACK),
             task -> {
               if (!task.isSuccessful()) {
                 if (task.getException() instanceof FirebaseFirestoreException
@@ -152,16 +169,58 @@ public class Datastore {
             });
   }
 
-  public Task<List<MaybeDocument>> lookup(List<DocumentKey> keys) {
-    BatchGetDocumentsRequest.Builder builder = BatchGetDocumentsRequest.newBuilder();
-    builder.setDatabase(serializer.databaseName());
-    for (DocumentKey key : keys) {
-      builder.addDocuments(serializer.encodeKey(key));
+  /** The documents returned by a lookup, along with the time at which they were read. */
+  public static final class LookupResult {
+    private final List<MaybeDocument> documents;
+    private final SnapshotVersion readTime;
+
+    public LookupResult(List<MaybeDocument> documents, SnapshotVersion readTime) {
+      this.documents = documents;
+      this.readTime = readTime;
+    }
+
+    /** Returns the documents in the same order as the keys that were looked up. */
+    public List<MaybeDocument> getDocuments() {
+      return documents;
+    }
+
+    /**
+     * Returns the latest read time reported by the backend for this lookup. All returned documents
+     * are guaranteed to be current as of this version.
+     */
+    public SnapshotVersion getReadTime() {
+      return readTime;
     }
+  }
+
+  public Task<List<MaybeDocument>> lookup(List<DocumentKey> keys) {
+    return lookupWithReadTime(keys)
+        .continueWith(Executors.DIRECT_EXECUTOR, task -> task.getResult().getDocuments());
+  }
+
+  /**
+   * Looks up the given keys in a single BatchGetDocuments RPC and returns the documents together
+   * with the time at which the backend read them.
+   */
+  public Task<LookupResult> lookupWithReadTime(List<DocumentKey> keys) {
+    return lookupWithReadTime(keys, null);
+  }
+
+  /**
+   * Looks up the given keys in a single BatchGetDocuments RPC and returns the documents together
+   * with the time at which the backend read them.
+   *
+   * @param readTime The time at which the backend should read the documents, or null to read the
+   *     latest versions.
+   */
+  public Task<LookupResult> lookupWithReadTime(
+      List<DocumentKey> keys, @Nullable SnapshotVersion readTime) {
     return channel
-        .runStreamingResponseRpc(FirestoreGrpc.getBatchGetDocumentsMethod(), builder.build())
+        .runStreamingResponseRpc(
+            FirestoreGrpc.getBatchGetDocumentsMethod(),
+            serializer.encodeBatchGetDocumentsRequest(keys, readTime))
         .continueWith(
-            workerQueue.getExecutor(),
+            workerQueue.getExecutor(TaskLabel.GRPC_CALLBACK),
             task -> {
               if (!task.isSuccessful()) {
                 if (task.getException() instanceof FirebaseFirestoreException
@@ -172,16 +231,21 @@ public class Datastore {
               }
 
               Map<DocumentKey, MaybeDocument> resultMap = new HashMap<>();
+              SnapshotVersion readTime = SnapshotVersion.NONE;
               List<BatchGetDocumentsResponse> responses = task.getResult();
               for (BatchGetDocumentsResponse response : responses) {
                 MaybeDocument doc = serializer.decodeMaybeDocument(response);
                 resultMap.put(doc.getKey(), doc);
+                SnapshotVersion responseReadTime = serializer.decodeVersion(response.getReadTime());
+                if (responseReadTime.compareTo(readTime) > 0) {
+                  readTime = responseReadTime;
+                }
               }
               List<MaybeDocument> results = new ArrayList<>();
               for (DocumentKey key : keys) {
                 results.add(resultMap.get(key));
               }
-              return results;
+              return new LookupResult(results, readTime);
             });
   }
 
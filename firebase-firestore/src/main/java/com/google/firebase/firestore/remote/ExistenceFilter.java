@@ -14,20 +14,41 @@
 
 package com.google.firebase.firestore.remote;
 
-/** Simplest form of existence filter */
+import androidx.annotation.Nullable;
+import com.google.firestore.v1.BloomFilter;
+
+/**
+ * An existence filter: the number of documents that match a target and, optionally, a Bloom filter
+ * of the names of these documents.
+ */
 public final class ExistenceFilter {
   private final int count;
+  @Nullable private final BloomFilter unchangedNames;
 
   public ExistenceFilter(int count) {
+    this(count, null);
+  }
+
+  public ExistenceFilter(int count, @Nullable BloomFilter unchangedNames) {
     this.count = count;
+    this.unchangedNames = unchangedNames;
   }
 
   public int getCount() {
     return count;
   }
 
+  /**
+   * Returns the Bloom filter of the names of the documents that match the target, or null if the
+   * backend did not send one.
+   */
+  @Nullable
+  public BloomFilter getUnchangedNames() {
+    return unchangedNames;
+  }
+
   @Override
   public String toString() {
-    return "ExistenceFilter{count=" + count + '}';
+    return "ExistenceFilter{count=" + count + ", hasUnchangedNames=" + (unchangedNames != null) + '}';
   }
 }
@@ -92,6 +92,16 @@ class FirestoreChannel {
     callProvider.shutdown();
   }
 
+  /** Returns a Task that resolves once the gRPC channel has been created. */
+  Task<Void> getChannelReadyTask() {
+    return callProvider.getChannelReadyTask();
+  }
+
+  /** Returns the counters for the bytes sent and received over the channel. */
+  GrpcTrafficStats getTrafficStats() {
+    return callProvider.getTrafficStats();
+  }
+
   /**
    * Creates and starts a new bi-directional streaming RPC. The stream cannot accept message before
    * the observer's `onOpen()` callback is invoked.
@@ -23,6 +23,7 @@ import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.core.DatabaseInfo;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
 import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Logger;
 import com.google.firebase.firestore.util.Supplier;
@@ -47,6 +48,7 @@ public class GrpcCallProvider {
 
   private final Task<ManagedChannel> channelTask;
   private final AsyncQueue asyncQueue;
+  private final GrpcTrafficStats trafficStats = new GrpcTrafficStats();
 
   private CallOptions callOptions;
 
@@ -77,14 +79,21 @@ public class GrpcCallProvider {
             Executors.BACKGROUND_EXECUTOR,
             () -> {
               ManagedChannel channel = initChannel(context, databaseInfo);
+              warmUpChannel(channel);
               FirestoreGrpc.FirestoreStub firestoreStub =
                   FirestoreGrpc.newStub(channel)
                       .withCallCredentials(firestoreHeaders)
                       // Ensure all callbacks are issued on the worker queue. If this call is
                       // removed, all calls need to be audited to make sure they are executed on the
                       // right thread.
-                      .withExecutor(asyncQueue.getExecutor());
-              callOptions = firestoreStub.getCallOptions();
+                      .withExecutor(asyncQueue.getExecutor(TaskLabel.GRPC_CALLBACK));
+              if (databaseInfo.isCompressionEnabled()) {
+                firestoreStub = firestoreStub.withCompression(GrpcTrafficStats.GZIP_ENCODING);
+              }
+              callOptions =
+                  firestoreStub
+                      .getCallOptions()
+                      .withStreamTracerFactory(trafficStats.getStreamTracerFactory());
               return channel;
             });
   }
@@ -121,6 +130,15 @@ public class GrpcCallProvider {
     // usually notify gRPC when a connection dies. But not always. This acts as a failsafe.)
     channelBuilder.keepAliveTime(30, TimeUnit.SECONDS);
 
+    // If compression is enabled, use codecs that record the time spent compressing and
+    // decompressing messages. Otherwise, keep gRPC's default codecs, which still decompress the
+    // responses that the backend chooses to compress.
+    if (databaseInfo.isCompressionEnabled()) {
+      channelBuilder
+          .compressorRegistry(trafficStats.createCompressorRegistry())
+          .decompressorRegistry(trafficStats.createDecompressorRegistry());
+    }
+
     // Wrap the ManagedChannelBuilder in an AndroidChannelBuilder. This allows the channel to
     // respond more gracefully to network change events (such as switching from cell to wifi).
     AndroidChannelBuilder androidChannelBuilder =
@@ -129,6 +147,30 @@ public class GrpcCallProvider {
     return androidChannelBuilder.build();
   }
 
+  /**
+   * Asks the channel to connect right away, so that DNS resolution as well as the TCP and TLS
+   * handshakes overlap with the rest of the client's initialization instead of delaying the first
+   * RPC.
+   */
+  private static void warmUpChannel(ManagedChannel channel) {
+    try {
+      channel.getState(/* requestConnection= */ true);
+    } catch (UnsupportedOperationException e) {
+      // Not all channel implementations support connectivity state. The connection will then be
+      // established by the first RPC.
+    }
+  }
+
+  /** Returns a Task that resolves once the channel has been created. */
+  Task<Void> getChannelReadyTask() {
+    return channelTask.continueWith(Executors.DIRECT_EXECUTOR, task -> null);
+  }
+
+  /** Returns the counters for the bytes sent and received over the channel. */
+  GrpcTrafficStats getTrafficStats() {
+    return trafficStats;
+  }
+
   /** Creates a new ClientCall. */
   <ReqT, RespT> Task<ClientCall<ReqT, RespT>> createClientCall(
       MethodDescriptor<ReqT, RespT> methodDescriptor) {
@@ -139,6 +181,8 @@ public class GrpcCallProvider {
 
   /** Shuts down the gRPC channel and the internal worker queue. */
   void shutdown() {
+    Logger.debug(LOG_TAG, "Channel traffic: %s", trafficStats);
+
     // Handling shutdown synchronously to avoid re-enqueuing on the AsyncQueue after shutdown has
     // started.
     ManagedChannel channel = null;
@@ -0,0 +1,212 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import androidx.annotation.NonNull;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.Metadata;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes that the gRPC channel sends and receives, both as they appear on the wire and
+ * before compression, as well as the time spent compressing and decompressing messages. Together,
+ * these counters show the bandwidth saved by message compression and the CPU time it costs.
+ *
+ * <p>The counters are updated from gRPC's transport threads and can be read from any thread.
+ */
+// PORTING NOTE: This class only exists on Android.
+public final class GrpcTrafficStats {
+  /** The message encoding used when compression is enabled. */
+  static final String GZIP_ENCODING = "gzip";
+
+  private final AtomicLong outboundWireBytes = new AtomicLong();
+  private final AtomicLong outboundUncompressedBytes = new AtomicLong();
+  private final AtomicLong inboundWireBytes = new AtomicLong();
+  private final AtomicLong inboundUncompressedBytes = new AtomicLong();
+  private final AtomicLong compressionNanos = new AtomicLong();
+  private final AtomicLong decompressionNanos = new AtomicLong();
+
+  private final ClientStreamTracer.Factory streamTracerFactory =
+      new ClientStreamTracer.Factory() {
+        @Override
+        public ClientStreamTracer newClientStreamTracer(
+            ClientStreamTracer.StreamInfo info, Metadata headers) {
+          return new ClientStreamTracer() {
+            @Override
+            public void outboundWireSize(long bytes) {
+              outboundWireBytes.addAndGet(bytes);
+            }
+
+            @Override
+            public void outboundUncompressedSize(long bytes) {
+              outboundUncompressedBytes.addAndGet(bytes);
+            }
+
+            @Override
+            public void inboundWireSize(long bytes) {
+              inboundWireBytes.addAndGet(bytes);
+            }
+
+            @Override
+            public void inboundUncompressedSize(long bytes) {
+              inboundUncompressedBytes.addAndGet(bytes);
+            }
+          };
+        }
+      };
+
+  private final Codec gzipCodec = new TimedCodec(new Codec.Gzip());
+
+  /** Returns the tracer factory that needs to be installed on every call to count its bytes. */
+  ClientStreamTracer.Factory getStreamTracerFactory() {
+    return streamTracerFactory;
+  }
+
+  /** Returns a registry whose gzip compressor records the time it spends compressing. */
+  CompressorRegistry createCompressorRegistry() {
+    CompressorRegistry registry = CompressorRegistry.newEmptyInstance();
+    registry.register(gzipCodec);
+    return registry;
+  }
+
+  /** Returns a registry whose gzip decompressor records the time it spends decompressing. */
+  DecompressorRegistry createDecompressorRegistry() {
+    return DecompressorRegistry.emptyInstance()
+        .with(gzipCodec, /* advertised= */ true)
+        .with(Codec.Identity.NONE, /* advertised= */ false);
+  }
+
+  /** The number of message bytes sent, after compression. */
+  public long getOutboundWireBytes() {
+    return outboundWireBytes.get();
+  }
+
+  /** The number of message bytes sent, before compression. */
+  public long getOutboundUncompressedBytes() {
+    return outboundUncompressedBytes.get();
+  }
+
+  /** The number of message bytes received, before decompression. */
+  public long getInboundWireBytes() {
+    return inboundWireBytes.get();
+  }
+
+  /** The number of message bytes received, after decompression. */
+  public long getInboundUncompressedBytes() {
+    return inboundUncompressedBytes.get();
+  }
+
+  /** The total time spent compressing outgoing messages, in nanoseconds. */
+  public long getCompressionNanos() {
+    return compressionNanos.get();
+  }
+
+  /** The total time spent decompressing incoming messages, in nanoseconds. */
+  public long getDecompressionNanos() {
+    return decompressionNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return "GrpcTrafficStats{outboundWireBytes="
+        + getOutboundWireBytes()
+        + ", outboundUncompressedBytes="
+        + getOutboundUncompressedBytes()
+        + ", inboundWireBytes="
+        + getInboundWireBytes()
+        + ", inboundUncompressedBytes="
+        + getInboundUncompressedBytes()
+        + ", compressionNanos="
+        + getCompressionNanos()
+        + ", decompressionNanos="
+        + getDecompressionNanos()
+        + '}';
+  }
+
+  /** A Codec that delegates to another Codec and records the time spent in it. */
+  private final class TimedCodec implements Codec {
+    private final Codec delegate;
+
+    TimedCodec(Codec delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getMessageEncoding() {
+      return delegate.getMessageEncoding();
+    }
+
+    @Override
+    public OutputStream compress(OutputStream os) throws IOException {
+      long start = System.nanoTime();
+      OutputStream compressed = delegate.compress(os);
+      compressionNanos.addAndGet(System.nanoTime() - start);
+      return new FilterOutputStream(compressed) {
+        @Override
+        public void write(int b) throws IOException {
+          long start = System.nanoTime();
+          out.write(b);
+          compressionNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+          long start = System.nanoTime();
+          out.write(b, off, len);
+          compressionNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+          long start = System.nanoTime();
+          out.close();
+          compressionNanos.addAndGet(System.nanoTime() - start);
+        }
+      };
+    }
+
+    @Override
+    public InputStream decompress(InputStream is) throws IOException {
+      long start = System.nanoTime();
+      InputStream decompressed = delegate.decompress(is);
+      decompressionNanos.addAndGet(System.nanoTime() - start);
+      return new FilterInputStream(decompressed) {
+        @Override
+        public int read() throws IOException {
+          long start = System.nanoTime();
+          int result = in.read();
+          decompressionNanos.addAndGet(System.nanoTime() - start);
+          return result;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+          long start = System.nanoTime();
+          int result = in.read(b, off, len);
+          decompressionNanos.addAndGet(System.nanoTime() - start);
+          return result;
+        }
+      };
+    }
+  }
+}
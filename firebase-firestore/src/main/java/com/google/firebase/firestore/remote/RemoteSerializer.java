@@ -19,6 +19,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import com.google.common.collect.Maps;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.GeoPoint;
@@ -68,6 +69,7 @@ import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChan
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChangeType;
 import com.google.firebase.firestore.util.Assert;
+import com.google.firestore.v1.BatchGetDocumentsRequest;
 import com.google.firestore.v1.BatchGetDocumentsResponse;
 import com.google.firestore.v1.BatchGetDocumentsResponse.ResultCase;
 import com.google.firestore.v1.Cursor;
@@ -225,7 +227,7 @@ public final class RemoteSerializer {
         resourceName.length() > 4 && resourceName.getSegment(4).equals("documents"),
         "Tried to deserialize invalid key %s",
         resourceName);
-    return resourceName.popFirst(5);
+    return resourceName.popFirst(5).withInternedCollectionIds();
   }
 
   /** Validates that a path has a prefix that looks like a valid encoded databaseId. */
@@ -368,13 +370,13 @@ public final class RemoteSerializer {
   // involve creating a temporary map.
 
   public ObjectValue decodeFields(Map<String, com.google.firestore.v1.Value> fields) {
-    ObjectValue result = ObjectValue.emptyObject();
+    // Decode all fields first and build the sorted map in a single pass, instead of inserting the
+    // fields one at a time into a growing immutable map.
+    Map<String, FieldValue> result = Maps.newHashMapWithExpectedSize(fields.size());
     for (Map.Entry<String, com.google.firestore.v1.Value> entry : fields.entrySet()) {
-      FieldPath path = FieldPath.fromSingleSegment(entry.getKey());
-      FieldValue value = decodeValue(entry.getValue());
-      result = result.set(path, value);
+      result.put(entry.getKey(), decodeValue(entry.getValue()));
     }
-    return result;
+    return ObjectValue.fromMap(result);
   }
 
   // Documents
@@ -389,6 +391,23 @@ public final class RemoteSerializer {
     return builder.build();
   }
 
+  /**
+   * Encodes a lookup of the given keys, read at the given time or at the latest versions if the
+   * read time is null.
+   */
+  public BatchGetDocumentsRequest encodeBatchGetDocumentsRequest(
+      List<DocumentKey> keys, @Nullable SnapshotVersion readTime) {
+    BatchGetDocumentsRequest.Builder builder = BatchGetDocumentsRequest.newBuilder();
+    builder.setDatabase(databaseName);
+    if (readTime != null) {
+      builder.setReadTime(encodeVersion(readTime));
+    }
+    for (DocumentKey key : keys) {
+      builder.addDocuments(encodeKey(key));
+    }
+    return builder.build();
+  }
+
   public MaybeDocument decodeMaybeDocument(BatchGetDocumentsResponse response) {
     if (response.getResultCase().equals(ResultCase.FOUND)) {
       return decodeFoundDocument(response);
@@ -1078,8 +1097,10 @@ public final class RemoteSerializer {
         break;
       case FILTER:
         com.google.firestore.v1.ExistenceFilter protoFilter = protoChange.getFilter();
-        // TODO: implement existence filter parsing (see b/33076578)
-        ExistenceFilter filter = new ExistenceFilter(protoFilter.getCount());
+        ExistenceFilter filter =
+            new ExistenceFilter(
+                protoFilter.getCount(),
+                protoFilter.hasUnchangedNames() ? protoFilter.getUnchangedNames() : null);
         int targetId = protoFilter.getTargetId();
         watchChange = new ExistenceFilterWatchChange(targetId, filter);
         break;
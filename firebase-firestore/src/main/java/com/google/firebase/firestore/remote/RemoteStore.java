@@ -18,12 +18,15 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.core.BulkWriter;
 import com.google.firebase.firestore.core.OnlineState;
 import com.google.firebase.firestore.core.Transaction;
 import com.google.firebase.firestore.local.LocalStore;
 import com.google.firebase.firestore.local.QueryData;
 import com.google.firebase.firestore.local.QueryPurpose;
+import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
@@ -35,6 +38,7 @@ import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChan
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChangeType;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
 import com.google.firebase.firestore.util.Logger;
 import com.google.firebase.firestore.util.Util;
 import com.google.protobuf.ByteString;
@@ -210,6 +214,7 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     connectivityMonitor.addCallback(
         (NetworkStatus networkStatus) -> {
           workerQueue.enqueueAndForget(
+              TaskLabel.NETWORK_STATE,
               () -> {
                 // If the network has been explicitly disabled, make sure we don't accidentally
                 // re-enable it.
@@ -711,6 +716,23 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     return new Transaction(datastore);
   }
 
+  /** Creates a transaction that reads all documents at the same read time and never commits. */
+  public Transaction createReadOnlyTransaction() {
+    return Transaction.createReadOnly(datastore, datastore.getWorkerQueue());
+  }
+
+  /**
+   * Looks up the given documents in a single lookup RPC. Unlike listen targets, lookups are not
+   * tracked by the RemoteStore and are not retried.
+   */
+  public Task<Datastore.LookupResult> lookup(List<DocumentKey> keys) {
+    return datastore.lookupWithReadTime(keys);
+  }
+
+  public BulkWriter createBulkWriter() {
+    return new BulkWriter(datastore, datastore.getWorkerQueue());
+  }
+
   @Override
   public ImmutableSortedSet<DocumentKey> getRemoteKeysForTarget(int targetId) {
     return this.remoteStoreCallback.getRemoteKeysForTarget(targetId);
@@ -721,4 +743,9 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
   public QueryData getQueryDataForTarget(int targetId) {
     return this.listenTargets.get(targetId);
   }
+
+  @Override
+  public DatabaseId getDatabaseId() {
+    return datastore.getDatabaseInfo().getDatabaseId();
+  }
 }
@@ -18,11 +18,13 @@ import static com.google.firebase.firestore.util.Assert.fail;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.core.DocumentViewChange;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.local.QueryData;
 import com.google.firebase.firestore.local.QueryPurpose;
+import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
@@ -31,6 +33,7 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.remote.WatchChange.DocumentChange;
 import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
+import com.google.firebase.firestore.util.Logger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,8 +60,13 @@ public class WatchChangeAggregator {
      */
     @Nullable
     QueryData getQueryDataForTarget(int targetId);
+
+    /** Returns the database ID of the Firestore instance, used to encode document names. */
+    DatabaseId getDatabaseId();
   }
 
+  private static final String LOG_TAG = "WatchChangeAggregator";
+
   private final TargetMetadataProvider targetMetadataProvider;
 
   /** The internal state of all tracked targets. */
@@ -76,6 +84,13 @@ public class WatchChangeAggregator {
    */
   private Set<Integer> pendingTargetResets = new HashSet<>();
 
+  // Bloom filter statistics, used to compare the observed false positive rate of the Bloom filters
+  // sent by the backend against the expected rate.
+  private int bloomFilterApplications;
+  private int bloomFilterFallbacks;
+  private long bloomFilterTestedAbsentDocuments;
+  private long bloomFilterFalsePositives;
+
   public WatchChangeAggregator(TargetMetadataProvider targetMetadataProvider) {
     this.targetMetadataProvider = targetMetadataProvider;
   }
@@ -195,15 +210,113 @@ public class WatchChangeAggregator {
       } else {
         long currentSize = getCurrentDocumentCountForTarget(targetId);
         if (currentSize != expectedCount) {
-          // Existence filter mismatch: We reset the mapping and raise a new snapshot with
-          // `isFromCache:true`.
-          resetTarget(targetId);
-          pendingTargetResets.add(targetId);
+          // Existence filter mismatch: If the backend sent a Bloom filter, we use it to remove only
+          // the documents that no longer match. These documents are then resolved as limbo
+          // documents. Otherwise, or if the Bloom filter does not account for the entire mismatch,
+          // we reset the mapping and raise a new snapshot with `isFromCache:true`.
+          if (!applyBloomFilter(watchChange.getExistenceFilter(), targetId, expectedCount)) {
+            resetTarget(targetId);
+            pendingTargetResets.add(targetId);
+          }
         }
       }
     }
   }
 
+  /**
+   * Removes all documents from the target that are known not to be part of the backend's result
+   * set according to the existence filter's Bloom filter.
+   *
+   * @return Whether the document count of the target matches the expected count afterwards.
+   */
+  private boolean applyBloomFilter(
+      ExistenceFilter existenceFilter, int targetId, int expectedCount) {
+    com.google.firestore.v1.BloomFilter unchangedNames = existenceFilter.getUnchangedNames();
+    if (unchangedNames == null) {
+      return false;
+    }
+
+    BloomFilter bloomFilter;
+    try {
+      bloomFilter = BloomFilter.fromProto(unchangedNames);
+    } catch (IllegalArgumentException e) {
+      Logger.warn(LOG_TAG, "Ignoring invalid Bloom filter for target %s: %s", targetId, e);
+      return false;
+    }
+
+    if (bloomFilter.getBitCount() == 0) {
+      return false;
+    }
+
+    int sizeBefore = getCurrentDocumentCountForTarget(targetId);
+    DatabaseId databaseId = targetMetadataProvider.getDatabaseId();
+    String documentNamePrefix =
+        "projects/"
+            + databaseId.getProjectId()
+            + "/databases/"
+            + databaseId.getDatabaseId()
+            + "/documents/";
+    for (DocumentKey key : targetMetadataProvider.getRemoteKeysForTarget(targetId)) {
+      String documentName = documentNamePrefix + key.getPath().canonicalString();
+      if (!bloomFilter.mightContain(documentName)) {
+        removeDocumentFromTarget(targetId, key, /*updatedDocument=*/ null);
+      }
+    }
+    int sizeAfter = getCurrentDocumentCountForTarget(targetId);
+
+    // Every document that the client has but the backend does not and that was not removed is a
+    // false positive of the Bloom filter.
+    int absentDocuments = sizeBefore - expectedCount;
+    int falsePositives = sizeAfter - expectedCount;
+    ++bloomFilterApplications;
+    if (absentDocuments > 0 && falsePositives >= 0) {
+      bloomFilterTestedAbsentDocuments += absentDocuments;
+      bloomFilterFalsePositives += falsePositives;
+    }
+    if (sizeAfter != expectedCount) {
+      ++bloomFilterFallbacks;
+    }
+
+    Logger.debug(
+        LOG_TAG,
+        "Applied Bloom filter for target %s: removed %s of %s document(s), %s false positive(s) "
+            + "(expected rate %s, observed rate %s over %s application(s))",
+        targetId,
+        sizeBefore - sizeAfter,
+        sizeBefore,
+        falsePositives,
+        bloomFilter.estimateFalsePositiveRate(expectedCount),
+        getObservedBloomFilterFalsePositiveRate(),
+        bloomFilterApplications);
+
+    return sizeAfter == expectedCount;
+  }
+
+  /** Returns the number of existence filter mismatches for which a Bloom filter was applied. */
+  @VisibleForTesting
+  int getBloomFilterApplicationCount() {
+    return bloomFilterApplications;
+  }
+
+  /**
+   * Returns the number of Bloom filter applications that did not account for the entire mismatch
+   * and therefore required a full reset of the target.
+   */
+  @VisibleForTesting
+  int getBloomFilterFallbackCount() {
+    return bloomFilterFallbacks;
+  }
+
+  /**
+   * Returns the fraction of documents that were missing on the backend but that the Bloom filters
+   * nonetheless reported as present.
+   */
+  public double getObservedBloomFilterFalsePositiveRate() {
+    return bloomFilterTestedAbsentDocuments == 0
+        ? 0
+        : (double) bloomFilterFalsePositives / bloomFilterTestedAbsentDocuments;
+  }
+
   /**
    * Converts the currently accumulated state into a remote event at the provided snapshot version.
    * Resets the accumulated changes before returning.
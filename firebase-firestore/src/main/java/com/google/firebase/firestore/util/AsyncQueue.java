@@ -25,8 +25,11 @@ import com.google.android.gms.tasks.Continuation;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.firebase.firestore.BuildConfig;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
@@ -74,7 +77,42 @@ public class AsyncQueue {
      * A timer used to retry transactions. Since there can be multiple concurrent transactions,
      * multiple of these may be in the queue at a given time.
      */
-    RETRY_TRANSACTION
+    RETRY_TRANSACTION,
+    /**
+     * A timer used to retry individual writes of a BulkWriter. Since there can be many writes in
+     * flight, multiple of these may be in the queue at a given time.
+     */
+    RETRY_BULK_WRITE,
+    /** A timer used by the BulkWriter to wait until its rate limiter admits more writes. */
+    BULK_WRITER_THROTTLE
+  }
+
+  /**
+   * Labels that describe where a task that is added to the AsyncQueue originates from. Delayed
+   * tasks are identified by their {@link TimerId} instead. The labels are only used to attribute
+   * the wait and run times recorded by {@link AsyncQueueMetrics}.
+   */
+  public enum TaskLabel {
+    /** Tasks that were added without a label, e.g. continuations of Tasks. */
+    UNLABELED,
+    /** Initializing the client once the initial user is known. */
+    INITIALIZE,
+    /** Handling a change of the current user. */
+    CREDENTIAL_CHANGE,
+    /** Enabling or disabling the network, or reacting to a change in connectivity. */
+    NETWORK_STATE,
+    /** Adding or removing a query listener or a snapshots-in-sync listener. */
+    LISTEN,
+    /** Reading documents or query results from the local cache. */
+    LOCAL_READ,
+    /** Adding writes to the mutation queue, or waiting for pending writes. */
+    WRITE,
+    /** Callbacks from gRPC, which include all watch changes and write results from the backend. */
+    GRPC_CALLBACK,
+    /** A step of an LRU garbage collection run. Runs in the background lane. */
+    GARBAGE_COLLECTION,
+    /** Terminating the client, or clearing persistence afterwards. */
+    SHUTDOWN
   }
 
   /**
@@ -103,7 +141,11 @@ public class AsyncQueue {
      * createAndScheduleDelayedTask().
      */
     private void start(long delayMs) {
-      scheduledFuture = executor.schedule(this::handleDelayElapsed, delayMs, TimeUnit.MILLISECONDS);
+      scheduledFuture =
+          executor.schedule(
+              metrics.wrapDelayed(timerId.name(), this::handleDelayElapsed, delayMs),
+              delayMs,
+              TimeUnit.MILLISECONDS);
     }
 
     /** Runs the operation immediately (if it hasn't already been run or canceled). */
@@ -284,7 +326,17 @@ public class AsyncQueue {
      * executed.
      */
     @Override
-    public synchronized void execute(Runnable command) {
+    public void execute(Runnable command) {
+      execute(TaskLabel.UNLABELED, command);
+    }
+
+    /** Like {@link #execute(Runnable)}, but attributes the command to the given label. */
+    private void execute(TaskLabel label, Runnable command) {
+      executeWithoutMetrics(metrics.wrap(label.name(), command));
+    }
+
+    /** Like {@link #execute(Runnable)}, but does not record metrics for the command. */
+    private synchronized void executeWithoutMetrics(Runnable command) {
       if (!isShuttingDown) {
         internalExecutor.execute(command);
       }
@@ -293,7 +345,7 @@ public class AsyncQueue {
     /** Execute the command, regardless if shutdown has been initiated. */
     public void executeEvenAfterShutdown(Runnable command) {
       try {
-        internalExecutor.execute(command);
+        internalExecutor.execute(metrics.wrap(TaskLabel.SHUTDOWN.name(), command));
       } catch (RejectedExecutionException e) {
         // The only way we can get here is if the AsyncQueue has panicked and we're now racing with
         // the post to the main looper that will crash the app.
@@ -308,10 +360,11 @@ public class AsyncQueue {
      * @return A {@link Task} resolves when the requested `Callable` completes, or reports error
      *     when the `Callable` runs into exceptions.
      */
-    private <T> Task<T> executeAndReportResult(Callable<T> task) {
+    private <T> Task<T> executeAndReportResult(TaskLabel label, Callable<T> task) {
       final TaskCompletionSource<T> completionSource = new TaskCompletionSource<>();
       try {
         this.execute(
+            label,
             () -> {
               try {
                 completionSource.setResult(task.call());
@@ -342,6 +395,7 @@ public class AsyncQueue {
       // Not shutting down yet, execute and return a Task.
       Task<Void> t =
           executeAndReportResult(
+              TaskLabel.SHUTDOWN,
               () -> {
                 task.run();
                 return null;
@@ -375,8 +429,24 @@ public class AsyncQueue {
     }
   }
 
+  /** Records the wait and run times of tasks. Disabled unless a callback is added. */
+  private final AsyncQueueMetrics metrics = new AsyncQueueMetrics();
+
   /** The executor backing this AsyncQueue. */
   private final SynchronizedShutdownAwareExecutor executor;
+
+  /** Executors that attribute their tasks to a TaskLabel. */
+  private final Map<TaskLabel, Executor> labeledExecutors = new EnumMap<>(TaskLabel.class);
+
+  /**
+   * Tasks in the background lane, in FIFO order. Only one of them is in the executor's queue at
+   * any time, so that tasks enqueued in the meantime run before the next background task. Guarded
+   * by itself.
+   */
+  private final ArrayDeque<Runnable> backgroundTasks = new ArrayDeque<>();
+
+  /** Whether a background task is in the executor's queue. Guarded by backgroundTasks. */
+  private boolean backgroundTaskScheduled;
   // Tasks scheduled to be queued in the future. Tasks are automatically removed after they are run
   // or canceled.
   // NOTE: We disallow duplicates currently, so this could be a Set<> which might have better
@@ -389,12 +459,25 @@ public class AsyncQueue {
   public AsyncQueue() {
     delayedTasks = new ArrayList<>();
     executor = new SynchronizedShutdownAwareExecutor();
+    for (TaskLabel label : TaskLabel.values()) {
+      labeledExecutors.put(label, command -> executor.execute(label, command));
+    }
   }
 
   public Executor getExecutor() {
     return executor;
   }
 
+  /** Returns an executor that runs its tasks on this AsyncQueue, attributed to the given label. */
+  public Executor getExecutor(TaskLabel label) {
+    return labeledExecutors.get(label);
+  }
+
+  /** Returns the instrumentation of the tasks run by this AsyncQueue. */
+  public AsyncQueueMetrics getMetrics() {
+    return metrics;
+  }
+
   /** Verifies that the current thread is the managed AsyncQueue thread. */
   public void verifyIsCurrentThread() {
     Thread current = Thread.currentThread();
@@ -415,7 +498,20 @@ public class AsyncQueue {
    */
   @CheckReturnValue
   public <T> Task<T> enqueue(Callable<T> task) {
-    return executor.executeAndReportResult(task);
+    return enqueue(TaskLabel.UNLABELED, task);
+  }
+
+  /**
+   * Queue and run this Callable task immediately after every other already queued task.
+   *
+   * @param label The label to attribute the task to.
+   * @param task The task to run.
+   * @return A Task object that is resolved after the enqueued operation has completed, with the
+   *     return value of the operation.
+   */
+  @CheckReturnValue
+  public <T> Task<T> enqueue(TaskLabel label, Callable<T> task) {
+    return executor.executeAndReportResult(label, task);
   }
 
   /**
@@ -426,7 +522,20 @@ public class AsyncQueue {
    */
   @CheckReturnValue
   public Task<Void> enqueue(Runnable task) {
+    return enqueue(TaskLabel.UNLABELED, task);
+  }
+
+  /**
+   * Queue and run this Runnable task immediately after every other already queued task.
+   *
+   * @param label The label to attribute the task to.
+   * @param task The task to run.
+   * @return A Task object that is resolved after the enqueued operation has completed.
+   */
+  @CheckReturnValue
+  public Task<Void> enqueue(TaskLabel label, Runnable task) {
     return enqueue(
+        label,
         () -> {
           task.run();
           return null;
@@ -467,6 +576,63 @@ public class AsyncQueue {
     enqueue(task);
   }
 
+  /**
+   * Queue and run this Runnable task immediately after every other already queued task, without
+   * returning a Task.
+   *
+   * @param label The label to attribute the task to.
+   * @param task The task to run.
+   */
+  @SuppressWarnings({"CheckReturnValue", "ResultOfMethodCallIgnored"})
+  public void enqueueAndForget(TaskLabel label, Runnable task) {
+    enqueue(label, task);
+  }
+
+  /**
+   * Queue this Runnable task in the background lane, which is meant for maintenance work that
+   * nothing is waiting for.
+   *
+   * <p>Background tasks run on the AsyncQueue thread like all other tasks, in the order they were
+   * enqueued. However, after each background task, all tasks that were enqueued in the meantime run
+   * before the next background task starts. Long-running work should therefore be split into short
+   * background tasks, each of which enqueues the next one, so that it does not delay user-facing
+   * operations for longer than one step.
+   *
+   * @param label The label to attribute the task to.
+   * @param task The task to run.
+   */
+  public void enqueueAndForgetInBackground(TaskLabel label, Runnable task) {
+    Runnable wrappedTask = metrics.wrap(label.name(), task);
+    synchronized (backgroundTasks) {
+      backgroundTasks.add(wrappedTask);
+      if (!backgroundTaskScheduled) {
+        backgroundTaskScheduled = true;
+        executor.executeWithoutMetrics(this::runNextBackgroundTask);
+      }
+    }
+  }
+
+  /**
+   * Runs the oldest task in the background lane and moves the next one, if any, to the end of the
+   * executor's queue.
+   */
+  private void runNextBackgroundTask() {
+    Runnable task;
+    synchronized (backgroundTasks) {
+      task = backgroundTasks.poll();
+    }
+    if (task != null) {
+      task.run();
+    }
+    synchronized (backgroundTasks) {
+      if (backgroundTasks.isEmpty()) {
+        backgroundTaskScheduled = false;
+      } else {
+        executor.executeWithoutMetrics(this::runNextBackgroundTask);
+      }
+    }
+  }
+
   /**
    * Schedule a task after the specified delay.
    *
@@ -0,0 +1,269 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in instrumentation for the tasks that run on an {@link AsyncQueue}.
+ *
+ * <p>While at least one {@link LongTaskCallback} is registered, every task that is added to the
+ * queue is wrapped to record how long it waited in the queue and how long it ran. The times are
+ * kept in histograms per task origin (the name of the task's {@link AsyncQueue.TaskLabel} or {@link
+ * AsyncQueue.TimerId}), and callbacks are notified of tasks that ran for longer than their
+ * threshold. While no callback is registered, tasks are not wrapped and nothing is recorded.
+ *
+ * <p>Tasks are added from any thread, but they are all run on the AsyncQueue thread, which is
+ * where the callbacks are invoked.
+ */
+public final class AsyncQueueMetrics {
+
+  /**
+   * The inclusive upper bounds of the histogram buckets, in milliseconds. Times that are larger
+   * than the last bound are counted in an additional, unbounded bucket.
+   */
+  private static final long[] BUCKET_UPPER_BOUNDS_MILLIS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000
+  };
+
+  /** Notified of tasks that ran for longer than the threshold the callback was registered with. */
+  public interface LongTaskCallback {
+    void onLongTask(String origin, long waitMillis, long runMillis);
+  }
+
+  /** The wait and run times of all tasks of a single origin. */
+  public static final class OriginStats {
+    private final long[] waitHistogram;
+    private final long[] runHistogram;
+    private long taskCount;
+    private long longTaskCount;
+    private long maxWaitMillis;
+    private long maxRunMillis;
+
+    private OriginStats() {
+      waitHistogram = new long[BUCKET_UPPER_BOUNDS_MILLIS.length + 1];
+      runHistogram = new long[BUCKET_UPPER_BOUNDS_MILLIS.length + 1];
+    }
+
+    private OriginStats(OriginStats other) {
+      waitHistogram = other.waitHistogram.clone();
+      runHistogram = other.runHistogram.clone();
+      taskCount = other.taskCount;
+      longTaskCount = other.longTaskCount;
+      maxWaitMillis = other.maxWaitMillis;
+      maxRunMillis = other.maxRunMillis;
+    }
+
+    /** The number of tasks that have run. */
+    public long getTaskCount() {
+      return taskCount;
+    }
+
+    /** The number of tasks that ran for longer than the smallest registered threshold. */
+    public long getLongTaskCount() {
+      return longTaskCount;
+    }
+
+    /** The longest time a task waited in the queue before it started. */
+    public long getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+
+    /** The longest time a task ran. */
+    public long getMaxRunMillis() {
+      return maxRunMillis;
+    }
+
+    /**
+     * The number of tasks per wait time bucket. See {@link #getBucketUpperBoundsMillis} for the
+     * bucket bounds.
+     */
+    public long[] getWaitHistogram() {
+      return waitHistogram.clone();
+    }
+
+    /**
+     * The number of tasks per run time bucket. See {@link #getBucketUpperBoundsMillis} for the
+     * bucket bounds.
+     */
+    public long[] getRunHistogram() {
+      return runHistogram.clone();
+    }
+  }
+
+  private static final class RegisteredCallback {
+    private final long thresholdNanos;
+    private final LongTaskCallback callback;
+
+    private RegisteredCallback(long thresholdNanos, LongTaskCallback callback) {
+      this.thresholdNanos = thresholdNanos;
+      this.callback = callback;
+    }
+  }
+
+  private final List<RegisteredCallback> callbacks = new CopyOnWriteArrayList<>();
+
+  /** Whether tasks are instrumented. Kept separately so the check is a single volatile read. */
+  private volatile boolean enabled;
+
+  /** The number of instrumented tasks that have been added to the queue but have not started. */
+  private final AtomicInteger queueDepth = new AtomicInteger();
+
+  // The fields below are guarded by `this`.
+  private final Map<String, OriginStats> statsByOrigin = new HashMap<>();
+  private long minThresholdNanos = Long.MAX_VALUE;
+  private int maxQueueDepth;
+
+  /** Returns the inclusive upper bounds of the histogram buckets, in milliseconds. */
+  public static long[] getBucketUpperBoundsMillis() {
+    return BUCKET_UPPER_BOUNDS_MILLIS.clone();
+  }
+
+  /**
+   * Registers a callback for tasks that run for longer than {@code thresholdMillis} and enables
+   * the instrumentation.
+   */
+  public synchronized void addLongTaskCallback(long thresholdMillis, LongTaskCallback callback) {
+    long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    callbacks.add(new RegisteredCallback(thresholdNanos, callback));
+    minThresholdNanos = Math.min(minThresholdNanos, thresholdNanos);
+    enabled = true;
+  }
+
+  /**
+   * Removes a callback that was registered via {@link #addLongTaskCallback}. The instrumentation is
+   * disabled and the recorded statistics are cleared once the last callback is removed.
+   */
+  public synchronized void removeLongTaskCallback(LongTaskCallback callback) {
+    minThresholdNanos = Long.MAX_VALUE;
+    for (RegisteredCallback registered : callbacks) {
+      if (registered.callback == callback) {
+        callbacks.remove(registered);
+      } else {
+        minThresholdNanos = Math.min(minThresholdNanos, registered.thresholdNanos);
+      }
+    }
+    if (callbacks.isEmpty()) {
+      enabled = false;
+      statsByOrigin.clear();
+      maxQueueDepth = 0;
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns the number of instrumented tasks that are waiting to be run. */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  /** Returns the largest number of instrumented tasks that were waiting to be run at once. */
+  public synchronized int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /** Returns a copy of the statistics recorded so far, keyed by task origin. */
+  public synchronized Map<String, OriginStats> getStatsByOrigin() {
+    Map<String, OriginStats> copy = new HashMap<>();
+    for (Map.Entry<String, OriginStats> entry : statsByOrigin.entrySet()) {
+      copy.put(entry.getKey(), new OriginStats(entry.getValue()));
+    }
+    return copy;
+  }
+
+  /**
+   * Wraps a task that is about to be added to the queue. Returns the task itself if the
+   * instrumentation is disabled.
+   */
+  Runnable wrap(String origin, Runnable task) {
+    if (!enabled) {
+      return task;
+    }
+    long enqueueNanos = System.nanoTime();
+    int depth = queueDepth.incrementAndGet();
+    synchronized (this) {
+      maxQueueDepth = Math.max(maxQueueDepth, depth);
+    }
+    return () -> {
+      queueDepth.decrementAndGet();
+      run(origin, task, enqueueNanos);
+    };
+  }
+
+  /**
+   * Wraps a delayed task that is about to be scheduled. Its wait time is measured from the end of
+   * its delay, and it does not count towards the queue depth.
+   */
+  Runnable wrapDelayed(String origin, Runnable task, long delayMs) {
+    if (!enabled) {
+      return task;
+    }
+    long readyNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+    return () -> run(origin, task, readyNanos);
+  }
+
+  private void run(String origin, Runnable task, long readyNanos) {
+    long startNanos = System.nanoTime();
+    try {
+      task.run();
+    } finally {
+      long endNanos = System.nanoTime();
+      record(origin, Math.max(0, startNanos - readyNanos), endNanos - startNanos);
+    }
+  }
+
+  private void record(String origin, long waitNanos, long runNanos) {
+    long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    long runMillis = TimeUnit.NANOSECONDS.toMillis(runNanos);
+    synchronized (this) {
+      if (!enabled) {
+        // The instrumentation was disabled while the task was queued.
+        return;
+      }
+      OriginStats stats = statsByOrigin.get(origin);
+      if (stats == null) {
+        stats = new OriginStats();
+        statsByOrigin.put(origin, stats);
+      }
+      ++stats.taskCount;
+      ++stats.waitHistogram[bucketFor(waitMillis)];
+      ++stats.runHistogram[bucketFor(runMillis)];
+      stats.maxWaitMillis = Math.max(stats.maxWaitMillis, waitMillis);
+      stats.maxRunMillis = Math.max(stats.maxRunMillis, runMillis);
+      if (runNanos > minThresholdNanos) {
+        ++stats.longTaskCount;
+      }
+    }
+
+    for (RegisteredCallback registered : callbacks) {
+      if (runNanos > registered.thresholdNanos) {
+        registered.callback.onLongTask(origin, waitMillis, runMillis);
+      }
+    }
+  }
+
+  private static int bucketFor(long millis) {
+    int index = Arrays.binarySearch(BUCKET_UPPER_BOUNDS_MILLIS, millis);
+    return index >= 0 ? index : -index - 1;
+  }
+}
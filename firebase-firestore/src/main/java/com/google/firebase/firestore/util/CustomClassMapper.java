@@ -17,12 +17,15 @@ package com.google.firebase.firestore.util;
 import static com.google.firebase.firestore.util.ApiUtil.invoke;
 import static com.google.firebase.firestore.util.ApiUtil.newInstance;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.DocumentId;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.GeneratedClassMapper;
 import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.PropertyName;
@@ -47,6 +50,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -57,6 +61,14 @@ public class CustomClassMapper {
 
   private static final ConcurrentMap<Class<?>, BeanMapper<?>> mappers = new ConcurrentHashMap<>();
 
+  /** The generated mappers that were found so far, keyed by the class they map. */
+  private static final ConcurrentMap<Class<?>, GeneratedClassMapper<?>> generatedMappers =
+      new ConcurrentHashMap<>();
+
+  /** The classes that have no generated mapper, so that we only look for one once per class. */
+  private static final Set<Class<?>> classesWithoutGeneratedMapper =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
   private static void hardAssert(boolean assertion) {
     hardAssert(assertion, "Internal inconsistency");
   }
@@ -105,7 +117,7 @@ public class CustomClassMapper {
   }
 
   @SuppressWarnings("unchecked")
-  private static <T> Object serialize(T o, ErrorPath path) {
+  static <T> Object serialize(T o, ErrorPath path) {
     if (path.getLength() > MAX_DEPTH) {
       throw serializeError(
           path,
@@ -174,13 +186,17 @@ public class CustomClassMapper {
       return o;
     } else {
       Class<T> clazz = (Class<T>) o.getClass();
+      GeneratedClassMapper<T> generatedMapper = loadGeneratedMapperForClass(clazz);
+      if (generatedMapper != null) {
+        return generatedMapper.serialize(o, new GeneratedSerializer(path));
+      }
       BeanMapper<T> mapper = loadOrCreateBeanMapperForClass(clazz);
       return mapper.serialize(o, path);
     }
   }
 
   @SuppressWarnings({"unchecked", "TypeParameterUnusedInFormals"})
-  private static <T> T deserializeToType(Object o, Type type, DeserializeContext context) {
+  static <T> T deserializeToType(Object o, Type type, DeserializeContext context) {
     if (o == null) {
       return null;
     } else if (type instanceof ParameterizedType) {
@@ -216,7 +232,7 @@ public class CustomClassMapper {
   }
 
   @SuppressWarnings("unchecked")
-  private static <T> T deserializeToClass(Object o, Class<T> clazz, DeserializeContext context) {
+  static <T> T deserializeToClass(Object o, Class<T> clazz, DeserializeContext context) {
     if (o == null) {
       return null;
     } else if (clazz.isPrimitive()
@@ -382,6 +398,60 @@ public class CustomClassMapper {
     return mapper;
   }
 
+  /** Returns whether the given class is mapped by a mapper that the annotation processor made. */
+  @VisibleForTesting
+  static boolean hasGeneratedMapper(Class<?> clazz) {
+    return loadGeneratedMapperForClass(clazz) != null;
+  }
+
+  /**
+   * Returns the mapper that the Firestore annotation processor generated for the given class, or
+   * null if there is none, in which case the class is mapped via reflection.
+   */
+  @Nullable
+  private static <T> GeneratedClassMapper<T> loadGeneratedMapperForClass(Class<T> clazz) {
+    @SuppressWarnings("unchecked")
+    GeneratedClassMapper<T> mapper = (GeneratedClassMapper<T>) generatedMappers.get(clazz);
+    if (mapper != null || classesWithoutGeneratedMapper.contains(clazz)) {
+      return mapper;
+    }
+
+    String mapperName = clazz.getName().replace('$', '_') + GeneratedClassMapper.MAPPER_SUFFIX;
+    try {
+      Class<?> mapperClass = Class.forName(mapperName, true, clazz.getClassLoader());
+      if (GeneratedClassMapper.class.isAssignableFrom(mapperClass)) {
+        @SuppressWarnings("unchecked")
+        Constructor<GeneratedClassMapper<T>> constructor =
+            (Constructor<GeneratedClassMapper<T>>) mapperClass.getConstructor();
+        mapper = newInstance(constructor);
+      }
+    } catch (ClassNotFoundException e) {
+      // The class was not processed by the annotation processor.
+    } catch (NoSuchMethodException e) {
+      Logger.warn(
+          CustomClassMapper.class.getSimpleName(),
+          "Generated mapper %s has no public no-argument constructor, using reflection instead",
+          mapperName);
+    } catch (LinkageError e) {
+      // The mapper failed to initialize, for example because it was generated for an older version
+      // of the class or because ProGuard renamed the members it refers to.
+      Logger.warn(
+          CustomClassMapper.class.getSimpleName(),
+          "Failed to load generated mapper %s, using reflection instead: %s",
+          mapperName,
+          e);
+    }
+
+    // Inserting without checking is fine for the same reason as in
+    // loadOrCreateBeanMapperForClass().
+    if (mapper != null) {
+      generatedMappers.put(clazz, mapper);
+    } else {
+      classesWithoutGeneratedMapper.add(clazz);
+    }
+    return mapper;
+  }
+
   @SuppressWarnings("unchecked")
   private static Map<String, Object> expectMap(Object object, DeserializeContext context) {
     if (object instanceof Map) {
@@ -537,6 +607,11 @@ public class CustomClassMapper {
   }
 
   private static <T> T convertBean(Object o, Class<T> clazz, DeserializeContext context) {
+    GeneratedClassMapper<T> generatedMapper = loadGeneratedMapperForClass(clazz);
+    if (generatedMapper != null && o instanceof Map) {
+      return generatedMapper.deserialize(
+          expectMap(o, context), new GeneratedDeserializer(context));
+    }
     BeanMapper<T> mapper = loadOrCreateBeanMapperForClass(clazz);
     if (o instanceof Map) {
       return mapper.deserialize(expectMap(o, context), context);
@@ -555,7 +630,7 @@ public class CustomClassMapper {
     return new IllegalArgumentException(reason);
   }
 
-  private static RuntimeException deserializeError(ErrorPath path, String reason) {
+  static RuntimeException deserializeError(ErrorPath path, String reason) {
     reason = "Could not deserialize object. " + reason;
     if (path.getLength() > 0) {
       reason = reason + " (found in field '" + path.toString() + "')";
@@ -563,6 +638,42 @@ public class CustomClassMapper {
     return new RuntimeException(reason);
   }
 
+  /**
+   * Throws or logs a warning for a property that has no setter or field on the given class, as
+   * configured by the class's {@link ThrowOnExtraProperties} and {@link IgnoreExtraProperties}
+   * annotations.
+   */
+  static void handleUnknownProperty(
+      String propertyName,
+      Class<?> clazz,
+      boolean caseMismatch,
+      boolean throwOnUnknownProperties,
+      boolean warnOnUnknownProperties) {
+    String message = "No setter/field for " + propertyName + " found on class " + clazz.getName();
+    if (caseMismatch) {
+      message += " (fields/setters are case sensitive!)";
+    }
+    if (throwOnUnknownProperties) {
+      throw new RuntimeException(message);
+    } else if (warnOnUnknownProperties) {
+      Logger.warn(CustomClassMapper.class.getSimpleName(), "%s", message);
+    }
+  }
+
+  /**
+   * Returns the error message for a {@link DocumentId} property that was also found in the data of
+   * the document.
+   */
+  static String documentIdConflictMessage(
+      String propertyName, Class<?> clazz, DocumentReference documentRef) {
+    return "'"
+        + propertyName
+        + "' was found from document "
+        + documentRef.getPath()
+        + ", cannot apply @DocumentId on this property for class "
+        + clazz.getName();
+  }
+
   // Helper class to convert from maps to custom objects (Beans), and vice versa.
   private static class BeanMapper<T> {
     private final Class<T> clazz;
@@ -784,16 +895,12 @@ public class CustomClassMapper {
           }
           deserialzedProperties.add(propertyName);
         } else {
-          String message =
-              "No setter/field for " + propertyName + " found on class " + clazz.getName();
-          if (properties.containsKey(propertyName.toLowerCase(Locale.US))) {
-            message += " (fields/setters are case sensitive!)";
-          }
-          if (throwOnUnknownProperties) {
-            throw new RuntimeException(message);
-          } else if (warnOnUnknownProperties) {
-            Logger.warn(CustomClassMapper.class.getSimpleName(), "%s", message);
-          }
+          handleUnknownProperty(
+              propertyName,
+              clazz,
+              properties.containsKey(propertyName.toLowerCase(Locale.US)),
+              throwOnUnknownProperties,
+              warnOnUnknownProperties);
         }
       }
       populateDocumentIdProperties(types, context, instance, deserialzedProperties);
@@ -811,14 +918,8 @@ public class CustomClassMapper {
         HashSet<String> deserialzedProperties) {
       for (String docIdPropertyName : documentIdPropertyNames) {
         if (deserialzedProperties.contains(docIdPropertyName)) {
-          String message =
-              "'"
-                  + docIdPropertyName
-                  + "' was found from document "
-                  + context.documentRef.getPath()
-                  + ", cannot apply @DocumentId on this property for class "
-                  + clazz.getName();
-          throw new RuntimeException(message);
+          throw new RuntimeException(
+              documentIdConflictMessage(docIdPropertyName, clazz, context.documentRef));
         }
         ErrorPath childPath = context.errorPath.child(docIdPropertyName);
         if (setters.containsKey(docIdPropertyName)) {
@@ -1119,6 +1220,74 @@ public class CustomClassMapper {
     }
   }
 
+  /** Converts the property values of objects that are serialized by a generated mapper. */
+  private static final class GeneratedSerializer implements GeneratedClassMapper.Serializer {
+    private final ErrorPath path;
+
+    GeneratedSerializer(ErrorPath path) {
+      this.path = path;
+    }
+
+    @Override
+    public Object serialize(String property, Object value) {
+      return CustomClassMapper.serialize(value, path.child(property));
+    }
+  }
+
+  /** Converts the property values of objects that are deserialized by a generated mapper. */
+  private static final class GeneratedDeserializer implements GeneratedClassMapper.Deserializer {
+    private final DeserializeContext context;
+
+    GeneratedDeserializer(DeserializeContext context) {
+      this.context = context;
+    }
+
+    @Override
+    public <T> T deserialize(String property, Object value, Class<T> clazz) {
+      return deserializeToClass(value, clazz, childContext(property));
+    }
+
+    @Override
+    @SuppressWarnings("TypeParameterUnusedInFormals")
+    public <T> T deserialize(String property, Object value, Type type) {
+      return deserializeToType(value, type, childContext(property));
+    }
+
+    @Override
+    public <T> T deserializePrimitive(String property, Object value, Class<T> clazz) {
+      if (value == null) {
+        throw deserializeError(
+            context.errorPath.child(property),
+            "Cannot assign null to property of primitive type " + clazz.getName());
+      }
+      return deserialize(property, value, clazz);
+    }
+
+    @Override
+    public void unknownProperty(
+        String property,
+        Class<?> clazz,
+        boolean caseMismatch,
+        boolean throwOnUnknownProperties,
+        boolean warnOnUnknownProperties) {
+      handleUnknownProperty(
+          property, clazz, caseMismatch, throwOnUnknownProperties, warnOnUnknownProperties);
+    }
+
+    @Override
+    public DocumentReference documentReference(
+        String property, Class<?> clazz, boolean deserialized) {
+      if (deserialized) {
+        throw new RuntimeException(documentIdConflictMessage(property, clazz, context.documentRef));
+      }
+      return context.documentRef;
+    }
+
+    private DeserializeContext childContext(String property) {
+      return context.newInstanceWithErrorPath(context.errorPath.child(property));
+    }
+  }
+
   /**
    * Immutable class representing the path to a specific field in an object. Used to provide better
    * error messages.
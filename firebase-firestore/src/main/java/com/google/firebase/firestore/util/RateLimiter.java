@@ -0,0 +1,140 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
+/**
+ * A token bucket rate limiter whose capacity ramps up over time.
+ *
+ * <p>The limiter starts with {@code initialCapacity} operations per second and multiplies its
+ * capacity by {@code multiplier} every {@code multiplierMillis}, until {@code maximumCapacity} is
+ * reached. This follows the "500/50/5" guideline for ramping up traffic to Cloud Firestore. Callers
+ * can lower the capacity again via {@link #backOff} when the backend signals that it is overloaded.
+ *
+ * <p>All times are passed in explicitly so that the ramp can be tested deterministically. This
+ * class is not thread-safe and is meant to be used from the AsyncQueue.
+ */
+public class RateLimiter {
+  private final double multiplier;
+  private final long multiplierMillis;
+  private final int minimumCapacity;
+  private final int maximumCapacity;
+
+  /** The capacity at the start of the current ramp. Lowered by {@link #backOff}. */
+  private int baseCapacity;
+
+  /** The time at which the current ramp started. */
+  private long rampStartTimeMillis;
+
+  private double availableTokens;
+  private long lastRefillTimeMillis;
+
+  /**
+   * Creates a new RateLimiter.
+   *
+   * @param initialCapacity The number of operations allowed per second when the limiter starts.
+   * @param multiplier The factor by which the capacity grows after every {@code multiplierMillis}.
+   * @param multiplierMillis The interval after which the capacity grows.
+   * @param minimumCapacity The lowest capacity that {@link #backOff} can reduce the limiter to.
+   * @param maximumCapacity The capacity at which the limiter stops ramping up.
+   * @param startTimeMillis The time at which the limiter starts.
+   */
+  public RateLimiter(
+      int initialCapacity,
+      double multiplier,
+      long multiplierMillis,
+      int minimumCapacity,
+      int maximumCapacity,
+      long startTimeMillis) {
+    hardAssert(
+        minimumCapacity > 0 && minimumCapacity <= initialCapacity,
+        "Minimum capacity must be positive and no larger than the initial capacity");
+    hardAssert(
+        initialCapacity <= maximumCapacity,
+        "Initial capacity must not be larger than the maximum capacity");
+    this.multiplier = multiplier;
+    this.multiplierMillis = multiplierMillis;
+    this.minimumCapacity = minimumCapacity;
+    this.maximumCapacity = maximumCapacity;
+    this.baseCapacity = initialCapacity;
+    this.rampStartTimeMillis = startTimeMillis;
+    this.availableTokens = initialCapacity;
+    this.lastRefillTimeMillis = startTimeMillis;
+  }
+
+  /**
+   * Tries to make a request of {@code numOperations} operations at {@code requestTimeMillis}.
+   *
+   * @return Whether the request was admitted. If it was, the operations are deducted from the
+   *     available tokens.
+   */
+  public boolean tryMakeRequest(int numOperations, long requestTimeMillis) {
+    refillTokens(requestTimeMillis);
+    if (numOperations <= availableTokens) {
+      availableTokens -= numOperations;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of milliseconds until a request of {@code numOperations} operations can be
+   * admitted, or 0 if it can be admitted right away.
+   */
+  public long getNextRequestDelayMs(int numOperations, long requestTimeMillis) {
+    refillTokens(requestTimeMillis);
+    if (numOperations <= availableTokens) {
+      return 0;
+    }
+    int capacity = getCapacity(requestTimeMillis);
+    hardAssert(
+        numOperations <= capacity,
+        "Request of %s operations can never be admitted by a limiter of capacity %s",
+        numOperations,
+        capacity);
+    double missingTokens = numOperations - availableTokens;
+    return (long) Math.ceil(missingTokens * 1000 / capacity);
+  }
+
+  /**
+   * Halves the current capacity (but not below the minimum capacity) and restarts the ramp from
+   * there. Used when the backend reports that it is overloaded.
+   */
+  public void backOff(long requestTimeMillis) {
+    refillTokens(requestTimeMillis);
+    baseCapacity = Math.max(minimumCapacity, getCapacity(requestTimeMillis) / 2);
+    rampStartTimeMillis = requestTimeMillis;
+    availableTokens = Math.min(availableTokens, baseCapacity);
+  }
+
+  /** Returns the number of operations per second allowed at {@code requestTimeMillis}. */
+  public int getCapacity(long requestTimeMillis) {
+    long elapsedMillis = Math.max(0, requestTimeMillis - rampStartTimeMillis);
+    long steps = elapsedMillis / multiplierMillis;
+    double capacity = baseCapacity * Math.pow(multiplier, steps);
+    return (int) Math.min(maximumCapacity, capacity);
+  }
+
+  private void refillTokens(long requestTimeMillis) {
+    long elapsedMillis = requestTimeMillis - lastRefillTimeMillis;
+    if (elapsedMillis <= 0) {
+      return;
+    }
+    int capacity = getCapacity(requestTimeMillis);
+    availableTokens = Math.min(capacity, availableTokens + elapsedMillis * capacity / 1000.0);
+    lastRefillTimeMillis = requestTimeMillis;
+  }
+}
@@ -14,7 +14,13 @@
 
 package com.google.firebase.firestore;
 
+import static com.google.firebase.firestore.FieldValue.arrayUnion;
+import static com.google.firebase.firestore.FieldValue.delete;
+import static com.google.firebase.firestore.FieldValue.increment;
+import static com.google.firebase.firestore.FieldValue.serverTimestamp;
 import static com.google.firebase.firestore.testutil.TestUtil.blob;
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.ref;
 import static com.google.firebase.firestore.testutil.TestUtil.wrap;
@@ -26,7 +32,17 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.core.UserData.ParsedSetData;
+import com.google.firebase.firestore.core.UserData.ParsedUpdateData;
 import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.mutation.FieldTransform;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.PatchMutation;
+import com.google.firebase.firestore.model.mutation.Precondition;
+import com.google.firebase.firestore.model.mutation.ServerTimestampOperation;
+import com.google.firebase.firestore.model.mutation.SetMutation;
+import com.google.firebase.firestore.model.mutation.TransformMutation;
 import com.google.firebase.firestore.model.value.ArrayValue;
 import com.google.firebase.firestore.model.value.BlobValue;
 import com.google.firebase.firestore.model.value.BooleanValue;
@@ -39,8 +55,10 @@ import com.google.firebase.firestore.model.value.ObjectValue;
 import com.google.firebase.firestore.model.value.ReferenceValue;
 import com.google.firebase.firestore.model.value.StringValue;
 import com.google.firebase.firestore.model.value.TimestampValue;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -275,4 +293,141 @@ public class UserDataConverterTest {
       assertNotEquals(-1, e.getMessage().indexOf("use Lists instead"));
     }
   }
+
+  private static final DocumentKey KEY = key("coll/doc");
+
+  private final UserDataConverter converter =
+      new UserDataConverter(DatabaseId.forProject("project"));
+
+  /**
+   * Parses the input both via set(), which uses the fast path for plain data, and via update(),
+   * which does not, and verifies that both produce the same data and transforms.
+   */
+  private void assertSetMatchesUpdate(Map<String, Object> input) {
+    ParsedSetData setData = converter.parseSetData(input);
+    ParsedUpdateData updateData = converter.parseUpdateData(input);
+    List<Mutation> setMutations = setData.toMutationList(KEY, Precondition.NONE);
+    List<Mutation> updateMutations = updateData.toMutationList(KEY, Precondition.NONE);
+
+    assertEquals(
+        ((PatchMutation) updateMutations.get(0)).getValue(),
+        ((SetMutation) setMutations.get(0)).getValue());
+    assertEquals(transforms(updateMutations), transforms(setMutations));
+  }
+
+  private static HashSet<FieldTransform> transforms(List<Mutation> mutations) {
+    HashSet<FieldTransform> transforms = new HashSet<>();
+    if (mutations.size() > 1) {
+      transforms.addAll(((TransformMutation) mutations.get(1)).getFieldTransforms());
+    }
+    return transforms;
+  }
+
+  @Test
+  public void testParsesPlainDataLikeUpdate() {
+    assertSetMatchesUpdate(
+        map(
+            "string",
+            "foo",
+            "number",
+            1,
+            "nested",
+            map("list", asList(1.5, null, map("a", true)), "empty", map()),
+            "values",
+            asList(new Timestamp(1, 2), new GeoPoint(1, 2), blob(1, 2), ref("coll/other"))));
+  }
+
+  @Test
+  public void testParsesLargeDocumentsLikeUpdate() {
+    Map<String, Object> input = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      input.put(
+          "field" + i,
+          i % 10 == 0 ? map("nested" + i, asList(i, "value" + i), "flag", i % 20 == 0) : i);
+    }
+    assertSetMatchesUpdate(input);
+  }
+
+  @Test
+  public void testParsesSentinelsInPlainData() {
+    Map<String, Object> input =
+        map(
+            "a",
+            1,
+            "b",
+            map("c", serverTimestamp(), "d", map("e", arrayUnion(1, 2))),
+            "f",
+            increment(1));
+    assertSetMatchesUpdate(input);
+
+    List<Mutation> mutations = converter.parseSetData(input).toMutationList(KEY, Precondition.NONE);
+    assertEquals(
+        wrapObject("a", 1, "b", map("d", map())), ((SetMutation) mutations.get(0)).getValue());
+    assertEquals(3, ((TransformMutation) mutations.get(1)).getFieldTransforms().size());
+    assertTrue(
+        transforms(mutations)
+            .contains(new FieldTransform(field("b.c"), ServerTimestampOperation.getInstance())));
+  }
+
+  @Test
+  public void testFallsBackForCustomObjects() {
+    Map<String, Object> input = map("a", map("b", new GeoPoint(1, 2)), "pojo", new SimplePojo());
+    ObjectValue parsed =
+        ((SetMutation) converter.parseSetData(input).toMutationList(KEY, Precondition.NONE).get(0))
+            .getValue();
+    assertEquals(
+        wrapObject("a", map("b", new GeoPoint(1, 2)), "pojo", map("value", "pojo")), parsed);
+  }
+
+  @Test
+  public void testFallsBackWithUnchangedErrors() {
+    assertSetDataError(
+        "Invalid data. Document fields cannot begin and end with \"__\" (found in field a.__b__)",
+        map("a", map("__b__", 1)));
+    assertSetDataError(
+        "Invalid data. Nested arrays are not supported", map("a", asList(asList(1))));
+    assertSetDataError(
+        "Invalid data. FieldValue.serverTimestamp() is not currently supported inside arrays",
+        map("a", asList(serverTimestamp())));
+    assertSetDataError(
+        "Invalid data. FieldValue.delete() can only be used with update() and set() with "
+            + "SetOptions.merge() (found in field a)",
+        map("a", delete()));
+  }
+
+  @Test
+  public void testRejectsSentinelsInQueryValues() {
+    try {
+      converter.parseQueryValue(map("a", serverTimestamp()));
+      fail("parseQueryValue should have failed");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("can only be used with set() and update()"));
+    }
+  }
+
+  @Test
+  public void testDoesNotApplySentinelsTwiceWhenFallingBack() {
+    List<Mutation> mutations =
+        converter
+            .parseSetData(map("a", serverTimestamp(), "pojo", new SimplePojo()))
+            .toMutationList(KEY, Precondition.NONE);
+    assertEquals(
+        Collections.singletonList(
+            new FieldTransform(field("a"), ServerTimestampOperation.getInstance())),
+        ((TransformMutation) mutations.get(1)).getFieldTransforms());
+  }
+
+  private void assertSetDataError(String expectedMessage, Map<String, Object> input) {
+    try {
+      converter.parseSetData(input);
+      fail("parseSetData should have failed");
+    } catch (IllegalArgumentException e) {
+      assertEquals(expectedMessage, e.getMessage());
+    }
+  }
+
+  /** A POJO, which the fast path leaves to CustomClassMapper. */
+  public static class SimplePojo {
+    public String value = "pojo";
+  }
 }
@@ -0,0 +1,183 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.FirebaseFirestoreException.Code;
+import com.google.firebase.firestore.auth.EmptyCredentialsProvider;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.MutationResult;
+import com.google.firebase.firestore.remote.Datastore;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
+import com.google.firebase.firestore.util.RateLimiter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(org.robolectric.RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BulkWriterTest {
+
+  /** A Datastore whose commits are completed manually by the test. */
+  private static class FakeDatastore extends Datastore {
+    private final List<TaskCompletionSource<List<MutationResult>>> pendingCommits =
+        new ArrayList<>();
+
+    FakeDatastore(AsyncQueue queue) {
+      super(
+          new DatabaseInfo(
+              DatabaseId.forDatabase("project", "database"), "persistenceKey", "host", false),
+          queue,
+          new EmptyCredentialsProvider(),
+          ApplicationProvider.getApplicationContext(),
+          null);
+    }
+
+    @Override
+    public Task<List<MutationResult>> commit(List<Mutation> mutations) {
+      TaskCompletionSource<List<MutationResult>> source = new TaskCompletionSource<>();
+      pendingCommits.add(source);
+      return source.getTask();
+    }
+
+    void ackNextCommit() {
+      pendingCommits.remove(0).setResult(Collections.emptyList());
+    }
+
+    void failNextCommit(Code code) {
+      pendingCommits.remove(0).setException(new FirebaseFirestoreException("Failed", code));
+    }
+  }
+
+  private AsyncQueue queue;
+  private FakeDatastore datastore;
+  private BulkWriter bulkWriter;
+
+  @Before
+  public void before() {
+    queue = new AsyncQueue();
+    queue.skipDelaysForTimerId(TimerId.RETRY_BULK_WRITE);
+    datastore = new FakeDatastore(queue);
+    RateLimiter unlimited =
+        new RateLimiter(
+            /* initialCapacity= */ 10000,
+            /* multiplier= */ 1.0,
+            /* multiplierMillis= */ 1000,
+            /* minimumCapacity= */ 10000,
+            /* maximumCapacity= */ 10000,
+            System.currentTimeMillis());
+    bulkWriter = new BulkWriter(datastore, queue, /* maxConcurrentCommits= */ 2, unlimited);
+  }
+
+  private Task<Void> write(String path) throws InterruptedException {
+    TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+    queue.runSync(
+        () ->
+            bulkWriter.write(
+                Collections.singletonList(setMutation(path, map("foo", "bar"))), source));
+    return source.getTask();
+  }
+
+  /** Runs a no-op on the queue so that all previously queued callbacks have run. */
+  private void drainQueue() throws InterruptedException {
+    queue.runSync(() -> {});
+    queue.runSync(() -> {});
+  }
+
+  @Test
+  public void limitsConcurrentCommits() throws InterruptedException {
+    Task<Void> first = write("coll/a");
+    Task<Void> second = write("coll/b");
+    Task<Void> third = write("coll/c");
+
+    assertEquals(2, datastore.pendingCommits.size());
+    assertEquals(1, bulkWriter.getPendingOperationCount());
+
+    datastore.ackNextCommit();
+    drainQueue();
+
+    assertTrue(first.isSuccessful());
+    assertFalse(second.isComplete());
+    assertFalse(third.isComplete());
+    assertEquals(2, datastore.pendingCommits.size());
+    assertEquals(0, bulkWriter.getPendingOperationCount());
+  }
+
+  @Test
+  public void retriesTransientErrors() throws InterruptedException {
+    Task<Void> task = write("coll/a");
+
+    datastore.failNextCommit(Code.UNAVAILABLE);
+    drainQueue();
+
+    assertFalse(task.isComplete());
+    assertEquals(1, datastore.pendingCommits.size());
+    assertEquals(1, bulkWriter.getRetriedWriteCount());
+
+    datastore.ackNextCommit();
+    drainQueue();
+
+    assertTrue(task.isSuccessful());
+    assertEquals(1, bulkWriter.getSuccessfulWriteCount());
+  }
+
+  @Test
+  public void doesNotRetryPermanentErrors() throws InterruptedException {
+    Task<Void> failed = write("coll/a");
+    Task<Void> succeeded = write("coll/b");
+
+    datastore.failNextCommit(Code.PERMISSION_DENIED);
+    datastore.ackNextCommit();
+    drainQueue();
+
+    assertTrue(failed.isComplete());
+    assertFalse(failed.isSuccessful());
+    assertEquals(
+        Code.PERMISSION_DENIED, ((FirebaseFirestoreException) failed.getException()).getCode());
+    assertTrue(succeeded.isSuccessful());
+    assertEquals(1, bulkWriter.getFailedWriteCount());
+    assertEquals(0, datastore.pendingCommits.size());
+  }
+
+  @Test
+  public void flushWaitsForOutstandingWrites() throws InterruptedException {
+    write("coll/a");
+    write("coll/b");
+
+    Task<Void>[] flush = new Task[1];
+    queue.runSync(() -> flush[0] = bulkWriter.flush());
+    assertFalse(flush[0].isComplete());
+
+    datastore.ackNextCommit();
+    datastore.failNextCommit(Code.INVALID_ARGUMENT);
+    drainQueue();
+
+    assertTrue(flush[0].isSuccessful());
+  }
+}
@@ -26,6 +26,7 @@ import static com.google.firebase.firestore.testutil.TestUtil.testEquality;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.firebase.firestore.model.Document;
@@ -439,6 +440,28 @@ public class QueryTest {
         .testCompare();
   }
 
+  @Test
+  public void testSortsDocumentsWithSortKeysPerQuery() {
+    Query query =
+        Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("sort", "asc"));
+    Query descendingQuery =
+        Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("sort", "desc"));
+    Query partialQuery = query.orderBy(orderBy("other"));
+    Document doc1 = doc("collection/1", 0, map("sort", 1));
+    Document doc2 = doc("collection/2", 0, map("sort", 2));
+
+    assertSame(query.comparator(), query.comparator());
+
+    // The same documents are sorted by two queries in turn, and each keeps its own sort keys.
+    for (int i = 0; i < 2; ++i) {
+      assertTrue(query.comparator().compare(doc1, doc2) < 0);
+      assertTrue(descendingQuery.comparator().compare(doc1, doc2) > 0);
+    }
+
+    // Documents without all fields of the sort order are compared without sort keys.
+    assertTrue(partialQuery.comparator().compare(doc1, doc2) < 0);
+  }
+
   @Test
   public void testHashCode() {
     Query q1a =
@@ -0,0 +1,399 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.FirebaseFirestoreException.Code;
+import com.google.firebase.firestore.auth.EmptyCredentialsProvider;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.MaybeDocument;
+import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.MutationResult;
+import com.google.firebase.firestore.remote.Datastore;
+import com.google.firebase.firestore.remote.RemoteStore;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
+import com.google.firebase.firestore.util.Executors;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(org.robolectric.RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ReadOnlyTransactionTest {
+
+  /** A lookup that the stand-in backend has received but not answered yet. */
+  private static class LookupRequest {
+    final List<DocumentKey> keys;
+    @Nullable final SnapshotVersion readTime;
+    final TaskCompletionSource<Datastore.LookupResult> result = new TaskCompletionSource<>();
+
+    LookupRequest(List<DocumentKey> keys, @Nullable SnapshotVersion readTime) {
+      this.keys = keys;
+      this.readTime = readTime;
+    }
+  }
+
+  /**
+   * A Datastore that stands in for the backend. It keeps all versions of its documents, so that
+   * lookups can read at a past read time, and answers lookups when the test asks it to.
+   */
+  private static class FakeDatastore extends Datastore {
+    private final Map<DocumentKey, TreeMap<Long, MaybeDocument>> documents = new HashMap<>();
+    private final List<LookupRequest> requests = new ArrayList<>();
+    private final List<LookupRequest> pendingRequests = new ArrayList<>();
+    private final Set<DocumentKey> omittedKeys = new HashSet<>();
+    private long currentTime;
+    private int commitCount;
+
+    FakeDatastore(AsyncQueue queue) {
+      super(
+          new DatabaseInfo(
+              DatabaseId.forDatabase("project", "database"), "persistenceKey", "host", false),
+          queue,
+          new EmptyCredentialsProvider(),
+          ApplicationProvider.getApplicationContext(),
+          null);
+    }
+
+    @Override
+    public synchronized Task<Datastore.LookupResult> lookupWithReadTime(
+        List<DocumentKey> keys, @Nullable SnapshotVersion readTime) {
+      LookupRequest request = new LookupRequest(keys, readTime);
+      requests.add(request);
+      pendingRequests.add(request);
+      return request.result.getTask();
+    }
+
+    @Override
+    public Task<List<MutationResult>> commit(List<Mutation> mutations) {
+      ++commitCount;
+      return Tasks.forResult(new ArrayList<>());
+    }
+
+    /** Writes a new version of the document, one second after the previous write. */
+    synchronized void write(MaybeDocument doc) {
+      ++currentTime;
+      documents.computeIfAbsent(doc.getKey(), k -> new TreeMap<>()).put(currentTime, doc);
+    }
+
+    /** Answers the oldest pending lookup with the documents at its read time. */
+    synchronized void answerNextLookup() {
+      LookupRequest request = pendingRequests.remove(0);
+      long readTime =
+          request.readTime != null ? request.readTime.getTimestamp().getSeconds() : currentTime;
+      List<MaybeDocument> docs = new ArrayList<>();
+      for (DocumentKey key : request.keys) {
+        TreeMap<Long, MaybeDocument> versions = documents.get(key);
+        Map.Entry<Long, MaybeDocument> entry =
+            versions != null ? versions.floorEntry(readTime) : null;
+        if (omittedKeys.contains(key)) {
+          docs.add(null);
+        } else {
+          docs.add(entry != null ? entry.getValue() : deletedDoc(key.toString(), 0));
+        }
+      }
+      // Like Datastore, report no read time if the backend sent no responses.
+      SnapshotVersion version = request.keys.isEmpty() ? SnapshotVersion.NONE : versionAt(readTime);
+      request.result.setResult(new Datastore.LookupResult(docs, version));
+    }
+
+    /** Makes the backend leave the given document out of its responses. */
+    synchronized void omit(DocumentKey key) {
+      omittedKeys.add(key);
+    }
+
+    synchronized void failNextLookup(Code code) {
+      pendingRequests.remove(0).result.setException(new FirebaseFirestoreException("Failed", code));
+    }
+
+    synchronized int getRequestCount() {
+      return requests.size();
+    }
+
+    synchronized LookupRequest getRequest(int index) {
+      return requests.get(index);
+    }
+  }
+
+  private static SnapshotVersion versionAt(long seconds) {
+    return version(seconds * 1000000);
+  }
+
+  private AsyncQueue queue;
+  private FakeDatastore datastore;
+
+  @Before
+  public void before() {
+    queue = new AsyncQueue();
+    queue.skipDelaysForTimerId(TimerId.RETRY_TRANSACTION);
+    datastore = new FakeDatastore(queue);
+  }
+
+  private Task<List<MaybeDocument>> lookup(Transaction transaction, DocumentKey... keys)
+      throws InterruptedException {
+    List<Task<List<MaybeDocument>>> result = new ArrayList<>();
+    queue.runSync(() -> result.add(transaction.lookup(asList(keys))));
+    return result.get(0);
+  }
+
+  /** Runs no-ops on the queue until the backend received the given number of lookups. */
+  private void waitForRequests(int count) throws InterruptedException {
+    for (int i = 0; i < 10 && datastore.getRequestCount() < count; ++i) {
+      queue.runSync(() -> {});
+    }
+    assertEquals(count, datastore.getRequestCount());
+  }
+
+  /** Runs no-ops on the queue so that all previously queued callbacks have run. */
+  private void drainQueue() throws InterruptedException {
+    queue.runSync(() -> {});
+    queue.runSync(() -> {});
+  }
+
+  @Test
+  public void sendsLookupsOfOneTickTogether() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    datastore.write(doc("coll/b", 1, map("value", 2)));
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+
+    List<Task<List<MaybeDocument>>> lookups = new ArrayList<>();
+    queue.runSync(
+        () -> {
+          lookups.add(transaction.lookup(singletonList(key("coll/a"))));
+          lookups.add(transaction.lookup(asList(key("coll/b"), key("coll/a"))));
+          lookups.add(transaction.lookup(singletonList(key("coll/c"))));
+        });
+    waitForRequests(1);
+    assertEquals(
+        asList(key("coll/a"), key("coll/b"), key("coll/c")), datastore.getRequest(0).keys);
+    assertNull(datastore.getRequest(0).readTime);
+
+    datastore.answerNextLookup();
+    drainQueue();
+
+    assertEquals(singletonList(doc("coll/a", 1, map("value", 1))), lookups.get(0).getResult());
+    assertEquals(
+        asList(doc("coll/b", 1, map("value", 2)), doc("coll/a", 1, map("value", 1))),
+        lookups.get(1).getResult());
+    assertEquals(singletonList(deletedDoc("coll/c", 0)), lookups.get(2).getResult());
+  }
+
+  @Test
+  public void readsAtTheReadTimeOfTheFirstLookup() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    datastore.write(doc("coll/b", 1, map("value", 1)));
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+
+    Task<List<MaybeDocument>> first = lookup(transaction, key("coll/a"));
+    waitForRequests(1);
+
+    // Later lookups wait for the read time that the first lookup determines.
+    Task<List<MaybeDocument>> second = lookup(transaction, key("coll/b"));
+    drainQueue();
+    assertEquals(1, datastore.getRequestCount());
+
+    datastore.answerNextLookup();
+    datastore.write(doc("coll/b", 5, map("value", 2)));
+    waitForRequests(2);
+    assertEquals(versionAt(2), datastore.getRequest(1).readTime);
+
+    datastore.answerNextLookup();
+    drainQueue();
+    assertEquals(singletonList(doc("coll/a", 1, map("value", 1))), first.getResult());
+    assertEquals(singletonList(doc("coll/b", 1, map("value", 1))), second.getResult());
+  }
+
+  @Test
+  public void determinesReadTimeFromFirstNonEmptyResponse() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+
+    Task<List<MaybeDocument>> empty = lookup(transaction);
+    waitForRequests(1);
+    datastore.answerNextLookup();
+    drainQueue();
+    assertEquals(new ArrayList<>(), empty.getResult());
+
+    Task<List<MaybeDocument>> first = lookup(transaction, key("coll/a"));
+    waitForRequests(2);
+    assertNull(datastore.getRequest(1).readTime);
+    datastore.answerNextLookup();
+    drainQueue();
+    assertEquals(singletonList(doc("coll/a", 1, map("value", 1))), first.getResult());
+
+    datastore.write(doc("coll/a", 2, map("value", 2)));
+    Task<List<MaybeDocument>> second = lookup(transaction, key("coll/a"));
+    waitForRequests(3);
+    assertEquals(versionAt(1), datastore.getRequest(2).readTime);
+    datastore.answerNextLookup();
+    drainQueue();
+    assertEquals(singletonList(doc("coll/a", 1, map("value", 1))), second.getResult());
+  }
+
+  @Test
+  public void failsLookupsOfDocumentsMissingFromResponse() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    datastore.write(doc("coll/b", 1, map("value", 2)));
+    datastore.omit(key("coll/b"));
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+
+    List<Task<List<MaybeDocument>>> lookups = new ArrayList<>();
+    queue.runSync(
+        () -> {
+          lookups.add(transaction.lookup(singletonList(key("coll/a"))));
+          lookups.add(transaction.lookup(asList(key("coll/a"), key("coll/b"))));
+        });
+    waitForRequests(1);
+    datastore.answerNextLookup();
+    drainQueue();
+
+    assertEquals(singletonList(doc("coll/a", 1, map("value", 1))), lookups.get(0).getResult());
+    assertFalse(lookups.get(1).isSuccessful());
+    assertEquals(
+        Code.INTERNAL, ((FirebaseFirestoreException) lookups.get(1).getException()).getCode());
+  }
+
+  @Test
+  public void completesWithoutCommit() {
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+    assertTrue(transaction.isReadOnly());
+
+    Task<Void> commit = transaction.commit();
+    assertTrue(commit.isSuccessful());
+    assertEquals(0, datastore.commitCount);
+  }
+
+  @Test
+  public void failsOnWrites() {
+    Transaction transaction = Transaction.createReadOnly(datastore, queue);
+    transaction.delete(key("coll/a"));
+
+    Task<Void> commit = transaction.commit();
+    assertFalse(commit.isSuccessful());
+    assertEquals(
+        Code.INVALID_ARGUMENT, ((FirebaseFirestoreException) commit.getException()).getCode());
+    assertEquals(0, datastore.commitCount);
+  }
+
+  @Test
+  public void retriesFailedLookupsWithNewTransaction() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    List<Transaction> transactions = new ArrayList<>();
+    TransactionRunner<MaybeDocument> runner =
+        new TransactionRunner<>(
+            queue,
+            mockRemoteStore(transactions),
+            transaction ->
+                transaction
+                    .lookup(singletonList(key("coll/a")))
+                    .continueWith(Executors.DIRECT_EXECUTOR, task -> task.getResult().get(0)),
+            /* readOnly= */ true);
+
+    List<Task<MaybeDocument>> result = new ArrayList<>();
+    queue.runSync(() -> result.add(runner.run()));
+    waitForRequests(1);
+    datastore.failNextLookup(Code.ABORTED);
+
+    waitForRequests(2);
+    assertNull(datastore.getRequest(1).readTime);
+    datastore.answerNextLookup();
+    drainQueue();
+
+    assertEquals(2, transactions.size());
+    assertEquals(doc("coll/a", 1, map("value", 1)), result.get(0).getResult());
+    assertEquals(0, datastore.commitCount);
+  }
+
+  @Test
+  public void retriesWithNewReadTimeWhenReadTimeExpired() throws InterruptedException {
+    datastore.write(doc("coll/a", 1, map("value", 1)));
+    datastore.write(doc("coll/b", 1, map("value", 2)));
+    List<Transaction> transactions = new ArrayList<>();
+    TransactionRunner<MaybeDocument> runner =
+        new TransactionRunner<>(
+            queue,
+            mockRemoteStore(transactions),
+            transaction ->
+                transaction
+                    .lookup(singletonList(key("coll/a")))
+                    .continueWithTask(
+                        Executors.DIRECT_EXECUTOR,
+                        first -> transaction.lookup(singletonList(key("coll/b"))))
+                    .continueWith(Executors.DIRECT_EXECUTOR, task -> task.getResult().get(0)),
+            /* readOnly= */ true);
+
+    List<Task<MaybeDocument>> result = new ArrayList<>();
+    queue.runSync(() -> result.add(runner.run()));
+    waitForRequests(1);
+    datastore.answerNextLookup();
+
+    // The backend rejects reads at a read time that is too old.
+    waitForRequests(2);
+    assertEquals(versionAt(2), datastore.getRequest(1).readTime);
+    datastore.failNextLookup(Code.FAILED_PRECONDITION);
+
+    waitForRequests(3);
+    assertNull(datastore.getRequest(2).readTime);
+    datastore.answerNextLookup();
+    waitForRequests(4);
+    datastore.answerNextLookup();
+    drainQueue();
+
+    assertEquals(2, transactions.size());
+    assertEquals(doc("coll/b", 1, map("value", 2)), result.get(0).getResult());
+  }
+
+  /** Returns a RemoteStore that creates read-only transactions and adds them to the given list. */
+  private RemoteStore mockRemoteStore(List<Transaction> transactions) {
+    RemoteStore remoteStore = mock(RemoteStore.class);
+    when(remoteStore.createReadOnlyTransaction())
+        .thenAnswer(
+            invocation -> {
+              Transaction transaction = Transaction.createReadOnly(datastore, queue);
+              transactions.add(transaction);
+              return transaction;
+            });
+    return remoteStore;
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.firestore.core.StartupTrace.Phase;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StartupTraceTest {
+  private static final long CREATION_NANOS = TimeUnit.SECONDS.toNanos(100);
+
+  private static long at(long millis) {
+    return CREATION_NANOS + TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Test
+  public void testUnrecordedPhases() {
+    StartupTrace trace = new StartupTrace(CREATION_NANOS);
+    assertFalse(trace.hasPhase(Phase.OPEN_PERSISTENCE));
+    assertEquals(-1, trace.getPhaseDurationMillis(Phase.OPEN_PERSISTENCE));
+    assertEquals(-1, trace.getPhaseEndOffsetMillis(Phase.OPEN_PERSISTENCE));
+    assertEquals(-1, trace.getTimeToFirstSnapshotMillis());
+  }
+
+  @Test
+  public void testRecordsDurationsAndOffsets() {
+    StartupTrace trace = new StartupTrace(CREATION_NANOS);
+    assertTrue(trace.recordPhase(Phase.CHANNEL_READY, at(0), at(250)));
+    assertTrue(trace.recordPhase(Phase.OPEN_PERSISTENCE, at(5), at(80)));
+    assertTrue(trace.recordPhase(Phase.FIRST_SNAPSHOT, at(0), at(300)));
+
+    assertTrue(trace.hasPhase(Phase.OPEN_PERSISTENCE));
+    assertEquals(75, trace.getPhaseDurationMillis(Phase.OPEN_PERSISTENCE));
+    assertEquals(80, trace.getPhaseEndOffsetMillis(Phase.OPEN_PERSISTENCE));
+    assertEquals(250, trace.getPhaseDurationMillis(Phase.CHANNEL_READY));
+    assertEquals(300, trace.getTimeToFirstSnapshotMillis());
+  }
+
+  @Test
+  public void testKeepsFirstRecording() {
+    StartupTrace trace = new StartupTrace(CREATION_NANOS);
+    assertTrue(trace.recordPhase(Phase.FIRST_SNAPSHOT, at(0), at(120)));
+    assertFalse(trace.recordPhase(Phase.FIRST_SNAPSHOT, at(0), at(500)));
+    assertEquals(120, trace.getTimeToFirstSnapshotMillis());
+  }
+
+  @Test
+  public void testToStringListsPhasesInOrder() {
+    StartupTrace trace = new StartupTrace(CREATION_NANOS);
+    trace.recordPhase(Phase.AWAIT_USER, at(10), at(30));
+    trace.recordPhase(Phase.OPEN_PERSISTENCE, at(0), at(10));
+    assertEquals(
+        "StartupTrace{OPEN_PERSISTENCE=10ms (done at 10ms), AWAIT_USER=20ms (done at 30ms)}",
+        trace.toString());
+  }
+}
@@ -399,6 +399,101 @@ public class ViewTest {
     view.applyChanges(changes);
   }
 
+  @Test
+  public void testRefillsFromSpillDocumentsOnDeleteInLimitQuery() {
+    Query query = messageQuery().orderBy(orderBy("num")).limit(2);
+    Document doc1 = doc("rooms/eros/messages/1", 0, map("num", 1));
+    Document doc2 = doc("rooms/eros/messages/2", 0, map("num", 2));
+    Document doc3 = doc("rooms/eros/messages/3", 0, map("num", 3));
+    Document doc4 = doc("rooms/eros/messages/4", 0, map("num", 4));
+    View view = new View(query, DocumentKey.emptyKeySet());
+
+    // The view is not full, so it knows all docs that are added after the limit.
+    applyChanges(view, doc1);
+    applyChanges(view, doc2, doc3, doc4);
+
+    View.DocumentChanges changes =
+        view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 1)));
+    assertTrue(changes.needsRefill());
+    assertEquals(keySet(doc3.getKey(), doc4.getKey()), changes.getRefillKeys());
+
+    changes = view.computeDocChanges(docUpdates(doc3, doc4), changes);
+    assertFalse(changes.needsRefill());
+    ViewSnapshot snapshot = view.applyChanges(changes).getSnapshot();
+    assertEquals(asList(doc2, doc3), snapshot.getDocuments().toList());
+    assertEquals(
+        asList(
+            DocumentViewChange.create(Type.REMOVED, doc1),
+            DocumentViewChange.create(Type.ADDED, doc3)),
+        snapshot.getChanges());
+  }
+
+  @Test
+  public void testNeedsFullRefillIfSpillDocumentsAreGone() {
+    Query query = messageQuery().orderBy(orderBy("num")).limit(2);
+    Document doc1 = doc("rooms/eros/messages/1", 0, map("num", 1));
+    Document doc2 = doc("rooms/eros/messages/2", 0, map("num", 2));
+    Document doc3 = doc("rooms/eros/messages/3", 0, map("num", 3));
+    View view = new View(query, DocumentKey.emptyKeySet());
+
+    applyChanges(view, doc1);
+    applyChanges(view, doc2, doc3);
+
+    View.DocumentChanges changes =
+        view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 1)));
+    assertTrue(changes.needsRefill());
+    assertEquals(keySet(doc3.getKey()), changes.getRefillKeys());
+
+    // The spill doc was removed from the local cache in the meantime.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/3", 0)), changes);
+    assertTrue(changes.needsRefill());
+    assertNull(changes.getRefillKeys());
+
+    changes = view.computeDocChanges(docUpdates(doc2), changes);
+    assertFalse(changes.needsRefill());
+    assertEquals(asList(doc2), view.applyChanges(changes).getSnapshot().getDocuments().toList());
+  }
+
+  @Test
+  public void testUsesSpillDocumentsForDocsMovingPastTheLimit() {
+    Query query = messageQuery().orderBy(orderBy("num")).limit(2);
+    Document doc1 = doc("rooms/eros/messages/1", 0, map("num", 1));
+    Document doc2 = doc("rooms/eros/messages/2", 0, map("num", 2));
+    Document doc3 = doc("rooms/eros/messages/3", 0, map("num", 3));
+    Document doc4 = doc("rooms/eros/messages/4", 0, map("num", 4));
+    View view = new View(query, DocumentKey.emptyKeySet());
+
+    applyChanges(view, doc1);
+    applyChanges(view, doc2, doc3, doc4);
+
+    // doc2 moves past the old limit, but still comes before all spill docs.
+    doc2 = doc("rooms/eros/messages/2", 1, map("num", 2.5));
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc2));
+    assertFalse(changes.needsRefill());
+    view.applyChanges(changes);
+
+    // doc1 moves past doc3, which takes its place.
+    doc1 = doc("rooms/eros/messages/1", 1, map("num", 3.5));
+    changes = view.computeDocChanges(docUpdates(doc1));
+    assertTrue(changes.needsRefill());
+    assertEquals(keySet(doc3.getKey(), doc4.getKey()), changes.getRefillKeys());
+    changes = view.computeDocChanges(docUpdates(doc3, doc4), changes);
+    assertFalse(changes.needsRefill());
+    ViewSnapshot snapshot = view.applyChanges(changes).getSnapshot();
+    assertEquals(asList(doc2, doc3), snapshot.getDocuments().toList());
+    assertEquals(
+        asList(
+            DocumentViewChange.create(Type.REMOVED, doc1),
+            DocumentViewChange.create(Type.ADDED, doc3)),
+        snapshot.getChanges());
+
+    // doc2 moves past all docs that the view knows of.
+    doc2 = doc("rooms/eros/messages/2", 2, map("num", 10));
+    changes = view.computeDocChanges(docUpdates(doc2));
+    assertTrue(changes.needsRefill());
+    assertNull(changes.getRefillKeys());
+  }
+
   @Test
   public void testDoesNotNeedRefillOnReorderWithinLimit() {
     Query query = messageQuery().orderBy(orderBy("order")).limit(3);
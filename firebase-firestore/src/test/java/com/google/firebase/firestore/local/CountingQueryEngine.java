@@ -22,6 +22,7 @@ import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
@@ -98,7 +99,8 @@ class CountingQueryEngine implements QueryEngine {
 
   /**
    * Returns the number of mutations returned by the MutationQueue's
-   * `getAllMutationBatchesAffectingQuery()` API (since the last call to `resetCounts()`)
+   * `getAllMutationBatchesAffectingQuery()` and `getAllMutationBatchesAffectingCollections()` APIs
+   * (since the last call to `resetCounts()`)
    */
   int getMutationsReadByQuery() {
     return mutationsReadByQuery[0];
@@ -148,6 +150,21 @@ class CountingQueryEngine implements QueryEngine {
         documentsReadByQuery[0] += result.size();
         return result;
       }
+
+      @Override
+      public ImmutableSortedMap<DocumentKey, Document> getAllDocumentsMatchingCollectionGroupQuery(
+          Query query, List<ResourcePath> collectionPaths, SnapshotVersion sinceReadTime) {
+        ImmutableSortedMap<DocumentKey, Document> result =
+            subject.getAllDocumentsMatchingCollectionGroupQuery(
+                query, collectionPaths, sinceReadTime);
+        documentsReadByQuery[0] += result.size();
+        return result;
+      }
+
+      @Override
+      public void setStatsCollector(@Nullable QueryStatsCollector stats) {
+        subject.setStatsCollector(stats);
+      }
     };
   }
 
@@ -232,6 +249,15 @@ class CountingQueryEngine implements QueryEngine {
         return result;
       }
 
+      @Override
+      public List<MutationBatch> getAllMutationBatchesAffectingCollections(
+          List<ResourcePath> collectionPaths) {
+        List<MutationBatch> result =
+            subject.getAllMutationBatchesAffectingCollections(collectionPaths);
+        mutationsReadByQuery[0] += result.size();
+        return result;
+      }
+
       @Override
       public void removeMutationBatch(MutationBatch batch) {
         subject.removeMutationBatch(batch);
@@ -14,11 +14,13 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.testutil.TestUtil.key;
 import static java.util.Arrays.asList;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -26,6 +28,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
 import java.util.ArrayList;
 import java.util.List;
@@ -196,6 +199,27 @@ public class EncodedPathTest {
     assertPrefixSuccessorEquals("foo" + SEP + "bar\u0001\u0002", path("foo", "bar"));
   }
 
+  @Test
+  public void testInternsCollectionIds() {
+    ResourcePath first = EncodedPath.decodeResourcePath(EncodedPath.encode(path("rooms", "a")));
+    ResourcePath second =
+        EncodedPath.decodeResourcePath(EncodedPath.encode(path("rooms", "b", "messages", "1")));
+    ResourcePath third =
+        EncodedPath.decodeResourcePath(EncodedPath.encode(path("rooms", "c", "messages", "2")));
+
+    assertSame(first.getSegment(0), second.getSegment(0));
+    assertSame(second.getSegment(0), third.getSegment(0));
+    assertSame(second.getSegment(2), third.getSegment(2));
+  }
+
+  @Test
+  public void testEncodesDocumentKeys() {
+    DocumentKey key = key("rooms/eros/messages/1");
+    String encoded = EncodedPath.encode(key);
+    assertEquals(EncodedPath.encode(key.getPath()), encoded);
+    assertEquals(key, EncodedPath.decodeDocumentKey(encoded));
+  }
+
   private void assertPrefixSuccessorEquals(String expected, ResourcePath path) {
     assertEquals(expected, EncodedPath.prefixSuccessor(EncodedPath.encode(path)));
   }
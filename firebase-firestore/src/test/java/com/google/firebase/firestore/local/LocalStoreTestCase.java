@@ -38,8 +38,10 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
@@ -54,6 +56,7 @@ import com.google.firebase.firestore.auth.User;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.DocumentSet;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.NoDocument;
 import com.google.firebase.firestore.model.ResourcePath;
@@ -63,6 +66,7 @@ import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.MutationBatchResult;
 import com.google.firebase.firestore.model.mutation.MutationResult;
 import com.google.firebase.firestore.model.mutation.SetMutation;
+import com.google.firebase.firestore.remote.Datastore;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.WatchStream;
 import com.google.firebase.firestore.remote.WriteStream;
@@ -139,6 +143,12 @@ public abstract class LocalStoreTestCase {
     lastChanges = localStore.applyRemoteEvent(event);
   }
 
+  private void applyLookupResult(long readTime, MaybeDocument... docs) {
+    lastChanges =
+        localStore.applyLookupResults(
+            singletonList(new Datastore.LookupResult(asList(docs), version(readTime))));
+  }
+
   private void notifyLocalViewChanges(LocalViewChanges changes) {
     localStore.notifyLocalViewChanges(asList(changes));
   }
@@ -882,6 +892,57 @@ public abstract class LocalStoreTestCase {
         values(result.getDocuments()));
   }
 
+  @Test
+  public void testCanExecuteCollectionGroupQueries() {
+    localStore.writeLocally(
+        asList(
+            setMutation("messages/1", map("a", 1)),
+            setMutation("rooms/foo/messages/1", map("a", 2)),
+            setMutation("rooms/bar/messages/1", map("a", 3)),
+            setMutation("rooms/bar/other/1", map("a", 4)),
+            setMutation("rooms/bar/messages/1/replies/1", map("a", 5))));
+    Query query = new Query(ResourcePath.EMPTY, "messages");
+    QueryResult result = localStore.executeQuery(query, /* usePreviousResults= */ true);
+    assertEquals(
+        asList(
+            doc("messages/1", 0, map("a", 1), Document.DocumentState.LOCAL_MUTATIONS),
+            doc("rooms/bar/messages/1", 0, map("a", 3), Document.DocumentState.LOCAL_MUTATIONS),
+            doc("rooms/foo/messages/1", 0, map("a", 2), Document.DocumentState.LOCAL_MUTATIONS)),
+        values(result.getDocuments()));
+  }
+
+  @Test
+  public void testDocumentChangesInvalidateCachedQueryResults() {
+    Query query = Query.atPath(ResourcePath.fromString("foo"));
+    DocumentSet result = DocumentSet.emptySet(query.comparator());
+    localStore.cacheQueryResult(query, result);
+    if (garbageCollectorIsEager()) {
+      // Results are not cached, since documents can be removed without being reported.
+      assertNull(localStore.getCachedQueryResult(query));
+      return;
+    }
+    assertSame(result, localStore.getCachedQueryResult(query));
+
+    // Writes to other collections keep the result.
+    writeMutation(setMutation("bar/baz", map("bar", "baz")));
+    assertSame(result, localStore.getCachedQueryResult(query));
+
+    writeMutation(setMutation("foo/bar", map("foo", "bar")));
+    assertNull(localStore.getCachedQueryResult(query));
+
+    localStore.cacheQueryResult(query, result);
+    rejectMutation(); // bar/baz
+    assertSame(result, localStore.getCachedQueryResult(query));
+    rejectMutation(); // foo/bar
+    assertNull(localStore.getCachedQueryResult(query));
+
+    CacheStatistics stats = localStore.getStatistics(/* garbageCollector= */ null);
+    assertEquals(4, stats.getQueryResultHitCount());
+    assertEquals(2, stats.getQueryResultMissCount());
+    assertEquals(2, stats.getQueryResultInvalidationCount());
+    assertEquals(0, stats.getQueryResultEvictionCount());
+  }
+
   @Test
   public void testCanExecuteMixedCollectionQueries() {
     Query query = Query.atPath(ResourcePath.fromString("foo"));
@@ -1058,6 +1119,59 @@ public abstract class LocalStoreTestCase {
     assertQueryReturned("foo/a", "foo/b");
   }
 
+  @Test
+  public void testRecordsQueryExecutionStats() {
+    assumeFalse(garbageCollectorIsEager());
+    assumeTrue(queryEngine.getSubject() instanceof IndexFreeQueryEngine);
+    boolean decodesDocuments = localStorePersistence instanceof SQLitePersistence;
+
+    Query query =
+        Query.atPath(ResourcePath.fromString("foo")).filter(filter("matches", "==", true));
+    int targetId = allocateQuery(query);
+
+    writeMutation(setMutation("foo/a", map("matches", true)));
+    writeMutation(setMutation("foo/b", map("matches", true)));
+    writeMutation(setMutation("foo/ignored", map("matches", false)));
+    acknowledgeMutation(10);
+    acknowledgeMutation(10);
+    acknowledgeMutation(10);
+
+    // Without a target mapping, the query scans the collection.
+    QueryStatsCollector stats = new QueryStatsCollector();
+    localStore.executeQuery(query, /* usePreviousResults= */ true, stats);
+    assertFalse(stats.isIndexFree());
+    assertEquals(3, stats.getRowsScanned());
+    assertEquals(decodesDocuments ? 3 : 0, stats.getDocumentsDecoded());
+    assertEquals(2, stats.getDocumentsMatched());
+    assertEquals(0, stats.getMutationBatchesApplied());
+
+    applyRemoteEvent(
+        addedRemoteEvent(
+            asList(doc("foo/a", 10, map("matches", true)), doc("foo/b", 10, map("matches", true))),
+            asList(targetId),
+            emptyList()));
+    applyRemoteEvent(noChangeEvent(targetId, 10));
+    udpateViews(targetId, /* fromCache= */ false);
+    writeMutation(setMutation("foo/c", map("matches", true)));
+
+    // With a target mapping, only the previous results are read and the pending write is applied.
+    stats = new QueryStatsCollector();
+    localStore.executeQuery(query, /* usePreviousResults= */ true, stats);
+    assertTrue(stats.isIndexFree());
+    // The memory cache has no read time index, so it still iterates over the collection to find
+    // documents that changed since the last snapshot.
+    assertEquals(decodesDocuments ? 2 : 5, stats.getRowsScanned());
+    assertEquals(decodesDocuments ? 2 : 0, stats.getDocumentsDecoded());
+    assertEquals(3, stats.getDocumentsMatched());
+    assertEquals(1, stats.getMutationBatchesApplied());
+    assertTrue(stats.getQueryEngineNanos() >= stats.getRemoteDocumentReadNanos());
+
+    // The collector is only installed for the explained query.
+    long rowsScanned = stats.getRowsScanned();
+    executeQuery(query);
+    assertEquals(rowsScanned, stats.getRowsScanned());
+  }
+
   @Test
   public void testLastLimboFreeSnapshotIsAdvancedDuringViewProcessing() {
     // This test verifies that the `lastLimboFreeSnapshot` version for QueryData is advanced when
@@ -1347,6 +1461,21 @@ public abstract class LocalStoreTestCase {
     assertEquals(MutationBatch.UNKNOWN, localStore.getHighestUnacknowledgedBatchId());
   }
 
+  @Test
+  public void testGetPendingWriteBatchCount() {
+    assertEquals(0, localStore.getPendingWriteBatchCount());
+
+    writeMutation(setMutation("foo/bar", map("abc", 123)));
+    writeMutation(patchMutation("foo/bar", map("abc", 321)));
+    assertEquals(2, localStore.getPendingWriteBatchCount());
+
+    acknowledgeMutation(1);
+    assertEquals(1, localStore.getPendingWriteBatchCount());
+
+    rejectMutation();
+    assertEquals(0, localStore.getPendingWriteBatchCount());
+  }
+
   @Test
   public void testOnlyPersistsUpdatesForDocumentsWhenVersionChanges() {
     Query query = Query.atPath(ResourcePath.fromString("foo"));
@@ -1369,4 +1498,38 @@ public abstract class LocalStoreTestCase {
     assertContains(doc("foo/bar", 1, map("val", "old"), Document.DocumentState.SYNCED));
     assertContains(doc("foo/baz", 2, map("val", "new"), Document.DocumentState.SYNCED));
   }
+
+  @Test
+  public void testAppliesLookupResultsNewerThanCache() {
+    assumeFalse(garbageCollectorIsEager());
+
+    applyLookupResult(3, doc("foo/bar", 2, map("val", "new")));
+    assertChanged(doc("foo/bar", 2, map("val", "new")));
+    assertContains(doc("foo/bar", 2, map("val", "new")));
+
+    applyLookupResult(4, doc("foo/bar", 1, map("val", "old")));
+    assertChanged(doc("foo/bar", 2, map("val", "new")));
+    assertContains(doc("foo/bar", 2, map("val", "new")));
+  }
+
+  @Test
+  public void testReturnsLookupResultsWithoutReadTime() {
+    // A result without a read time is not cached, but is still returned if the cache has nothing.
+    applyLookupResult(0, doc("foo/bar", 2, map("val", "new")), deletedDoc("foo/baz", 3));
+    assertChanged(doc("foo/bar", 2, map("val", "new")), deletedDoc("foo/baz", 3));
+    assertNotContains("foo/bar");
+    assertNotContains("foo/baz");
+  }
+
+  @Test
+  public void testAppliesLookupResultsUnderPendingMutations() {
+    writeMutation(setMutation("foo/bar", map("val", "local")));
+    assertChanged(doc("foo/bar", 0, map("val", "local"), Document.DocumentState.LOCAL_MUTATIONS));
+
+    applyLookupResult(3, doc("foo/bar", 2, map("val", "remote")), deletedDoc("foo/baz", 3));
+    assertChanged(
+        doc("foo/bar", 2, map("val", "local"), Document.DocumentState.LOCAL_MUTATIONS),
+        deletedDoc("foo/baz", 3));
+    assertContains(doc("foo/bar", 2, map("val", "local"), Document.DocumentState.LOCAL_MUTATIONS));
+  }
 }
@@ -20,10 +20,12 @@ import static com.google.firebase.firestore.testutil.TestUtil.query;
 import static com.google.firebase.firestore.testutil.TestUtil.resumeToken;
 import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static com.google.firebase.firestore.testutil.TestUtil.wrapObject;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import android.util.SparseArray;
@@ -425,6 +427,73 @@ public abstract class LruGarbageCollectorTestCase {
     assertEquals(orphanedDocumentCount, removed);
   }
 
+  @Test
+  public void testRemoveOrphanedDocumentsInChunks() {
+    int chunkSize = SQLiteLruReferenceDelegate.REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE;
+    int orphanedDocumentCount = chunkSize * 2 + 1;
+    persistence.runTransaction(
+        "add orphaned docs",
+        () -> {
+          for (int i = 0; i < orphanedDocumentCount; i++) {
+            Document doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+          }
+        });
+
+    // Each chunk runs in its own transaction and continues after the last key of the previous one.
+    List<Integer> removedPerChunk = new ArrayList<>();
+    DocumentKey startAfter = null;
+    do {
+      DocumentKey chunkStart = startAfter;
+      LruGarbageCollector.OrphanedDocumentsChunk chunk =
+          persistence.runTransaction(
+              "remove chunk", () -> garbageCollector.removeOrphanedDocuments(1000, chunkStart));
+      removedPerChunk.add(chunk.getDocumentsRemoved());
+      startAfter = chunk.getLastKey();
+    } while (startAfter != null);
+
+    assertEquals(asList(chunkSize, chunkSize, 1), removedPerChunk);
+  }
+
+  @Test
+  public void testRemoveOrphanedDocumentsSkipsPinnedDocumentsInEarlierChunks() {
+    int pinnedDocumentCount = SQLiteLruReferenceDelegate.REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE + 1;
+    List<Mutation> mutations = new ArrayList<>();
+    persistence.runTransaction(
+        "add pinned docs",
+        () -> {
+          for (int i = 0; i < pinnedDocumentCount; i++) {
+            Document doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            mutations.add(mutation(doc.getKey()));
+          }
+          mutationQueue.addMutationBatch(Timestamp.now(), Collections.emptyList(), mutations);
+        });
+    Set<DocumentKey> toBeRemoved = new HashSet<>();
+    persistence.runTransaction(
+        "add orphaned docs",
+        () -> {
+          for (int i = 0; i < 5; i++) {
+            Document doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            toBeRemoved.add(doc.getKey());
+          }
+        });
+
+    int removed = garbageCollector.removeOrphanedDocuments(1000);
+    assertEquals(toBeRemoved.size(), removed);
+    persistence.runTransaction(
+        "verify",
+        () -> {
+          for (DocumentKey key : toBeRemoved) {
+            assertNull(documentCache.get(key));
+          }
+          for (Mutation mutation : mutations) {
+            assertNotNull(documentCache.get(mutation.getKey()));
+          }
+        });
+  }
+
   @Test
   public void testRemoveTargetsThenGC() {
     // Create 3 targets, add docs to all of them
@@ -684,6 +753,7 @@ public abstract class LruGarbageCollectorTestCase {
         persistence.runTransaction("GC", () -> garbageCollector.collect(new SparseArray<>()));
 
     assertFalse(results.hasRun());
+    assertNull(garbageCollector.getLastResults());
   }
 
   @Test
@@ -719,5 +789,48 @@ public abstract class LruGarbageCollectorTestCase {
     assertTrue(results.hasRun());
     assertEquals(10, results.getTargetsRemoved());
     assertEquals(100, results.getDocumentsRemoved());
+    assertSame(results, garbageCollector.getLastResults());
+  }
+
+  @Test
+  public void testGCInSeparateSteps() {
+    LruGarbageCollector.Params params = LruGarbageCollector.Params.WithCacheSizeBytes(100);
+    persistence.shutdown();
+    newTestResources(params);
+
+    for (int i = 0; i < 100; i++) {
+      persistence.runTransaction(
+          "Add a target and some documents",
+          () -> {
+            QueryData queryData = addNextQueryInTransaction();
+            for (int j = 0; j < 10; j++) {
+              Document doc = cacheADocumentInTransaction();
+              addDocumentToTarget(doc.getKey(), queryData.getTargetId());
+            }
+          });
+    }
+
+    // Running the steps of a collection in separate transactions removes the same targets and
+    // documents as a single collection would.
+    long upperBound =
+        persistence.runTransaction("Upper bound", () -> garbageCollector.determineUpperBound());
+    assertEquals(initialSequenceNumber + 10, upperBound);
+    assertEquals(10, removeTargets(upperBound, new SparseArray<>()));
+    int documentsRemoved =
+        persistence.runTransaction(
+            "Remove documents", () -> garbageCollector.removeOrphanedDocuments(upperBound));
+    assertEquals(100, documentsRemoved);
+  }
+
+  @Test
+  public void testNoUpperBoundIfCacheTooSmall() {
+    persistence.runTransaction(
+        "Fill cache",
+        () -> {
+          cacheADocumentInTransaction();
+        });
+    long upperBound =
+        persistence.runTransaction("Upper bound", () -> garbageCollector.determineUpperBound());
+    assertEquals(ListenSequence.INVALID, upperBound);
   }
 }
@@ -34,6 +34,7 @@ import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.auth.User;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.SetMutation;
@@ -102,6 +103,25 @@ public abstract class MutationQueueTestCase {
     assertTrue(mutationQueue.isEmpty());
   }
 
+  @Test
+  public void testTracksBatchCountAndByteSize() {
+    MutationBatch batch1 = addMutationBatch();
+    assertEquals(1, mutationQueue.getBatchCount());
+    long batch1ByteSize = mutationQueue.getBatchesByteSize();
+
+    MutationBatch batch2 = addMutationBatch();
+    assertEquals(2, mutationQueue.getBatchCount());
+    long totalByteSize = mutationQueue.getBatchesByteSize();
+
+    removeMutationBatches(batch1);
+    assertEquals(1, mutationQueue.getBatchCount());
+    assertEquals(totalByteSize - batch1ByteSize, mutationQueue.getBatchesByteSize());
+
+    removeMutationBatches(batch2);
+    assertEquals(0, mutationQueue.getBatchCount());
+    assertEquals(0, mutationQueue.getBatchesByteSize());
+  }
+
   @Test
   public void testAcknowledgeThenRemove() {
     MutationBatch batch1 = addMutationBatch();
@@ -333,6 +353,66 @@ public abstract class MutationQueueTestCase {
     assertEquals(expected, matches);
   }
 
+  @Test
+  public void testAllMutationBatchesAffectingCollections() {
+    List<Mutation> mutations =
+        asList(
+            setMutation("foo/bar", map("a", 1)),
+            setMutation("rooms/a/messages/1", map("a", 1)),
+            setMutation("rooms/a/messages/1/replies/1", map("a", 1)),
+            setMutation("rooms/a/other/1", map("a", 1)),
+            setMutation("rooms/b/messages/1", map("a", 1)),
+            patchMutation("rooms/a/messages/2", map("b", 1)),
+            setMutation("rooms/c/messages/1", map("a", 1)));
+
+    // Store all the mutations.
+    List<MutationBatch> batches = new ArrayList<>();
+    persistence.runTransaction(
+        "New mutation batch",
+        () -> {
+          for (Mutation mutation : mutations) {
+            batches.add(
+                mutationQueue.addMutationBatch(
+                    Timestamp.now(), Collections.emptyList(), asList(mutation)));
+          }
+        });
+
+    List<MutationBatch> expected = asList(batches.get(1), batches.get(4), batches.get(5));
+
+    List<MutationBatch> matches =
+        mutationQueue.getAllMutationBatchesAffectingCollections(
+            asList(path("rooms/b/messages"), path("rooms/a/messages")));
+
+    assertEquals(expected, matches);
+  }
+
+  @Test
+  public void testAllMutationBatchesAffectingManyCollections() {
+    // Use more collections than fit into a single SQLite statement.
+    int collectionCount = 1000;
+    List<MutationBatch> batches = new ArrayList<>();
+    List<ResourcePath> collectionPaths = new ArrayList<>();
+    persistence.runTransaction(
+        "New mutation batch",
+        () -> {
+          for (int i = 0; i < collectionCount; ++i) {
+            batches.add(
+                mutationQueue.addMutationBatch(
+                    Timestamp.now(),
+                    Collections.emptyList(),
+                    asList(setMutation("rooms/" + i + "/messages/1", map("a", i)))));
+            collectionPaths.add(path("rooms/" + i + "/messages"));
+          }
+        });
+
+    // Look up the collections in reverse so that the results are not sorted by batch ID.
+    Collections.reverse(collectionPaths);
+    List<MutationBatch> matches =
+        mutationQueue.getAllMutationBatchesAffectingCollections(collectionPaths);
+
+    assertEquals(batches, matches);
+  }
+
   @Test
   public void testRemoveMutationBatches() {
     List<MutationBatch> batches = createBatches(10);
@@ -149,6 +149,19 @@ public abstract class QueryCacheTestCase {
     assertNull(result);
   }
 
+  @Test
+  public void testTracksByteSizeOfTargets() {
+    QueryData rooms = newQueryData(query("rooms"), 1, 1);
+    addQueryData(rooms);
+    long byteSize = queryCache.getTargetsByteSize();
+
+    QueryData halls = newQueryData(query("halls"), 2, 1);
+    addQueryData(halls);
+    removeQueryData(halls);
+
+    assertEquals(byteSize, queryCache.getTargetsByteSize());
+  }
+
   @Test
   public void testRemoveNonExistentQuery() {
     // no-op, but make sure it doesn't throw.
@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.docSet;
+import static com.google.firebase.firestore.testutil.TestUtil.docUpdates;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentSet;
+import com.google.firebase.firestore.model.MaybeDocument;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class QueryResultCacheTest {
+  private final Query query = query("coll").filter(filter("matches", "==", true));
+  private final Document doc1 = doc("coll/doc1", 1, map("matches", true));
+  private final Document doc2 = doc("coll/doc2", 1, map("matches", true));
+  private final DocumentSet result = docSet(query.comparator(), doc1, doc2);
+
+  @Test
+  public void testReturnsCachedResults() {
+    QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    assertNull(cache.get(query));
+
+    cache.put(query, result);
+    assertSame(result, cache.get(query));
+    assertSame(result, cache.get(query("coll").filter(filter("matches", "==", true))));
+    assertNull(cache.get(query("coll")));
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testInvalidatesResultsContainingChangedDocuments() {
+    QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    cache.put(query, result);
+
+    cache.invalidate(docUpdates((MaybeDocument) doc("coll/doc1", 2, map("matches", false))));
+    assertNull(cache.get(query));
+
+    cache.put(query, result);
+    cache.invalidate(docUpdates(deletedDoc("coll/doc2", 2)));
+    assertNull(cache.get(query));
+
+    assertEquals(2, cache.getInvalidationCount());
+    assertEquals(0, cache.getByteSize());
+  }
+
+  @Test
+  public void testInvalidatesResultsWhoseQueryMatchesChangedDocuments() {
+    QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    cache.put(query, result);
+
+    cache.invalidate(docUpdates((MaybeDocument) doc("coll/doc3", 1, map("matches", true))));
+    assertNull(cache.get(query));
+  }
+
+  @Test
+  public void testKeepsResultsForUnrelatedChanges() {
+    QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    cache.put(query, result);
+
+    cache.invalidate(
+        docUpdates(
+            doc("coll/doc3", 1, map("matches", false)),
+            doc("other/doc1", 1, map("matches", true)),
+            deletedDoc("coll/doc4", 1)));
+    assertSame(result, cache.get(query));
+    assertEquals(0, cache.getInvalidationCount());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedResults() {
+    Query otherQuery = query("other");
+    Query thirdQuery = query("third");
+    DocumentSet emptyResult = DocumentSet.emptySet(Document.keyComparator());
+
+    QueryResultCache unbounded = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    unbounded.put(query, result);
+    unbounded.put(otherQuery, emptyResult);
+    long bound = unbounded.getByteSize();
+
+    QueryResultCache cache = new QueryResultCache(bound);
+    cache.put(query, result);
+    cache.put(otherQuery, emptyResult);
+    // Reading the first result makes the second one the least recently used.
+    cache.get(query);
+    cache.put(thirdQuery, emptyResult);
+
+    assertSame(result, cache.get(query));
+    assertNull(cache.get(otherQuery));
+    assertSame(emptyResult, cache.get(thirdQuery));
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testDoesNotCacheResultsLargerThanTheBound() {
+    QueryResultCache cache = new QueryResultCache(10);
+    cache.put(query, result);
+    assertNull(cache.get(query));
+    assertEquals(0, cache.getByteSize());
+
+    QueryResultCache disabled = new QueryResultCache(QueryResultCache.DISABLED);
+    disabled.put(query("coll"), DocumentSet.emptySet(Document.keyComparator()));
+    assertNull(disabled.get(query("coll")));
+  }
+
+  @Test
+  public void testInvalidateAll() {
+    QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_BYTE_SIZE);
+    cache.put(query, result);
+    cache.put(query("other"), DocumentSet.emptySet(Document.keyComparator()));
+
+    cache.invalidateAll();
+    assertNull(cache.get(query));
+    assertNull(cache.get(query("other")));
+    assertEquals(2, cache.getInvalidationCount());
+  }
+}
@@ -33,6 +33,7 @@ import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MaybeDocument;
 import com.google.firebase.firestore.model.NoDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -165,6 +166,24 @@ abstract class RemoteDocumentCacheTestCase {
     assertDoesNotThrow(() -> remove("a/b"));
   }
 
+  @Test
+  public void testCountsDocuments() {
+    addTestDocumentAtPath("a/1");
+    assertEquals(1, remoteDocumentCache.getDocumentCount());
+    long byteSize = remoteDocumentCache.getDocumentsByteSize();
+
+    addTestDocumentAtPath("a/2");
+    addTestDocumentAtPath("a/1");
+    add(deletedDoc("a/3", 42), version(42));
+    assertEquals(3, remoteDocumentCache.getDocumentCount());
+
+    remove("a/2");
+    remove("a/3");
+    remove("a/4");
+    assertEquals(1, remoteDocumentCache.getDocumentCount());
+    assertEquals(byteSize, remoteDocumentCache.getDocumentsByteSize());
+  }
+
   @Test
   public void testDocumentsMatchingQuery() {
     // TODO: This just verifies that we do a prefix scan against the
@@ -209,6 +228,83 @@ abstract class RemoteDocumentCacheTestCase {
     assertEquals(expected, values(results));
   }
 
+  @Test
+  public void testDocumentsMatchingCollectionGroupQuery() {
+    Map<String, Object> docData = map("data", 2);
+    addTestDocumentAtPath("messages/1");
+    addTestDocumentAtPath("rooms/a/messages/1");
+    addTestDocumentAtPath("rooms/a/messages/1/messages/2");
+    addTestDocumentAtPath("rooms/a/messages/1/replies/1");
+    addTestDocumentAtPath("rooms/b/messages/1");
+    addTestDocumentAtPath("rooms/b/other/1");
+    addTestDocumentAtPath("rooms/c/messages/1");
+
+    Query query = new Query(ResourcePath.EMPTY, "messages");
+    ImmutableSortedMap<DocumentKey, Document> results =
+        remoteDocumentCache.getAllDocumentsMatchingCollectionGroupQuery(
+            query,
+            asList(path("messages"), path("rooms/a/messages"), path("rooms/b/messages")),
+            SnapshotVersion.NONE);
+    List<Document> expected =
+        asList(
+            doc("messages/1", 42, docData),
+            doc("rooms/a/messages/1", 42, docData),
+            doc("rooms/b/messages/1", 42, docData));
+    assertEquals(expected, values(results));
+  }
+
+  @Test
+  public void testDocumentsMatchingCollectionGroupQueryWithManyCollections() {
+    List<ResourcePath> collectionPaths = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      collectionPaths.add(path("users/" + i + "/orders"));
+      if (i % 10 == 0) {
+        addTestDocumentAtPath("users/" + i + "/orders/1");
+      }
+    }
+
+    Query query = new Query(ResourcePath.EMPTY, "orders");
+    ImmutableSortedMap<DocumentKey, Document> results =
+        remoteDocumentCache.getAllDocumentsMatchingCollectionGroupQuery(
+            query, collectionPaths, SnapshotVersion.NONE);
+    assertEquals(100, results.size());
+  }
+
+  @Test
+  public void testDocumentsMatchingCollectionGroupQueryWithManyNestedCollections() {
+    // "c/450/c/1" lies in the path range of both "c" and "c/450/c", which end up in different
+    // batches of collections on SQLite.
+    List<ResourcePath> collectionPaths = new ArrayList<>();
+    collectionPaths.add(path("c"));
+    for (int i = 0; i < 500; ++i) {
+      collectionPaths.add(path("c/" + i + "/c"));
+    }
+    addTestDocumentAtPath("c/1");
+    addTestDocumentAtPath("c/450/c/1");
+    addTestDocumentAtPath("c/450/c/1/c/2");
+
+    Query query = new Query(ResourcePath.EMPTY, "c");
+    ImmutableSortedMap<DocumentKey, Document> results =
+        remoteDocumentCache.getAllDocumentsMatchingCollectionGroupQuery(
+            query, collectionPaths, SnapshotVersion.NONE);
+    List<Document> expected =
+        asList(doc("c/1", 42, map("data", 2)), doc("c/450/c/1", 42, map("data", 2)));
+    assertEquals(expected, values(results));
+  }
+
+  @Test
+  public void testDocumentsMatchingCollectionGroupQuerySinceReadTime() {
+    Map<String, Object> docData = map("data", 2);
+    addTestDocumentAtPath("a/1/messages/old", /* updateTime= */ 1, /* readTime= */ 11);
+    addTestDocumentAtPath("b/1/messages/new", /* updateTime= */ 2, /* readTime= */ 13);
+
+    Query query = new Query(ResourcePath.EMPTY, "messages");
+    ImmutableSortedMap<DocumentKey, Document> results =
+        remoteDocumentCache.getAllDocumentsMatchingCollectionGroupQuery(
+            query, asList(path("a/1/messages"), path("b/1/messages")), version(12));
+    assertEquals(asList(doc("b/1/messages/new", 2, docData)), values(results));
+  }
+
   private Document addTestDocumentAtPath(String path) {
     return addTestDocumentAtPath(path, 42, 42);
   }
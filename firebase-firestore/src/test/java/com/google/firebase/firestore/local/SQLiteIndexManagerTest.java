@@ -14,6 +14,12 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.testutil.TestUtil.path;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -25,4 +31,54 @@ public class SQLiteIndexManagerTest extends IndexManagerTestCase {
   Persistence getPersistence() {
     return PersistenceTestHelpers.createSQLitePersistence();
   }
+
+  @Test
+  public void testReadsEntriesWrittenByOtherInstances() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    SQLiteIndexManager writer = new SQLiteIndexManager(persistence);
+    SQLiteIndexManager reader = new SQLiteIndexManager(persistence);
+
+    persistence.runTransaction(
+        "add entry", () -> writer.addToCollectionParentIndex(path("rooms/foo/messages")));
+    assertEquals(
+        Collections.singletonList(path("rooms/foo")), reader.getCollectionParents("messages"));
+
+    // Entries that the reader writes itself are added to its cache.
+    persistence.runTransaction(
+        "add entry", () -> reader.addToCollectionParentIndex(path("rooms/bar/messages")));
+    assertEquals(2, reader.getCollectionParents("messages").size());
+
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testRollbackRemovesCachedEntries() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    IndexManager indexManager = persistence.getIndexManager();
+    persistence.runTransaction(
+        "add entry", () -> indexManager.addToCollectionParentIndex(path("rooms/foo/messages")));
+
+    try {
+      persistence.runTransaction(
+          "failing transaction",
+          () -> {
+            indexManager.addToCollectionParentIndex(path("rooms/bar/messages"));
+            throw new IllegalStateException("Transaction failed");
+          });
+      fail("Expected the transaction to fail");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    assertEquals(
+        Collections.singletonList(path("rooms/foo")),
+        indexManager.getCollectionParents("messages"));
+
+    // The discarded entry is written again when it is added again.
+    persistence.runTransaction(
+        "add entry", () -> indexManager.addToCollectionParentIndex(path("rooms/bar/messages")));
+    SQLiteIndexManager reader = new SQLiteIndexManager(persistence);
+    assertEquals(2, reader.getCollectionParents("messages").size());
+
+    persistence.shutdown();
+  }
 }
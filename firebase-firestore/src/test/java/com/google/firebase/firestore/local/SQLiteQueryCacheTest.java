@@ -15,9 +15,15 @@
 package com.google.firebase.firestore.local;
 
 import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.resumeToken;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import android.util.SparseArray;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.SnapshotVersion;
@@ -72,4 +78,126 @@ public final class SQLiteQueryCacheTest extends QueryCacheTestCase {
     assertEquals(1, queryCache2.getTargetCount());
     db2.shutdown();
   }
+
+  @Test
+  public void testDefersSequenceNumberOnlyUpdates() {
+    String name = "test-queryCache-sequenceNumbers";
+
+    SQLitePersistence db1 = PersistenceTestHelpers.createSQLitePersistence(name);
+    SQLiteQueryCache queryCache1 = db1.getQueryCache();
+    QueryData queryData = new QueryData(query("rooms"), 1, 10, QueryPurpose.LISTEN);
+    QueryData released = queryData.withSequenceNumber(20);
+    db1.runTransaction(
+        "add and release query data",
+        () -> {
+          queryCache1.addQueryData(queryData);
+          queryCache1.updateQueryData(released);
+        });
+
+    assertEquals(released, queryCache1.getQueryData(query("rooms")));
+    assertEquals(10, readSequenceNumber(db1, 1));
+
+    // A change to the target itself is written right away.
+    QueryData resumed = released.withSequenceNumber(30).withResumeToken(resumeToken(1), version(1));
+    db1.runTransaction("update query data", () -> queryCache1.updateQueryData(resumed));
+    assertEquals(30, readSequenceNumber(db1, 1));
+
+    db1.runTransaction(
+        "release query data", () -> queryCache1.updateQueryData(resumed.withSequenceNumber(40)));
+    assertEquals(30, readSequenceNumber(db1, 1));
+
+    // Pending sequence numbers are written on shutdown.
+    db1.shutdown();
+
+    SQLitePersistence db2 = PersistenceTestHelpers.createSQLitePersistence(name);
+    assertEquals(40, readSequenceNumber(db2, 1));
+    assertEquals(resumed.withSequenceNumber(40), db2.getQueryCache().getQueryData(query("rooms")));
+    db2.shutdown();
+  }
+
+  @Test
+  public void testRemoveQueriesUsesPendingSequenceNumbers() {
+    SQLitePersistence db = (SQLitePersistence) persistence;
+    SQLiteQueryCache queryCache = db.getQueryCache();
+    QueryData rooms = new QueryData(query("rooms"), 1, 10, QueryPurpose.LISTEN);
+    QueryData halls = new QueryData(query("halls"), 2, 10, QueryPurpose.LISTEN);
+    db.runTransaction(
+        "add query data",
+        () -> {
+          queryCache.addQueryData(rooms);
+          queryCache.addQueryData(halls);
+          queryCache.updateQueryData(rooms.withSequenceNumber(20));
+        });
+
+    int removed =
+        db.runTransaction(
+            "remove queries", () -> queryCache.removeQueries(15, new SparseArray<>()));
+
+    assertEquals(1, removed);
+    assertEquals(rooms.withSequenceNumber(20), queryCache.getQueryData(query("rooms")));
+    assertNull(queryCache.getQueryData(query("halls")));
+    assertEquals(20, readSequenceNumber(db, 1));
+  }
+
+  @Test
+  public void testRollbackRestoresCachedTargets() {
+    SQLitePersistence db = (SQLitePersistence) persistence;
+    SQLiteQueryCache queryCache = db.getQueryCache();
+    QueryData rooms = new QueryData(query("rooms"), 1, 10, QueryPurpose.LISTEN);
+    db.runTransaction("add query data", () -> queryCache.addQueryData(rooms));
+
+    runFailingTransaction(
+        db,
+        () -> {
+          queryCache.addQueryData(new QueryData(query("halls"), 2, 20, QueryPurpose.LISTEN));
+          queryCache.removeQueryData(rooms);
+        });
+
+    assertEquals(rooms, queryCache.getQueryData(query("rooms")));
+    assertNull(queryCache.getQueryData(query("halls")));
+    assertEquals(1, queryCache.getHighestTargetId());
+    assertEquals(10, queryCache.getHighestListenSequenceNumber());
+    assertEquals(1, queryCache.getTargetCount());
+  }
+
+  @Test
+  public void testFailedWriteKeepsPendingSequenceNumbers() {
+    SQLitePersistence db = (SQLitePersistence) persistence;
+    SQLiteQueryCache queryCache = db.getQueryCache();
+    QueryData rooms = new QueryData(query("rooms"), 1, 10, QueryPurpose.LISTEN);
+    db.runTransaction(
+        "add and release query data",
+        () -> {
+          queryCache.addQueryData(rooms);
+          queryCache.updateQueryData(rooms.withSequenceNumber(20));
+        });
+
+    runFailingTransaction(db, queryCache::writePendingSequenceNumbers);
+    assertTrue(queryCache.hasPendingSequenceNumbers());
+    assertEquals(10, readSequenceNumber(db, 1));
+
+    db.runTransaction("write sequence numbers", queryCache::writePendingSequenceNumbers);
+    assertFalse(queryCache.hasPendingSequenceNumbers());
+    assertEquals(20, readSequenceNumber(db, 1));
+  }
+
+  private static void runFailingTransaction(SQLitePersistence db, Runnable operation) {
+    try {
+      db.runTransaction(
+          "failing transaction",
+          () -> {
+            operation.run();
+            throw new IllegalStateException("Transaction failed");
+          });
+      fail("Expected the transaction to fail");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  private static long readSequenceNumber(SQLitePersistence db, int targetId) {
+    return db.query("SELECT last_listen_sequence_number FROM targets WHERE target_id = ?")
+        .binding(targetId)
+        .firstValue(row -> row.getLong(0));
+  }
 }
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.firebase.firestore.model.value.FieldValue;
@@ -126,6 +127,30 @@ public class DocumentSetTest {
     assertEquals(Arrays.asList(DOC3, DOC1, doc2Prime), set.toList());
   }
 
+  @Test
+  public void testBuilderAppliesAllChanges() {
+    DocumentSet set = docSet(TEST_COMPARATOR, DOC1, DOC2, DOC3);
+    Document doc1Prime = doc("docs/1", 1, map("sort", 2, "other", true));
+    Document doc2Prime = doc("docs/2", 0, map("sort", 9));
+    Document doc4 = doc("docs/4", 0, map("sort", 0));
+
+    DocumentSet built =
+        set.toBuilder()
+            .add(doc2Prime)
+            .remove(DOC3.getKey())
+            .add(doc4)
+            .add(doc1Prime)
+            .remove(doc4.getKey())
+            .build();
+    assertEquals(Arrays.asList(doc1Prime, doc2Prime), built.toList());
+    assertEquals(doc1Prime, built.getDocument(DOC1.getKey()));
+    assertFalse(built.contains(doc4.getKey()));
+
+    // Original remains unchanged
+    assertEquals(Arrays.asList(DOC3, DOC1, DOC2), set.toList());
+    assertSame(set, set.toBuilder().remove(doc4.getKey()).build());
+  }
+
   @Test
   public void testAddsDocsWithEqualComparisonValues() {
     Document doc1 = doc("docs/1", 0, map("sort", 2));
@@ -23,6 +23,7 @@ import static com.google.firebase.firestore.testutil.TestUtil.wrapObject;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.google.firebase.firestore.model.value.ObjectValue;
 import java.util.Map;
@@ -79,4 +80,21 @@ public class DocumentTest {
     assertNotEquals(doc1, doc(key1, 2, data1));
     assertNotEquals(doc1, doc(key1, 1, data1, Document.DocumentState.LOCAL_MUTATIONS));
   }
+
+  @Test
+  public void testHasSameData() {
+    Document doc = doc("messages/first", 1, map("a", 1, "b", map("c", true)));
+
+    assertTrue(doc.hasSameData(doc("messages/first", 2, map("a", 1, "b", map("c", true)))));
+    assertFalse(doc.hasSameData(doc("messages/first", 2, map("a", 1, "b", map("c", false)))));
+    assertFalse(
+        doc.hasSameData(
+            doc("messages/first", 1, map("a", 2), Document.DocumentState.LOCAL_MUTATIONS)));
+    assertFalse(
+        doc.hasSameData(
+            doc("messages/first", 1, map("a", 2), Document.DocumentState.COMMITTED_MUTATIONS)));
+
+    // Watch never sends different data for the same update time.
+    assertTrue(doc.hasSameData(doc("messages/first", 1, map("a", 2))));
+  }
 }
@@ -37,6 +37,7 @@ import com.google.firebase.firestore.model.value.BooleanValue;
 import com.google.firebase.firestore.model.value.DoubleValue;
 import com.google.firebase.firestore.model.value.FieldValue;
 import com.google.firebase.firestore.model.value.GeoPointValue;
+import com.google.firebase.firestore.model.value.IndexValueEncoder;
 import com.google.firebase.firestore.model.value.IntegerValue;
 import com.google.firebase.firestore.model.value.NullValue;
 import com.google.firebase.firestore.model.value.ObjectValue;
@@ -47,7 +48,9 @@ import com.google.firebase.firestore.model.value.TimestampValue;
 import com.google.firebase.firestore.testutil.ComparatorTester;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
@@ -260,10 +263,42 @@ public class FieldValueTest {
 
   @Test
   public void testValueOrdering() {
-    new ComparatorTester()
-        // do not test for compatibility with equals(): +0/-0 break it.
-        .permitInconsistencyWithEquals()
+    // do not test for compatibility with equals(): +0/-0 break it.
+    addValuesInOrder(new ComparatorTester().permitInconsistencyWithEquals()).testCompare();
+  }
+
+  @Test
+  public void testEncodedValueOrdering() {
+    Comparator<FieldValue> encodedComparator =
+        (left, right) ->
+            IndexValueEncoder.compare(
+                IndexValueEncoder.encode(left), IndexValueEncoder.encode(right));
+    addValuesInOrder(new ComparatorTester(encodedComparator)).testCompare();
+  }
+
+  @Test
+  public void testEncodesMultipleValuesInDescendingOrder() {
+    List<List<Object>> valuesInOrder =
+        Arrays.asList(
+            Arrays.asList("b", 1L),
+            Arrays.asList("b", 0L),
+            Arrays.asList("ab", 2L),
+            Arrays.asList("a", 1L),
+            Arrays.asList("a", 0.5));
+    Comparator<byte[]> bytesComparator = IndexValueEncoder::compare;
+    ComparatorTester tester = new ComparatorTester(bytesComparator);
+    for (List<Object> values : valuesInOrder) {
+      IndexValueEncoder encoder = new IndexValueEncoder();
+      for (Object value : values) {
+        encoder.writeValue(wrap(value), /* descending= */ true);
+      }
+      tester.addEqualityGroup((Object) encoder.toByteArray());
+    }
+    tester.testCompare();
+  }
 
+  private ComparatorTester addValuesInOrder(ComparatorTester tester) {
+    return tester
         // null first
         .addEqualityGroup(wrap(null))
 
@@ -353,7 +388,6 @@ public class FieldValueTest {
         .addEqualityGroup(wrapObject(map("bar", 0, "foo", 1)))
         .addEqualityGroup(wrapObject(map("foo", 1)))
         .addEqualityGroup(wrapObject(map("foo", 2)))
-        .addEqualityGroup(wrapObject(map("foo", "0")))
-        .testCompare();
+        .addEqualityGroup(wrapObject(map("foo", "0")));
   }
 }
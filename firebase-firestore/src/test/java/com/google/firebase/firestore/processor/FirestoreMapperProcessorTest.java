@@ -0,0 +1,153 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FirestoreMapperProcessorTest {
+
+  /**
+   * Runs the processor over the given sources. They are compiled against the real Firestore
+   * classes on the test classpath, so the generated mappers must compile against them as well.
+   */
+  private static Compilation compile(JavaFileObject... sources) {
+    return javac().withProcessors(new FirestoreMapperProcessor()).compile(sources);
+  }
+
+  @Test
+  public void generatesMapperForAnnotatedClass() throws IOException {
+    Compilation compilation =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.City",
+                "package com.example;",
+                "import com.google.firebase.firestore.DocumentId;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "import com.google.firebase.firestore.PropertyName;",
+                "import com.google.firebase.firestore.ServerTimestamp;",
+                "import java.util.Date;",
+                "import java.util.List;",
+                "@IgnoreExtraProperties",
+                "public class City {",
+                "  @DocumentId public String id;",
+                "  public String name;",
+                "  public List<String> tags;",
+                "  @ServerTimestamp public Date updated;",
+                "  @PropertyName(\"zip_code\") public String zipCode;",
+                "  private long population;",
+                "  public long getPopulation() { return population; }",
+                "  public void setPopulation(long population) { this.population = population; }",
+                "}"));
+
+    assertThat(compilation).succeeded();
+    String source =
+        compilation
+            .generatedSourceFile("com.example.City_FirestoreMapper")
+            .get()
+            .getCharContent(false)
+            .toString();
+    assertThat(source).contains("instance.setPopulation(");
+    assertThat(source).contains("deserializePrimitive(\"population\", value, long.class)");
+    assertThat(source).contains("fieldType(com.example.City.class, \"tags\")");
+    assertThat(source).contains("case \"zip_code\":");
+    assertThat(source).contains("FieldValue.serverTimestamp()");
+    assertThat(source).doesNotContain("result.put(\"id\"");
+  }
+
+  @Test
+  public void generatesMapperForStaticNestedClassWithDocumentId() {
+    Compilation compilation =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Outer",
+                "package com.example;",
+                "import com.google.firebase.firestore.DocumentId;",
+                "import com.google.firebase.firestore.DocumentReference;",
+                "public class Outer {",
+                "  static class Inner {",
+                "    public String value;",
+                "    @DocumentId public DocumentReference ref;",
+                "  }",
+                "}"));
+
+    assertThat(compilation).succeeded();
+    assertThat(compilation).generatedSourceFile("com.example.Outer_Inner_FirestoreMapper");
+  }
+
+  @Test
+  public void skipsClassesThatNeedReflection() {
+    Compilation compilation =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Beans",
+                "package com.example;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "public class Beans {",
+                "  @IgnoreExtraProperties",
+                "  public static class Generic<T> { public T value; }",
+                "  @IgnoreExtraProperties",
+                "  private static class Hidden { public String value; }",
+                "  @IgnoreExtraProperties",
+                "  public static class Base { public String value; }",
+                "  @IgnoreExtraProperties",
+                "  public static class Derived extends Base { public String other; }",
+                "  @IgnoreExtraProperties",
+                "  public static class NoConstructor {",
+                "    public String value;",
+                "    public NoConstructor(String value) { this.value = value; }",
+                "  }",
+                "  @IgnoreExtraProperties",
+                "  public static class PrivateFieldWithoutSetter {",
+                "    private String value;",
+                "    public String getValue() { return value; }",
+                "  }",
+                "  @IgnoreExtraProperties",
+                "  public static class ConflictingCase {",
+                "    public String value;",
+                "    public String Value;",
+                "  }",
+                "}"));
+
+    assertThat(compilation).succeeded();
+    assertThat(compilation).generatedSourceFile("com.example.Beans_Base_FirestoreMapper");
+    for (String name :
+        Arrays.asList(
+            "Generic",
+            "Hidden",
+            "Derived",
+            "NoConstructor",
+            "PrivateFieldWithoutSetter",
+            "ConflictingCase")) {
+      assertThat(compilation).hadNoteContaining("com.example.Beans." + name + " via reflection");
+      assertThat(
+              compilation
+                  .generatedSourceFile("com.example.Beans_" + name + "_FirestoreMapper")
+                  .isPresent())
+          .isFalse();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BloomFilterTest {
+  private static final String DOC_A = "projects/project/databases/(default)/documents/coll/a";
+  private static final String DOC_B = "projects/project/databases/(default)/documents/coll/b";
+
+  @Test
+  public void emptyBloomFilterContainsNothing() {
+    BloomFilter bloomFilter = new BloomFilter(ByteString.EMPTY, 0, 0);
+    assertEquals(0, bloomFilter.getBitCount());
+    assertFalse(bloomFilter.mightContain(DOC_A));
+    assertFalse(bloomFilter.mightContain(""));
+  }
+
+  @Test
+  public void computesBitCountFromPadding() {
+    assertEquals(8, new BloomFilter(ByteString.copyFrom(new byte[1]), 0, 1).getBitCount());
+    assertEquals(1, new BloomFilter(ByteString.copyFrom(new byte[1]), 7, 1).getBitCount());
+    assertEquals(61, new BloomFilter(ByteString.copyFrom(new byte[8]), 3, 1).getBitCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativePadding() {
+    new BloomFilter(ByteString.copyFrom(new byte[1]), -1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPaddingOfEightOrMore() {
+    new BloomFilter(ByteString.copyFrom(new byte[1]), 8, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPaddingForEmptyBitmap() {
+    new BloomFilter(ByteString.EMPTY, 1, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroHashCountForNonEmptyBitmap() {
+    new BloomFilter(ByteString.copyFrom(new byte[1]), 0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeHashCount() {
+    new BloomFilter(ByteString.EMPTY, 0, -1);
+  }
+
+  @Test
+  public void encodesBitsLikeTheBackend() {
+    // Expected bitmaps computed independently from the MD5 based hashing scheme described in
+    // bloom_filter.proto.
+    BloomFilter single = BloomFilter.create(Collections.singletonList(DOC_A), 61, 7);
+    assertEquals(
+        ByteString.copyFrom(new byte[] {0, 0, 64, 16, 8, -126, 64, 16}),
+        single.toProto().getBits().getBitmap());
+    assertEquals(3, single.toProto().getBits().getPadding());
+    assertEquals(7, single.toProto().getHashCount());
+
+    BloomFilter both = BloomFilter.create(asList(DOC_A, DOC_B), 61, 7);
+    assertEquals(
+        ByteString.copyFrom(new byte[] {16, 0, 69, 18, -88, -126, 72, 16}),
+        both.toProto().getBits().getBitmap());
+  }
+
+  @Test
+  public void roundTripsThroughProto() {
+    BloomFilter bloomFilter = BloomFilter.create(asList(DOC_A, DOC_B), 61, 7);
+    BloomFilter decoded = BloomFilter.fromProto(bloomFilter.toProto());
+    assertEquals(61, decoded.getBitCount());
+    assertEquals(7, decoded.getHashCount());
+    assertTrue(decoded.mightContain(DOC_A));
+    assertTrue(decoded.mightContain(DOC_B));
+  }
+
+  @Test
+  public void hasNoFalseNegatives() {
+    List<String> names = documentNames("present", 1000);
+    BloomFilter bloomFilter = BloomFilter.create(names, 10000, 7);
+    for (String name : names) {
+      assertTrue(bloomFilter.mightContain(name));
+    }
+  }
+
+  @Test
+  public void falsePositiveRateMatchesEstimate() {
+    List<String> names = documentNames("present", 1000);
+    BloomFilter bloomFilter = BloomFilter.create(names, 10000, 7);
+
+    int falsePositives = 0;
+    List<String> absentNames = documentNames("absent", 10000);
+    for (String name : absentNames) {
+      if (bloomFilter.mightContain(name)) {
+        ++falsePositives;
+      }
+    }
+
+    double estimatedRate = bloomFilter.estimateFalsePositiveRate(names.size());
+    double observedRate = (double) falsePositives / absentNames.size();
+    assertEquals(0.0082, estimatedRate, 0.0005);
+    assertTrue("Observed false positive rate " + observedRate, observedRate < 3 * estimatedRate);
+  }
+
+  private static List<String> documentNames(String collection, int count) {
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      names.add("projects/project/databases/(default)/documents/" + collection + "/" + i);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Compressor;
+import io.grpc.Decompressor;
+import io.grpc.Metadata;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GrpcTrafficStatsTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void countsBytesReportedByStreams() {
+    GrpcTrafficStats stats = new GrpcTrafficStats();
+    ClientStreamTracer tracer =
+        stats
+            .getStreamTracerFactory()
+            .newClientStreamTracer(
+                ClientStreamTracer.StreamInfo.newBuilder()
+                    .setCallOptions(CallOptions.DEFAULT)
+                    .build(),
+                new Metadata());
+    tracer.outboundUncompressedSize(1000);
+    tracer.outboundWireSize(300);
+    tracer.inboundWireSize(200);
+    tracer.inboundUncompressedSize(800);
+    tracer.outboundWireSize(50);
+
+    assertEquals(1000, stats.getOutboundUncompressedBytes());
+    assertEquals(350, stats.getOutboundWireBytes());
+    assertEquals(200, stats.getInboundWireBytes());
+    assertEquals(800, stats.getInboundUncompressedBytes());
+  }
+
+  @Test
+  public void gzipCodecRoundTripsAndRecordsTime() throws IOException {
+    GrpcTrafficStats stats = new GrpcTrafficStats();
+    Compressor compressor =
+        stats.createCompressorRegistry().lookupCompressor(GrpcTrafficStats.GZIP_ENCODING);
+    Decompressor decompressor =
+        stats.createDecompressorRegistry().lookupDecompressor(GrpcTrafficStats.GZIP_ENCODING);
+    assertNotNull(compressor);
+    assertNotNull(decompressor);
+
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append("A text-heavy document field that repeats itself. ");
+    }
+    byte[] message = text.toString().getBytes(UTF_8);
+
+    ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    OutputStream compressing = compressor.compress(wire);
+    compressing.write(message, 0, message.length);
+    compressing.close();
+    assertTrue(wire.size() < message.length / 10);
+
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    InputStream decompressing =
+        decompressor.decompress(new ByteArrayInputStream(wire.toByteArray()));
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = decompressing.read(buffer, 0, buffer.length)) != -1) {
+      decoded.write(buffer, 0, read);
+    }
+    assertArrayEquals(message, decoded.toByteArray());
+
+    assertTrue(stats.getCompressionNanos() > 0);
+    assertTrue(stats.getDecompressionNanos() > 0);
+  }
+
+  @Test
+  public void advertisesOnlyGzip() {
+    GrpcTrafficStats stats = new GrpcTrafficStats();
+    assertEquals(
+        Collections.singleton(GrpcTrafficStats.GZIP_ENCODING),
+        stats.createDecompressorRegistry().getAdvertisedMessageEncodings());
+  }
+}
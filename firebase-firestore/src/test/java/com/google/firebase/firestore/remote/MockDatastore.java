@@ -21,6 +21,7 @@ import com.google.firebase.firestore.auth.EmptyCredentialsProvider;
 import com.google.firebase.firestore.core.DatabaseInfo;
 import com.google.firebase.firestore.local.QueryData;
 import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationResult;
@@ -270,6 +271,27 @@ public class MockDatastore extends Datastore {
     watchStream.writeWatchChange(change, snapshotVersion);
   }
 
+  /**
+   * Injects an existence filter for a target that matches the given documents as though it had come
+   * from the backend. If {@code bloomFilterBitCount} is positive, the filter includes a Bloom filter
+   * of the document names, as computed by the backend.
+   */
+  public void writeExistenceFilter(
+      int targetId, List<DocumentKey> keys, int bloomFilterBitCount, int bloomFilterHashCount) {
+    com.google.firestore.v1.BloomFilter unchangedNames = null;
+    if (bloomFilterBitCount > 0) {
+      List<String> documentNames = new ArrayList<>();
+      for (DocumentKey key : keys) {
+        documentNames.add(serializer.encodeKey(key));
+      }
+      unchangedNames =
+          BloomFilter.create(documentNames, bloomFilterBitCount, bloomFilterHashCount).toProto();
+    }
+    ExistenceFilter filter = new ExistenceFilter(keys.size(), unchangedNames);
+    writeWatchChange(
+        new WatchChange.ExistenceFilterWatchChange(targetId, filter), SnapshotVersion.NONE);
+  }
+
   /** Injects a stream failure as though it had come from the backend. */
   public void failWatchStream(Status status) {
     watchStream.failStream(status);
@@ -489,6 +489,92 @@ public class RemoteEventTest {
     assertEquals(mapping1, event.getTargetChanges().get(1));
   }
 
+  @Test
+  public void testExistenceFilterMismatchWithBloomFilterRemovesOnlyMissingDocuments() {
+    Map<Integer, QueryData> targetMap = activeQueries(1);
+    DocumentKey key1 = key("docs/1");
+    DocumentKey key2 = key("docs/2");
+    DocumentKey key3 = key("docs/3");
+
+    WatchChangeAggregator aggregator =
+        createAggregator(targetMap, noOutstandingResponses, keySet(key1, key2, key3));
+
+    // The backend only has docs/1 and docs/3.
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(1, existenceFilter(key1, key3)));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(3));
+    assertEquals(0, event.getTargetMismatches().size());
+    assertEquals(0, event.getDocumentUpdates().size());
+    TargetChange targetChange = event.getTargetChanges().get(1);
+    assertEquals(keySet(), targetChange.getAddedDocuments());
+    assertEquals(keySet(key2), targetChange.getRemovedDocuments());
+    assertEquals(1, aggregator.getBloomFilterApplicationCount());
+    assertEquals(0, aggregator.getBloomFilterFallbackCount());
+    assertEquals(0.0, aggregator.getObservedBloomFilterFalsePositiveRate(), 0.0);
+  }
+
+  @Test
+  public void testExistenceFilterMismatchWithBloomFilterFalsePositiveClearsTarget() {
+    Map<Integer, QueryData> targetMap = activeQueries(1);
+    DocumentKey key1 = key("docs/1");
+    DocumentKey key2 = key("docs/2");
+
+    WatchChangeAggregator aggregator =
+        createAggregator(targetMap, noOutstandingResponses, keySet(key1, key2));
+
+    // The Bloom filter reports both documents as present (as a false positive would), but the
+    // count says that only one of them exists. The target has to be reset.
+    ExistenceFilter bothPresent = existenceFilter(key1, key2);
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(
+            1, new ExistenceFilter(1, bothPresent.getUnchangedNames())));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(3));
+    assertEquals(1, event.getTargetMismatches().size());
+    assertEquals(keySet(key1, key2), event.getTargetChanges().get(1).getRemovedDocuments());
+    assertEquals(1, aggregator.getBloomFilterApplicationCount());
+    assertEquals(1, aggregator.getBloomFilterFallbackCount());
+    assertEquals(1.0, aggregator.getObservedBloomFilterFalsePositiveRate(), 0.0);
+  }
+
+  @Test
+  public void testExistenceFilterMismatchWithInvalidBloomFilterClearsTarget() {
+    Map<Integer, QueryData> targetMap = activeQueries(1);
+    DocumentKey key1 = key("docs/1");
+    DocumentKey key2 = key("docs/2");
+
+    WatchChangeAggregator aggregator =
+        createAggregator(targetMap, noOutstandingResponses, keySet(key1, key2));
+
+    com.google.firestore.v1.BloomFilter invalidBloomFilter =
+        com.google.firestore.v1.BloomFilter.newBuilder()
+            .setBits(
+                com.google.firestore.v1.BitSequence.newBuilder()
+                    .setBitmap(ByteString.copyFrom(new byte[1]))
+                    .setPadding(9))
+            .setHashCount(1)
+            .build();
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(1, new ExistenceFilter(1, invalidBloomFilter)));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(3));
+    assertEquals(1, event.getTargetMismatches().size());
+    assertEquals(0, aggregator.getBloomFilterApplicationCount());
+  }
+
+  /** Creates an existence filter for the given documents, including a Bloom filter. */
+  private ExistenceFilter existenceFilter(DocumentKey... keys) {
+    RemoteSerializer serializer = new RemoteSerializer(targetMetadataProvider.getDatabaseId());
+    List<String> documentNames = new ArrayList<>();
+    for (DocumentKey key : keys) {
+      documentNames.add(serializer.encodeKey(key));
+    }
+    BloomFilter bloomFilter =
+        BloomFilter.create(documentNames, /* bitCount= */ 100, /* hashCount= */ 5);
+    return new ExistenceFilter(keys.length, bloomFilter.toProto());
+  }
+
   @Test
   public void testDocumentUpdate() {
     Map<Integer, QueryData> targetMap = activeQueries(1);
@@ -55,6 +55,7 @@ import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChangeType;
 import com.google.firebase.firestore.testutil.TestUtil;
 import com.google.firestore.v1.ArrayValue;
+import com.google.firestore.v1.BatchGetDocumentsRequest;
 import com.google.firestore.v1.Cursor;
 import com.google.firestore.v1.Document;
 import com.google.firestore.v1.DocumentChange;
@@ -89,6 +90,7 @@ import com.google.type.LatLng;
 import io.grpc.Status;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -306,6 +308,21 @@ public final class RemoteSerializerTest {
     assertRoundTrip(model, proto, ValueTypeCase.MAP_VALUE);
   }
 
+  @Test
+  public void testEncodesLargeObjects() {
+    // Large enough to be backed by a tree rather than an array once decoded.
+    Map<String, Object> data = new HashMap<>();
+    MapValue.Builder obj = MapValue.newBuilder();
+    for (int i = 0; i < 100; i++) {
+      data.put("field" + i, i);
+      obj.putFields("field" + i, valueBuilder().setIntegerValue(i).build());
+    }
+    FieldValue model = TestUtil.wrapObject(data);
+
+    com.google.firestore.v1.Value proto = valueBuilder().setMapValue(obj).build();
+    assertRoundTrip(model, proto, ValueTypeCase.MAP_VALUE);
+  }
+
   @Test
   public void testEncodeDeleteMutation() {
     Mutation mutation = deleteMutation("docs/1");
@@ -465,6 +482,22 @@ public final class RemoteSerializerTest {
     assertEquals(map("goog-listen-tags", "existence-filter-mismatch"), result);
   }
 
+  @Test
+  public void testEncodesBatchGetDocumentsRequests() {
+    BatchGetDocumentsRequest.Builder expected =
+        BatchGetDocumentsRequest.newBuilder()
+            .setDatabase("projects/p/databases/d")
+            .addDocuments("projects/p/databases/d/documents/docs/1")
+            .addDocuments("projects/p/databases/d/documents/docs/2");
+
+    List<DocumentKey> keys = asList(key("docs/1"), key("docs/2"));
+    assertEquals(expected.build(), serializer.encodeBatchGetDocumentsRequest(keys, null));
+
+    SnapshotVersion readTime = new SnapshotVersion(new com.google.firebase.Timestamp(1, 2));
+    expected.setReadTime(Timestamp.newBuilder().setSeconds(1).setNanos(2));
+    assertEquals(expected.build(), serializer.encodeBatchGetDocumentsRequest(keys, readTime));
+  }
+
   @Test
   public void testEncodesFirstLevelKeyQueries() {
     Query q = Query.atPath(ResourcePath.fromString("docs/1"));
@@ -0,0 +1,243 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.spec;
+
+import static com.google.firebase.firestore.spec.SpecSteps.addSpec;
+import static com.google.firebase.firestore.spec.SpecSteps.event;
+import static com.google.firebase.firestore.spec.SpecSteps.events;
+import static com.google.firebase.firestore.spec.SpecSteps.listen;
+import static com.google.firebase.firestore.spec.SpecSteps.query;
+import static com.google.firebase.firestore.spec.SpecSteps.target;
+import static com.google.firebase.firestore.spec.SpecSteps.unlisten;
+import static com.google.firebase.firestore.spec.SpecSteps.watchAck;
+import static com.google.firebase.firestore.spec.SpecSteps.watchCurrent;
+import static com.google.firebase.firestore.spec.SpecSteps.watchEntity;
+import static com.google.firebase.firestore.spec.SpecSteps.watchRemove;
+import static com.google.firebase.firestore.spec.SpecSteps.watchReset;
+import static com.google.firebase.firestore.spec.SpecSteps.watchSnapshot;
+
+import io.grpc.Status;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Generates the spec tests for the limit on concurrent limbo resolutions and for the limbo
+ * resolution metrics. Both are specific to this SDK, so the tests are not part of the JSON spec
+ * files, which are shared with the other SDKs.
+ *
+ * <p>All tests listen to a query for "collection", which gets target ID 2, and put its documents in
+ * limbo by resetting the target. The sync engine assigns odd target IDs to the limbo resolutions,
+ * in the order in which they start.
+ */
+final class LimboSpecs {
+  private static final String DESCRIBE_NAME = "Limbo Documents:";
+
+  private LimboSpecs() {}
+
+  /** Returns the tests, keyed by their names like in a spec file. */
+  static JSONObject create() throws JSONException {
+    JSONObject specs = new JSONObject();
+    addSpec(
+        specs,
+        DESCRIBE_NAME,
+        "Limbo resolutions are throttled to the configured maximum",
+        new JSONArray(),
+        new JSONObject().put("maxConcurrentLimboResolutions", 2),
+        throttleResolutions());
+    addSpec(
+        specs,
+        DESCRIBE_NAME,
+        "Rejected limbo resolutions free a slot and are counted separately",
+        new JSONArray(),
+        new JSONObject().put("maxConcurrentLimboResolutions", 1),
+        rejectResolution());
+    addSpec(
+        specs,
+        DESCRIBE_NAME,
+        "Limbo resolutions that are stopped before they complete are not counted",
+        new JSONArray(),
+        new JSONObject(),
+        stopResolution());
+    return specs;
+  }
+
+  /** Puts three documents in limbo with room for two resolutions, and resolves them. */
+  private static JSONArray throttleResolutions() throws JSONException {
+    JSONArray steps = putInLimbo(docs("a", "b", "c"));
+    steps.put(
+        watchSnapshot(1001)
+            .put(
+                "expectedState",
+                limboState(
+                    keys("a", "b"),
+                    keys("c"),
+                    activeTargets().put("1", limboTarget("a")).put("3", limboTarget("b"))))
+            .put("expectedSnapshotEvents", events(event(collectionQuery(), true))));
+
+    // Resolving the first document starts the resolution of the enqueued one.
+    steps.put(watchAck(ids(1)));
+    steps.put(watchCurrent(ids(1), "resume-token-1002"));
+    steps.put(
+        watchSnapshot(1002)
+            .put(
+                "expectedState",
+                limboState(
+                    keys("b", "c"),
+                    keys(),
+                    activeTargets().put("3", limboTarget("b")).put("5", limboTarget("c"))))
+            .put(
+                "expectedSnapshotEvents",
+                events(event(collectionQuery(), "removed", docs("a"), true))));
+
+    steps.put(watchAck(ids(3)));
+    steps.put(watchAck(ids(5)));
+    steps.put(watchCurrent(ids(3, 5), "resume-token-1003"));
+    steps.put(
+        watchSnapshot(1003)
+            .put(
+                "expectedState",
+                limboState(keys(), keys(), activeTargets())
+                    .put("limboResolutionCounts", counts(3, 0)))
+            .put(
+                "expectedSnapshotEvents",
+                events(event(collectionQuery(), "removed", docs("b", "c"), false))));
+    return steps;
+  }
+
+  /**
+   * Puts two documents in limbo with room for one resolution, and rejects the resolution of the
+   * first one.
+   */
+  private static JSONArray rejectResolution() throws JSONException {
+    JSONArray steps = putInLimbo(docs("a", "b"));
+    steps.put(
+        watchSnapshot(1001)
+            .put(
+                "expectedState",
+                limboState(keys("a"), keys("b"), activeTargets().put("1", limboTarget("a"))))
+            .put("expectedSnapshotEvents", events(event(collectionQuery(), true))));
+
+    // The rejected document is removed from the view, and the enqueued one takes its slot.
+    steps.put(
+        watchRemove(ids(1), Status.Code.PERMISSION_DENIED.value())
+            .put(
+                "expectedState",
+                limboState(keys("b"), keys(), activeTargets().put("3", limboTarget("b")))
+                    .put("limboResolutionCounts", counts(0, 1)))
+            .put(
+                "expectedSnapshotEvents",
+                events(event(collectionQuery(), "removed", docs("a"), true))));
+
+    steps.put(watchAck(ids(3)));
+    steps.put(watchCurrent(ids(3), "resume-token-1002"));
+    steps.put(
+        watchSnapshot(1002)
+            .put(
+                "expectedState",
+                limboState(keys(), keys(), activeTargets())
+                    .put("limboResolutionCounts", counts(1, 1)))
+            .put(
+                "expectedSnapshotEvents",
+                events(event(collectionQuery(), "removed", docs("b"), false))));
+    return steps;
+  }
+
+  /** Puts a document in limbo, and stops listening to the query before it is resolved. */
+  private static JSONArray stopResolution() throws JSONException {
+    JSONArray steps = putInLimbo(docs("a"));
+    steps.put(
+        watchSnapshot(1001)
+            .put(
+                "expectedState",
+                limboState(keys("a"), keys(), activeTargets().put("1", limboTarget("a"))))
+            .put("expectedSnapshotEvents", events(event(collectionQuery(), true))));
+    steps.put(
+        unlisten(2, collectionQuery())
+            .put(
+                "expectedState",
+                limboState(keys(), keys(), new JSONObject())
+                    .put("limboResolutionCounts", counts(0, 0))));
+    return steps;
+  }
+
+  /**
+   * Returns the steps that listen to the query, receive the given documents, and reset the target
+   * so that the documents go into limbo with the next snapshot.
+   */
+  private static JSONArray putInLimbo(JSONArray docs) throws JSONException {
+    JSONArray steps = new JSONArray();
+    steps.put(listen(2, collectionQuery(), activeTargets()));
+    steps.put(watchAck(ids(2)));
+    steps.put(watchEntity(docs, 2));
+    steps.put(watchCurrent(ids(2), "resume-token-1000"));
+    steps.put(
+        watchSnapshot(1000)
+            .put("expectedSnapshotEvents", events(event(collectionQuery(), "added", docs, false))));
+    steps.put(watchReset(ids(2)));
+    steps.put(watchCurrent(ids(2), "resume-token-1001"));
+    return steps;
+  }
+
+  private static JSONObject collectionQuery() throws JSONException {
+    return query("collection");
+  }
+
+  /** Returns the active targets while only the query is active. */
+  private static JSONObject activeTargets() throws JSONException {
+    return new JSONObject().put("2", target(collectionQuery()));
+  }
+
+  private static JSONObject limboTarget(String id) throws JSONException {
+    return target(query("collection/" + id));
+  }
+
+  private static JSONObject limboState(
+      JSONArray limboDocs, JSONArray enqueuedLimboDocs, JSONObject activeTargets)
+      throws JSONException {
+    return new JSONObject()
+        .put("limboDocs", limboDocs)
+        .put("enqueuedLimboDocs", enqueuedLimboDocs)
+        .put("activeTargets", activeTargets);
+  }
+
+  private static JSONObject counts(int completed, int rejected) throws JSONException {
+    return new JSONObject().put("completed", completed).put("rejected", rejected);
+  }
+
+  private static JSONArray ids(int... targetIds) {
+    JSONArray result = new JSONArray();
+    for (int targetId : targetIds) {
+      result.put(targetId);
+    }
+    return result;
+  }
+
+  private static JSONArray keys(String... ids) {
+    JSONArray result = new JSONArray();
+    for (String id : ids) {
+      result.put("collection/" + id);
+    }
+    return result;
+  }
+
+  private static JSONArray docs(String... ids) throws JSONException {
+    JSONArray result = new JSONArray();
+    for (String id : ids) {
+      result.put(SpecSteps.doc("collection/" + id, 1000, new JSONObject().put("key", id)));
+    }
+    return result;
+  }
+}
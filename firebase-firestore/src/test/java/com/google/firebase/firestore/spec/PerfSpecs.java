@@ -0,0 +1,212 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.spec;
+
+import static com.google.firebase.firestore.spec.SpecSteps.addSpec;
+import static com.google.firebase.firestore.spec.SpecSteps.event;
+import static com.google.firebase.firestore.spec.SpecSteps.events;
+import static com.google.firebase.firestore.spec.SpecSteps.listen;
+import static com.google.firebase.firestore.spec.SpecSteps.orderBy;
+import static com.google.firebase.firestore.spec.SpecSteps.query;
+import static com.google.firebase.firestore.spec.SpecSteps.target;
+import static com.google.firebase.firestore.spec.SpecSteps.watchCurrent;
+import static com.google.firebase.firestore.spec.SpecSteps.watchEntity;
+import static com.google.firebase.firestore.spec.SpecSteps.watchSnapshot;
+
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Generates the spec tests that run in performance mode. The tests use the format of the JSON spec
+ * files, but their size is scaled by a factor, so that the same scenarios can measure the
+ * throughput of the sync engine at different sizes. The regular spec test run includes them at
+ * scale 1, so that the scenarios are kept up to date with the sync engine.
+ */
+final class PerfSpecs {
+  /** The number of documents in a snapshot at scale 1. */
+  static final int DOCUMENTS_PER_SNAPSHOT = 100;
+
+  /** The number of active targets at scale 1. */
+  static final int TARGET_COUNT = 10;
+
+  /** The number of documents in limbo at scale 1. */
+  static final int LIMBO_DOCUMENT_COUNT = 10;
+
+  /** The tag of the generated tests. */
+  static final String TAG = "perf";
+
+  private static final String DESCRIBE_NAME = "Performance:";
+
+  private PerfSpecs() {}
+
+  /** Returns the tests for the given scale, keyed by their names like in a spec file. */
+  static JSONObject create(int scale) throws JSONException {
+    JSONObject specs = new JSONObject();
+    add(
+        specs,
+        "Listen to a query with " + DOCUMENTS_PER_SNAPSHOT * scale + " documents",
+        new JSONObject(),
+        listenToLargeQuery(query("collection"), DOCUMENTS_PER_SNAPSHOT * scale));
+    add(
+        specs,
+        "Listen to an ordered query with " + DOCUMENTS_PER_SNAPSHOT * scale + " documents",
+        new JSONObject(),
+        listenToLargeQuery(
+            query("collection").put("orderBys", new JSONArray().put(orderBy("value", "desc"))),
+            DOCUMENTS_PER_SNAPSHOT * scale));
+    add(
+        specs,
+        "Listen to " + TARGET_COUNT * scale + " queries",
+        new JSONObject(),
+        listenToManyQueries(TARGET_COUNT * scale));
+    add(
+        specs,
+        "Resolve " + LIMBO_DOCUMENT_COUNT * scale + " limbo documents",
+        new JSONObject().put("maxConcurrentLimboResolutions", LIMBO_DOCUMENT_COUNT * scale),
+        resolveLimboDocuments(LIMBO_DOCUMENT_COUNT * scale));
+    return specs;
+  }
+
+  private static void add(JSONObject specs, String name, JSONObject config, JSONArray steps)
+      throws JSONException {
+    addSpec(specs, DESCRIBE_NAME, name, new JSONArray().put(TAG), config, steps);
+  }
+
+  /**
+   * Receives a snapshot with {@code count} documents, and then an update of all of them. The query
+   * is either unordered or ordered by the document values in descending order, which sorts the
+   * documents in the reverse order of their keys.
+   */
+  private static JSONArray listenToLargeQuery(JSONObject query, int count) throws JSONException {
+    boolean descending = query.getJSONArray("orderBys").length() > 0;
+    JSONArray added = new JSONArray();
+    JSONArray modified = new JSONArray();
+    for (int i = 0; i < count; ++i) {
+      int index = descending ? count - 1 - i : i;
+      added.put(doc("collection/" + docId(index), 1000, index));
+      modified.put(doc("collection/" + docId(index), 2000, index + 1));
+    }
+
+    JSONArray steps = new JSONArray();
+    steps.put(listen(2, query, new JSONObject().put("2", target(query))));
+    steps.put(new JSONObject().put("watchAck", new JSONArray().put(2)));
+    steps.put(watchEntity(added, 2));
+    steps.put(watchCurrent(new JSONArray().put(2), "resume-token-1000"));
+    steps.put(
+        watchSnapshot(1000)
+            .put("expectedSnapshotEvents", events(event(query, "added", added, false))));
+    steps.put(watchEntity(modified, 2));
+    steps.put(
+        watchSnapshot(2000)
+            .put("expectedSnapshotEvents", events(event(query, "modified", modified, false))));
+    return steps;
+  }
+
+  /** Listens to {@code count} queries, receives one document for each, and stops listening. */
+  private static JSONArray listenToManyQueries(int count) throws JSONException {
+    JSONArray steps = new JSONArray();
+    JSONArray targetIds = new JSONArray();
+    JSONObject activeTargets = new JSONObject();
+    for (int i = 0; i < count; ++i) {
+      int targetId = 2 * (i + 1);
+      JSONObject query = query("collection" + i);
+      targetIds.put(targetId);
+      activeTargets.put(String.valueOf(targetId), target(query));
+      steps.put(listen(targetId, query, new JSONObject(activeTargets.toString())));
+    }
+
+    steps.put(new JSONObject().put("watchAck", targetIds));
+    JSONArray events = new JSONArray();
+    for (int i = 0; i < count; ++i) {
+      JSONArray docs = new JSONArray().put(doc("collection" + i + "/doc", 1000, i));
+      steps.put(watchEntity(docs, targetIds.getInt(i)));
+      events.put(event(query("collection" + i), "added", docs, false));
+    }
+    steps.put(watchCurrent(targetIds, "resume-token-1000"));
+    steps.put(watchSnapshot(1000).put("expectedSnapshotEvents", events));
+
+    for (int i = 0; i < count; ++i) {
+      int targetId = targetIds.getInt(i);
+      activeTargets.remove(String.valueOf(targetId));
+      steps.put(
+          new JSONObject()
+              .put("userUnlisten", new JSONArray().put(targetId).put(query("collection" + i)))
+              .put(
+                  "expectedState",
+                  new JSONObject().put("activeTargets", new JSONObject(activeTargets.toString()))));
+    }
+    return steps;
+  }
+
+  /**
+   * Receives a snapshot with {@code count} documents, puts all of them in limbo by resetting the
+   * target, and resolves the limbo documents as deleted.
+   */
+  private static JSONArray resolveLimboDocuments(int count) throws JSONException {
+    JSONObject query = query("collection");
+    JSONArray docs = new JSONArray();
+    JSONArray limboDocs = new JSONArray();
+    JSONArray limboTargetIds = new JSONArray();
+    JSONObject limboTargets = new JSONObject().put("2", target(query));
+    for (int i = 0; i < count; ++i) {
+      String key = "collection/" + docId(i);
+      docs.put(doc(key, 1000, i));
+      limboDocs.put(key);
+      // The sync engine assigns odd target IDs to limbo resolutions, in the order of the keys.
+      int limboTargetId = 2 * i + 1;
+      limboTargetIds.put(limboTargetId);
+      limboTargets.put(String.valueOf(limboTargetId), target(query(key)));
+    }
+
+    JSONArray steps = new JSONArray();
+    steps.put(listen(2, query, new JSONObject().put("2", target(query))));
+    steps.put(new JSONObject().put("watchAck", new JSONArray().put(2)));
+    steps.put(watchEntity(docs, 2));
+    steps.put(watchCurrent(new JSONArray().put(2), "resume-token-1000"));
+    steps.put(
+        watchSnapshot(1000)
+            .put("expectedSnapshotEvents", events(event(query, "added", docs, false))));
+    steps.put(new JSONObject().put("watchReset", new JSONArray().put(2)));
+    steps.put(watchCurrent(new JSONArray().put(2), "resume-token-1001"));
+    steps.put(
+        watchSnapshot(1001)
+            .put(
+                "expectedState",
+                new JSONObject().put("limboDocs", limboDocs).put("activeTargets", limboTargets))
+            .put("expectedSnapshotEvents", events(event(query, /* fromCache= */ true))));
+    steps.put(new JSONObject().put("watchAck", limboTargetIds));
+    steps.put(watchCurrent(limboTargetIds, "resume-token-1002"));
+    steps.put(
+        watchSnapshot(1002)
+            .put(
+                "expectedState",
+                new JSONObject()
+                    .put("limboDocs", new JSONArray())
+                    .put("activeTargets", new JSONObject().put("2", target(query))))
+            .put("expectedSnapshotEvents", events(event(query, "removed", docs, false))));
+    return steps;
+  }
+
+  private static String docId(int index) {
+    // Zero-padding keeps the order of the keys the same as the order of the indices.
+    return String.format(Locale.US, "doc%06d", index);
+  }
+
+  private static JSONObject doc(String key, long version, int value) throws JSONException {
+    return SpecSteps.doc(key, version, new JSONObject().put("value", value));
+  }
+}
@@ -0,0 +1,140 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.spec;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Records how long every step of the spec tests in performance mode takes and how much memory it
+ * allocates, and writes the results to a JSON report:
+ *
+ * <pre>
+ * {"persistence": "MemorySpecTest", "scale": 1, "tests": [
+ *   {"name": "...", "totalMicros": 1234, "totalAllocatedBytes": 5678, "steps": [
+ *     {"index": 0, "type": "userListen", "micros": 12, "allocatedBytes": 3456}, ...]}, ...]}
+ * </pre>
+ *
+ * <p>Allocations are counted on all threads, including the AsyncQueue thread and the background
+ * threads that decode documents. Allocations of threads that terminate during a step are not
+ * counted, but the threads that run the sync engine are long-lived. Allocations are only measured
+ * on JVMs that support per-thread allocation counters, and are reported as -1 otherwise.
+ */
+final class SpecPerfRecorder {
+  private final String persistence;
+  private final int scale;
+  private final JSONArray tests = new JSONArray();
+
+  private JSONArray steps;
+  private long totalNanos;
+  private long totalAllocatedBytes;
+
+  SpecPerfRecorder(String persistence, int scale) {
+    this.persistence = persistence;
+    this.scale = scale;
+  }
+
+  void startTest(String name) throws JSONException {
+    steps = new JSONArray();
+    totalNanos = 0;
+    totalAllocatedBytes = 0;
+    tests.put(new JSONObject().put("name", name).put("steps", steps));
+  }
+
+  void recordStep(int index, String type, long nanos, long allocatedBytes) throws JSONException {
+    steps.put(
+        new JSONObject()
+            .put("index", index)
+            .put("type", type)
+            .put("micros", nanos / 1000)
+            .put("allocatedBytes", allocatedBytes));
+    totalNanos += nanos;
+    totalAllocatedBytes = allocatedBytes < 0 ? -1 : totalAllocatedBytes + allocatedBytes;
+  }
+
+  void finishTest() throws JSONException {
+    JSONObject test = tests.getJSONObject(tests.length() - 1);
+    test.put("totalMicros", totalNanos / 1000).put("totalAllocatedBytes", totalAllocatedBytes);
+  }
+
+  /** Writes the report to {@code <persistence>.json} in the given directory. */
+  File writeReport(File directory) throws IOException, JSONException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Failed to create " + directory);
+    }
+    JSONObject report =
+        new JSONObject().put("persistence", persistence).put("scale", scale).put("tests", tests);
+    File file = new File(directory, persistence + ".json");
+    try (Writer writer = new FileWriter(file)) {
+      writer.write(report.toString(2));
+    }
+    return file;
+  }
+
+  /**
+   * Returns the number of bytes that every live thread has allocated so far, keyed by thread ID, or
+   * null if the JVM does not count allocations per thread.
+   */
+  @Nullable
+  static Map<Long, Long> allocatedBytesByThread() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+    if (!allocationBean.isThreadAllocatedMemorySupported()
+        || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    long[] threadIds = allocationBean.getAllThreadIds();
+    long[] allocatedBytes = allocationBean.getThreadAllocatedBytes(threadIds);
+    Map<Long, Long> result = new HashMap<>();
+    for (int i = 0; i < threadIds.length; ++i) {
+      // Threads that terminated after getAllThreadIds() report -1.
+      if (allocatedBytes[i] >= 0) {
+        result.put(threadIds[i], allocatedBytes[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes that all threads have allocated since {@code start} was taken by
+   * {@link #allocatedBytesByThread}, or -1 if the JVM does not count allocations per thread.
+   * Threads that started in between are counted in full.
+   */
+  static long allocatedBytesSince(@Nullable Map<Long, Long> start) {
+    Map<Long, Long> end = allocatedBytesByThread();
+    if (start == null || end == null) {
+      return -1;
+    }
+    long bytes = 0;
+    for (Map.Entry<Long, Long> entry : end.entrySet()) {
+      Long startBytes = start.get(entry.getKey());
+      bytes += entry.getValue() - (startBytes != null ? startBytes : 0);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.spec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds the tests and steps of spec tests in the format of the JSON spec files, for the tests that
+ * are generated in Java instead of being read from a file.
+ */
+final class SpecSteps {
+  private SpecSteps() {}
+
+  /** Adds a test with the given steps to {@code specs}, keyed by its name like in a spec file. */
+  static void addSpec(
+      JSONObject specs,
+      String describeName,
+      String itName,
+      JSONArray tags,
+      JSONObject config,
+      JSONArray steps)
+      throws JSONException {
+    config.put("useGarbageCollection", true).put("numClients", 1);
+    specs.put(
+        itName,
+        new JSONObject()
+            .put("describeName", describeName)
+            .put("itName", itName)
+            .put("tags", tags)
+            .put("config", config)
+            .put("steps", steps));
+  }
+
+  static JSONObject query(String path) throws JSONException {
+    return new JSONObject()
+        .put("path", path)
+        .put("filters", new JSONArray())
+        .put("orderBys", new JSONArray());
+  }
+
+  static JSONArray orderBy(String field, String direction) {
+    return new JSONArray().put(field).put(direction);
+  }
+
+  static JSONObject target(JSONObject query) throws JSONException {
+    return new JSONObject().put("query", query).put("resumeToken", "");
+  }
+
+  static JSONObject doc(String key, long version, JSONObject value) throws JSONException {
+    return new JSONObject()
+        .put("key", key)
+        .put("version", version)
+        .put("value", value)
+        .put(
+            "options",
+            new JSONObject().put("hasLocalMutations", false).put("hasCommittedMutations", false));
+  }
+
+  static JSONObject listen(int targetId, JSONObject query, JSONObject activeTargets)
+      throws JSONException {
+    return new JSONObject()
+        .put("userListen", new JSONArray().put(targetId).put(query))
+        .put("expectedState", new JSONObject().put("activeTargets", activeTargets));
+  }
+
+  static JSONObject unlisten(int targetId, JSONObject query) throws JSONException {
+    return new JSONObject().put("userUnlisten", new JSONArray().put(targetId).put(query));
+  }
+
+  static JSONObject watchAck(JSONArray targetIds) throws JSONException {
+    return new JSONObject().put("watchAck", targetIds);
+  }
+
+  static JSONObject watchEntity(JSONArray docs, int targetId) throws JSONException {
+    return new JSONObject()
+        .put(
+            "watchEntity",
+            new JSONObject().put("docs", docs).put("targets", new JSONArray().put(targetId)));
+  }
+
+  static JSONObject watchCurrent(JSONArray targetIds, String resumeToken) throws JSONException {
+    return new JSONObject().put("watchCurrent", new JSONArray().put(targetIds).put(resumeToken));
+  }
+
+  static JSONObject watchReset(JSONArray targetIds) throws JSONException {
+    return new JSONObject().put("watchReset", targetIds);
+  }
+
+  /** Removes the given targets with the given error code, as if the backend rejected them. */
+  static JSONObject watchRemove(JSONArray targetIds, int errorCode) throws JSONException {
+    return new JSONObject()
+        .put(
+            "watchRemove",
+            new JSONObject()
+                .put("targetIds", targetIds)
+                .put("cause", new JSONObject().put("code", errorCode)));
+  }
+
+  static JSONObject watchSnapshot(long version) throws JSONException {
+    JSONObject snapshot =
+        new JSONObject().put("version", version).put("targetIds", new JSONArray());
+    return new JSONObject().put("watchSnapshot", snapshot);
+  }
+
+  static JSONArray events(JSONObject event) {
+    return new JSONArray().put(event);
+  }
+
+  static JSONObject event(JSONObject query, String type, JSONArray docs, boolean fromCache)
+      throws JSONException {
+    return event(query, fromCache).put(type, docs);
+  }
+
+  /** Returns a snapshot event without document changes. */
+  static JSONObject event(JSONObject query, boolean fromCache) throws JSONException {
+    return new JSONObject()
+        .put("query", query)
+        .put("errorCode", 0)
+        .put("fromCache", fromCache)
+        .put("hasPendingWrites", false);
+  }
+}
@@ -43,6 +43,7 @@ import com.google.firebase.firestore.core.DocumentViewChange;
 import com.google.firebase.firestore.core.DocumentViewChange.Type;
 import com.google.firebase.firestore.core.EventManager;
 import com.google.firebase.firestore.core.EventManager.ListenOptions;
+import com.google.firebase.firestore.core.LimboResolutionMetrics;
 import com.google.firebase.firestore.core.OnlineState;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.core.QueryListener;
@@ -63,14 +64,12 @@ import com.google.firebase.firestore.model.mutation.MutationBatchResult;
 import com.google.firebase.firestore.model.mutation.MutationResult;
 import com.google.firebase.firestore.remote.AndroidConnectivityMonitor;
 import com.google.firebase.firestore.remote.ConnectivityMonitor;
-import com.google.firebase.firestore.remote.ExistenceFilter;
 import com.google.firebase.firestore.remote.MockDatastore;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.remote.RemoteStore.RemoteStoreCallback;
 import com.google.firebase.firestore.remote.WatchChange;
 import com.google.firebase.firestore.remote.WatchChange.DocumentChange;
-import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChangeType;
 import com.google.firebase.firestore.remote.WatchStream;
@@ -124,9 +123,21 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
   /** Set this to true when debugging test failures. */
   private static final boolean DEBUG = false;
 
-  // TODO: Make this configurable with JUnit options.
-  private static final boolean RUN_BENCHMARK_TESTS = false;
-  private static final String BENCHMARK_TAG = "benchmark";
+  /**
+   * Set by running the tests with {@code -PspecPerfMode}. In performance mode, only the tests
+   * tagged as benchmarks and the tests generated by {@link PerfSpecs} run, and the time and the
+   * allocations of every step are written to a report in {@link #PERF_REPORT_DIR}. Otherwise, the
+   * tests generated by {@link PerfSpecs} run at scale 1 along with the regular spec tests.
+   */
+  private static final boolean PERF_MODE = Boolean.getBoolean("firestore.specPerfMode");
+
+  /** The factor by which {@link PerfSpecs} scales its tests in performance mode. */
+  private static final int PERF_SCALE = Integer.getInteger("firestore.specPerfScale", 1);
+
+  private static final String PERF_REPORT_DIR =
+      System.getProperty("firestore.specPerfReportDir", "build/reports/spec-perf");
+
+  static final String BENCHMARK_TAG = "benchmark";
 
   // Disables all other tests; useful for debugging. Multiple tests can have
   // this tag and they'll all be run (but all others won't).
@@ -136,13 +147,17 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
   // temporarily diverge or for features that are designed to be platform specific (such as
   // 'multi-client').
   private static final Set<String> DISABLED_TAGS =
-      RUN_BENCHMARK_TESTS
+      PERF_MODE
           ? Sets.newHashSet("no-android", "multi-client")
           : Sets.newHashSet("no-android", BENCHMARK_TAG, "multi-client");
 
   private boolean garbageCollectionEnabled;
+  private int maxConcurrentLimboResolutions;
   private boolean networkEnabled = true;
 
+  /** Records the time and the allocations of every step in performance mode. */
+  @Nullable private SpecPerfRecorder perfRecorder;
+
   //
   // Parts of the Firestore system that the spec tests need to control.
   //
@@ -166,6 +181,9 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
   /** Set of documents that are expected to be in limbo. Verified at every step. */
   private Set<DocumentKey> expectedLimboDocs;
 
+  /** Set of documents that are expected to be waiting for a free limbo resolution slot. */
+  private Set<DocumentKey> expectedEnqueuedLimboDocs;
+
   /** Set of expected active targets, keyed by target ID. */
   private Map<Integer, QueryData> expectedActiveTargets;
 
@@ -238,6 +256,9 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     outstandingWrites = new HashMap<>();
 
     this.garbageCollectionEnabled = config.optBoolean("useGarbageCollection", false);
+    this.maxConcurrentLimboResolutions =
+        config.optInt(
+            "maxConcurrentLimboResolutions", SyncEngine.DEFAULT_MAX_CONCURRENT_LIMBO_RESOLUTIONS);
 
     currentUser = User.UNAUTHENTICATED;
 
@@ -252,6 +273,7 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     queryListeners = new HashMap<>();
 
     expectedLimboDocs = new HashSet<>();
+    expectedEnqueuedLimboDocs = new HashSet<>();
     expectedActiveTargets = new HashMap<>();
 
     snapshotsInSyncListeners = Collections.synchronizedList(new ArrayList<>());
@@ -281,7 +303,8 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     ConnectivityMonitor connectivityMonitor =
         new AndroidConnectivityMonitor(ApplicationProvider.getApplicationContext());
     remoteStore = new RemoteStore(this, localStore, datastore, queue, connectivityMonitor);
-    syncEngine = new SyncEngine(localStore, remoteStore, currentUser);
+    syncEngine =
+        new SyncEngine(localStore, remoteStore, currentUser, maxConcurrentLimboResolutions);
     eventManager = new EventManager(syncEngine);
     localStore.start();
     remoteStore.start();
@@ -586,17 +609,25 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     }
   }
 
-  private void doWatchFilter(JSONArray watchFilter) throws Exception {
+  /**
+   * Sends an existence filter for the given keys. If the step specifies a "bloomFilter" with a
+   * "bitCount" and a "hashCount", the mock backend includes a Bloom filter of the document names.
+   */
+  private void doWatchFilter(JSONArray watchFilter, @Nullable JSONObject bloomFilter)
+      throws Exception {
     List<Integer> targets = parseIntList(watchFilter.getJSONArray(0));
     Assert.hardAssert(
         targets.size() == 1, "ExistenceFilters currently support exactly one target only.");
 
-    int keyCount = watchFilter.length() == 0 ? 0 : watchFilter.length() - 1;
+    List<DocumentKey> keys = new ArrayList<>();
+    for (int i = 1; i < watchFilter.length(); i++) {
+      keys.add(key(watchFilter.getString(i)));
+    }
 
-    // TODO: extend this with different existence filters over time.
-    ExistenceFilter filter = new ExistenceFilter(keyCount);
-    ExistenceFilterWatchChange change = new ExistenceFilterWatchChange(targets.get(0), filter);
-    writeWatchChange(change, SnapshotVersion.NONE);
+    int bitCount = bloomFilter != null ? bloomFilter.getInt("bitCount") : 0;
+    int hashCount = bloomFilter != null ? bloomFilter.getInt("hashCount") : 0;
+    queue.runSync(
+        () -> datastore.writeExistenceFilter(targets.get(0), keys, bitCount, hashCount));
   }
 
   private void doWatchReset(JSONArray targetIds) throws Exception {
@@ -760,7 +791,7 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     } else if (step.has("watchEntity")) {
       doWatchEntity(step.getJSONObject("watchEntity"));
     } else if (step.has("watchFilter")) {
-      doWatchFilter(step.getJSONArray("watchFilter"));
+      doWatchFilter(step.getJSONArray("watchFilter"), step.optJSONObject("bloomFilter"));
     } else if (step.has("watchReset")) {
       doWatchReset(step.getJSONArray("watchReset"));
     } else if (step.has("watchSnapshot")) {
@@ -897,6 +928,19 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
           expectedLimboDocs.add(key((String) limboDocs.get(i)));
         }
       }
+      if (expectedState.has("enqueuedLimboDocs")) {
+        expectedEnqueuedLimboDocs = new HashSet<>();
+        JSONArray enqueuedLimboDocs = expectedState.getJSONArray("enqueuedLimboDocs");
+        for (int i = 0; i < enqueuedLimboDocs.length(); i++) {
+          expectedEnqueuedLimboDocs.add(key((String) enqueuedLimboDocs.get(i)));
+        }
+      }
+      if (expectedState.has("limboResolutionCounts")) {
+        JSONObject counts = expectedState.getJSONObject("limboResolutionCounts");
+        LimboResolutionMetrics metrics = syncEngine.getLimboResolutionMetrics();
+        assertEquals(counts.getInt("completed"), metrics.getCompletedResolutionCount());
+        assertEquals(counts.getInt("rejected"), metrics.getRejectedResolutionCount());
+      }
       if (expectedState.has("activeTargets")) {
         expectedActiveTargets = new HashMap<>();
         JSONObject activeTargets = expectedState.getJSONObject("activeTargets");
@@ -923,6 +967,7 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     validateUserCallbacks(expectedState);
     // Always validate that the expected limbo docs match the actual limbo docs.
     validateLimboDocs();
+    validateEnqueuedLimboDocs();
     // Always validate that the expected active targets match the actual active targets.
     validateActiveTargets();
   }
@@ -978,6 +1023,12 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
     assertTrue("Unexpected docs in limbo: " + actualLimboDocs, actualLimboDocs.isEmpty());
   }
 
+  private void validateEnqueuedLimboDocs() {
+    @SuppressWarnings("VisibleForTests")
+    Set<DocumentKey> actualEnqueuedLimboDocs = syncEngine.getEnqueuedLimboDocuments();
+    assertEquals(expectedEnqueuedLimboDocs, actualEnqueuedLimboDocs);
+  }
+
   private void validateActiveTargets() {
     if (!networkEnabled) {
       return;
@@ -1022,13 +1073,26 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
         int expectedSnapshotsInSyncEvents = step.optInt("expectedSnapshotsInSyncEvents");
         step.remove("expectedSnapshotsInSyncEvents");
 
+        @Nullable Map<Long, Long> startAllocatedBytes = null;
+        if (perfRecorder != null) {
+          startAllocatedBytes = SpecPerfRecorder.allocatedBytesByThread();
+        }
+        long startNanos = System.nanoTime();
+
         log("    Doing step " + step);
+        String stepType = step.keys().next();
         doStep(step);
 
         TaskCompletionSource<Void> drainBackgroundQueue = new TaskCompletionSource<>();
         backgroundExecutor.execute(() -> drainBackgroundQueue.setResult(null));
         waitFor(drainBackgroundQueue.getTask());
 
+        if (perfRecorder != null) {
+          long nanos = System.nanoTime() - startNanos;
+          perfRecorder.recordStep(
+              i, stepType, nanos, SpecPerfRecorder.allocatedBytesSince(startAllocatedBytes));
+        }
+
         if (expectedSnapshotEvents != null) {
           log("      Validating expected snapshot events " + expectedSnapshotEvents);
         }
@@ -1080,6 +1144,14 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
       parsedSpecFiles.add(new Pair<>(f.getName(), fileJSON));
     }
 
+    parsedSpecFiles.add(new Pair<>("LimboSpecs", LimboSpecs.create()));
+    int perfScale = PERF_MODE ? PERF_SCALE : 1;
+    parsedSpecFiles.add(
+        new Pair<>("PerfSpecs (scale " + perfScale + ")", PerfSpecs.create(perfScale)));
+    if (PERF_MODE) {
+      perfRecorder = new SpecPerfRecorder(getClass().getSimpleName(), PERF_SCALE);
+    }
+
     for (Pair<String, JSONObject> parsedSpecFile : parsedSpecFiles) {
       String fileName = parsedSpecFile.first;
       JSONObject fileJSON = parsedSpecFile.second;
@@ -1098,13 +1170,22 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
         JSONArray steps = testJSON.getJSONArray("steps");
         Set<String> tags = getTestTags(testJSON);
 
-        boolean runTest = shouldRunTest(tags) && (!exclusiveMode || tags.contains(EXCLUSIVE_TAG));
+        boolean runTest =
+            shouldRunTest(tags)
+                && (!exclusiveMode || tags.contains(EXCLUSIVE_TAG))
+                && (!PERF_MODE || tags.contains(BENCHMARK_TAG) || tags.contains(PerfSpecs.TAG));
         boolean measureRuntime = tags.contains(BENCHMARK_TAG);
         if (runTest) {
           long start = System.currentTimeMillis();
           try {
             info("Spec test: " + name);
+            if (perfRecorder != null) {
+              perfRecorder.startTest(name);
+            }
             runSteps(steps, config);
+            if (perfRecorder != null) {
+              perfRecorder.finishTest();
+            }
             ranAtLeastOneTest = true;
           } catch (AssertionError e) {
             throw new AssertionError("Spec test failure: " + name, e);
@@ -1119,6 +1200,11 @@ public abstract class SpecTestCase implements RemoteStoreCallback {
       }
     }
     assertTrue(ranAtLeastOneTest);
+
+    if (perfRecorder != null) {
+      File report = perfRecorder.writeReport(new File(PERF_REPORT_DIR));
+      info("Performance report: " + report.getAbsolutePath());
+    }
   }
 
   private static boolean anyTestsAreMarkedExclusive(JSONObject fileJSON) throws JSONException {
@@ -19,10 +19,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.google.firebase.firestore.util.AsyncQueue.DelayedTask;
+import com.google.firebase.firestore.util.AsyncQueue.TaskLabel;
 import com.google.firebase.firestore.util.AsyncQueue.TimerId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Semaphore;
 import org.junit.Before;
 import org.junit.Test;
@@ -139,4 +142,84 @@ public class AsyncQueueTest {
     queue.getExecutor().execute(runnableForStep(5));
     waitForExpectedSteps();
   }
+
+  @Test
+  public void doesNotRecordMetricsByDefault() throws Exception {
+    queue.enqueueAndForget(TaskLabel.WRITE, runnableForStep(1));
+    queue.runSync(() -> {});
+    assertFalse(queue.getMetrics().isEnabled());
+    assertTrue(queue.getMetrics().getStatsByOrigin().isEmpty());
+  }
+
+  @Test
+  public void recordsMetricsByOrigin() throws Exception {
+    AsyncQueueMetrics.LongTaskCallback callback = (origin, waitMillis, runMillis) -> {};
+    queue.getMetrics().addLongTaskCallback(1000, callback);
+
+    queue.enqueueAndForget(TaskLabel.WRITE, runnableForStep(1));
+    queue.enqueueAndForget(TaskLabel.WRITE, runnableForStep(2));
+    queue.enqueueAndForget(TaskLabel.LISTEN, runnableForStep(3));
+    queue.enqueueAfterDelay(TIMER_ID_1, 10, runnableForStep(4));
+    queue.runDelayedTasksUntil(TimerId.ALL);
+    assertEquals(Arrays.asList(1, 2, 3, 4), completedSteps);
+
+    Map<String, AsyncQueueMetrics.OriginStats> stats = queue.getMetrics().getStatsByOrigin();
+    assertEquals(2, stats.get("WRITE").getTaskCount());
+    assertEquals(1, stats.get("LISTEN").getTaskCount());
+    // runSync() and runDelayedTasksUntil() enqueue unlabeled tasks.
+    assertEquals(1, stats.get("UNLABELED").getTaskCount());
+    assertEquals(0, queue.getMetrics().getQueueDepth());
+
+    long[] runHistogram = stats.get("WRITE").getRunHistogram();
+    assertEquals(AsyncQueueMetrics.getBucketUpperBoundsMillis().length + 1, runHistogram.length);
+    long total = 0;
+    for (long count : runHistogram) {
+      total += count;
+    }
+    assertEquals(2, total);
+
+    queue.getMetrics().removeLongTaskCallback(callback);
+    assertFalse(queue.getMetrics().isEnabled());
+    assertTrue(queue.getMetrics().getStatsByOrigin().isEmpty());
+  }
+
+  @Test
+  public void reportsLongTasks() throws Exception {
+    List<String> longTasks = new ArrayList<>();
+    queue
+        .getMetrics()
+        .addLongTaskCallback(5, (origin, waitMillis, runMillis) -> longTasks.add(origin));
+
+    queue.enqueueAndForget(TaskLabel.LOCAL_READ, () -> {});
+    queue.enqueueAndForget(
+        TaskLabel.WRITE,
+        () -> {
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+    queue.runSync(() -> {});
+
+    assertEquals(Collections.singletonList("WRITE"), longTasks);
+    Map<String, AsyncQueueMetrics.OriginStats> stats = queue.getMetrics().getStatsByOrigin();
+    assertEquals(1, stats.get("WRITE").getLongTaskCount());
+    assertTrue(stats.get("WRITE").getMaxRunMillis() >= 20);
+    assertEquals(0, stats.get("LOCAL_READ").getLongTaskCount());
+  }
+
+  @Test
+  public void backgroundTasksYieldToOtherTasks() {
+    expectedSteps = Arrays.asList(1, 2, 3, 4);
+    queue.enqueueAndForget(
+        () -> {
+          queue.enqueueAndForgetInBackground(TaskLabel.GARBAGE_COLLECTION, runnableForStep(1));
+          queue.enqueueAndForgetInBackground(TaskLabel.GARBAGE_COLLECTION, runnableForStep(3));
+          // Enqueued after both background tasks, but runs as soon as the first one is done.
+          queue.enqueueAndForget(runnableForStep(2));
+          queue.enqueueAndForgetInBackground(TaskLabel.GARBAGE_COLLECTION, runnableForStep(4));
+        });
+    waitForExpectedSteps();
+  }
 }
@@ -0,0 +1,216 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.GeneratedClassMapper;
+import com.google.firebase.firestore.TestUtil;
+import com.google.firebase.firestore.processor.FirestoreMapperProcessor;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import javax.tools.JavaFileObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the annotation processor over a POJO, loads the classes it compiled and checks that {@link
+ * CustomClassMapper} maps the POJO with the generated mapper, just like it would via reflection.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeneratedClassMapperTest {
+
+  private static final JavaFileObject CITY =
+      JavaFileObjects.forSourceLines(
+          "com.example.City",
+          "package com.example;",
+          "import com.google.firebase.firestore.DocumentId;",
+          "import com.google.firebase.firestore.ServerTimestamp;",
+          "import com.google.firebase.firestore.ThrowOnExtraProperties;",
+          "import java.util.Date;",
+          "import java.util.List;",
+          "@ThrowOnExtraProperties",
+          "public class City {",
+          "  @DocumentId public String id;",
+          "  public String name;",
+          "  public List<String> tags;",
+          "  @ServerTimestamp public Date updated;",
+          "  private long count;",
+          "  public long getCount() { return count; }",
+          "  public void setCount(long count) { this.count = count; }",
+          "}");
+
+  private static final JavaFileObject HOLDER =
+      JavaFileObjects.forSourceLines(
+          "com.example.Holder",
+          "package com.example;",
+          "public class Holder {",
+          "  public City city;",
+          "}");
+
+  private static Map<String, byte[]> compiledClasses;
+
+  private final DocumentReference ref = TestUtil.documentReference("coll/doc123");
+
+  @BeforeClass
+  public static void compileCity() throws IOException {
+    Compilation compilation =
+        javac().withProcessors(new FirestoreMapperProcessor()).compile(CITY, HOLDER);
+    assertThat(compilation).succeeded();
+    assertThat(compilation).generatedSourceFile("com.example.City_FirestoreMapper");
+
+    compiledClasses = new HashMap<>();
+    for (JavaFileObject file : compilation.generatedFiles()) {
+      if (file.getKind() == JavaFileObject.Kind.CLASS) {
+        // Class files are named like "/CLASS_OUTPUT/com/example/City.class".
+        String path = file.toUri().getPath();
+        String name =
+            path.substring(path.indexOf('/', 1) + 1, path.length() - ".class".length())
+                .replace('/', '.');
+        try (InputStream in = file.openInputStream()) {
+          compiledClasses.put(name, ByteStreams.toByteArray(in));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void loadsGeneratedMapper() throws Exception {
+    Class<?> city = loadClasses().loadClass("com.example.City");
+    Class<?> mapper = city.getClassLoader().loadClass("com.example.City_FirestoreMapper");
+
+    assertSame(GeneratedClassMapper.class, mapper.getSuperclass());
+    assertTrue(CustomClassMapper.hasGeneratedMapper(city));
+  }
+
+  @Test
+  public void serializesWithGeneratedMapper() throws Exception {
+    Class<?> city = loadClasses().loadClass("com.example.City");
+    Object object = city.newInstance();
+    city.getField("id").set(object, "ignored");
+    city.getField("name").set(object, "Tokyo");
+    city.getField("tags").set(object, Arrays.asList("a", "b"));
+    city.getMethod("setCount", long.class).invoke(object, 42L);
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> serialized =
+        (Map<String, Object>) CustomClassMapper.convertToPlainJavaTypes(object);
+
+    assertEquals(4, serialized.size());
+    assertEquals("Tokyo", serialized.get("name"));
+    assertEquals(Arrays.asList("a", "b"), serialized.get("tags"));
+    assertEquals(42L, serialized.get("count"));
+    assertSame(FieldValue.serverTimestamp(), serialized.get("updated"));
+  }
+
+  @Test
+  public void deserializesWithGeneratedMapper() throws Exception {
+    Class<?> city = loadClasses().loadClass("com.example.City");
+    Date date = new Date(1000);
+    Object object =
+        CustomClassMapper.convertToCustomClass(
+            map("name", "Tokyo", "tags", Arrays.asList("a", "b"), "count", 42, "updated", date),
+            city,
+            ref);
+
+    assertEquals("doc123", city.getField("id").get(object));
+    assertEquals("Tokyo", city.getField("name").get(object));
+    assertEquals(Arrays.asList("a", "b"), city.getField("tags").get(object));
+    assertEquals(42L, city.getMethod("getCount").invoke(object));
+    assertEquals(date, city.getField("updated").get(object));
+  }
+
+  @Test
+  public void deserializesNestedObjectsWithGeneratedMapper() throws Exception {
+    ClassLoader loader = loadClasses();
+    Class<?> city = loader.loadClass("com.example.City");
+    Class<?> holder = loader.loadClass("com.example.Holder");
+    Object object =
+        CustomClassMapper.convertToCustomClass(map("city", map("name", "Tokyo")), holder, ref);
+
+    Object nested = holder.getField("city").get(object);
+    assertSame(city, nested.getClass());
+    assertEquals("Tokyo", city.getField("name").get(nested));
+    assertNull(city.getField("tags").get(nested));
+  }
+
+  @Test
+  public void reportsErrorsLikeReflection() throws Exception {
+    Class<?> city = loadClasses().loadClass("com.example.City");
+    assertExceptionContains(
+        "No setter/field for unknown found on class com.example.City",
+        () -> CustomClassMapper.convertToCustomClass(map("unknown", "value"), city, ref));
+    assertExceptionContains(
+        "No setter/field for NAME found on class com.example.City "
+            + "(fields/setters are case sensitive!)",
+        () -> CustomClassMapper.convertToCustomClass(map("NAME", "value"), city, ref));
+    assertExceptionContains(
+        "'id' was found from document coll/doc123, cannot apply @DocumentId on this property",
+        () -> CustomClassMapper.convertToCustomClass(map("id", "value"), city, ref));
+    assertExceptionContains(
+        "Expected a List, but got a class java.lang.String (found in field 'tags')",
+        () -> CustomClassMapper.convertToCustomClass(map("tags", "value"), city, ref));
+    assertExceptionContains(
+        "Cannot assign null to property of primitive type long (found in field 'count')",
+        () -> CustomClassMapper.convertToCustomClass(map("count", null), city, ref));
+  }
+
+  /**
+   * Returns a class loader for the compiled classes. Each test gets its own, so that the mappers
+   * that {@link CustomClassMapper} caches for one test's classes are not reused by the next.
+   */
+  private static ClassLoader loadClasses() {
+    return new ClassLoader(GeneratedClassMapperTest.class.getClassLoader()) {
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = compiledClasses.get(name);
+        if (bytes == null) {
+          throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+    };
+  }
+
+  private static void assertExceptionContains(String partialMessage, Runnable run) {
+    try {
+      run.run();
+      fail("Expected exception not thrown");
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageThat().contains(partialMessage);
+    }
+  }
+}
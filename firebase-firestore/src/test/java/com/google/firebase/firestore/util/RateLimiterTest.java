@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RateLimiterTest {
+  private static final long START_TIME = 1000;
+
+  private RateLimiter limiter;
+
+  @Before
+  public void before() {
+    limiter =
+        new RateLimiter(
+            /* initialCapacity= */ 500,
+            /* multiplier= */ 1.5,
+            /* multiplierMillis= */ 5 * 60 * 1000,
+            /* minimumCapacity= */ 10,
+            /* maximumCapacity= */ 10000,
+            START_TIME);
+  }
+
+  @Test
+  public void admitsRequestsUpToCapacity() {
+    assertTrue(limiter.tryMakeRequest(500, START_TIME));
+    assertFalse(limiter.tryMakeRequest(1, START_TIME));
+  }
+
+  @Test
+  public void refillsTokensOverTime() {
+    assertTrue(limiter.tryMakeRequest(500, START_TIME));
+    assertFalse(limiter.tryMakeRequest(100, START_TIME + 100));
+    assertTrue(limiter.tryMakeRequest(100, START_TIME + 200));
+  }
+
+  @Test
+  public void computesDelayUntilNextRequest() {
+    assertEquals(0, limiter.getNextRequestDelayMs(500, START_TIME));
+    assertTrue(limiter.tryMakeRequest(500, START_TIME));
+    assertEquals(100, limiter.getNextRequestDelayMs(50, START_TIME));
+    assertEquals(0, limiter.getNextRequestDelayMs(50, START_TIME + 100));
+  }
+
+  @Test
+  public void rampsUpCapacity() {
+    assertEquals(500, limiter.getCapacity(START_TIME));
+    assertEquals(500, limiter.getCapacity(START_TIME + 5 * 60 * 1000 - 1));
+    assertEquals(750, limiter.getCapacity(START_TIME + 5 * 60 * 1000));
+    assertEquals(1125, limiter.getCapacity(START_TIME + 10 * 60 * 1000));
+    assertEquals(10000, limiter.getCapacity(START_TIME + 100 * 60 * 1000));
+  }
+
+  @Test
+  public void backOffHalvesCapacityAndRestartsRamp() {
+    long now = START_TIME + 10 * 60 * 1000;
+    limiter.backOff(now);
+    assertEquals(562, limiter.getCapacity(now));
+    assertEquals(843, limiter.getCapacity(now + 5 * 60 * 1000));
+
+    for (int i = 0; i < 20; ++i) {
+      limiter.backOff(now);
+    }
+    assertEquals(10, limiter.getCapacity(now));
+  }
+}
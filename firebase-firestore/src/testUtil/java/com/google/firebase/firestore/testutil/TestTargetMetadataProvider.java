@@ -16,6 +16,7 @@ package com.google.firebase.firestore.testutil;
 
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.local.QueryData;
+import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.remote.WatchChangeAggregator;
 import java.util.HashMap;
@@ -41,6 +42,11 @@ public class TestTargetMetadataProvider implements WatchChangeAggregator.TargetM
     return queryData.get(targetId);
   }
 
+  @Override
+  public DatabaseId getDatabaseId() {
+    return TestUtil.dbId("project");
+  }
+
   /** Sets or replaces the local state for the provided query data. */
   public void setSyncedKeys(QueryData queryData, ImmutableSortedSet<DocumentKey> keys) {
     this.queryData.put(queryData.getTargetId(), queryData);
@@ -416,6 +416,11 @@ public class TestUtil {
                 ResourcePath collectionPath = docs.get(0).getKey().getPath().popLast();
                 return queryData(targetId, QueryPurpose.LISTEN, collectionPath.toString());
               }
+
+              @Override
+              public DatabaseId getDatabaseId() {
+                return dbId("project");
+              }
             });
 
     SnapshotVersion version = SnapshotVersion.NONE;
@@ -459,6 +464,11 @@ public class TestUtil {
                     ? queryData(targetId, QueryPurpose.LISTEN, doc.getKey().toString())
                     : null;
               }
+
+              @Override
+              public DatabaseId getDatabaseId() {
+                return dbId("project");
+              }
             });
     aggregator.handleDocumentChange(change);
     return aggregator.createRemoteEvent(doc.getVersion());